@@ -29,21 +29,39 @@
 package org.musicbrainz.search;
 
 import org.apache.lucene.document.*;
+import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.NumericUtils;
 import org.musicbrainz.search.index.Index;
 import org.musicbrainz.search.index.IndexField;
+import org.musicbrainz.search.index.MMDSerializer;
 import org.musicbrainz.search.index.MetaIndexField;
+import org.musicbrainz.search.index.StoredPayloadCodec;
+import org.musicbrainz.search.index.Utils;
+import org.musicbrainz.search.index.XmlStoredPayloadCodec;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.Locale;
 
 /** 
  * A wrapper around Lucene Document
  */
 public class MbDocument {
 
+    /* Appended to the name of the store field to give the name of the field holding the xml fragment */
+    public static final String XML_FRAGMENT_SUFFIX = "xml";
+
+    /* Precision step of integral numeric fields, smaller steps index more terms per value but make range searches visit fewer terms */
+    public static final int DEFAULT_NUMERIC_PRECISION_STEP = NumericUtils.PRECISION_STEP_DEFAULT;
+
+    /* Only indexes the full precision term of each value, the format of indexes built before the precision step was recorded */
+    public static final int LEGACY_NUMERIC_PRECISION_STEP = Integer.MAX_VALUE;
+
+    private static int numericPrecisionStep = DEFAULT_NUMERIC_PRECISION_STEP;
+
     private Document doc;
 
     public MbDocument() {
@@ -57,6 +75,23 @@ public class MbDocument {
     public Document getLuceneDocument() {
         return doc;
     }
+
+    public static int getNumericPrecisionStep() {
+        return numericPrecisionStep;
+    }
+
+    /**
+     * Set the precision step integral numeric fields are indexed with, must match the precision step of the rest of
+     * the index when updating an existing index
+     *
+     * @param precisionStep
+     */
+    public static void setNumericPrecisionStep(int precisionStep) {
+        if (precisionStep < 1) {
+            throw new IllegalArgumentException("precisionStep must be >=1");
+        }
+        numericPrecisionStep = precisionStep;
+    }
    
     /* Methods used for indexing */
 
@@ -82,16 +117,34 @@ public class MbDocument {
     
     
     /**
-     * Add integral numeric field, handled specially so that ranges searches work properly
+     * Add integral numeric field, indexed as a trie with the configured precision step so that range searches
+     * can be run as a NumericRangeQuery
      *
      * @param field
      * @param value
      */
     public void addNumericField(IndexField field, Integer value) {
 
-        BytesRefBuilder bytes = new BytesRefBuilder();
-        NumericUtils.intToPrefixCoded(value, 0, bytes);
-        doc.add(new Field(field.getName(),bytes.toBytesRef().utf8ToString(), field.getFieldType()));
+        FieldType fieldType = new FieldType(field.getFieldType());
+        fieldType.setTokenized(true);
+        fieldType.setOmitNorms(true);
+        fieldType.setIndexOptions(FieldInfo.IndexOptions.DOCS_ONLY);
+        fieldType.setNumericType(FieldType.NumericType.INT);
+        fieldType.setNumericPrecisionStep(numericPrecisionStep);
+        doc.add(new IntField(field.getName(), value, fieldType));
+    }
+
+    /**
+     * Add date as a day resolution integral numeric field so that range searches work with partial dates
+     *
+     * @param field
+     * @param date date formatted by Utils.formatDate, nothing is added if empty
+     */
+    public void addNumericDateField(IndexField field, String date) {
+        Integer value = Utils.dateToInt(date);
+        if (value != null) {
+            addNumericField(field, value);
+        }
     }
 
     /**
@@ -121,6 +174,59 @@ public class MbDocument {
         doc.add(new Field(field.getName(),bytes.toBytesRef().utf8ToString(), field.getFieldType()));
     }
 
+    /**
+     * Add numeric doc values field, used for sorting rather than searching
+     *
+     * @param field
+     * @param value
+     */
+    public void addNumericDocValuesField(IndexField field, long value) {
+        doc.add(new NumericDocValuesField(field.getName(), value));
+    }
+
+    /**
+     * Add sorted doc values field, used for sorting rather than searching. The value is lowercased so that sorting
+     * ignores case.
+     *
+     * @param field
+     * @param value nothing is added if null
+     */
+    public void addSortedDocValuesField(IndexField field, String value) {
+        if (value == null) {
+            return;
+        }
+        doc.add(new SortedDocValuesField(field.getName(), new BytesRef(value.toLowerCase(Locale.ROOT))));
+    }
+
+    /**
+     * Add date as a day resolution numeric doc values field, used for sorting by date
+     *
+     * @param field
+     * @param date date formatted by Utils.formatDate, nothing is added if empty
+     */
+    public void addDateDocValuesField(IndexField field, String date) {
+        addDateDocValuesField(field, Collections.singletonList(date));
+    }
+
+    /**
+     * Add the earliest of the dates as a day resolution numeric doc values field, used for sorting by date
+     *
+     * @param field
+     * @param dates dates formatted by Utils.formatDate, nothing is added if none are valid
+     */
+    public void addDateDocValuesField(IndexField field, Iterable<String> dates) {
+        Integer earliest = null;
+        for (String date : dates) {
+            Integer value = Utils.dateToInt(date);
+            if (value != null && (earliest == null || value < earliest)) {
+                earliest = value;
+            }
+        }
+        if (earliest != null) {
+            addNumericDocValuesField(field, earliest);
+        }
+    }
+
     /**
      * Add field if not empty
      *
@@ -167,6 +273,36 @@ public class MbDocument {
         }
     }
 
+    /**
+     * Add mmd entity to the store field used to build the results, written as xml
+     *
+     * @param field
+     * @param entity
+     */
+    public void addStoredEntity(IndexField field, Object entity) {
+        addStoredEntity(field, entity, XmlStoredPayloadCodec.INSTANCE, false);
+    }
+
+    /**
+     * Add mmd entity to the store field used to build the results
+     *
+     * @param field
+     * @param entity
+     * @param codec codec the store field is written with
+     * @param storeXmlFragment if true the ws/2 xml of the entity is also stored
+     */
+    public void addStoredEntity(IndexField field, Object entity, StoredPayloadCodec codec, boolean storeXmlFragment) {
+        if (MMDSerializer.isStoredAsString(codec)) {
+            addField(field, MMDSerializer.serialize(entity));
+        }
+        else {
+            doc.add(new StoredField(field.getName(), MMDSerializer.serializeToPayload(entity, codec)));
+        }
+        if (storeXmlFragment) {
+            doc.add(new StoredField(field.getName() + XML_FRAGMENT_SUFFIX, MMDSerializer.serializeXmlFragment(entity)));
+        }
+    }
+
     /* Methods used for searching */
     
     public String get(IndexField indexField) {
@@ -193,6 +329,34 @@ public class MbDocument {
     }
     */
 
+    /**
+     * Get mmd entity from store field, indexes built before binary payloads were introduced store it as an xml string
+     *
+     * @param indexField
+     * @return the entity or null if the document has no such field
+     */
+    public Object getStoredEntity(IndexField indexField) {
+        IndexableField field = doc.getField(indexField.getName());
+        if (field == null) {
+            return null;
+        }
+        BytesRef payload = field.binaryValue();
+        if (payload != null) {
+            return MMDSerializer.unserialize(payload);
+        }
+        return MMDSerializer.unserialize(field.stringValue(), null);
+    }
+
+    /**
+     * Get the ws/2 xml of the entity in the store field, only available if the index was built with fragments
+     *
+     * @param indexField the store field
+     * @return the xml or null if not stored
+     */
+    public String getStoredXmlFragment(IndexField indexField) {
+        return doc.get(indexField.getName() + XML_FRAGMENT_SUFFIX);
+    }
+
     public String[] getValues(IndexField indexField) {
         return doc.getValues(indexField.getName());
     }
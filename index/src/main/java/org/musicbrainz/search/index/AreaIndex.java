@@ -298,9 +298,11 @@ public class AreaIndex extends DatabaseIndex {
 
         String begin = Utils.formatDate(rs.getInt("begin_date_year"), rs.getInt("begin_date_month"), rs.getInt("begin_date_day"));
         doc.addNonEmptyField(ArtistIndexField.BEGIN, begin);
+        doc.addNumericDateField(AreaIndexField.BEGIN_NUMERIC, begin);
 
         String end = Utils.formatDate(rs.getInt("end_date_year"), rs.getInt("end_date_month"), rs.getInt("end_date_day"));
         doc.addNonEmptyField(ArtistIndexField.END, end);
+        doc.addNumericDateField(AreaIndexField.END_NUMERIC, end);
 
         LifeSpan lifespan = of.createLifeSpan();
         area.setLifeSpan(lifespan);
@@ -353,8 +355,7 @@ public class AreaIndex extends DatabaseIndex {
             area.setTagList(tagList);
         }
 
-        String store = MMDSerializer.serialize(areaList);
-        doc.addField(AreaIndexField.AREA_STORE, store);
+        addStoredEntity(doc, AreaIndexField.AREA_STORE, areaList);
 
         AreaBoostDoc.boost(area.getType(), doc.getLuceneDocument());
         return doc.getLuceneDocument();
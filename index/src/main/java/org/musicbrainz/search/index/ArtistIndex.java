@@ -249,6 +249,7 @@ public class ArtistIndex extends DatabaseIndex {
 
         String sortName = rs.getString("sort_name");
         doc.addField(ArtistIndexField.SORTNAME, sortName);
+        doc.addSortedDocValuesField(ArtistIndexField.SORT_BY_NAME, sortName);
         artist.setSortName(sortName);
 
         String type = rs.getString("type");
@@ -262,9 +263,12 @@ public class ArtistIndex extends DatabaseIndex {
 
         String begin = Utils.formatDate(rs.getInt("begin_date_year"), rs.getInt("begin_date_month"), rs.getInt("begin_date_day"));
         doc.addNonEmptyField(ArtistIndexField.BEGIN, begin);
+        doc.addNumericDateField(ArtistIndexField.BEGIN_NUMERIC, begin);
+        doc.addDateDocValuesField(ArtistIndexField.SORT_BY_DATE, begin);
 
         String end = Utils.formatDate(rs.getInt("end_date_year"), rs.getInt("end_date_month"), rs.getInt("end_date_day"));
                 doc.addNonEmptyField(ArtistIndexField.END, end);
+        doc.addNumericDateField(ArtistIndexField.END_NUMERIC, end);
 
         LifeSpan lifespan = of.createLifeSpan();
         artist.setLifeSpan(lifespan);
@@ -383,8 +387,7 @@ public class ArtistIndex extends DatabaseIndex {
 
         ArtistBoostDoc.boost(artistGuid, doc);
 
-        String store = MMDSerializer.serialize(artist);
-        doc.addField(ArtistIndexField.ARTIST_STORE, store);
+        addStoredEntity(doc, ArtistIndexField.ARTIST_STORE, artist);
 
         return doc.getLuceneDocument();
     }
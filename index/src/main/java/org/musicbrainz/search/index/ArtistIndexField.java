@@ -48,9 +48,13 @@ public enum ArtistIndexField implements IndexField {
     ARTIST		    ("artist",		MusicBrainzFieldTypes.TEXT_STORED_ANALYZED, new MusicbrainzAnalyzer()),
     ARTIST_ACCENT   ("artistaccent",MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED, new MusicbrainzKeepAccentsAnalyzer()),
     BEGIN		    ("begin",		MusicBrainzFieldTypes.TEXT_NOT_STORED_NOT_ANALYZED_NO_NORMS, new KeywordAnalyzer()),
+    // Begin date as a day resolution int for range searches on begin
+    BEGIN_NUMERIC	("beginnumeric",	MusicBrainzFieldTypes.TEXT_NOT_STORED_NOT_ANALYZED_NO_NORMS, new KeywordAnalyzer()),
     COMMENT		    ("comment",		MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED),
     COUNTRY         ("country",     MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED_NO_NORMS, new CaseInsensitiveKeywordAnalyzer()),
     END			    ("end",			MusicBrainzFieldTypes.TEXT_NOT_STORED_NOT_ANALYZED_NO_NORMS, new KeywordAnalyzer()),
+    // End date as a day resolution int for range searches on end
+    END_NUMERIC	("endnumeric",	MusicBrainzFieldTypes.TEXT_NOT_STORED_NOT_ANALYZED_NO_NORMS, new KeywordAnalyzer()),
     ENDED           ("ended",       MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED_NO_NORMS, new CaseInsensitiveKeywordAnalyzer()),
     GENDER          ("gender",      MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED_NO_NORMS, new CaseInsensitiveKeywordAnalyzer()),
     IPI             ("ipi",         MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED_NO_NORMS, new CaseInsensitiveKeywordAnalyzer()),
@@ -62,6 +66,8 @@ public enum ArtistIndexField implements IndexField {
     BEGIN_AREA		("beginarea",   MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED, new MusicbrainzAnalyzer()),
     END_AREA		("endarea",	    MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED, new MusicbrainzAnalyzer()),
     ARTIST_STORE    ("artiststore", MusicBrainzFieldTypes.TEXT_STORED_NOT_INDEXED),
+    SORT_BY_NAME    ("sortbyname",    MusicBrainzFieldTypes.DOC_VALUES_ONLY),
+    SORT_BY_DATE    ("sortbydate",    MusicBrainzFieldTypes.DOC_VALUES_ONLY),
     ;
 
 
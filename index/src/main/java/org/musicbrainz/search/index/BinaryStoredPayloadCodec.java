@@ -0,0 +1,504 @@
+package org.musicbrainz.search.index;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.namespace.QName;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores the entity as a compact binary encoding of the mmd2 object graph itself, so it is read back by setting the
+ * fields of the mmd2 classes directly without any xml parsing or JAXB unmarshalling.
+ *
+ * Each value is written as a one byte tag followed by its content. The first time a class is used within a payload
+ * its name and the names of its fields are written, later uses only refer to it by index, and the fields of each
+ * object are then written in that order. Fields are matched by name when read back, so payloads written before a
+ * field was added to or removed from the mmd2 classes can still be read.
+ */
+public class BinaryStoredPayloadCodec implements StoredPayloadCodec {
+
+    public static final byte VERSION = 2;
+
+    public static final BinaryStoredPayloadCodec INSTANCE = new BinaryStoredPayloadCodec();
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String MMD2_PACKAGE = "org.musicbrainz.mmd2.";
+
+    private static final byte NULL          = 0;
+    private static final byte OBJECT        = 1;
+    private static final byte STRING        = 2;
+    private static final byte BIG_INTEGER   = 3;
+    private static final byte BIG_DECIMAL   = 4;
+    private static final byte INTEGER       = 5;
+    private static final byte LONG          = 6;
+    private static final byte SHORT         = 7;
+    private static final byte BYTE          = 8;
+    private static final byte DOUBLE        = 9;
+    private static final byte FLOAT         = 10;
+    private static final byte TRUE          = 11;
+    private static final byte FALSE         = 12;
+    private static final byte ENUM          = 13;
+    private static final byte LIST          = 14;
+    private static final byte MAP           = 15;
+    private static final byte CALENDAR      = 16;
+    private static final byte QNAME         = 17;
+    private static final byte ELEMENT       = 18;
+    private static final byte CLASS         = 19;
+
+    /**
+     * Fields of each class, found by reflection once only
+     */
+    private static final Map<Class, ClassInfo> classInfos = new ConcurrentHashMap<Class, ClassInfo>();
+
+    private static final DatatypeFactory datatypeFactory = initDatatypeFactory();
+
+    private static DatatypeFactory initDatatypeFactory() {
+        try {
+            return DatatypeFactory.newInstance();
+        }
+        catch (DatatypeConfigurationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public String getName() {
+        return "binary";
+    }
+
+    public byte getVersion() {
+        return VERSION;
+    }
+
+    public byte[] encode(Object entity) {
+        Encoder encoder = new Encoder();
+        encoder.writeValue(entity);
+        return encoder.out.toByteArray();
+    }
+
+    public Object decode(byte[] payload, int offset, int length) {
+        return new Decoder(payload, offset, offset + length).readValue();
+    }
+
+    /**
+     * @param c
+     * @return true if instances of the class are written field by field, only done for the mmd2 classes
+     */
+    private static boolean isEntityClass(Class c) {
+        return c.getName().startsWith(MMD2_PACKAGE) && !c.isEnum();
+    }
+
+    private static ClassInfo getClassInfo(Class c) {
+        ClassInfo info = classInfos.get(c);
+        if (info == null) {
+            info = new ClassInfo(c);
+            classInfos.put(c, info);
+        }
+        return info;
+    }
+
+    /**
+     * The instance fields of a class and its superclasses in a fixed order, none for classes that are not written
+     * field by field
+     */
+    private static class ClassInfo {
+
+        private final Constructor constructor;
+        private final Field[] fields;
+        private final Map<String, Field> fieldsByName = new HashMap<String, Field>();
+
+        ClassInfo(Class c) {
+            List<Field> found = new ArrayList<Field>();
+            if (!isEntityClass(c)) {
+                fields = new Field[0];
+                constructor = null;
+                return;
+            }
+            for (Class current = c; current != null && current != Object.class; current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    found.add(field);
+                    fieldsByName.put(field.getName(), field);
+                }
+            }
+            fields = found.toArray(new Field[found.size()]);
+            Arrays.sort(fields, new Comparator<Field>() {
+                public int compare(Field f1, Field f2) {
+                    return f1.getName().compareTo(f2.getName());
+                }
+            });
+
+            Constructor defaultConstructor = null;
+            try {
+                defaultConstructor = c.getDeclaredConstructor();
+                defaultConstructor.setAccessible(true);
+            }
+            catch (NoSuchMethodException e) {
+                // Only a problem if an instance is actually read
+            }
+            constructor = defaultConstructor;
+        }
+    }
+
+    private static class Encoder {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+        private final Map<Class, Integer> classIndexes = new HashMap<Class, Integer>();
+
+        void writeValue(Object value) {
+            if (value == null) {
+                out.write(NULL);
+            }
+            else if (value instanceof String) {
+                out.write(STRING);
+                writeString((String) value);
+            }
+            else if (value instanceof Boolean) {
+                out.write((Boolean) value ? TRUE : FALSE);
+            }
+            else if (value instanceof Integer) {
+                out.write(INTEGER);
+                writeVarLong(zigZag((Integer) value));
+            }
+            else if (value instanceof BigInteger) {
+                out.write(BIG_INTEGER);
+                writeBytes(((BigInteger) value).toByteArray());
+            }
+            else if (value instanceof Long) {
+                out.write(LONG);
+                writeVarLong(zigZag((Long) value));
+            }
+            else if (value instanceof Short) {
+                out.write(SHORT);
+                writeVarLong(zigZag((Short) value));
+            }
+            else if (value instanceof Byte) {
+                out.write(BYTE);
+                out.write((Byte) value);
+            }
+            else if (value instanceof Double) {
+                out.write(DOUBLE);
+                writeFixedLong(Double.doubleToLongBits((Double) value));
+            }
+            else if (value instanceof Float) {
+                out.write(FLOAT);
+                writeFixedLong(Float.floatToIntBits((Float) value));
+            }
+            else if (value instanceof BigDecimal) {
+                out.write(BIG_DECIMAL);
+                writeString(value.toString());
+            }
+            else if (value instanceof Enum) {
+                out.write(ENUM);
+                writeClass(((Enum) value).getDeclaringClass());
+                writeString(((Enum) value).name());
+            }
+            else if (value instanceof XMLGregorianCalendar) {
+                out.write(CALENDAR);
+                writeString(((XMLGregorianCalendar) value).toXMLFormat());
+            }
+            else if (value instanceof QName) {
+                out.write(QNAME);
+                writeQName((QName) value);
+            }
+            else if (value instanceof JAXBElement) {
+                JAXBElement element = (JAXBElement) value;
+                out.write(ELEMENT);
+                writeQName(element.getName());
+                writeValue(element.getDeclaredType());
+                writeValue(element.getScope());
+                writeValue(element.getValue());
+            }
+            else if (value instanceof Class) {
+                out.write(CLASS);
+                writeClass((Class) value);
+            }
+            else if (value instanceof Collection) {
+                Collection collection = (Collection) value;
+                out.write(LIST);
+                writeVarLong(collection.size());
+                for (Object next : collection) {
+                    writeValue(next);
+                }
+            }
+            else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                out.write(MAP);
+                writeVarLong(map.size());
+                for (Map.Entry entry : map.entrySet()) {
+                    writeValue(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+            }
+            else if (isEntityClass(value.getClass())) {
+                out.write(OBJECT);
+                ClassInfo info = writeClass(value.getClass());
+                try {
+                    for (Field field : info.fields) {
+                        writeValue(field.get(value));
+                    }
+                }
+                catch (IllegalAccessException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            else {
+                throw new IllegalArgumentException("Cannot store value of type " + value.getClass().getName());
+            }
+        }
+
+        private ClassInfo writeClass(Class c) {
+            ClassInfo info = getClassInfo(c);
+            Integer index = classIndexes.get(c);
+            if (index != null) {
+                writeVarLong(index + 1);
+                return info;
+            }
+            classIndexes.put(c, classIndexes.size());
+            writeVarLong(0);
+            writeString(c.getName());
+            writeVarLong(info.fields.length);
+            for (Field field : info.fields) {
+                writeString(field.getName());
+            }
+            return info;
+        }
+
+        private void writeQName(QName name) {
+            writeString(name.getNamespaceURI());
+            writeString(name.getLocalPart());
+            writeString(name.getPrefix());
+        }
+
+        private void writeString(String value) {
+            writeBytes(value.getBytes(UTF8));
+        }
+
+        private void writeBytes(byte[] bytes) {
+            writeVarLong(bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+
+        private void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        private void writeFixedLong(long value) {
+            for (int i = 56; i >= 0; i -= 8) {
+                out.write((int) (value >>> i));
+            }
+        }
+
+        private static long zigZag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+    }
+
+    /**
+     * A class as it was when the payload was written, the current field for each field written, or null if the
+     * field no longer exists
+     */
+    private static class WrittenClass {
+
+        private final Class c;
+        private final ClassInfo info;
+        private final Field[] fields;
+
+        WrittenClass(Class c, String[] fieldNames) {
+            this.c = c;
+            this.info = getClassInfo(c);
+            this.fields = new Field[fieldNames.length];
+            for (int i = 0; i < fieldNames.length; i++) {
+                fields[i] = info.fieldsByName.get(fieldNames[i]);
+            }
+        }
+    }
+
+    private static class Decoder {
+
+        private final byte[] in;
+        private int pos;
+        private final int end;
+        private final List<WrittenClass> classes = new ArrayList<WrittenClass>();
+
+        Decoder(byte[] in, int pos, int end) {
+            this.in = in;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        @SuppressWarnings("unchecked")
+        Object readValue() {
+            byte tag = readByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case STRING:
+                    return readString();
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                case INTEGER:
+                    return (int) unZigZag(readVarLong());
+                case BIG_INTEGER:
+                    return new BigInteger(readBytes());
+                case LONG:
+                    return unZigZag(readVarLong());
+                case SHORT:
+                    return (short) unZigZag(readVarLong());
+                case BYTE:
+                    return readByte();
+                case DOUBLE:
+                    return Double.longBitsToDouble(readFixedLong());
+                case FLOAT:
+                    return Float.intBitsToFloat((int) readFixedLong());
+                case BIG_DECIMAL:
+                    return new BigDecimal(readString());
+                case ENUM:
+                    return Enum.valueOf(readClass().c, readString());
+                case CALENDAR:
+                    return datatypeFactory.newXMLGregorianCalendar(readString());
+                case QNAME:
+                    return readQName();
+                case ELEMENT:
+                    QName name = readQName();
+                    Class declaredType = (Class) readValue();
+                    Class scope = (Class) readValue();
+                    return new JAXBElement(name, declaredType, scope, readValue());
+                case CLASS:
+                    return readClass().c;
+                case LIST:
+                    int size = (int) readVarLong();
+                    List list = new ArrayList(size);
+                    for (int i = 0; i < size; i++) {
+                        list.add(readValue());
+                    }
+                    return list;
+                case MAP:
+                    int entries = (int) readVarLong();
+                    Map map = new LinkedHashMap(entries * 2);
+                    for (int i = 0; i < entries; i++) {
+                        map.put(readValue(), readValue());
+                    }
+                    return map;
+                case OBJECT:
+                    return readObject();
+                default:
+                    throw new IllegalStateException("Unknown tag " + tag + " at " + (pos - 1));
+            }
+        }
+
+        private Object readObject() {
+            WrittenClass written = readClass();
+            try {
+                if (written.info.constructor == null) {
+                    throw new IllegalStateException("No default constructor for " + written.c.getName());
+                }
+                Object object = written.info.constructor.newInstance();
+                for (Field field : written.fields) {
+                    Object value = readValue();
+                    if (field != null && value != null) {
+                        field.set(object, value);
+                    }
+                }
+                return object;
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Unable to read " + written.c.getName(), e);
+            }
+        }
+
+        private WrittenClass readClass() {
+            int index = (int) readVarLong();
+            if (index > 0) {
+                return classes.get(index - 1);
+            }
+            String className = readString();
+            String[] fieldNames = new String[(int) readVarLong()];
+            for (int i = 0; i < fieldNames.length; i++) {
+                fieldNames[i] = readString();
+            }
+            try {
+                WrittenClass written = new WrittenClass(Class.forName(className), fieldNames);
+                classes.add(written);
+                return written;
+            }
+            catch (ClassNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private QName readQName() {
+            return new QName(readString(), readString(), readString());
+        }
+
+        private byte readByte() {
+            if (pos >= end) {
+                throw new IllegalStateException("Unexpected end of payload");
+            }
+            return in[pos++];
+        }
+
+        private String readString() {
+            int length = (int) readVarLong();
+            String value = new String(in, pos, length, UTF8);
+            pos += length;
+            return value;
+        }
+
+        private byte[] readBytes() {
+            int length = (int) readVarLong();
+            byte[] bytes = Arrays.copyOfRange(in, pos, pos + length);
+            pos += length;
+            return bytes;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        private long readFixedLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (readByte() & 0xFF);
+            }
+            return value;
+        }
+
+        private static long unZigZag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
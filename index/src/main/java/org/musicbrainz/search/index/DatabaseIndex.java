@@ -23,8 +23,11 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.sorter.SortingMergePolicy;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.similarities.Similarity;
@@ -47,8 +50,21 @@ public abstract class DatabaseIndex implements Index {
     /* This is appended to the getName() method of each index to create the index folder  */
     private static final String INDEX_SUFFIX = "_index";
 
+    /*
+     * Version of the format of the indexed fields recorded in the meta document:
+     * 1 - not recorded, integral numeric fields only have their full precision term
+     * 2 - integral numeric fields are indexed as tries with the recorded precision step
+     * 3 - dates are also indexed as day resolution numeric fields
+     * 4 - doc values fields to sort results by name, date, track count and duration
+     */
+    public static final int FORMAT_VERSION = 4;
+
     protected HashMap<String, PreparedStatement> preparedStatements;
     protected Connection dbConnection;
+    protected boolean sortedByPopularity = false;
+    protected int formatVersion = FORMAT_VERSION;
+    protected StoredPayloadCodec storedPayloadCodec = XmlStoredPayloadCodec.INSTANCE;
+    protected boolean storeXmlFragments = false;
     
     public String getFilename() {
         return getName() + INDEX_SUFFIX;
@@ -81,6 +97,98 @@ public abstract class DatabaseIndex implements Index {
 	public ReplicationInformation readReplicationInformationFromIndex(IndexReader reader) throws IOException {
 		
 		ReplicationInformation info = new ReplicationInformation();
+
+		MbDocument doc = readMetaDocument(reader);
+		info.replicationSequence = Integer.parseInt(doc.get(MetaIndexField.REPLICATION_SEQUENCE));
+		info.schemaSequence = Integer.parseInt(doc.get(MetaIndexField.SCHEMA_SEQUENCE));
+		String tmpStr = doc.get(MetaIndexField.LAST_CHANGE_SEQUENCE);
+		info.changeSequence = (tmpStr != null && !tmpStr.isEmpty()) ? Integer.parseInt(tmpStr) : null;
+		return info; 
+	}    
+
+	/**
+	 * The codec the store fields of the index were written with, indexes built before the store format was
+	 * recorded always use xml
+	 *
+	 * @param reader
+	 * @return
+	 * @throws IOException
+	 */
+	public StoredPayloadCodec readStoredPayloadCodecFromIndex(IndexReader reader) throws IOException {
+
+		MbDocument doc = readMetaDocument(reader);
+		String storeFormat = doc.get(MetaIndexField.STORE_FORMAT);
+		StoredPayloadCodec codec = storeFormat != null ? MMDSerializer.getCodec(storeFormat) : null;
+		return codec != null ? codec : XmlStoredPayloadCodec.INSTANCE;
+	}
+
+	/**
+	 * @param reader
+	 * @return true if the xml fragment of each entity is stored in the index
+	 * @throws IOException
+	 */
+	public boolean readStoreXmlFragmentsFromIndex(IndexReader reader) throws IOException {
+
+		return Boolean.parseBoolean(readMetaDocument(reader).get(MetaIndexField.STORE_FRAGMENTS));
+	}
+
+	/**
+	 * @param reader
+	 * @return true if the segments of the index are sorted by popularity when merged
+	 * @throws IOException
+	 */
+	public boolean readSortedByPopularityFromIndex(IndexReader reader) throws IOException {
+
+		return Boolean.parseBoolean(readMetaDocument(reader).get(MetaIndexField.SORTED_BY_POPULARITY));
+	}
+
+	/**
+	 * @param reader
+	 * @return the version of the format of the index
+	 * @throws IOException
+	 */
+	public int readFormatVersionFromIndex(IndexReader reader) throws IOException {
+
+		return getFormatVersion(readMetaDocument(reader));
+	}
+
+	/**
+	 * @param reader
+	 * @return the precision step integral numeric fields of the index are indexed with
+	 * @throws IOException
+	 */
+	public int readNumericPrecisionStepFromIndex(IndexReader reader) throws IOException {
+
+		return getNumericPrecisionStep(readMetaDocument(reader));
+	}
+
+	/**
+	 * @param metaDocument
+	 * @return the version of the format of the index, 1 if not recorded
+	 */
+	public static int getFormatVersion(MbDocument metaDocument) {
+
+		String formatVersion = metaDocument.get(MetaIndexField.FORMAT_VERSION);
+		return formatVersion != null ? Integer.parseInt(formatVersion) : 1;
+	}
+
+	/**
+	 * Indexes built before the format was recorded only have the full precision term of each value, which is what
+	 * a numeric field with the legacy precision step indexes
+	 *
+	 * @param metaDocument
+	 * @return the precision step integral numeric fields of the index are indexed with
+	 */
+	public static int getNumericPrecisionStep(MbDocument metaDocument) {
+
+		if (getFormatVersion(metaDocument) < 2) {
+			return MbDocument.LEGACY_NUMERIC_PRECISION_STEP;
+		}
+		return Integer.parseInt(metaDocument.get(MetaIndexField.NUMERIC_PRECISION_STEP));
+	}
+
+	private MbDocument readMetaDocument(IndexReader reader) throws IOException {
+
 		IndexSearcher searcher = new IndexSearcher(reader);
 		
 		Term term = new Term(MetaIndexField.META.getName(), MetaIndexField.META_VALUE);
@@ -91,18 +199,9 @@ public abstract class DatabaseIndex implements Index {
 		    throw new IllegalArgumentException("No matches in the index for the given Term.");
 		} else if (hits.scoreDocs.length > 1) {
 		    throw new IllegalArgumentException("Given Term matches more than 1 document in the index.");
-		} else {
-		    int docId = hits.scoreDocs[0].doc;
-		
-		    MbDocument doc = new MbDocument(searcher.doc(docId));
-		    info.replicationSequence = Integer.parseInt(doc.get(MetaIndexField.REPLICATION_SEQUENCE));
-		    info.schemaSequence = Integer.parseInt(doc.get(MetaIndexField.SCHEMA_SEQUENCE));
-		    String tmpStr = doc.get(MetaIndexField.LAST_CHANGE_SEQUENCE);
-		    info.changeSequence = (tmpStr != null && !tmpStr.isEmpty()) ? Integer.parseInt(tmpStr) : null;
-		    
 		}
-		return info; 
-	}    
+		return new MbDocument(searcher.doc(hits.scoreDocs[0].doc));
+	}
     
 	public ReplicationInformation readReplicationInformationFromDatabase() throws IOException {
 		
@@ -153,6 +252,11 @@ public abstract class DatabaseIndex implements Index {
         if (info.changeSequence != null) {
         	doc.addField(MetaIndexField.LAST_CHANGE_SEQUENCE, info.changeSequence);
         }
+        doc.addField(MetaIndexField.STORE_FORMAT, storedPayloadCodec.getName());
+        doc.addField(MetaIndexField.STORE_FRAGMENTS, Boolean.toString(storeXmlFragments));
+        doc.addField(MetaIndexField.SORTED_BY_POPULARITY, Boolean.toString(isSortedByPopularity()));
+        doc.addField(MetaIndexField.FORMAT_VERSION, formatVersion);
+        doc.addField(MetaIndexField.NUMERIC_PRECISION_STEP, MbDocument.getNumericPrecisionStep());
         indexWriter.addDocument(doc.getLuceneDocument());       
 
 	}
@@ -223,6 +327,91 @@ public abstract class DatabaseIndex implements Index {
     {
         return null;
     }
+
+    /**
+     * Indexes that have a popularity signal override this, so that segments can be sorted with the most popular
+     * documents first allowing searches to stop early once enough popular matches have been found
+     *
+     * @return sort order, or null if the index has no popularity signal
+     */
+    public Sort getPopularitySort()
+    {
+        return null;
+    }
+
+    /**
+     * @return true if merged segments are sorted by popularity
+     */
+    public boolean isSortedByPopularity()
+    {
+        return sortedByPopularity && getPopularitySort() != null;
+    }
+
+    public void setSortedByPopularity(boolean sortedByPopularity)
+    {
+        this.sortedByPopularity = sortedByPopularity;
+    }
+
+    /**
+     * Set the format version recorded in the meta document, when updating an existing index it must stay the version
+     * the index was built with because documents not updated are still in that format
+     *
+     * @param formatVersion
+     */
+    public void setFormatVersion(int formatVersion)
+    {
+        this.formatVersion = formatVersion;
+    }
+
+    /**
+     * Set the codec the store field of each document is written with, when updating an existing index it must stay
+     * the codec recorded in the index
+     *
+     * @param storedPayloadCodec
+     */
+    public void setStoredPayloadCodec(StoredPayloadCodec storedPayloadCodec)
+    {
+        this.storedPayloadCodec = storedPayloadCodec;
+    }
+
+    public StoredPayloadCodec getStoredPayloadCodec()
+    {
+        return storedPayloadCodec;
+    }
+
+    /**
+     * @param storeXmlFragments if true the ws/2 xml of each entity is also stored so the servlet can output it as is
+     */
+    public void setStoreXmlFragments(boolean storeXmlFragments)
+    {
+        this.storeXmlFragments = storeXmlFragments;
+    }
+
+    /**
+     * Add the entity to the store field of the document, in the store format of this index
+     *
+     * @param doc
+     * @param field
+     * @param entity
+     */
+    protected void addStoredEntity(MbDocument doc, IndexField field, Object entity)
+    {
+        doc.addStoredEntity(field, entity, storedPayloadCodec, storeXmlFragments);
+    }
+
+    /**
+     * If sorting by popularity wrap the merge policy so merged segments are sorted, note segments only become sorted
+     * when merged so the index should be force merged once built.
+     *
+     * @param config
+     */
+    public void configureIndexSort(IndexWriterConfig config)
+    {
+        if (isSortedByPopularity())
+        {
+            config.setMergePolicy(new SortingMergePolicy(config.getMergePolicy(), getPopularitySort()));
+        }
+    }
     
 }
 
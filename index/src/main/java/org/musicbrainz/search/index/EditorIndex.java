@@ -127,8 +127,7 @@ public class EditorIndex extends DatabaseIndex {
             editor.setBio(bio);
         }
 
-        String store = MMDSerializer.serialize(editor);
-        doc.addField(EditorIndexField.EDITOR_STORE, store);
+        addStoredEntity(doc, EditorIndexField.EDITOR_STORE, editor);
         return doc.getLuceneDocument();
     }
 
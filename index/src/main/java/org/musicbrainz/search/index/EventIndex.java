@@ -143,6 +143,7 @@ public class EventIndex extends DatabaseIndex {
 
         String name = rs.getString("name");
         doc.addField(EventIndexField.EVENT, name);
+        doc.addSortedDocValuesField(EventIndexField.SORT_BY_NAME, name);
         event.setName(name);
 
         String comment = rs.getString("comment");
@@ -168,9 +169,12 @@ public class EventIndex extends DatabaseIndex {
 
         String begin = Utils.formatDate(rs.getInt("begin_date_year"), rs.getInt("begin_date_month"), rs.getInt("begin_date_day"));
         doc.addNonEmptyField(ArtistIndexField.BEGIN, begin);
+        doc.addNumericDateField(EventIndexField.BEGIN_NUMERIC, begin);
+        doc.addDateDocValuesField(EventIndexField.SORT_BY_DATE, begin);
 
         String end = Utils.formatDate(rs.getInt("end_date_year"), rs.getInt("end_date_month"), rs.getInt("end_date_day"));
         doc.addNonEmptyField(ArtistIndexField.END, end);
+        doc.addNumericDateField(EventIndexField.END_NUMERIC, end);
 
         org.musicbrainz.mmd2.Event.LifeSpan lifespan = of.createEventLifeSpan();
         event.setLifeSpan(lifespan);
@@ -204,8 +208,7 @@ public class EventIndex extends DatabaseIndex {
             event.setTagList(TagHelper.addTagsToDocAndConstructTagList(of, doc, tags, eventId, EventIndexField.TAG));
         }
 
-        String store = MMDSerializer.serialize(event);
-        doc.addField(EventIndexField.EVENT_STORE, store);
+        addStoredEntity(doc, EventIndexField.EVENT_STORE, event);
         return doc.getLuceneDocument();
     }
 
@@ -0,0 +1,56 @@
+package org.musicbrainz.search.index;
+
+import com.sun.xml.fastinfoset.stax.StAXDocumentParser;
+import com.sun.xml.fastinfoset.stax.StAXDocumentSerializer;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Stores the entity as Fast Infoset, a binary encoding of the xml infoset.
+ *
+ * Element and attribute names are written once per document and then referenced by index, and no character
+ * level parsing is required to read it back, so it is both smaller and much quicker to decode than the xml store.
+ */
+public class FastInfosetStoredPayloadCodec implements StoredPayloadCodec {
+
+    public static final byte VERSION = 1;
+
+    public static final FastInfosetStoredPayloadCodec INSTANCE = new FastInfosetStoredPayloadCodec();
+
+    public String getName() {
+        return "fastinfoset";
+    }
+
+    public byte getVersion() {
+        return VERSION;
+    }
+
+    public byte[] encode(Object entity) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            StAXDocumentSerializer serializer = new StAXDocumentSerializer(out);
+            MMDSerializer.getMarshaller().marshal(entity, serializer);
+            serializer.flush();
+            return out.toByteArray();
+        }
+        catch (JAXBException je) {
+            throw new RuntimeException(je);
+        }
+        catch (XMLStreamException xe) {
+            throw new RuntimeException(xe);
+        }
+    }
+
+    public Object decode(byte[] payload, int offset, int length) {
+        try {
+            StAXDocumentParser parser = new StAXDocumentParser(new ByteArrayInputStream(payload, offset, length));
+            return MMDSerializer.getUnmarshaller().unmarshal(parser);
+        }
+        catch (JAXBException je) {
+            throw new RuntimeException(je);
+        }
+    }
+}
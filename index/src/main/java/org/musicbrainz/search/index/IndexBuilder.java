@@ -39,6 +39,7 @@ import org.apache.lucene.store.NoLockFactory;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.musicbrainz.search.LuceneVersion;
+import org.musicbrainz.search.MbDocument;
 
 import java.io.File;
 import java.io.IOException;
@@ -81,6 +82,20 @@ public class IndexBuilder
         
         if (options.isTest()) { System.out.println("Running in test mode."); }
 
+        StoredPayloadCodec storedPayloadCodec = MMDSerializer.getCodec(options.getStoreFormat());
+        if (storedPayloadCodec == null) {
+            System.err.println("Unknown store format: " + options.getStoreFormat());
+            parser.printUsage(System.out);
+            System.exit(1);
+        }
+
+        if (options.getNumericPrecisionStep() < 1) {
+            System.err.println("Invalid numeric precision step: " + options.getNumericPrecisionStep());
+            parser.printUsage(System.out);
+            System.exit(1);
+        }
+        MbDocument.setNumericPrecisionStep(options.getNumericPrecisionStep());
+
         // At least one index should have been selected 
         ArrayList<String> selectedIndexes = options.selectedIndexes();
         if (selectedIndexes.size() == 0 
@@ -234,6 +249,10 @@ public class IndexBuilder
         {
             config.setSimilarity(index.getSimilarity());
         }
+        index.setSortedByPopularity(options.isSortByPopularity());
+        index.setStoredPayloadCodec(MMDSerializer.getCodec(options.getStoreFormat()));
+        index.setStoreXmlFragments(options.isStoreFragments());
+        index.configureIndexSort(config);
         indexWriter = new ThreadedIndexWriter(
                                                 fsDir,
                                                 config,
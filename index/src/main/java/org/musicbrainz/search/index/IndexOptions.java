@@ -1,6 +1,7 @@
 package org.musicbrainz.search.index;
 
 import org.kohsuke.args4j.Option;
+import org.musicbrainz.search.MbDocument;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -109,5 +110,25 @@ public class IndexOptions {
     private int maxBufferedDocs = MAX_BUFFERED_DOCS;
     public int getMaxBufferedDocs() { return maxBufferedDocs; }
 
+    // Stored Payload Format
+    @Option(name="--store-format", usage="The format used to store the entity in each document, xml, fastinfoset or binary (default: xml)")
+    private String storeFormat = XmlStoredPayloadCodec.INSTANCE.getName();
+    public String getStoreFormat() { return storeFormat; }
+
+    // Store ws/2 xml fragments
+    @Option(name="--store-fragments", usage="Also store the ws/2 xml of each entity so the search server can output it without unserializing it.")
+    private boolean storeFragments = false;
+    public boolean isStoreFragments() { return storeFragments; }
+
+    // Sort segments by popularity
+    @Option(name="--sort-by-popularity", usage="Sort merged segments of indexes with a popularity signal (recording) so searches can stop early, the index is always optimized when enabled.")
+    private boolean sortByPopularity = false;
+    public boolean isSortByPopularity() { return sortByPopularity; }
+
+    // Precision step of integral numeric fields
+    @Option(name="--numeric-precision-step", usage="The precision step integral numeric fields (durations, track counts...) are indexed with, smaller values make range searches faster but the index bigger. (default: "+MbDocument.DEFAULT_NUMERIC_PRECISION_STEP+")")
+    private int numericPrecisionStep = MbDocument.DEFAULT_NUMERIC_PRECISION_STEP;
+    public int getNumericPrecisionStep() { return numericPrecisionStep; }
+
 
 }
@@ -168,8 +168,7 @@ public class InstrumentIndex extends DatabaseIndex {
             instrument.setTagList(tagList);
         }
 
-        String store = MMDSerializer.serialize(instrument);
-        doc.addField(InstrumentIndexField.INSTRUMENT_STORE, store);
+        addStoredEntity(doc, InstrumentIndexField.INSTRUMENT_STORE, instrument);
         return doc.getLuceneDocument();
     }
 
@@ -175,6 +175,7 @@ public class LabelIndex extends DatabaseIndex {
         doc.addField(LabelIndexField.LABEL,name );
         label.setName(name);
         doc.addField(LabelIndexField.SORTNAME, name);
+        doc.addSortedDocValuesField(LabelIndexField.SORT_BY_NAME, name);
         label.setSortName(name);
 
 
@@ -219,9 +220,12 @@ public class LabelIndex extends DatabaseIndex {
 
         String begin = Utils.formatDate(rs.getInt("begin_date_year"), rs.getInt("begin_date_month"), rs.getInt("begin_date_day"));
         doc.addNonEmptyField(LabelIndexField.BEGIN, begin);
+        doc.addNumericDateField(LabelIndexField.BEGIN_NUMERIC, begin);
+        doc.addDateDocValuesField(LabelIndexField.SORT_BY_DATE, begin);
 
         String end = Utils.formatDate(rs.getInt("end_date_year"), rs.getInt("end_date_month"), rs.getInt("end_date_day"));
         doc.addNonEmptyField(LabelIndexField.END, end);
+        doc.addNumericDateField(LabelIndexField.END_NUMERIC, end);
 
         LifeSpan lifespan = of.createLifeSpan();
         label.setLifeSpan(lifespan);
@@ -264,8 +268,7 @@ public class LabelIndex extends DatabaseIndex {
 
         LabelBoostDoc.boost(labelGuid, doc);
 
-        String store = MMDSerializer.serialize(label);
-        doc.addField(LabelIndexField.LABEL_STORE, store);
+        addStoredEntity(doc, LabelIndexField.LABEL_STORE, label);
 
 
 
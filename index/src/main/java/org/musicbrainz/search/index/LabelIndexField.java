@@ -41,10 +41,14 @@ public enum LabelIndexField implements IndexField {
 	ID			("_id",			MusicBrainzFieldTypes.TEXT_STORED_NOT_ANALYZED_NO_NORMS, new KeywordAnalyzer()),
     ALIAS		("alias",		MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED, new MusicbrainzWithPosGapAnalyzer()),
     BEGIN		("begin",		MusicBrainzFieldTypes.TEXT_NOT_STORED_NOT_ANALYZED_NO_NORMS, new KeywordAnalyzer()),
+    // Begin date as a day resolution int for range searches on begin
+    BEGIN_NUMERIC	("beginnumeric",	MusicBrainzFieldTypes.TEXT_NOT_STORED_NOT_ANALYZED_NO_NORMS, new KeywordAnalyzer()),
     COMMENT		("comment",		MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED),
     CODE		("code",		MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED, new StripLeadingZeroesAnalyzer()),
     COUNTRY		("country",		MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED),
     END			("end",			MusicBrainzFieldTypes.TEXT_NOT_STORED_NOT_ANALYZED_NO_NORMS, new KeywordAnalyzer()),
+    // End date as a day resolution int for range searches on end
+    END_NUMERIC	("endnumeric",	MusicBrainzFieldTypes.TEXT_NOT_STORED_NOT_ANALYZED_NO_NORMS, new KeywordAnalyzer()),
     ENDED       ("ended",       MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED_NO_NORMS, new CaseInsensitiveKeywordAnalyzer()),
     IPI         ("ipi",         MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED_NO_NORMS, new CaseInsensitiveKeywordAnalyzer()),
     LABEL		("label",		MusicBrainzFieldTypes.TEXT_STORED_ANALYZED, new MusicbrainzAnalyzer()),
@@ -55,6 +59,8 @@ public enum LabelIndexField implements IndexField {
     TYPE		("type",		MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED_NO_NORMS, new CaseInsensitiveKeywordAnalyzer()),
     AREA		("area",		MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED, new MusicbrainzAnalyzer()),
     LABEL_STORE ("labelstore",  MusicBrainzFieldTypes.TEXT_STORED_NOT_INDEXED),
+    SORT_BY_NAME    ("sortbyname",    MusicBrainzFieldTypes.DOC_VALUES_ONLY),
+    SORT_BY_DATE    ("sortbydate",    MusicBrainzFieldTypes.DOC_VALUES_ONLY),
     ;
 
     private String name;
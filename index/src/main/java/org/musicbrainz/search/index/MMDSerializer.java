@@ -24,12 +24,14 @@ import com.sun.jersey.api.json.JSONJAXBContext;
 import com.sun.jersey.api.json.JSONMarshaller;
 import com.sun.jersey.api.json.JSONUnmarshaller;
 import com.sun.xml.bind.marshaller.NamespacePrefixMapper;
+import org.apache.lucene.util.BytesRef;
 import org.musicbrainz.mmd2.Metadata;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
@@ -40,10 +42,16 @@ import java.util.Map;
 /**
  * Handles Serializing classes in the MMD for storing within Index, and deserializing back into
  * the original class and little difference in space as stored fields are compressed by lucene anyway.
+ *
+ * Store fields are either written as a plain xml string (the original format) or as a binary payload whose first
+ * byte identifies the {@link StoredPayloadCodec} used, so indexes built with any codec can always be read back.
  */
 public class MMDSerializer {
 
 
+    public static final String MMD_NAMESPACE = "http://musicbrainz.org/ns/mmd-2.0#";
+    public static final String EXT_NAMESPACE = "http://musicbrainz.org/ns/ext#-2.0";
+
     static final JAXBContext            context                 = initContext();
     static final NamespacePrefixMapper prefixMapper            = new PreferredMapper();
 
@@ -60,7 +68,7 @@ public class MMDSerializer {
     public static class PreferredMapper extends NamespacePrefixMapper {
         @Override
         public String getPreferredPrefix(String namespaceUri, String suggestion, boolean requirePrefix) {
-            if(namespaceUri.equals("http://musicbrainz.org/ns/ext#-2.0"))
+            if(namespaceUri.equals(EXT_NAMESPACE))
             {
                 return "ext";
             }
@@ -68,12 +76,139 @@ public class MMDSerializer {
         }
     }
 
+    /**
+     * All known codecs, indexed by the version byte they write at the start of a binary store field
+     */
+    private static final Map<Byte, StoredPayloadCodec> codecs = new HashMap<Byte, StoredPayloadCodec>();
+
+    static {
+        registerCodec(XmlStoredPayloadCodec.INSTANCE);
+        registerCodec(FastInfosetStoredPayloadCodec.INSTANCE);
+        registerCodec(BinaryStoredPayloadCodec.INSTANCE);
+    }
+
+    /**
+     * Marshallers and Unmarshallers are expensive to create but are not thread safe, so keep one per thread
+     */
+    private static final ThreadLocal<Marshaller> marshaller = new ThreadLocal<Marshaller>() {
+        @Override
+        protected Marshaller initialValue() {
+            try {
+                Marshaller m = context.createMarshaller();
+                m.setProperty("com.sun.xml.bind.namespacePrefixMapper", prefixMapper);
+                return m;
+            }
+            catch (JAXBException je) {
+                throw new RuntimeException(je);
+            }
+        }
+    };
+
+    private static final ThreadLocal<Marshaller> fragmentMarshaller = new ThreadLocal<Marshaller>() {
+        @Override
+        protected Marshaller initialValue() {
+            try {
+                Marshaller m = context.createMarshaller();
+                m.setProperty("com.sun.xml.bind.namespacePrefixMapper", prefixMapper);
+                m.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+                return m;
+            }
+            catch (JAXBException je) {
+                throw new RuntimeException(je);
+            }
+        }
+    };
+
+    private static final ThreadLocal<Unmarshaller> unmarshaller = new ThreadLocal<Unmarshaller>() {
+        @Override
+        protected Unmarshaller initialValue() {
+            try {
+                return context.createUnmarshaller();
+            }
+            catch (JAXBException je) {
+                throw new RuntimeException(je);
+            }
+        }
+    };
+
+    /**
+     * @return marshaller for the mmd, only to be used by the calling thread
+     */
+    public static Marshaller getMarshaller() {
+        return marshaller.get();
+    }
+
+    /**
+     * @return unmarshaller for the mmd, only to be used by the calling thread
+     */
+    public static Unmarshaller getUnmarshaller() {
+        return unmarshaller.get();
+    }
+
+    public static void registerCodec(StoredPayloadCodec codec) {
+        codecs.put(codec.getVersion(), codec);
+    }
+
+    public static StoredPayloadCodec getCodec(String name) {
+        for (StoredPayloadCodec codec : codecs.values()) {
+            if (codec.getName().equals(name)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param codec
+     * @return true if store fields written with the codec are plain xml strings, as understood by older servers
+     */
+    public static boolean isStoredAsString(StoredPayloadCodec codec) {
+        return codec.getVersion() == XmlStoredPayloadCodec.VERSION;
+    }
+
+    /**
+     * Serialize as an xml fragment that can be inserted directly into a ws/2 list, so without the xml declaration
+     * and without the namespace declarations because they are already declared by the metadata element.
+     *
+     * @param o
+     * @return
+     */
+    public static String serializeXmlFragment(Object o) {
+        try {
+            StringWriter sw = new StringWriter();
+            fragmentMarshaller.get().marshal(o, sw);
+            String fragment = sw.toString();
+            int startTagEnd = fragment.indexOf('>');
+            String startTag = fragment.substring(0, startTagEnd)
+                    .replace(" xmlns=\"" + MMD_NAMESPACE + "\"", "")
+                    .replace(" xmlns:ext=\"" + EXT_NAMESPACE + "\"", "");
+            return startTag + fragment.substring(startTagEnd);
+        }
+        catch (JAXBException je) {
+            throw new RuntimeException(je);
+        }
+    }
+
+    /**
+     * Marshal as an xml fragment to the stream writer, the writer should not write namespace declarations already
+     * declared by an enclosing element
+     *
+     * @param o
+     * @param writer
+     */
+    public static void serializeXmlFragment(Object o, XMLStreamWriter writer) {
+        try {
+            fragmentMarshaller.get().marshal(o, writer);
+        }
+        catch (JAXBException je) {
+            throw new RuntimeException(je);
+        }
+    }
+
     public static String serialize(Object o) {
         try {
             StringWriter sw = new StringWriter();
-            Marshaller m = context.createMarshaller();
-            m.setProperty("com.sun.xml.bind.namespacePrefixMapper", prefixMapper);
-            m.marshal(o, sw);
+            getMarshaller().marshal(o, sw);
             return sw.toString();
         }
         catch (JAXBException je) {
@@ -83,13 +218,39 @@ public class MMDSerializer {
 
     public static Object unserialize(String string, Class classType) {
         try {
-            Unmarshaller m = context.createUnmarshaller();
-            //m.setProperty("com.sun.xml.bind.namespacePrefixMapper", prefixMapper);
-            return m.unmarshal(new StringReader(string));
-
+            return getUnmarshaller().unmarshal(new StringReader(string));
         }
         catch (JAXBException ex) {
             throw new RuntimeException(ex);
         }
     }
+
+    /**
+     * Serialize with the codec, the first byte of the result identifies the codec used
+     *
+     * @param o
+     * @param codec
+     * @return
+     */
+    public static byte[] serializeToPayload(Object o, StoredPayloadCodec codec) {
+        byte[] encoded = codec.encode(o);
+        byte[] payload = new byte[encoded.length + 1];
+        payload[0] = codec.getVersion();
+        System.arraycopy(encoded, 0, payload, 1, encoded.length);
+        return payload;
+    }
+
+    /**
+     * Unserialize a binary store field, whichever codec it was written with
+     *
+     * @param payload
+     * @return
+     */
+    public static Object unserialize(BytesRef payload) {
+        StoredPayloadCodec codec = codecs.get(payload.bytes[payload.offset]);
+        if (codec == null) {
+            throw new RuntimeException("Unknown stored payload version:" + payload.bytes[payload.offset]);
+        }
+        return codec.decode(payload.bytes, payload.offset + 1, payload.length - 1);
+    }
 }
@@ -32,6 +32,16 @@ public enum MetaIndexField implements IndexField {
     REPLICATION_SEQUENCE	("index_repseq",		MusicBrainzFieldTypes.TEXT_STORED_NOT_ANALYZED),
     SCHEMA_SEQUENCE			("index_schseq",		MusicBrainzFieldTypes.TEXT_STORED_NOT_ANALYZED),
     LAST_CHANGE_SEQUENCE	("index_changeseq",		MusicBrainzFieldTypes.TEXT_STORED_NOT_ANALYZED),
+    // Name of the codec used to write the store field of each document
+    STORE_FORMAT			("index_storeformat",	MusicBrainzFieldTypes.TEXT_STORED_NOT_ANALYZED),
+    // Set to 'true' if the xml fragment of each entity is also stored
+    STORE_FRAGMENTS			("index_storefragments",	MusicBrainzFieldTypes.TEXT_STORED_NOT_ANALYZED),
+    // Set to 'true' if segments are kept sorted by popularity when merged
+    SORTED_BY_POPULARITY	("index_sortedbypopularity",	MusicBrainzFieldTypes.TEXT_STORED_NOT_ANALYZED),
+    // Version of the format of the indexed fields, missing for indexes built before it was recorded
+    FORMAT_VERSION			("index_formatversion",	MusicBrainzFieldTypes.TEXT_STORED_NOT_ANALYZED),
+    // Precision step integral numeric fields are indexed with
+    NUMERIC_PRECISION_STEP	("index_numericprecisionstep",	MusicBrainzFieldTypes.TEXT_STORED_NOT_ANALYZED),
     // Dumb field always filled with '1', but that easily allow to find the meta document
     META					("index_meta",			MusicBrainzFieldTypes.TEXT_STORED_NOT_ANALYZED),
     ;
@@ -43,6 +43,8 @@ public class MusicBrainzFieldTypes
     public static FieldType TEXT_NOT_STORED_ANALYZED            = new FieldType(TextField.TYPE_STORED);
     public static FieldType TEXT_NOT_STORED_ANALYZED_NO_NORMS   = new FieldType(TextField.TYPE_STORED);
     public static FieldType TEXT_NOT_STORED_NOT_ANALYZED_NO_NORMS = new FieldType(StringField.TYPE_NOT_STORED);
+    // Fields only added as doc values, for sorting, so are neither indexed nor stored
+    public static FieldType DOC_VALUES_ONLY                     = new FieldType();
 
     static
     {
@@ -68,5 +70,8 @@ public class MusicBrainzFieldTypes
         TEXT_NOT_STORED_ANALYZED_NO_NORMS.freeze();
 
         TEXT_NOT_STORED_NOT_ANALYZED_NO_NORMS.freeze();
+
+        DOC_VALUES_ONLY.setTokenized(false);
+        DOC_VALUES_ONLY.freeze();
     }
 }
@@ -213,9 +213,11 @@ public class PlaceIndex extends DatabaseIndex {
 
         String begin = Utils.formatDate(rs.getInt("begin_date_year"), rs.getInt("begin_date_month"), rs.getInt("begin_date_day"));
         doc.addNonEmptyField(ArtistIndexField.BEGIN, begin);
+        doc.addNumericDateField(PlaceIndexField.BEGIN_NUMERIC, begin);
 
         String end = Utils.formatDate(rs.getInt("end_date_year"), rs.getInt("end_date_month"), rs.getInt("end_date_day"));
         doc.addNonEmptyField(ArtistIndexField.END, end);
+        doc.addNumericDateField(PlaceIndexField.END_NUMERIC, end);
 
         LifeSpan lifespan = of.createLifeSpan();
         place.setLifeSpan(lifespan);
@@ -237,8 +239,7 @@ public class PlaceIndex extends DatabaseIndex {
             place.setTagList(TagHelper.addTagsToDocAndConstructTagList(of, doc, tags, placeId, PlaceIndexField.TAG ));
         }
 
-        String store = MMDSerializer.serialize(place);
-        doc.addField(PlaceIndexField.PLACE_STORE, store);
+        addStoredEntity(doc, PlaceIndexField.PLACE_STORE, place);
         return doc.getLuceneDocument();
     }
 
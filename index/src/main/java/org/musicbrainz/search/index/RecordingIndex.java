@@ -24,6 +24,8 @@ import org.apache.commons.lang.time.StopWatch;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.similarities.Similarity;
 import org.musicbrainz.mmd2.*;
 import org.musicbrainz.search.MbDocument;
@@ -99,6 +101,23 @@ public class RecordingIndex extends DatabaseIndex {
         return rs.getInt(1);
     }
 
+    /**
+     * @param recording
+     * @return no of releases the recording is on, official releases counting double
+     */
+    protected static int calculatePopularity(Recording recording) {
+        int popularity = 0;
+        if (recording.getReleaseList() != null) {
+            for (Release release : recording.getReleaseList().getRelease()) {
+                popularity++;
+                if (release.getStatus() != null && "Official".equals(release.getStatus().getContent())) {
+                    popularity++;
+                }
+            }
+        }
+        return popularity;
+    }
+
     public int getNoOfRows(int maxId) throws SQLException {
         Statement st = dbConnection.createStatement();
         ResultSet rs = st.executeQuery("SELECT count(*) FROM recording WHERE id<=" + maxId);
@@ -106,6 +125,17 @@ public class RecordingIndex extends DatabaseIndex {
         return rs.getInt(1);
     }
 
+    /**
+     * Most popular recordings first, popularity being the number of releases the recording is on with official
+     * releases counting double
+     */
+    public static final Sort POPULARITY_SORT = new Sort(new SortField(RecordingIndexField.POPULARITY.getName(), SortField.Type.INT, true));
+
+    @Override
+    public Sort getPopularitySort() {
+        return POPULARITY_SORT;
+    }
+
     String releases;
     String releaseArtistCredits;
     String releaseEvents;
@@ -769,6 +799,7 @@ public class RecordingIndex extends DatabaseIndex {
         Set<Integer> qdurs = new HashSet<Integer>();
 
         Set<String> trackNames = new HashSet<String>();
+        List<String> releaseDates = new ArrayList<String>();
 
         int id = rs.getInt("recordingId");
 
@@ -785,12 +816,14 @@ public class RecordingIndex extends DatabaseIndex {
         String recordingName = rs.getString("trackname");
         //Just add an accent version for recording name not track names
         doc.addField(RecordingIndexField.RECORDING_ACCENT, recordingName);
+        doc.addSortedDocValuesField(RecordingIndexField.SORT_BY_NAME, recordingName);
         recording.setTitle(recordingName);
 
         trackNames.add(recordingName.toLowerCase(Locale.UK));
         int recordingDuration = rs.getInt("duration");
         if (recordingDuration > 0) {
             durations.add(recordingDuration);
+            doc.addNumericDocValuesField(RecordingIndexField.SORT_BY_DURATION, recordingDuration);
             recording.setLength(BigInteger.valueOf(recordingDuration));
         }
 
@@ -966,6 +999,8 @@ public class RecordingIndex extends DatabaseIndex {
                             ) {
                         for (ReleaseEvent re : release.getReleaseEventList().getReleaseEvent()) {
                             doc.addNonEmptyField(RecordingIndexField.RELEASE_DATE, re.getDate());
+                            doc.addNumericDateField(RecordingIndexField.RELEASE_DATE_NUMERIC, re.getDate());
+                            releaseDates.add(re.getDate());
                             if(re.getArea()!=null) {
                                 if(re.getArea().getIso31661CodeList()!=null) {
                                     doc.addNonEmptyField(RecordingIndexField.COUNTRY, re.getArea().getIso31661CodeList().getIso31661Code().get(0));
@@ -1049,9 +1084,12 @@ public class RecordingIndex extends DatabaseIndex {
             doc.addNonEmptyField(RecordingIndexField.RECORDING, next);
         }
 
+        doc.addNumericDocValuesField(RecordingIndexField.POPULARITY, calculatePopularity(recording));
+        doc.addDateDocValuesField(RecordingIndexField.SORT_BY_DATE, releaseDates);
+
         buildClock.suspend();
         storeClock.resume();
-        doc.addField(RecordingIndexField.RECORDING_STORE, MMDSerializer.serialize(recording));
+        addStoredEntity(doc, RecordingIndexField.RECORDING_STORE, recording);
         storeClock.suspend();
         return doc.getLuceneDocument();
     }
@@ -36,6 +36,8 @@ public enum RecordingIndexField implements IndexField {
     RECORDING_ACCENT        ("recordingaccent",     MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED, new MusicbrainzKeepAccentsAnalyzer()),
     RELEASE				    ("release",		        MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED, new TitleWithPosGapAnalyzer()),
     RELEASE_DATE	        ("date",		        MusicBrainzFieldTypes.TEXT_NOT_STORED_NOT_ANALYZED_NO_NORMS, new KeywordAnalyzer()),
+    // Release dates as day resolution ints for range searches on date
+    RELEASE_DATE_NUMERIC	("datenumeric",	MusicBrainzFieldTypes.TEXT_NOT_STORED_NOT_ANALYZED_NO_NORMS, new KeywordAnalyzer()),
     RELEASE_ID			    ("reid",		        MusicBrainzFieldTypes.TEXT_NOT_STORED_NOT_ANALYZED_NO_NORMS, new KeywordAnalyzer()),
     RELEASE_PRIMARY_TYPE    ("primarytype",		    MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED_NO_NORMS, new CaseInsensitiveKeywordAnalyzer()),
     RELEASE_SECONDARY_TYPE  ("secondarytype",       MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED_NO_NORMS, new CaseInsensitiveKeywordAnalyzer()),
@@ -47,6 +49,10 @@ public enum RecordingIndexField implements IndexField {
     TRACK_ID                ("tid",		            MusicBrainzFieldTypes.TEXT_NOT_STORED_NOT_ANALYZED_NO_NORMS, new KeywordAnalyzer()),
     VIDEO                   ("video",                MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED_NO_NORMS, new CaseInsensitiveKeywordAnalyzer()),
     RECORDING_STORE		     ("recordingstore",    MusicBrainzFieldTypes.TEXT_STORED_NOT_INDEXED),
+    POPULARITY              ("popularity",          MusicBrainzFieldTypes.DOC_VALUES_ONLY),
+    SORT_BY_NAME            ("sortbyname",            MusicBrainzFieldTypes.DOC_VALUES_ONLY),
+    SORT_BY_DATE            ("sortbydate",            MusicBrainzFieldTypes.DOC_VALUES_ONLY),
+    SORT_BY_DURATION        ("sortbyduration",        MusicBrainzFieldTypes.DOC_VALUES_ONLY),
 
 
     ;
@@ -288,6 +288,7 @@ public class ReleaseGroupIndex extends DatabaseIndex {
         String name = rs.getString("name");
         doc.addField(ReleaseGroupIndexField.RELEASEGROUP, name);
         doc.addField(ReleaseGroupIndexField.RELEASEGROUP_ACCENT, name);
+        doc.addSortedDocValuesField(ReleaseGroupIndexField.SORT_BY_NAME, name);
 
         String primaryType = rs.getString("type");
         doc.addFieldOrUnknown(ReleaseGroupIndexField.PRIMARY_TYPE, primaryType);
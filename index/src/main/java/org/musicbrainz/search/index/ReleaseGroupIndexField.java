@@ -58,6 +58,7 @@ public enum ReleaseGroupIndexField implements IndexField {
     TAG		            ("tag",		            MusicBrainzFieldTypes.TEXT_STORED_ANALYZED, new MusicbrainzWithPosGapAnalyzer()),
     TAGCOUNT            ("tagcount",	        MusicBrainzFieldTypes.TEXT_STORED_NOT_INDEXED),
     TYPE			    ("type",			    MusicBrainzFieldTypes.TEXT_STORED_ANALYZED_NO_NORMS, new CaseInsensitiveKeywordAnalyzer()),
+    SORT_BY_NAME        ("sortbyname",        MusicBrainzFieldTypes.DOC_VALUES_ONLY),
     ;
 
     private String name;
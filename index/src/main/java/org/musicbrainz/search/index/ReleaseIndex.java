@@ -390,6 +390,7 @@ public class  ReleaseIndex extends DatabaseIndex {
         String name = rs.getString("name");
         doc.addField(ReleaseIndexField.RELEASE, name );
         doc.addField(ReleaseIndexField.RELEASE_ACCENT, name);
+        doc.addSortedDocValuesField(ReleaseIndexField.SORT_BY_NAME, name);
         release.setTitle(name);
 
         String primaryType = rs.getString("type");
@@ -566,6 +567,7 @@ public class  ReleaseIndex extends DatabaseIndex {
 
             //Num Tracks over the whole release
             doc.addNumericField(ReleaseIndexField.NUM_TRACKS, trackCount);
+            doc.addNumericDocValuesField(ReleaseIndexField.SORT_BY_TRACKS, trackCount);
             mediumList.setTrackCount(BigInteger.valueOf(trackCount));
 
             //Num Discs Ids over the whole release
@@ -606,6 +608,7 @@ public class  ReleaseIndex extends DatabaseIndex {
 
         if (releaseEvents.containsKey(id)) {
             ReleaseEventList rel = of.createReleaseEventList();
+            List<String> dates = new ArrayList<String>();
             for (ReleaseEvent releaseEvent : releaseEvents.get(id)) {
 
                 if(releaseEvent.getArea()!=null) {
@@ -614,8 +617,11 @@ public class  ReleaseIndex extends DatabaseIndex {
                 }
                 String nextDate     = releaseEvent.getDate();
                 doc.addNonEmptyField(ReleaseIndexField.DATE, nextDate );
+                doc.addNumericDateField(ReleaseIndexField.DATE_NUMERIC, nextDate);
+                dates.add(nextDate);
                 rel.getReleaseEvent().add(releaseEvent);
             }
+            doc.addDateDocValuesField(ReleaseIndexField.SORT_BY_DATE, dates);
             //Sorted so always listed in date order, and so earliest release is used for backwards compatabilty
             Collections.sort(rel.getReleaseEvent(), new ReleaseEventComparator());
             release.setReleaseEventList(rel);
@@ -637,8 +643,7 @@ public class  ReleaseIndex extends DatabaseIndex {
 
         buildClock.suspend();
         storeClock.resume();
-        String store = MMDSerializer.serialize(release);
-        doc.addField(ReleaseIndexField.RELEASE_STORE, store);
+        addStoredEntity(doc, ReleaseIndexField.RELEASE_STORE, release);
         storeClock.suspend();
         return doc.getLuceneDocument();
     }
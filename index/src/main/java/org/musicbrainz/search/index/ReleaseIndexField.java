@@ -21,6 +21,8 @@ public enum ReleaseIndexField implements IndexField {
     COMMENT		        ("comment",		    MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED),
     COUNTRY			    ("country",		    MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED_NO_NORMS, new CaseInsensitiveKeywordAnalyzer()),
     DATE			    ("date",		    MusicBrainzFieldTypes.TEXT_NOT_STORED_NOT_ANALYZED_NO_NORMS, new KeywordAnalyzer()),
+    // Release dates as day resolution ints for range searches on date
+    DATE_NUMERIC	("datenumeric",	MusicBrainzFieldTypes.TEXT_NOT_STORED_NOT_ANALYZED_NO_NORMS, new KeywordAnalyzer()),
     FORMAT  		    ("format",		    MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED, new CaseInsensitiveKeywordAnalyzer()),
     LABEL			    ("label",		    MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED, new MusicbrainzWithPosGapAnalyzer()),
     LABEL_ID            ("laid",            MusicBrainzFieldTypes.TEXT_NOT_STORED_NOT_ANALYZED_NO_NORMS, new KeywordAnalyzer()),
@@ -45,6 +47,9 @@ public enum ReleaseIndexField implements IndexField {
     TYPE		        ("type",		    MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED_NO_NORMS, new CaseInsensitiveKeywordAnalyzer()),
     PACKAGING           ("packaging",       MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED, new CaseInsensitiveKeywordAnalyzer()),
     RELEASE_STORE		("releasestore",    MusicBrainzFieldTypes.TEXT_STORED_NOT_INDEXED),
+    SORT_BY_NAME        ("sortbyname",        MusicBrainzFieldTypes.DOC_VALUES_ONLY),
+    SORT_BY_DATE        ("sortbydate",        MusicBrainzFieldTypes.DOC_VALUES_ONLY),
+    SORT_BY_TRACKS      ("sortbytracks",      MusicBrainzFieldTypes.DOC_VALUES_ONLY),
     ;
 
     private String name;
@@ -0,0 +1,22 @@
+package org.musicbrainz.search.index;
+
+/**
+ * Encodes an mmd2 entity (Recording, Release, Artist ...) for the store field of an index document and decodes it
+ * back when results are written out by the servlet.
+ *
+ * Each codec has a unique version, written by {@link MMDSerializer} as the first byte of a binary payload so that
+ * the servlet can decode any index whichever codec it was built with.
+ */
+public interface StoredPayloadCodec {
+
+    /**
+     * @return name used to select the codec on the command line
+     */
+    public String getName();
+
+    public byte getVersion();
+
+    public byte[] encode(Object entity);
+
+    public Object decode(byte[] payload, int offset, int length);
+}
@@ -5,11 +5,15 @@ import org.apache.commons.lang.time.StopWatch;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Formatter;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class Utils {
 
     private static SimpleDateFormat TIME_OUTPUT = new SimpleDateFormat("HH:mm:ss");
 
+    private static final Pattern PARTIAL_DATE = Pattern.compile("(\\d{1,4})(?:-(\\d{1,2})(?:-(\\d{1,2}))?)?");
+
 	public static String formatDate(Integer year, Integer month, Integer day)
 	{
 		StringBuffer sb = new StringBuffer();
@@ -37,6 +41,46 @@ public class Utils {
 		return "";
 	}
 
+    /**
+     * Convert a date formatted by formatDate into a sortable int with day resolution (yyyymmdd)
+     *
+     * A missing month or day is 0 so a partial date sorts before all the full dates it covers.
+     *
+     * @param date
+     * @return the date as an int, or null if not a date
+     */
+    public static Integer dateToInt(String date)
+    {
+        return dateToInt(date, false);
+    }
+
+    /**
+     * Convert a date formatted by formatDate into a sortable int with day resolution (yyyymmdd)
+     *
+     * @param date
+     * @param endOfPeriod if true a missing month or day is 99 so that the int sorts after all the dates the partial
+     *                    date covers, used for the upper bound of ranges
+     * @return the date as an int, or null if not a date
+     */
+    public static Integer dateToInt(String date, boolean endOfPeriod)
+    {
+        if (date == null) {
+            return null;
+        }
+        Matcher matcher = PARTIAL_DATE.matcher(date.trim());
+        if (!matcher.matches()) {
+            return null;
+        }
+        int missing = endOfPeriod ? 99 : 0;
+        int year = Integer.parseInt(matcher.group(1));
+        int month = matcher.group(2) != null ? Integer.parseInt(matcher.group(2)) : missing;
+        int day = matcher.group(3) != null ? Integer.parseInt(matcher.group(3)) : missing;
+        if (year == 0 || month > 12 && month != missing || day > 31 && day != missing) {
+            return null;
+        }
+        return year * 10000 + month * 100 + day;
+    }
+
     /**
      * Format clock for output
      *
@@ -215,6 +215,7 @@ public class WorkIndex extends DatabaseIndex {
         String name = rs.getString("name");
         doc.addField(WorkIndexField.WORK, name);
         doc.addField(WorkIndexField.WORK_ACCENT, name);
+        doc.addSortedDocValuesField(WorkIndexField.SORT_BY_NAME, name);
         work.setTitle(name);
 
         String type = rs.getString("type");
@@ -291,8 +292,7 @@ public class WorkIndex extends DatabaseIndex {
             work.setTagList(TagHelper.addTagsToDocAndConstructTagList(of, doc, tags, id, WorkIndexField.TAG));
         }
 
-        String store = MMDSerializer.serialize(work);
-        doc.addField(WorkIndexField.WORK_STORE, store);
+        addStoredEntity(doc, WorkIndexField.WORK_STORE, work);
 
         return doc.getLuceneDocument();
     }
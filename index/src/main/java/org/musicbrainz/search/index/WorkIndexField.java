@@ -29,6 +29,7 @@ public enum WorkIndexField implements IndexField {
     WORK_ACCENT         ("workaccent",      MusicBrainzFieldTypes.TEXT_NOT_STORED_ANALYZED, new MusicbrainzKeepAccentsAnalyzer()),
     WORK_ID		        ("wid",		        MusicBrainzFieldTypes.TEXT_STORED_NOT_ANALYZED_NO_NORMS, new KeywordAnalyzer()),
     WORK_STORE		    ("workstore",       MusicBrainzFieldTypes.TEXT_STORED_NOT_INDEXED),
+    SORT_BY_NAME        ("sortbyname",        MusicBrainzFieldTypes.DOC_VALUES_ONLY),
     ;
 
     private String name;
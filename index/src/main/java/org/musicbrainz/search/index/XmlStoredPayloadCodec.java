@@ -0,0 +1,46 @@
+package org.musicbrainz.search.index;
+
+import javax.xml.bind.JAXBException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * The original store format, the entity marshalled as xml.
+ *
+ * When this codec is selected the store field is still written as a string so indexes remain readable by older
+ * servers, the binary form is only used for comparison purposes.
+ */
+public class XmlStoredPayloadCodec implements StoredPayloadCodec {
+
+    public static final byte VERSION = 0;
+
+    public static final XmlStoredPayloadCodec INSTANCE = new XmlStoredPayloadCodec();
+
+    public String getName() {
+        return "xml";
+    }
+
+    public byte getVersion() {
+        return VERSION;
+    }
+
+    public byte[] encode(Object entity) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            MMDSerializer.getMarshaller().marshal(entity, out);
+            return out.toByteArray();
+        }
+        catch (JAXBException je) {
+            throw new RuntimeException(je);
+        }
+    }
+
+    public Object decode(byte[] payload, int offset, int length) {
+        try {
+            return MMDSerializer.getUnmarshaller().unmarshal(new ByteArrayInputStream(payload, offset, length));
+        }
+        catch (JAXBException je) {
+            throw new RuntimeException(je);
+        }
+    }
+}
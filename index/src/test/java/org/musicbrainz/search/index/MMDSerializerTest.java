@@ -0,0 +1,111 @@
+package org.musicbrainz.search.index;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+import org.musicbrainz.mmd2.ArtistCredit;
+import org.musicbrainz.mmd2.NameCredit;
+import org.musicbrainz.mmd2.ObjectFactory;
+import org.musicbrainz.mmd2.Recording;
+import org.musicbrainz.search.LuceneVersion;
+import org.musicbrainz.search.MbDocument;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MMDSerializerTest {
+
+    private Recording createRecording() {
+        ObjectFactory of = new ObjectFactory();
+        Recording recording = of.createRecording();
+        recording.setId("2f250ed2-6285-40f1-aa2a-14f1c05e9765");
+        recording.setTitle("Do It Clean");
+        recording.setLength(BigInteger.valueOf(234000));
+        ArtistCredit artistCredit = of.createArtistCredit();
+        for (String name : new String[]{"Echo & The Bunnymen", "Bj\u00f6rk"}) {
+            NameCredit nameCredit = of.createNameCredit();
+            nameCredit.setArtist(of.createArtist());
+            nameCredit.getArtist().setName(name);
+            artistCredit.getNameCredit().add(nameCredit);
+        }
+        recording.setArtistCredit(artistCredit);
+        return recording;
+    }
+
+    private Recording storeAndLoad(StoredPayloadCodec codec) throws Exception {
+        RAMDirectory ramDir = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(ramDir, new IndexWriterConfig(LuceneVersion.LUCENE_VERSION, new RecordingIndex().getAnalyzer()));
+        MbDocument doc = new MbDocument();
+        doc.addStoredEntity(RecordingIndexField.RECORDING_STORE, createRecording(), codec, false);
+        writer.addDocument(doc.getLuceneDocument());
+        writer.close();
+
+        IndexReader ir = DirectoryReader.open(ramDir);
+        Document luceneDoc = ir.document(0);
+        ir.close();
+        return (Recording) new MbDocument(luceneDoc).getStoredEntity(RecordingIndexField.RECORDING_STORE);
+    }
+
+    @Test
+    public void testCodecsRoundTrip() throws Exception {
+        for (StoredPayloadCodec codec : new StoredPayloadCodec[]{XmlStoredPayloadCodec.INSTANCE, FastInfosetStoredPayloadCodec.INSTANCE, BinaryStoredPayloadCodec.INSTANCE}) {
+            byte[] encoded = codec.encode(createRecording());
+            Recording recording = (Recording) codec.decode(encoded, 0, encoded.length);
+            assertEquals("Do It Clean", recording.getTitle());
+            assertEquals(BigInteger.valueOf(234000), recording.getLength());
+            assertEquals(2, recording.getArtistCredit().getNameCredit().size());
+            assertEquals("Bj\u00f6rk", recording.getArtistCredit().getNameCredit().get(1).getArtist().getName());
+            assertEquals(MMDSerializer.serialize(createRecording()), MMDSerializer.serialize(recording));
+        }
+    }
+
+    @Test
+    public void testBinarySmallerThanXml() throws Exception {
+        byte[] xml = XmlStoredPayloadCodec.INSTANCE.encode(createRecording());
+        byte[] binary = BinaryStoredPayloadCodec.INSTANCE.encode(createRecording());
+        assertTrue(binary.length < xml.length);
+    }
+
+    @Test
+    public void testFastInfosetSmallerThanXml() throws Exception {
+        byte[] xml = XmlStoredPayloadCodec.INSTANCE.encode(createRecording());
+        byte[] fastInfoset = FastInfosetStoredPayloadCodec.INSTANCE.encode(createRecording());
+        assertTrue(fastInfoset.length < xml.length);
+    }
+
+    @Test
+    public void testLoadXmlStore() throws Exception {
+        Recording recording = storeAndLoad(XmlStoredPayloadCodec.INSTANCE);
+        assertNotNull(recording);
+        assertEquals("2f250ed2-6285-40f1-aa2a-14f1c05e9765", recording.getId());
+    }
+
+    @Test
+    public void testLoadFastInfosetStore() throws Exception {
+        Recording recording = storeAndLoad(FastInfosetStoredPayloadCodec.INSTANCE);
+        assertNotNull(recording);
+        assertEquals("2f250ed2-6285-40f1-aa2a-14f1c05e9765", recording.getId());
+        assertEquals("Do It Clean", recording.getTitle());
+    }
+
+    @Test
+    public void testLoadBinaryStore() throws Exception {
+        Recording recording = storeAndLoad(BinaryStoredPayloadCodec.INSTANCE);
+        assertNotNull(recording);
+        assertEquals("2f250ed2-6285-40f1-aa2a-14f1c05e9765", recording.getId());
+        assertEquals("Echo & The Bunnymen", recording.getArtistCredit().getNameCredit().get(0).getArtist().getName());
+    }
+
+    @Test
+    public void testMissingStore() throws Exception {
+        assertNull(new MbDocument().getStoredEntity(RecordingIndexField.RECORDING_STORE));
+    }
+}
@@ -0,0 +1,100 @@
+package org.musicbrainz.search.index;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.FSDirectory;
+import org.musicbrainz.search.MbDocument;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares the size and decode time of each stored payload codec using the entities stored in an existing index.
+ *
+ * Usage: StoredPayloadBenchmark indexDir storeField [noOfDocs] [iterations]
+ *
+ * e.g StoredPayloadBenchmark data/recording_index recordingstore 10000 5
+ */
+public class StoredPayloadBenchmark {
+
+    private static final int DEFAULT_NO_OF_DOCS = 10000;
+    private static final int DEFAULT_ITERATIONS = 5;
+
+    public static void main(String[] args) throws IOException {
+
+        if (args.length < 2) {
+            System.out.println("Usage: StoredPayloadBenchmark indexDir storeField [noOfDocs] [iterations]");
+            System.exit(1);
+        }
+
+        final String storeField = args[1];
+        int noOfDocs = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_NO_OF_DOCS;
+        int iterations = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_ITERATIONS;
+
+        IndexField field = new IndexField() {
+            public String getName() { return storeField; }
+            public Analyzer getAnalyzer() { return null; }
+            public FieldType getFieldType() { return null; }
+        };
+
+        // Load the entities from the index, whichever format they were stored in
+        List<Object> entities = new ArrayList<Object>();
+        IndexReader reader = DirectoryReader.open(FSDirectory.open(new File(args[0])));
+        try {
+            for (int i = 0; i < reader.maxDoc() && entities.size() < noOfDocs; i++) {
+                Document doc = reader.document(i);
+                Object entity = new MbDocument(doc).getStoredEntity(field);
+                if (entity != null) {
+                    entities.add(entity);
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+        System.out.println("Loaded " + entities.size() + " entities from " + args[0]);
+        if (entities.isEmpty()) {
+            return;
+        }
+
+        for (StoredPayloadCodec codec : new StoredPayloadCodec[]{XmlStoredPayloadCodec.INSTANCE, FastInfosetStoredPayloadCodec.INSTANCE, BinaryStoredPayloadCodec.INSTANCE}) {
+            benchmark(codec, entities, iterations);
+        }
+    }
+
+    private static void benchmark(StoredPayloadCodec codec, List<Object> entities, int iterations) {
+
+        List<byte[]> payloads = new ArrayList<byte[]>(entities.size());
+        long totalBytes = 0;
+        for (Object entity : entities) {
+            byte[] payload = codec.encode(entity);
+            payloads.add(payload);
+            totalBytes += payload.length;
+        }
+
+        // First pass is warm up only
+        List<Long> timings = new ArrayList<Long>();
+        for (int i = 0; i <= iterations; i++) {
+            long start = System.nanoTime();
+            for (byte[] payload : payloads) {
+                codec.decode(payload, 0, payload.length);
+            }
+            if (i > 0) {
+                timings.add(System.nanoTime() - start);
+            }
+        }
+        Collections.sort(timings);
+        long median = timings.get(timings.size() / 2);
+
+        System.out.println(codec.getName()
+                + ": bytes/doc=" + (totalBytes / payloads.size())
+                + " decode us/doc=" + String.format(Locale.ROOT, "%.2f", (median / 1000.0) / payloads.size()));
+    }
+}
@@ -4,6 +4,8 @@ package org.musicbrainz.search.index;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class UtilsTest {
 
@@ -23,5 +25,25 @@ public class UtilsTest {
 		   assertEquals("1990", Utils.formatDate(1990, 0, 1));
 		   
 	    }
+
+    @Test
+    public void testDateToInt() throws Exception {
+
+        assertEquals(Integer.valueOf(19900401), Utils.dateToInt("1990-04-01"));
+        assertEquals(Integer.valueOf(19900400), Utils.dateToInt("1990-04"));
+        assertEquals(Integer.valueOf(19900000), Utils.dateToInt("1990"));
+        assertEquals(Integer.valueOf(19909999), Utils.dateToInt("1990", true));
+        assertEquals(Integer.valueOf(19900499), Utils.dateToInt("1990-04", true));
+        assertEquals(Integer.valueOf(19900401), Utils.dateToInt("1990-04-01", true));
+
+        assertNull(Utils.dateToInt(""));
+        assertNull(Utils.dateToInt(null));
+        assertNull(Utils.dateToInt("fred"));
+        assertNull(Utils.dateToInt("1990-13"));
+
+        // Partial dates sort before the full dates they cover
+        assertTrue(Utils.dateToInt("1990") < Utils.dateToInt("1990-01-01"));
+        assertTrue(Utils.dateToInt("1990-12", true) < Utils.dateToInt("1991"));
+    }
 	
 }
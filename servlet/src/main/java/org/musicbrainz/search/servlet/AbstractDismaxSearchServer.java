@@ -7,11 +7,13 @@ import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
 
 public abstract class AbstractDismaxSearchServer implements SearchServer {
 
   protected DismaxSearcher dismaxSearcher;
   protected AbstractSearchServer realSearchServer;
+  protected ParsedQueryCache parsedQueryCache = new ParsedQueryCache(ParsedQueryCache.DEFAULT_MAX_ENTRIES);
 
   protected AbstractDismaxSearchServer(AbstractSearchServer mainSearchServer) {
     this.realSearchServer = mainSearchServer;
@@ -26,21 +28,103 @@ public abstract class AbstractDismaxSearchServer implements SearchServer {
     return dismaxSearcher.parseQuery(query, realSearchServer.getAnalyzer());
   }
 
+  /**
+   * Get the parsed query from the cache, parsing and adding it to the cache if not already there
+   *
+   * @param query
+   * @return
+   * @throws ParseException
+   */
+  protected Query getQuery(String query) throws ParseException
+  {
+    long parseStart = System.nanoTime();
+    try {
+      if (parsedQueryCache == null) {
+        return parseQuery(query);
+      }
+      Query parsedQuery = parsedQueryCache.get(query);
+      if (parsedQuery == null) {
+        long start = System.nanoTime();
+        parsedQuery = parseQuery(query);
+        parsedQueryCache.put(query, parsedQuery, System.nanoTime() - start);
+      }
+      return parsedQuery;
+    } finally {
+      SearchTimings.addToCurrent(SearchTimings.Phase.PARSE, System.nanoTime() - parseStart);
+    }
+  }
+
+  @Override
+  public Query getParsedQuery(String query) throws ParseException {
+    return getQuery(query);
+  }
+
+  @Override
+  public ParsedQueryCache getParsedQueryCache() {
+    return parsedQueryCache;
+  }
+
+  /**
+   * @param parsedQueryCache cache of parsed queries, or null to parse every query
+   */
+  public void setParsedQueryCache(ParsedQueryCache parsedQueryCache) {
+    this.parsedQueryCache = parsedQueryCache;
+  }
+
   @Override
   public Results search(String userQuery, int offset, int limit) throws IOException, ParseException {
     // Parse query with the dismaxSearcher, then delegate the search to the backend search server
-    Query query = parseQuery(userQuery);
+    Query query = getQuery(userQuery);
     return realSearchServer.search(query, offset, limit);
   }
 
+  @Override
+  public Results search(String userQuery, int offset, int limit, long timeAllowedMillis) throws IOException,
+      ParseException {
+    Query query = getQuery(userQuery);
+    return realSearchServer.search(query, offset, limit, timeAllowedMillis);
+  }
+
   @Override
   public Results search(Query query, int offset, int limit) throws IOException, ParseException {
     throw new UnsupportedOperationException();
   }
 
+  @Override
+  public Results search(Query query, int offset, int limit, long timeAllowedMillis) throws IOException,
+      ParseException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Results search(String userQuery, int offset, int limit, long timeAllowedMillis, Sort sort)
+      throws IOException, ParseException {
+    Query query = getQuery(userQuery);
+    return realSearchServer.search(query, offset, limit, timeAllowedMillis, sort);
+  }
+
+  @Override
+  public Results search(Query query, int offset, int limit, long timeAllowedMillis, Sort sort) throws IOException,
+      ParseException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Results searchAfter(String userQuery, String cursor, int limit) throws IOException, ParseException {
+    Query query = getQuery(userQuery);
+    return realSearchServer.searchAfter(query, cursor, limit);
+  }
+
+  @Override
+  public Results searchAfter(String userQuery, String cursor, int limit, long timeAllowedMillis) throws IOException,
+      ParseException {
+    Query query = getQuery(userQuery);
+    return realSearchServer.searchAfter(query, cursor, limit, timeAllowedMillis);
+  }
+
   @Override
   public String explain(String userQuery, int offset, int limit) throws IOException, ParseException {
-      Query query = parseQuery(userQuery);
+      Query query = getQuery(userQuery);
       return realSearchServer.explain(query, offset, limit);
   }
 
@@ -55,6 +139,11 @@ public abstract class AbstractDismaxSearchServer implements SearchServer {
     return realSearchServer.getSearcherManager();
   }
 
+  @Override
+  public long getIndexVersion() throws IOException {
+    return realSearchServer.getIndexVersion();
+  }
+
   @Override
   public Analyzer getAnalyzer() {
     return realSearchServer.getAnalyzer();
@@ -65,6 +154,11 @@ public abstract class AbstractDismaxSearchServer implements SearchServer {
     return realSearchServer.getCount();
   }
 
+  @Override
+  public QueryResultCache getResultCache() {
+    return realSearchServer.getResultCache();
+  }
+
   @Override
   public ResultsWriter getWriter(String version) {
     return realSearchServer.getWriter(version);
@@ -33,28 +33,36 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
 import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.sorter.EarlyTerminatingSortingCollector;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherLifetimeManager;
 import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopDocsCollector;
-import org.apache.lucene.search.TopScoreDocCollector;
 import org.apache.lucene.search.TimeLimitingCollector;
 import org.apache.lucene.search.TimeLimitingCollector.TimeExceededException;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.NumericUtils;
 import org.musicbrainz.search.MbDocument;
+import org.musicbrainz.search.index.DatabaseIndex;
 import org.musicbrainz.search.index.MetaIndexField;
 import org.musicbrainz.search.servlet.mmd1.Mmd1XmlWriter;
 import org.musicbrainz.search.servlet.mmd2.ResultsWriter;
@@ -73,13 +81,36 @@ public abstract class AbstractSearchServer implements SearchServer {
   protected Date serverLastUpdatedDate;
   protected SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm zz", Locale.US);
   protected AtomicInteger searchCount = new AtomicInteger();
+  protected QueryResultCache resultCache;
+  protected ParsedQueryCache parsedQueryCache = new ParsedQueryCache(ParsedQueryCache.DEFAULT_MAX_ENTRIES);
+
+  public static final int DEFAULT_CURSOR_TTL_SECONDS = 600;
+
+  // Searchers pinned for paging with cursors, released once not used for cursorTtlSeconds
+  protected final SearcherLifetimeManager searcherLifetimeManager = new SearcherLifetimeManager();
+  protected int cursorTtlSeconds = DEFAULT_CURSOR_TTL_SECONDS;
+
+  public static final long DEFAULT_TIME_ALLOWED_MILLIS = 1000;
+
+  // Time allowed for each search when not given, and if the hits found so far are returned when it runs out
+  protected long timeAllowedMillis = DEFAULT_TIME_ALLOWED_MILLIS;
+  protected boolean allowPartialResults = false;
+
+  // Number of hits collected from each segment sorted by getIndexSort() before moving on, zero disables
+  protected int earlyTerminationDocs = 0;
+
+  // Builds queries for the numeric fields in the format of the index, read from the meta document
+  protected volatile NumericFieldQueries numericFieldQueries = NumericFieldQueries.LEGACY;
+
+  // QueryParser is not thread safe so parsers are borrowed from a pool, replaced when the index format changes
+  private volatile ParserPool<QueryParser> parserPool = new ParserPool<QueryParser>();
 
   protected AbstractSearchServer() {
   }
 
   /**
    * Set the last updated date by getting the value from the index, then for efficiency convert to a format suitable for
-   * use in output html
+   * use in output html. The format of the index is read from the same meta document.
    *
    * @throws IOException
    */
@@ -108,6 +139,8 @@ public abstract class AbstractSearchServer implements SearchServer {
       MbDocument doc = new MbDocument(searcher.doc(docId));
 
 
+      setIndexFormat(doc);
+
       String lastUpdated = doc.get(MetaIndexField.LAST_UPDATED);
       serverLastUpdatedDate = new Date(NumericUtils.prefixCodedToLong(new BytesRef(lastUpdated)));
       dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
@@ -122,6 +155,33 @@ public abstract class AbstractSearchServer implements SearchServer {
     return serverLastUpdatedDate;
   }
 
+  /**
+   * Queries already parsed for a different format would not match the index so are discarded
+   *
+   * @param metaDocument
+   */
+  private void setIndexFormat(MbDocument metaDocument) {
+    NumericFieldQueries queries = NumericFieldQueries.forIndex(metaDocument);
+    if (queries.getFormatVersion() > DatabaseIndex.FORMAT_VERSION) {
+      System.out.println("Index format version " + queries.getFormatVersion()
+          + " is newer than the supported version " + DatabaseIndex.FORMAT_VERSION);
+    }
+    if (!queries.equals(numericFieldQueries)) {
+      numericFieldQueries = queries;
+      parserPool = new ParserPool<QueryParser>();
+      if (parsedQueryCache != null) {
+        parsedQueryCache.clear();
+      }
+    }
+  }
+
+  /**
+   * @return builds queries for the numeric fields in the format of the index
+   */
+  public NumericFieldQueries getNumericFieldQueries() {
+    return numericFieldQueries;
+  }
+
   @Override
   public void reloadIndex() throws CorruptIndexException, IOException {
     if (searcherManager != null) {
@@ -135,6 +195,7 @@ public abstract class AbstractSearchServer implements SearchServer {
 
   @Override
   public void close() throws IOException {
+    searcherLifetimeManager.close();
     if (searcherManager == null) {
       return;
     }
@@ -143,6 +204,26 @@ public abstract class AbstractSearchServer implements SearchServer {
     searcherManager.close();
   }
 
+  @Override
+  public QueryResultCache getResultCache() {
+    return resultCache;
+  }
+
+  /**
+   * Cache serialized responses, the cache is invalidated each time the searcher manager is refreshed with changes
+   *
+   * @param resultCache
+   */
+  public void setResultCache(QueryResultCache resultCache) {
+    if (this.resultCache != null && searcherManager != null) {
+      searcherManager.removeListener(this.resultCache);
+    }
+    this.resultCache = resultCache;
+    if (resultCache != null && searcherManager != null) {
+      searcherManager.addListener(resultCache);
+    }
+  }
+
   public org.musicbrainz.search.servlet.mmd2.ResultsWriter getMmd2Writer() {
     return resultsWriter;
   }
@@ -179,7 +260,24 @@ public abstract class AbstractSearchServer implements SearchServer {
    */
   @Override
   public Results search(String query, int offset, int limit) throws IOException, ParseException {
-    return this.search(parseQuery(query), offset, limit);
+    return this.search(getQuery(query), offset, limit, timeAllowedMillis);
+  }
+
+  /**
+   * Parse and search lucene query, returning between results from offset up to limit
+   *
+   * @param query
+   * @param offset
+   * @param limit
+   * @param timeAllowedMillis time allowed to search
+   * @return
+   * @throws IOException
+   * @throws ParseException if the query was invalid
+   */
+  @Override
+  public Results search(String query, int offset, int limit, long timeAllowedMillis) throws IOException,
+      ParseException {
+    return this.search(getQuery(query), offset, limit, timeAllowedMillis);
   }
 
   /**
@@ -194,24 +292,326 @@ public abstract class AbstractSearchServer implements SearchServer {
    */
   @Override
   public Results search(Query query, int offset, int limit) throws IOException, ParseException, TimeExceededException {
+    return search(query, offset, limit, timeAllowedMillis);
+  }
+
+  /**
+   * Search lucene query, returning between results from offset up to limit
+   *
+   * If the time allowed runs out TimeExceededException is thrown, unless partial results are allowed in which case
+   * the best hits found so far are returned marked as partial.
+   *
+   * @param query
+   * @param offset
+   * @param limit
+   * @param timeAllowedMillis time allowed to search
+   * @return
+   * @throws IOException
+   * @throws TimeExceededException
+   */
+  @Override
+  public Results search(Query query, int offset, int limit, long timeAllowedMillis) throws IOException,
+      TimeExceededException {
+    return search(query, offset, limit, timeAllowedMillis, null);
+  }
+
+  /**
+   * Parse and search lucene query, returning between results from offset up to limit in the given order
+   *
+   * @param query
+   * @param offset
+   * @param limit
+   * @param timeAllowedMillis time allowed to search
+   * @param sort order of the results, or null to order by relevance
+   * @return
+   * @throws IOException
+   * @throws ParseException if the query was invalid
+   */
+  @Override
+  public Results search(String query, int offset, int limit, long timeAllowedMillis, Sort sort) throws IOException,
+      ParseException {
+    return this.search(getQuery(query), offset, limit, timeAllowedMillis, sort);
+  }
+
+  /**
+   * Search lucene query, returning between results from offset up to limit in the given order
+   *
+   * Sorting only reads the doc values of the sort fields, so the stored entities are still only loaded for the page
+   * of results returned. Documents without a value for the sort field are returned after those with a value, and
+   * documents with equal values are ordered by relevance, so searching an index built before the sort fields were
+   * added returns results in relevance order.
+   *
+   * @param query
+   * @param offset
+   * @param limit
+   * @param timeAllowedMillis time allowed to search
+   * @param sort order of the results, or null to order by relevance
+   * @return
+   * @throws IOException
+   * @throws TimeExceededException
+   */
+  @Override
+  public Results search(Query query, int offset, int limit, long timeAllowedMillis, Sort sort) throws IOException,
+      TimeExceededException {
 
     IndexSearcher searcher = searcherManager.acquire();
     try {
-      TopDocsCollector<?> collector = TopScoreDocCollector.create(offset + limit, true);
-      TimeLimitingCollector tCollector = new TimeLimitingCollector(collector, TimeLimitingCollector.getGlobalCounter(), 1000);
-      searcher.search(query, tCollector);
+      long start = System.nanoTime();
+      TopDocs topDocs;
+      try {
+        topDocs = searchTopDocs(searcher, query, offset + limit, null, sort, sort == null, timeAllowedMillis,
+            allowPartialResults);
+      } finally {
+        SearchTimings.addToCurrent(SearchTimings.Phase.SEARCH, System.nanoTime() - start);
+      }
       searchCount.incrementAndGet();
-      TopDocs topDocs = collector.topDocs();
       if (topDocs == null)
       {
           return new Results();
       }
-      return processResults(searcher, topDocs, offset);
+      Results results = loadResults(searcher, topDocs, offset);
+      results.setPartial(topDocs instanceof MusicBrainzIndexSearcher.PartialTopDocs);
+      return results;
     } finally {
       searcherManager.release(searcher);
     }
   }
 
+  /**
+   * Parse and search lucene query, returning the page of up to limit results following the cursor
+   *
+   * @param query
+   * @param cursor
+   * @param limit
+   * @return
+   * @throws IOException
+   * @throws ParseException if the query was invalid
+   */
+  @Override
+  public Results searchAfter(String query, String cursor, int limit) throws IOException, ParseException {
+    return this.searchAfter(getQuery(query), cursor, limit, timeAllowedMillis);
+  }
+
+  /**
+   * Parse and search lucene query, returning the page of up to limit results following the cursor
+   *
+   * @param query
+   * @param cursor
+   * @param limit
+   * @param timeAllowedMillis time allowed to search
+   * @return
+   * @throws IOException
+   * @throws ParseException if the query was invalid
+   */
+  @Override
+  public Results searchAfter(String query, String cursor, int limit, long timeAllowedMillis) throws IOException,
+      ParseException {
+    return this.searchAfter(getQuery(query), cursor, limit, timeAllowedMillis);
+  }
+
+  /**
+   * Search returning the page of up to limit results following the cursor
+   *
+   * @param query
+   * @param cursor
+   * @param limit
+   * @return
+   * @throws IOException
+   */
+  public Results searchAfter(Query query, String cursor, int limit) throws IOException, TimeExceededException {
+    return searchAfter(query, cursor, limit, timeAllowedMillis);
+  }
+
+  /**
+   * Search returning the page of up to limit results following the cursor, or the first page if cursor is
+   * SearchCursor.FIRST_PAGE.
+   *
+   * The first page pins the current searcher so that following pages are searched against the same searcher even
+   * if the index is reloaded, and each page only has to collect limit hits however deep into the results it is.
+   *
+   * Partial results are never returned because the cursor for the next page could skip hits not yet collected.
+   *
+   * @param query
+   * @param cursor
+   * @param limit
+   * @param timeAllowedMillis time allowed to search
+   * @return results with the cursor for the next page set, unless there are no more results
+   * @throws IOException
+   * @throws CursorExpiredException if the pinned searcher has been released
+   */
+  public Results searchAfter(Query query, String cursor, int limit, long timeAllowedMillis) throws IOException,
+      TimeExceededException {
+
+    searcherLifetimeManager.prune(new SearcherLifetimeManager.PruneByAge(cursorTtlSeconds));
+
+    SearchCursor searchCursor = null;
+    long searcherVersion;
+    if (cursor == null || cursor.equals(SearchCursor.FIRST_PAGE)) {
+      IndexSearcher current = searcherManager.acquire();
+      try {
+        searcherVersion = searcherLifetimeManager.record(current);
+      } finally {
+        searcherManager.release(current);
+      }
+    } else {
+      searchCursor = SearchCursor.decode(cursor);
+      searcherVersion = searchCursor.getSearcherVersion();
+    }
+
+    IndexSearcher searcher = searcherLifetimeManager.acquire(searcherVersion);
+    if (searcher == null) {
+      throw new CursorExpiredException(ErrorMessage.CURSOR_EXPIRED.getMsg());
+    }
+    try {
+      ScoreDoc after = searchCursor != null ? searchCursor.getAfter() : null;
+      long start = System.nanoTime();
+      TopDocs topDocs;
+      try {
+        topDocs = searchTopDocs(searcher, query, limit, after, null, false, timeAllowedMillis, false);
+      } finally {
+        SearchTimings.addToCurrent(SearchTimings.Phase.SEARCH, System.nanoTime() - start);
+      }
+      searchCount.incrementAndGet();
+      if (topDocs == null) {
+        return new Results();
+      }
+
+      Results results = loadResults(searcher, topDocs, 0);
+      int offset = searchCursor != null ? searchCursor.getOffset() : 0;
+      float maxScore = searchCursor != null ? searchCursor.getMaxScore() : topDocs.getMaxScore();
+      results.setOffset(offset);
+      results.setMaxScore(maxScore);
+
+      ScoreDoc[] docs = topDocs.scoreDocs;
+      int nextOffset = offset + docs.length;
+      if (docs.length > 0 && nextOffset < topDocs.totalHits) {
+        results.setNextCursor(new SearchCursor(searcherVersion, docs[docs.length - 1], maxScore, nextOffset).encode());
+      }
+      return results;
+    } finally {
+      searcherLifetimeManager.release(searcher);
+    }
+  }
+
+  /**
+   * Collect the top hits, searching slices of the index in parallel if the searcher supports it
+   *
+   * @param searcher
+   * @param query
+   * @param numHits
+   * @param after last hit of the previous page, or null
+   * @param sort order of the hits, or null to order by relevance
+   * @param allowEarlyTermination only when ordered by relevance, because segments are not sorted by any other order
+   * @param timeAllowedMillis time allowed to search
+   * @param allowPartial return the hits collected so far as PartialTopDocs if the time allowed runs out
+   * @return
+   * @throws IOException
+   */
+  protected TopDocs searchTopDocs(IndexSearcher searcher, Query query, final int numHits, ScoreDoc after, Sort sort,
+      final boolean allowEarlyTermination, final long timeAllowedMillis, boolean allowPartial) throws IOException {
+    MusicBrainzIndexSearcher.CollectorWrapper wrapper = new MusicBrainzIndexSearcher.CollectorWrapper() {
+      @Override
+      public Collector wrap(Collector collector) {
+        if (allowEarlyTermination) {
+          collector = createEarlyTerminatingCollector(collector, numHits);
+        }
+        return new TimeLimitingCollector(collector, TimeLimitingCollector.getGlobalCounter(), timeAllowedMillis);
+      }
+    };
+
+    if (searcher instanceof MusicBrainzIndexSearcher) {
+      return ((MusicBrainzIndexSearcher) searcher).searchTopDocs(query, numHits, after, sort, wrapper, allowPartial);
+    }
+    TopDocsCollector<?> collector = MusicBrainzIndexSearcher.createTopDocsCollector(numHits, after, sort);
+    try {
+      searcher.search(query, wrapper.wrap(collector));
+    } catch (TimeExceededException tee) {
+      if (!allowPartial) {
+        throw tee;
+      }
+      return new MusicBrainzIndexSearcher.PartialTopDocs(collector.topDocs());
+    }
+    return collector.topDocs();
+  }
+
+  /**
+   * Segments sorted by the index sort hold the most popular documents first, so once enough hits have been collected
+   * from such a segment the remaining less popular matches can be skipped. Segments that are not sorted are always
+   * fully collected. When terminated early the total hits is only a lower bound.
+   *
+   * @param collector
+   * @param numHits the number of hits required
+   * @return collector that stops collecting a sorted segment after earlyTerminationDocs hits
+   */
+  protected Collector createEarlyTerminatingCollector(Collector collector, int numHits) {
+    Sort sort = getIndexSort();
+    if (earlyTerminationDocs <= 0 || sort == null) {
+      return collector;
+    }
+    return new EarlyTerminatingSortingCollector(collector, sort, Math.max(earlyTerminationDocs, numHits));
+  }
+
+  /**
+   * @return the sort order the index segments may have been sorted by when built, or null if never sorted
+   */
+  protected Sort getIndexSort() {
+    return null;
+  }
+
+  /**
+   * @param timeAllowedMillis time allowed for each search when not given
+   */
+  public void setTimeAllowedMillis(long timeAllowedMillis) {
+    this.timeAllowedMillis = timeAllowedMillis;
+  }
+
+  /**
+   * @param allowPartialResults if the time allowed runs out return the best hits found so far rather than failing
+   */
+  public void setAllowPartialResults(boolean allowPartialResults) {
+    this.allowPartialResults = allowPartialResults;
+  }
+
+  /**
+   * @param earlyTerminationDocs number of hits collected from each sorted segment, zero to always collect all hits
+   */
+  public void setEarlyTerminationDocs(int earlyTerminationDocs) {
+    this.earlyTerminationDocs = earlyTerminationDocs;
+  }
+
+  /**
+   * @param cursorTtlSeconds how long a searcher pinned by a cursor is kept after it was last replaced
+   */
+  public void setCursorTtlSeconds(int cursorTtlSeconds) {
+    this.cursorTtlSeconds = cursorTtlSeconds;
+  }
+
+  /**
+   * Get the parsed query from the cache, parsing and adding it to the cache if not already there
+   *
+   * @param query
+   * @return
+   * @throws ParseException
+   */
+  protected Query getQuery(String query) throws ParseException
+  {
+    long parseStart = System.nanoTime();
+    try {
+      if (parsedQueryCache == null) {
+        return parseQuery(query);
+      }
+      Query parsedQuery = parsedQueryCache.get(query);
+      if (parsedQuery == null) {
+        long start = System.nanoTime();
+        parsedQuery = parseQuery(query);
+        parsedQueryCache.put(query, parsedQuery, System.nanoTime() - start);
+      }
+      return parsedQuery;
+    } finally {
+      SearchTimings.addToCurrent(SearchTimings.Phase.PARSE, System.nanoTime() - parseStart);
+    }
+  }
+
   /**
    * Parse the query
    *
@@ -221,8 +621,40 @@ public abstract class AbstractSearchServer implements SearchServer {
    */
   protected Query parseQuery(String query) throws ParseException
   {
-    QueryParser parser = getParser();
-    return parser.parse(query);
+    ParserPool<QueryParser> pool = parserPool;
+    QueryParser parser = pool.borrow();
+    if (parser == null) {
+      parser = getParser();
+    }
+    try {
+      return parser.parse(query);
+    } finally {
+      pool.release(parser);
+    }
+  }
+
+  /**
+   * @return the pool of query parsers reused between queries
+   */
+  public ParserPool<QueryParser> getParserPool() {
+    return parserPool;
+  }
+
+  @Override
+  public Query getParsedQuery(String query) throws ParseException {
+    return getQuery(query);
+  }
+
+  @Override
+  public ParsedQueryCache getParsedQueryCache() {
+    return parsedQueryCache;
+  }
+
+  /**
+   * @param parsedQueryCache cache of parsed queries, or null to parse every query
+   */
+  public void setParsedQueryCache(ParsedQueryCache parsedQueryCache) {
+    this.parsedQueryCache = parsedQueryCache;
   }
 
   /**
@@ -235,14 +667,33 @@ public abstract class AbstractSearchServer implements SearchServer {
 
   /**
    * Get Query Parser for parsing queries for this resourceType , QueryParser is not thread safe so always get a new
-   * instance;
+   * instance, use parseQuery() to parse with a parser reused from the pool;
    *
    * @return
    */
   public abstract QueryParser getParser();
 
   /**
-   * Process results of search
+   * Process results of search, timing how long creating the results takes
+   *
+   * @param searcher
+   * @param topDocs
+   * @param offset
+   * @return
+   * @throws IOException
+   */
+  private Results loadResults(IndexSearcher searcher, TopDocs topDocs, int offset) throws IOException {
+    long start = System.nanoTime();
+    try {
+      return processResults(searcher, topDocs, offset);
+    } finally {
+      SearchTimings.addToCurrent(SearchTimings.Phase.LOAD, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Create a result for each hit from offset, the stored fields of each document are only loaded when the result is
+   * written, and then only those the writer reads. The results hold the searcher until they are released.
    *
    * @param searcher
    * @param topDocs
@@ -256,17 +707,50 @@ public abstract class AbstractSearchServer implements SearchServer {
     results.setTotalHits(topDocs.totalHits);
     ScoreDoc docs[] = topDocs.scoreDocs;
     results.setMaxScore(topDocs.getMaxScore());
+    if (offset < docs.length) {
+      results.holdSearcher(searcher);
+    }
     for (int i = offset; i < docs.length; i++) {
       Result result     = new Result();
       result.setScore(docs[i].score);
-      result.setDoc(new MbDocument(searcher.doc(docs[i].doc)));
+      result.setDocLoader(createDocumentLoader(searcher, docs[i].doc));
       results.results.add(result);
     }
     return results;
   }
 
+  /**
+   * Load only the stored fields requested, so that other stored fields are skipped rather than decoded
+   *
+   * @param searcher searcher held by the results
+   * @param docId
+   * @return
+   */
+  private Result.DocumentLoader createDocumentLoader(final IndexSearcher searcher, final int docId) {
+    return new Result.DocumentLoader() {
+      @Override
+      public MbDocument load(Set<String> fieldNames) throws IOException {
+        long start = System.nanoTime();
+        if (!searcher.getIndexReader().tryIncRef()) {
+          throw new IOException("Results released before their documents were loaded");
+        }
+        try {
+          if (fieldNames == null) {
+            return new MbDocument(searcher.doc(docId));
+          }
+          DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor(fieldNames);
+          searcher.doc(docId, visitor);
+          return new MbDocument(visitor.getDocument());
+        } finally {
+          searcher.getIndexReader().decRef();
+          SearchTimings.addToCurrent(SearchTimings.Phase.LOAD, System.nanoTime() - start);
+        }
+      }
+    };
+  }
+
   public String explain(String userQuery, int offset, int limit) throws IOException, ParseException {
-    Query parsedQuery = parseQuery(userQuery);
+    Query parsedQuery = getQuery(userQuery);
     return explain(parsedQuery, offset, limit);
   }
 
@@ -329,6 +813,17 @@ public abstract class AbstractSearchServer implements SearchServer {
     return searcherManager;
   }
 
+  @Override
+  public long getIndexVersion() throws IOException {
+    IndexSearcher searcher = searcherManager.acquire();
+    try {
+      IndexReader reader = searcher.getIndexReader();
+      return reader instanceof DirectoryReader ? ((DirectoryReader) reader).getVersion() : 0;
+    } finally {
+      searcherManager.release(searcher);
+    }
+  }
+
   @Override
   public Analyzer getAnalyzer() {
     return analyzer;
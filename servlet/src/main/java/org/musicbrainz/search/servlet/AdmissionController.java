@@ -0,0 +1,253 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Limits the number of searches of one index running at once, so that when searches slow down (e.g. the index has
+ * fallen out of the page cache) requests are turned away quickly rather than piling up until the container runs out
+ * of threads.
+ *
+ * The limit adapts to the observed search latency, it is reduced when a search takes longer than the target latency and
+ * slowly increased while searches are fast and the limit is being reached. The limit is reduced at most once per
+ * backoff window, because when the index slows down every search running at the time is slow and each reduction
+ * would otherwise be repeated for all of them. Requests over the limit wait in a short
+ * queue for at most maxWaitMillis.
+ *
+ * Each request is in a lane, lower priority lanes may only use part of the limit and part of the queue and are only
+ * admitted when no higher priority request is waiting, so bulk requests are shed first.
+ */
+public class AdmissionController {
+
+  /**
+   * Priority of a request, in priority order
+   */
+  public enum Lane {
+    WEBSITE("website", 1.0, 1.0),
+    API("api", 0.9, 0.75),
+    BULK("bulk", 0.5, 0.25),
+    ;
+
+    private final String name;
+    private final double limitShare;
+    private final double queueShare;
+
+    Lane(String name, double limitShare, double queueShare) {
+      this.name = name;
+      this.limitShare = limitShare;
+      this.queueShare = queueShare;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @param value of the priority header
+     * @return the matching lane, API if not set or not recognised
+     */
+    public static Lane getValue(String value) {
+      for (Lane lane : Lane.values()) {
+        if (lane.getName().equalsIgnoreCase(value)) {
+          return lane;
+        }
+      }
+      return API;
+    }
+  }
+
+  public static final int DEFAULT_INITIAL_LIMIT = 20;
+  public static final int DEFAULT_MIN_LIMIT = 2;
+  public static final int DEFAULT_MAX_LIMIT = 200;
+  public static final int DEFAULT_QUEUE_SIZE = 50;
+  public static final long DEFAULT_MAX_WAIT_MILLIS = 100;
+  public static final long DEFAULT_TARGET_LATENCY_MILLIS = 500;
+  public static final long DEFAULT_BACKOFF_WINDOW_MILLIS = 1000;
+
+  private static final double BACKOFF_RATIO = 0.9;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final int queueSize;
+  private final long maxWaitMillis;
+  private final long targetLatencyNanos;
+  private final long backoffWindowNanos;
+
+  private double limit;
+  private long lastBackoffNanos;
+  private boolean isBackedOff;
+  private int inFlight;
+  private int queued;
+  private final int[] waiting = new int[Lane.values().length];
+
+  private final AtomicLongArray admitted = new AtomicLongArray(Lane.values().length);
+  private final AtomicLongArray rejected = new AtomicLongArray(Lane.values().length);
+
+  /**
+   * @param initialLimit concurrent searches allowed to start with
+   * @param minLimit
+   * @param maxLimit
+   * @param queueSize maximum number of requests waiting
+   * @param maxWaitMillis maximum time a request waits before being rejected
+   * @param targetLatencyMillis the limit is reduced when a search takes longer than this
+   */
+  public AdmissionController(int initialLimit, int minLimit, int maxLimit, int queueSize, long maxWaitMillis,
+      long targetLatencyMillis) {
+    this(initialLimit, minLimit, maxLimit, queueSize, maxWaitMillis, targetLatencyMillis,
+        DEFAULT_BACKOFF_WINDOW_MILLIS);
+  }
+
+  /**
+   * @param initialLimit concurrent searches allowed to start with
+   * @param minLimit
+   * @param maxLimit
+   * @param queueSize maximum number of requests waiting
+   * @param maxWaitMillis maximum time a request waits before being rejected
+   * @param targetLatencyMillis the limit is reduced when a search takes longer than this
+   * @param backoffWindowMillis the limit is reduced at most once in this time
+   */
+  public AdmissionController(int initialLimit, int minLimit, int maxLimit, int queueSize, long maxWaitMillis,
+      long targetLatencyMillis, long backoffWindowMillis) {
+    this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.queueSize = queueSize;
+    this.maxWaitMillis = maxWaitMillis;
+    this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+    this.backoffWindowNanos = TimeUnit.MILLISECONDS.toNanos(backoffWindowMillis);
+  }
+
+  /**
+   * Wait until the request can be run, if true is returned release() must be called once the request has finished
+   *
+   * @param lane
+   * @return true if admitted, false if it should be rejected
+   */
+  public synchronized boolean acquire(Lane lane) {
+    if (queued == 0 && canRun(lane)) {
+      inFlight++;
+      admitted.incrementAndGet(lane.ordinal());
+      return true;
+    }
+
+    if (queued >= Math.ceil(queueSize * lane.queueShare)) {
+      rejected.incrementAndGet(lane.ordinal());
+      return false;
+    }
+
+    queued++;
+    waiting[lane.ordinal()]++;
+    try {
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+      while (!canRun(lane)) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          rejected.incrementAndGet(lane.ordinal());
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+      }
+      inFlight++;
+      admitted.incrementAndGet(lane.ordinal());
+      return true;
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      rejected.incrementAndGet(lane.ordinal());
+      return false;
+    } finally {
+      queued--;
+      waiting[lane.ordinal()]--;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Lane may run if under its share of the limit and no higher priority request is waiting
+   */
+  private boolean canRun(Lane lane) {
+    for (int i = 0; i < lane.ordinal(); i++) {
+      if (waiting[i] > 0) {
+        return false;
+      }
+    }
+    return inFlight < Math.max(1, (int) (limit * lane.limitShare));
+  }
+
+  /**
+   * Release request admitted by acquire(), adjusting the limit based on how long its search took
+   *
+   * @param searchNanos time taken searching the index, excluding writing the response which depends on the client
+   */
+  public synchronized void release(long searchNanos) {
+    if (searchNanos > targetLatencyNanos) {
+      long now = System.nanoTime();
+      if (!isBackedOff || now - lastBackoffNanos >= backoffWindowNanos) {
+        limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        lastBackoffNanos = now;
+        isBackedOff = true;
+      }
+    } else if (inFlight >= (int) limit) {
+      limit = Math.min(maxLimit, limit + 1.0 / limit);
+    }
+    inFlight--;
+    notifyAll();
+  }
+
+  public synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+
+  /**
+   * @return suggested number of seconds for a rejected client to wait before retrying
+   */
+  public long getRetryAfterSeconds() {
+    return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(targetLatencyNanos));
+  }
+
+  /**
+   * @return one line summary of the counters
+   */
+  public String getStats() {
+    StringBuilder sb = new StringBuilder();
+    synchronized (this) {
+      sb.append("limit:").append((int) limit).append(",inflight:").append(inFlight).append(",queued:").append(queued);
+    }
+    for (Lane lane : Lane.values()) {
+      sb.append(',').append(lane.getName()).append("admitted:").append(admitted.get(lane.ordinal()));
+      sb.append(',').append(lane.getName()).append("rejected:").append(rejected.get(lane.ordinal()));
+    }
+    return sb.toString();
+  }
+}
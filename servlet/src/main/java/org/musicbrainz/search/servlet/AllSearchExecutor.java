@@ -0,0 +1,351 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.lucene.search.TimeLimitingCollector.TimeExceededException;
+
+/**
+ * Runs the searches of each index making up a type=all search, or the searches of a batch search, with a bounded
+ * number of threads and a bounded queue so a burst of requests cannot create an unlimited number of threads.
+ *
+ * Each search has the same deadline, any search that has not finished by then, or that hit the search time limit, is
+ * left out of the results rather than holding up the whole response.
+ */
+public class AllSearchExecutor {
+
+  public static final int DEFAULT_THREADS = 32;
+  public static final int DEFAULT_QUEUE_SIZE = 120;
+  public static final long DEFAULT_TIMEOUT_MILLIS = 2000;
+
+  private final static Logger log = Logger.getLogger(AllSearchExecutor.class.getName());
+
+  /**
+   * Search whose results are released if it finishes after being cancelled, because nobody is left to write them
+   */
+  private static class SearchTask extends FutureTask<Results> {
+
+    SearchTask(Callable<Results> search) {
+      super(search);
+    }
+
+    @Override
+    protected void set(Results results) {
+      super.set(results);
+      if (isCancelled() && results != null) {
+        release(results);
+      }
+    }
+  }
+
+  private final ThreadPoolExecutor executor;
+  private final int threads;
+  private final long timeoutMillis;
+
+  private final AtomicLong submitted = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong timedOut = new AtomicLong();
+
+  /**
+   * @param threads maximum number of searches run at once
+   * @param queueSize maximum number of searches waiting for a thread
+   * @param timeoutMillis how long each search is waited for
+   */
+  public AllSearchExecutor(int threads, int queueSize, long timeoutMillis) {
+    this("search-all", threads, queueSize, timeoutMillis);
+  }
+
+  /**
+   * @param name prefix of the names of the threads
+   * @param threads maximum number of searches run at once
+   * @param queueSize maximum number of searches waiting for a thread
+   * @param timeoutMillis how long each search is waited for
+   */
+  public AllSearchExecutor(final String name, int threads, int queueSize, long timeoutMillis) {
+    this.threads = threads;
+    this.timeoutMillis = timeoutMillis;
+    this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        }, new ThreadPoolExecutor.AbortPolicy());
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Run the searches in parallel
+   *
+   * @param searches
+   * @return the results of each search that finished in time, any type missing timed out, each to be released once
+   *         written
+   * @throws RejectedExecutionException if the queue is full, none of the searches are run
+   * @throws Exception thrown by any of the searches, other than timing out
+   */
+  public Map<ResourceType, Results> invokeAll(Map<ResourceType, Callable<Results>> searches) throws Exception {
+
+    Map<ResourceType, Future<Results>> futures = new EnumMap<ResourceType, Future<Results>>(ResourceType.class);
+    try {
+      for (Map.Entry<ResourceType, Callable<Results>> next : searches.entrySet()) {
+        futures.put(next.getKey(), submit(next.getValue()));
+        submitted.incrementAndGet();
+      }
+    } catch (RejectedExecutionException ree) {
+      rejected.incrementAndGet();
+      releaseAll(futures.values());
+      throw ree;
+    }
+
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    Map<ResourceType, Results> results = new EnumMap<ResourceType, Results>(ResourceType.class);
+    boolean isComplete = false;
+    try {
+      for (Map.Entry<ResourceType, Future<Results>> next : futures.entrySet()) {
+        Future<Results> future = next.getValue();
+        try {
+          Results typeResults;
+          try {
+            typeResults = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+          } catch (TimeoutException te) {
+            if (future.cancel(false)) {
+              timedOut.incrementAndGet();
+              continue;
+            }
+            // Finished after the wait gave up but before it could be cancelled
+            typeResults = future.get();
+          }
+          results.put(next.getKey(), typeResults);
+        } catch (ExecutionException ee) {
+          if (ee.getCause() instanceof TimeExceededException) {
+            timedOut.incrementAndGet();
+          } else if (ee.getCause() instanceof Exception) {
+            throw (Exception) ee.getCause();
+          } else {
+            throw ee;
+          }
+        }
+      }
+      isComplete = true;
+    } finally {
+      // Release the results of every search not being returned, or of all of them if the search failed
+      List<Future<Results>> unused = new ArrayList<Future<Results>>();
+      for (Map.Entry<ResourceType, Future<Results>> next : futures.entrySet()) {
+        if (!isComplete || !results.containsKey(next.getKey())) {
+          unused.add(next.getValue());
+        }
+      }
+      releaseAll(unused);
+    }
+    return results;
+  }
+
+  /**
+   * Run the searches of a batch search in parallel, with a deadline allowing for searches waiting for a thread
+   *
+   * @param searches
+   * @return the future of each search, in the same order, each either done or cancelled because it did not finish in
+   *         time, to be passed to {@link #releaseAll(Collection)} once the results have been written
+   * @throws RejectedExecutionException if the queue is full, none of the searches are run
+   */
+  public List<Future<Results>> invokeAll(List<Callable<Results>> searches) {
+    return invokeAll(searches, getDeadlineNanos(searches.size()));
+  }
+
+  /**
+   * Run the searches of a batch search in parallel
+   *
+   * @param searches
+   * @param deadline System.nanoTime() by which the searches have to finish
+   * @return the future of each search, in the same order, each either done or cancelled because it did not finish in
+   *         time, to be passed to {@link #releaseAll(Collection)} once the results have been written
+   * @throws RejectedExecutionException if the queue is full, none of the searches are run
+   */
+  public List<Future<Results>> invokeAll(List<Callable<Results>> searches, long deadline) {
+
+    List<Future<Results>> futures = new ArrayList<Future<Results>>(searches.size());
+    try {
+      for (Callable<Results> search : searches) {
+        futures.add(submit(search));
+        submitted.incrementAndGet();
+      }
+    } catch (RejectedExecutionException ree) {
+      rejected.incrementAndGet();
+      releaseAll(futures);
+      throw ree;
+    }
+
+    for (Future<Results> future : futures) {
+      try {
+        future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      } catch (TimeoutException te) {
+        // Not cancelled if it finished meanwhile, then its results are written like any other
+        if (future.cancel(false)) {
+          timedOut.incrementAndGet();
+        }
+      } catch (ExecutionException ee) {
+        if (ee.getCause() instanceof TimeExceededException) {
+          timedOut.incrementAndGet();
+        }
+      } catch (InterruptedException ie) {
+        cancelAll(futures);
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    return futures;
+  }
+
+  /**
+   * Cancel searches not yet started, running searches are not interrupted because interrupting a thread reading from
+   * an NIOFSDirectory closes the underlying file channel, they stop once they reach the search time limit instead.
+   */
+  private void cancelAll(Collection<Future<Results>> futures) {
+    for (Future<Results> future : futures) {
+      future.cancel(false);
+    }
+  }
+
+  /**
+   * Cancel the searches not yet finished and release the results of those that have, the results of a search still
+   * running are released when it finishes
+   *
+   * @param futures
+   */
+  public static void releaseAll(Collection<Future<Results>> futures) {
+    for (Future<Results> future : futures) {
+      if (future.cancel(false) || future.isCancelled()) {
+        continue;
+      }
+      Results results;
+      try {
+        results = future.get();
+      } catch (ExecutionException ee) {
+        continue;
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        continue;
+      }
+      if (results != null) {
+        release(results);
+      }
+    }
+  }
+
+  private static void release(Results results) {
+    try {
+      results.release();
+    } catch (IOException ioe) {
+      log.log(Level.WARNING, "Unable to release results: " + ioe.getMessage(), ioe);
+    }
+  }
+
+  private Future<Results> submit(Callable<Results> search) {
+    SearchTask task = new SearchTask(search);
+    executor.execute(task);
+    return task;
+  }
+
+  /**
+   * @return how long the searches are waited for
+   */
+  public long getTimeoutMillis() {
+    return timeoutMillis;
+  }
+
+  /**
+   * @return System.nanoTime() by which searches submitted now have to finish
+   */
+  public long getDeadlineNanos() {
+    return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+  }
+
+  /**
+   * Searches beyond the number of threads have to wait for one, so each extra round of searches gets as long again
+   *
+   * @param searches number of searches submitted together
+   * @return System.nanoTime() by which the searches submitted now have to finish
+   */
+  public long getDeadlineNanos(int searches) {
+    int rounds = Math.max(1, (searches + threads - 1) / threads);
+    return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) * rounds;
+  }
+
+  /**
+   * Only an estimate as other requests may submit searches meanwhile, but enough to turn a request away before any
+   * work has been done for it
+   *
+   * @param searches
+   * @return true if there are enough idle threads and free queue entries to run the searches now
+   */
+  public boolean hasCapacity(int searches) {
+    int idle = Math.max(0, threads - executor.getActiveCount());
+    return idle + executor.getQueue().remainingCapacity() >= searches;
+  }
+
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  /**
+   * @return one line summary of the counters
+   */
+  public String getStats() {
+    return "submitted:" + submitted.get()
+        + ",rejected:" + rejected.get()
+        + ",timedout:" + timedOut.get()
+        + ",active:" + executor.getActiveCount()
+        + ",queued:" + executor.getQueue().size()
+        + ",threads:" + executor.getPoolSize();
+  }
+}
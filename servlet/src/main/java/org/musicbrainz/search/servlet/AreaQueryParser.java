@@ -3,7 +3,9 @@ package org.musicbrainz.search.servlet;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
 import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.Query;
 import org.musicbrainz.search.LuceneVersion;
+import org.musicbrainz.search.index.AreaIndexField;
 
 /**
  * Subclasses QueryParser to handle numeric fields that we might want wish to do range queries for and handle type
@@ -12,8 +14,36 @@ import org.musicbrainz.search.LuceneVersion;
 public class AreaQueryParser extends MultiFieldQueryParser
 {
 
-    public AreaQueryParser(java.lang.String[] strings, org.apache.lucene.analysis.Analyzer analyzer)
+    // Builds queries for the numeric fields in the format of the index
+    private final NumericFieldQueries numericFieldQueries;
+
+    /**
+     * @param strings default fields
+     * @param analyzer
+     * @param numericFieldQueries builds queries for the numeric fields in the format of the index
+     */
+    public AreaQueryParser(java.lang.String[] strings, org.apache.lucene.analysis.Analyzer analyzer, NumericFieldQueries numericFieldQueries)
     {
         super(LuceneVersion.LUCENE_VERSION, strings, analyzer);
+        this.numericFieldQueries = numericFieldQueries;
+    }
+
+    /**
+     * Ranges of begin and end dates are searched on the numeric fields holding them, if the index has them
+     */
+    @Override
+    public Query newRangeQuery(String field,
+                               String part1,
+                               String part2,
+                               boolean startInclusive,
+                               boolean endInclusive)
+    {
+        Query query = null;
+        if (field.equals(AreaIndexField.BEGIN.getName())) {
+            query = numericFieldQueries.newDateRangeQuery(AreaIndexField.BEGIN_NUMERIC.getName(), part1, part2, startInclusive, endInclusive);
+        } else if (field.equals(AreaIndexField.END.getName())) {
+            query = numericFieldQueries.newDateRangeQuery(AreaIndexField.END_NUMERIC.getName(), part1, part2, startInclusive, endInclusive);
+        }
+        return query != null ? query : super.newRangeQuery(field, part1, part2, startInclusive, endInclusive);
     }
 }
\ No newline at end of file
@@ -37,7 +37,7 @@ public class AreaSearch extends AbstractSearchServer {
 
   @Override
   public QueryParser getParser() {
-    return new AreaQueryParser(defaultFields.toArray(new String[0]), analyzer);
+    return new AreaQueryParser(defaultFields.toArray(new String[0]), analyzer, getNumericFieldQueries());
   }
 
   @Override
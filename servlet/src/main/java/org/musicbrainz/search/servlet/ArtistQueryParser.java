@@ -15,8 +15,17 @@ import org.musicbrainz.search.index.ArtistType;
  */
 public class ArtistQueryParser extends MultiFieldQueryParser {
 
-    public ArtistQueryParser(java.lang.String[] strings, org.apache.lucene.analysis.Analyzer analyzer) {
+    // Builds queries for the numeric fields in the format of the index
+    private final NumericFieldQueries numericFieldQueries;
+
+    /**
+     * @param strings default fields
+     * @param analyzer
+     * @param numericFieldQueries builds queries for the numeric fields in the format of the index
+     */
+    public ArtistQueryParser(java.lang.String[] strings, org.apache.lucene.analysis.Analyzer analyzer, NumericFieldQueries numericFieldQueries) {
         super(LuceneVersion.LUCENE_VERSION, strings, analyzer);
+        this.numericFieldQueries = numericFieldQueries;
     }
 
     protected Query newTermQuery(Term term) {
@@ -38,4 +47,22 @@ public class ArtistQueryParser extends MultiFieldQueryParser {
             return super.newTermQuery(term);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Ranges of begin and end dates are searched on the numeric fields holding them, if the index has them
+     */
+    @Override
+    public Query newRangeQuery(String field,
+                               String part1,
+                               String part2,
+                               boolean startInclusive,
+                               boolean endInclusive) {
+        Query query = null;
+        if (field.equals(ArtistIndexField.BEGIN.getName())) {
+            query = numericFieldQueries.newDateRangeQuery(ArtistIndexField.BEGIN_NUMERIC.getName(), part1, part2, startInclusive, endInclusive);
+        } else if (field.equals(ArtistIndexField.END.getName())) {
+            query = numericFieldQueries.newDateRangeQuery(ArtistIndexField.END_NUMERIC.getName(), part1, part2, startInclusive, endInclusive);
+        }
+        return query != null ? query : super.newRangeQuery(field, part1, part2, startInclusive, endInclusive);
+    }
+}
@@ -68,7 +68,7 @@ public class ArtistSearch extends AbstractSearchServer
     @Override
     public QueryParser getParser()
     {
-        return new ArtistQueryParser(defaultFields.toArray(new String[0]), analyzer);
+        return new ArtistQueryParser(defaultFields.toArray(new String[0]), analyzer, getNumericFieldQueries());
     }
 
     @Override
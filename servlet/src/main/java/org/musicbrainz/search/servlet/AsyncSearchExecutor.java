@@ -0,0 +1,222 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Processes requests asynchronously on our own bounded pool of threads, so the container thread that received the
+ * request is returned to the container straight away rather than being held for the whole search and serialization.
+ * The number of requests being searched is then limited by this pool rather than by the container's thread pool, and
+ * requests waiting for a thread only cost a queue entry rather than a blocked thread.
+ */
+public class AsyncSearchExecutor {
+
+  public static final int DEFAULT_THREADS = 64;
+  public static final int DEFAULT_QUEUE_SIZE = 1000;
+  public static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+
+  private final static Logger log = Logger.getLogger(AsyncSearchExecutor.class.getName());
+
+  // States of a dispatched request, only the thread moving it out of QUEUED completes the response
+  private static final int QUEUED = 0;
+  private static final int RUNNING = 1;
+  private static final int DONE = 2;
+
+  /**
+   * Processes a request, on one of the pool threads
+   */
+  public interface RequestHandler {
+    void handle(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException;
+  }
+
+  private final ThreadPoolExecutor executor;
+  // Fails requests still waiting for a thread once they have waited for timeoutMillis
+  private final ScheduledExecutorService timer;
+  private final long timeoutMillis;
+
+  private final AtomicLong dispatched = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong timedOut = new AtomicLong();
+
+  /**
+   * @param threads maximum number of requests processed at once
+   * @param queueSize maximum number of requests waiting for a thread
+   * @param timeoutMillis how long a request may wait for a thread before the client is sent an error, requests already
+   *          being processed are left to finish
+   */
+  public AsyncSearchExecutor(int threads, int queueSize, long timeoutMillis) {
+    this.timeoutMillis = timeoutMillis;
+    this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "search-async-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        }, new ThreadPoolExecutor.AbortPolicy());
+    this.executor.allowCoreThreadTimeOut(true);
+    this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "search-async-timeout");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Only asynchronous processing as introduced by Servlet 3.0 is used, the response is still written with blocking
+   * output but from our own threads
+   *
+   * @param context
+   * @return true if the container supports asynchronous processing
+   */
+  public static boolean isSupported(ServletContext context) {
+    return context.getMajorVersion() >= 3;
+  }
+
+  /**
+   * Start asynchronous processing of the request and queue it for the handler, the calling container thread returns
+   * immediately.
+   *
+   * The container's own async timeout is disabled. A request still waiting for a thread after timeoutMillis is failed
+   * by our timer, once the handler has started it alone completes the response, so the response is never completed
+   * while still being written and no container thread waits for the handler.
+   *
+   * @param request
+   * @param response
+   * @param handler
+   * @throws IOException
+   */
+  public void dispatch(HttpServletRequest request, HttpServletResponse response, final RequestHandler handler)
+      throws IOException {
+    final AsyncContext asyncContext = request.startAsync(request, response);
+    asyncContext.setTimeout(0);
+
+    final AtomicInteger state = new AtomicInteger(QUEUED);
+    final ScheduledFuture<?> timeout = timer.schedule(new Runnable() {
+      @Override
+      public void run() {
+        if (state.compareAndSet(QUEUED, DONE)) {
+          timedOut.incrementAndGet();
+          sendBusy(asyncContext);
+        }
+      }
+    }, timeoutMillis, TimeUnit.MILLISECONDS);
+
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          if (!state.compareAndSet(QUEUED, RUNNING)) {
+            return;
+          }
+          timeout.cancel(false);
+          try {
+            handler.handle((HttpServletRequest) asyncContext.getRequest(),
+                (HttpServletResponse) asyncContext.getResponse());
+          } catch (Exception e) {
+            log.log(Level.WARNING, "Unable to process request: " + e.getMessage(), e);
+          } finally {
+            state.set(DONE);
+            asyncContext.complete();
+          }
+        }
+      });
+      dispatched.incrementAndGet();
+    } catch (RejectedExecutionException ree) {
+      rejected.incrementAndGet();
+      timeout.cancel(false);
+      if (state.compareAndSet(QUEUED, DONE)) {
+        sendBusy(asyncContext);
+      }
+    }
+  }
+
+  /**
+   * Send the client a busy error, unless already started on a response, and complete the request
+   *
+   * @param asyncContext
+   */
+  private void sendBusy(AsyncContext asyncContext) {
+    try {
+      HttpServletResponse busyResponse = (HttpServletResponse) asyncContext.getResponse();
+      if (!busyResponse.isCommitted()) {
+        busyResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, ErrorMessage.SERVER_BUSY.getMsg());
+      }
+    } catch (IOException ioe) {
+      log.log(Level.WARNING, "Unable to send busy error: " + ioe.getMessage(), ioe);
+    } finally {
+      asyncContext.complete();
+    }
+  }
+
+  /**
+   * Stop accepting requests, requests already queued are still processed
+   */
+  public void shutdown() {
+    executor.shutdown();
+    timer.shutdown();
+  }
+
+  /**
+   * @return one line summary of the counters
+   */
+  public String getStats() {
+    return "dispatched:" + dispatched.get()
+        + ",rejected:" + rejected.get()
+        + ",timedout:" + timedOut.get()
+        + ",active:" + executor.getActiveCount()
+        + ",queued:" + executor.getQueue().size()
+        + ",threads:" + executor.getPoolSize();
+  }
+}
@@ -0,0 +1,289 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The searches of a batch search request, posted as a JSON array of objects each with the fields type, query and
+ * optionally dismax, offset and limit, e.g.
+ *
+ * <pre>
+ * [{"type":"recording","query":"love me do"},{"type":"artist","query":"beatles","dismax":true,"limit":5}]
+ * </pre>
+ *
+ * Only the small subset of JSON needed for this is parsed, unknown fields are ignored.
+ */
+public class BatchSearchRequest {
+
+  public static final int DEFAULT_MAX_ENTRIES = 50;
+  // Searches of batches run at once, and waiting for a thread, room for several full batches
+  public static final int DEFAULT_THREADS = 16;
+  public static final int DEFAULT_QUEUE_SIZE = 200;
+
+  /**
+   * One search of the batch, as posted so the values still need to be validated
+   */
+  public static class Entry {
+    private String type;
+    private String query;
+    private boolean isDismax = false;
+    private int offset = SearchServerServlet.DEFAULT_OFFSET;
+    private int limit = SearchServerServlet.DEFAULT_MATCHES_LIMIT;
+
+    public String getType() {
+      return type;
+    }
+
+    public String getQuery() {
+      return query;
+    }
+
+    public boolean isDismax() {
+      return isDismax;
+    }
+
+    public int getOffset() {
+      return offset;
+    }
+
+    public int getLimit() {
+      return limit;
+    }
+  }
+
+  private final List<Entry> entries;
+
+  private BatchSearchRequest(List<Entry> entries) {
+    this.entries = Collections.unmodifiableList(entries);
+  }
+
+  public List<Entry> getEntries() {
+    return entries;
+  }
+
+  /**
+   * @param json
+   * @return
+   * @throws IllegalArgumentException if the request is not a JSON array of objects
+   */
+  public static BatchSearchRequest parse(String json) {
+    Parser parser = new Parser(json);
+    List<Entry> entries = parser.parseEntries();
+    parser.skipWhitespace();
+    if (!parser.isAtEnd()) {
+      throw parser.error("unexpected content after the array");
+    }
+    return new BatchSearchRequest(entries);
+  }
+
+  private static class Parser {
+    private final String json;
+    private int pos = 0;
+
+    Parser(String json) {
+      this.json = json;
+    }
+
+    boolean isAtEnd() {
+      return pos >= json.length();
+    }
+
+    IllegalArgumentException error(String msg) {
+      return new IllegalArgumentException("Invalid batch request at character " + pos + ": " + msg);
+    }
+
+    void skipWhitespace() {
+      while (!isAtEnd() && Character.isWhitespace(json.charAt(pos))) {
+        pos++;
+      }
+    }
+
+    /**
+     * @param c
+     * @return true if the next non whitespace character is c, in which case it is consumed
+     */
+    boolean consume(char c) {
+      skipWhitespace();
+      if (!isAtEnd() && json.charAt(pos) == c) {
+        pos++;
+        return true;
+      }
+      return false;
+    }
+
+    void expect(char c) {
+      if (!consume(c)) {
+        throw error("expected '" + c + "'");
+      }
+    }
+
+    List<Entry> parseEntries() {
+      List<Entry> entries = new ArrayList<Entry>();
+      expect('[');
+      if (consume(']')) {
+        return entries;
+      }
+      do {
+        entries.add(parseEntry());
+      } while (consume(','));
+      expect(']');
+      return entries;
+    }
+
+    Entry parseEntry() {
+      Entry entry = new Entry();
+      expect('{');
+      if (consume('}')) {
+        return entry;
+      }
+      do {
+        String name = parseString();
+        expect(':');
+        Object value = parseValue();
+        if (name.equals(RequestParameter.TYPE.getName())) {
+          entry.type = toString(name, value);
+        } else if (name.equals(RequestParameter.QUERY.getName())) {
+          entry.query = toString(name, value);
+        } else if (name.equals(RequestParameter.DISMAX.getName())) {
+          entry.isDismax = value instanceof Boolean ? (Boolean) value : Boolean.parseBoolean(toString(name, value));
+        } else if (name.equals(RequestParameter.OFFSET.getName())) {
+          entry.offset = toInt(name, value);
+        } else if (name.equals(RequestParameter.LIMIT.getName())) {
+          entry.limit = toInt(name, value);
+        }
+      } while (consume(','));
+      expect('}');
+      return entry;
+    }
+
+    private String toString(String name, Object value) {
+      if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+        return value.toString();
+      }
+      throw error("field " + name + " must be a string");
+    }
+
+    private int toInt(String name, Object value) {
+      try {
+        return value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(toString(name, value));
+      } catch (NumberFormatException nfe) {
+        throw error("field " + name + " must be a number");
+      }
+    }
+
+    /**
+     * @return a String, Number, Boolean or null
+     */
+    Object parseValue() {
+      skipWhitespace();
+      if (isAtEnd()) {
+        throw error("expected a value");
+      }
+      char c = json.charAt(pos);
+      if (c == '"') {
+        return parseString();
+      } else if (json.startsWith("true", pos)) {
+        pos += 4;
+        return Boolean.TRUE;
+      } else if (json.startsWith("false", pos)) {
+        pos += 5;
+        return Boolean.FALSE;
+      } else if (json.startsWith("null", pos)) {
+        pos += 4;
+        return null;
+      } else if (c == '-' || Character.isDigit(c)) {
+        int start = pos;
+        while (!isAtEnd() && "+-.eE0123456789".indexOf(json.charAt(pos)) >= 0) {
+          pos++;
+        }
+        try {
+          return Double.valueOf(json.substring(start, pos));
+        } catch (NumberFormatException nfe) {
+          throw error("invalid number");
+        }
+      }
+      throw error("only strings, numbers, booleans and null are supported as values");
+    }
+
+    String parseString() {
+      expect('"');
+      StringBuilder sb = new StringBuilder();
+      while (true) {
+        if (isAtEnd()) {
+          throw error("unterminated string");
+        }
+        char c = json.charAt(pos++);
+        if (c == '"') {
+          return sb.toString();
+        } else if (c != '\\') {
+          sb.append(c);
+          continue;
+        }
+        if (isAtEnd()) {
+          throw error("unterminated string");
+        }
+        char escaped = json.charAt(pos++);
+        switch (escaped) {
+        case 'b':
+          sb.append('\b');
+          break;
+        case 'f':
+          sb.append('\f');
+          break;
+        case 'n':
+          sb.append('\n');
+          break;
+        case 'r':
+          sb.append('\r');
+          break;
+        case 't':
+          sb.append('\t');
+          break;
+        case 'u':
+          if (pos + 4 > json.length()) {
+            throw error("invalid unicode escape");
+          }
+          try {
+            sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+          } catch (NumberFormatException nfe) {
+            throw error("invalid unicode escape");
+          }
+          pos += 4;
+          break;
+        default:
+          // \" \\ and \/
+          sb.append(escaped);
+        }
+      }
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package org.musicbrainz.search.servlet;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 // Used by doAllSearch()
 class CallableSearch implements Callable<Results>
@@ -10,19 +11,70 @@ class CallableSearch implements Callable<Results>
     private final String query;
     private final Integer offset;
     private final Integer limit;
+    private final long timeAllowedMillis;
+    private final Long deadlineNanos;
+    private final SearchTimings timings;
 
     public CallableSearch(SearchServer searchServer, String query, Integer offset, Integer limit)
+    {
+        this(searchServer, query, offset, limit, AbstractSearchServer.DEFAULT_TIME_ALLOWED_MILLIS);
+    }
+
+    public CallableSearch(SearchServer searchServer, String query, Integer offset, Integer limit,
+                          long timeAllowedMillis)
+    {
+        this(searchServer, query, offset, limit, timeAllowedMillis, null);
+    }
+
+    /**
+     * @param timeAllowedMillis time budget of the search
+     * @param deadlineNanos System.nanoTime() by which the results are needed, the search is not allowed to run past it
+     *                      even if its time budget is longer, or null if there is no deadline
+     */
+    public CallableSearch(SearchServer searchServer, String query, Integer offset, Integer limit,
+                          long timeAllowedMillis, Long deadlineNanos)
     {
         this.searchServer = searchServer;
         this.query = query;
         this.offset = offset;
         this.limit = limit;
+        this.timeAllowedMillis = timeAllowedMillis;
+        this.deadlineNanos = deadlineNanos;
+        this.timings = SearchTimings.current();
+    }
+
+    /**
+     * @return the time budget, cut to the time left before the deadline
+     */
+    long getTimeAllowedMillis()
+    {
+        if (deadlineNanos == null)
+        {
+            return timeAllowedMillis;
+        }
+        long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+        return Math.max(1, Math.min(timeAllowedMillis, remainingMillis));
     }
 
     @Override
     public Results call() throws Exception
     {
-        return searchServer.search(query, offset, limit);
+        // Timed separately then merged into the timings of the request that created the search, because the other
+        // searches of the request run at the same time
+        SearchTimings searchTimings = timings != null ? new SearchTimings() : null;
+        SearchTimings.setCurrent(searchTimings);
+        try
+        {
+            return searchServer.search(query, offset, limit, getTimeAllowedMillis());
+        }
+        finally
+        {
+            SearchTimings.setCurrent(null);
+            if (timings != null)
+            {
+                timings.addParallel(searchTimings);
+            }
+        }
     }
 
 }
@@ -0,0 +1,399 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes xml straight to a writer in the same form as the JAXB marshaller, so entities marshalled to it one at a time
+ * give the same output as marshalling the complete document.
+ *
+ * Unlike the StAX writer of the jdk an element with no content is written as an empty element tag, text and
+ * attribute values are escaped in the same way as JAXB escapes them, and a namespace declaration is not written
+ * again if an enclosing element already declares the same prefix for the same namespace, so marshalled fragments do
+ * not redeclare the namespaces of the document element. The xml declaration is left to the caller.
+ */
+public class CompactXMLStreamWriter implements XMLStreamWriter {
+
+  private final Writer out;
+
+  /** Names of the open elements */
+  private final List<String> elementNames = new ArrayList<String>();
+
+  /** Namespaces declared on each open element, by prefix */
+  private final List<Map<String, String>> namespaces = new ArrayList<Map<String, String>>();
+
+  private boolean startTagOpen = false;
+  private boolean emptyElement = false;
+
+  public CompactXMLStreamWriter(Writer out) {
+    this.out = out;
+  }
+
+  private void write(String s) throws XMLStreamException {
+    try {
+      out.write(s);
+    } catch (IOException e) {
+      throw new XMLStreamException(e);
+    }
+  }
+
+  private void write(char c) throws XMLStreamException {
+    try {
+      out.write(c);
+    } catch (IOException e) {
+      throw new XMLStreamException(e);
+    }
+  }
+
+  /**
+   * Close the start tag of the current element, as an empty element tag if no content was written
+   *
+   * @param empty
+   * @throws XMLStreamException
+   */
+  private void closeStartTag(boolean empty) throws XMLStreamException {
+    if (startTagOpen) {
+      write(empty ? "/>" : ">");
+      startTagOpen = false;
+    }
+  }
+
+  /**
+   * Called before any content, the start tag must be closed and an element written with writeEmptyElement ended
+   *
+   * @throws XMLStreamException
+   */
+  private void beforeContent() throws XMLStreamException {
+    if (emptyElement) {
+      closeStartTag(true);
+      emptyElement = false;
+      elementNames.remove(elementNames.size() - 1);
+      namespaces.remove(namespaces.size() - 1);
+    } else {
+      closeStartTag(false);
+    }
+  }
+
+  private void escape(String s, boolean isAttributeValue) throws XMLStreamException {
+    int start = 0;
+    for (int i = 0; i < s.length(); i++) {
+      String replacement;
+      switch (s.charAt(i)) {
+        case '&':
+          replacement = "&amp;";
+          break;
+        case '<':
+          replacement = "&lt;";
+          break;
+        case '>':
+          replacement = "&gt;";
+          break;
+        case '"':
+          replacement = isAttributeValue ? "&quot;" : null;
+          break;
+        default:
+          replacement = null;
+      }
+      if (replacement != null) {
+        try {
+          out.write(s, start, i - start);
+        } catch (IOException e) {
+          throw new XMLStreamException(e);
+        }
+        write(replacement);
+        start = i + 1;
+      }
+    }
+    try {
+      out.write(s, start, s.length() - start);
+    } catch (IOException e) {
+      throw new XMLStreamException(e);
+    }
+  }
+
+  private static String qualify(String prefix, String localName) {
+    return prefix == null || prefix.length() == 0 ? localName : prefix + ":" + localName;
+  }
+
+  private String lookupNamespace(String prefix) {
+    for (int i = namespaces.size() - 1; i >= 0; i--) {
+      String namespaceURI = namespaces.get(i).get(prefix);
+      if (namespaceURI != null) {
+        return namespaceURI;
+      }
+    }
+    return null;
+  }
+
+  private String lookupPrefix(String namespaceURI) {
+    for (int i = namespaces.size() - 1; i >= 0; i--) {
+      for (Map.Entry<String, String> next : namespaces.get(i).entrySet()) {
+        if (next.getValue().equals(namespaceURI) && namespaceURI.equals(lookupNamespace(next.getKey()))) {
+          return next.getKey();
+        }
+      }
+    }
+    return null;
+  }
+
+  private void startElement(String prefix, String localName, boolean empty) throws XMLStreamException {
+    beforeContent();
+    String name = qualify(prefix, localName);
+    write('<');
+    write(name);
+    elementNames.add(name);
+    namespaces.add(new HashMap<String, String>(2));
+    startTagOpen = true;
+    emptyElement = empty;
+  }
+
+  public void writeStartElement(String localName) throws XMLStreamException {
+    startElement(null, localName, false);
+  }
+
+  public void writeStartElement(String namespaceURI, String localName) throws XMLStreamException {
+    startElement(getPrefix(namespaceURI), localName, false);
+  }
+
+  public void writeStartElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+    startElement(prefix, localName, false);
+  }
+
+  public void writeEmptyElement(String namespaceURI, String localName) throws XMLStreamException {
+    startElement(getPrefix(namespaceURI), localName, true);
+  }
+
+  public void writeEmptyElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+    startElement(prefix, localName, true);
+  }
+
+  public void writeEmptyElement(String localName) throws XMLStreamException {
+    startElement(null, localName, true);
+  }
+
+  public void writeEndElement() throws XMLStreamException {
+    if (emptyElement) {
+      beforeContent();
+    }
+    if (elementNames.isEmpty()) {
+      throw new XMLStreamException("No element to end");
+    }
+    String name = elementNames.remove(elementNames.size() - 1);
+    namespaces.remove(namespaces.size() - 1);
+    if (startTagOpen) {
+      closeStartTag(true);
+    } else {
+      write("</");
+      write(name);
+      write('>');
+    }
+  }
+
+  public void writeEndDocument() throws XMLStreamException {
+    beforeContent();
+    while (!elementNames.isEmpty()) {
+      writeEndElement();
+    }
+  }
+
+  public void close() throws XMLStreamException {
+    flush();
+  }
+
+  public void flush() throws XMLStreamException {
+    try {
+      out.flush();
+    } catch (IOException e) {
+      throw new XMLStreamException(e);
+    }
+  }
+
+  public void writeAttribute(String localName, String value) throws XMLStreamException {
+    writeAttribute(null, null, localName, value);
+  }
+
+  public void writeAttribute(String prefix, String namespaceURI, String localName, String value)
+      throws XMLStreamException {
+    if (!startTagOpen) {
+      throw new XMLStreamException("Attribute written outside of a start tag");
+    }
+    write(' ');
+    write(qualify(prefix, localName));
+    write("=\"");
+    escape(value, true);
+    write('"');
+  }
+
+  public void writeAttribute(String namespaceURI, String localName, String value) throws XMLStreamException {
+    writeAttribute(getPrefix(namespaceURI), namespaceURI, localName, value);
+  }
+
+  public void writeNamespace(String prefix, String namespaceURI) throws XMLStreamException {
+    if (prefix == null || prefix.length() == 0 || XMLConstants.XMLNS_ATTRIBUTE.equals(prefix)) {
+      writeDefaultNamespace(namespaceURI);
+      return;
+    }
+    if (!namespaceURI.equals(lookupNamespace(prefix))) {
+      writeAttribute(XMLConstants.XMLNS_ATTRIBUTE, XMLConstants.XMLNS_ATTRIBUTE_NS_URI, prefix, namespaceURI);
+    }
+    namespaces.get(namespaces.size() - 1).put(prefix, namespaceURI);
+  }
+
+  public void writeDefaultNamespace(String namespaceURI) throws XMLStreamException {
+    String current = lookupNamespace(XMLConstants.DEFAULT_NS_PREFIX);
+    if (!namespaceURI.equals(current == null ? XMLConstants.NULL_NS_URI : current)) {
+      writeAttribute(null, XMLConstants.XMLNS_ATTRIBUTE_NS_URI, XMLConstants.XMLNS_ATTRIBUTE, namespaceURI);
+    }
+    namespaces.get(namespaces.size() - 1).put(XMLConstants.DEFAULT_NS_PREFIX, namespaceURI);
+  }
+
+  public void writeComment(String data) throws XMLStreamException {
+    beforeContent();
+    write("<!--");
+    write(data);
+    write("-->");
+  }
+
+  public void writeProcessingInstruction(String target) throws XMLStreamException {
+    writeProcessingInstruction(target, null);
+  }
+
+  public void writeProcessingInstruction(String target, String data) throws XMLStreamException {
+    beforeContent();
+    write("<?");
+    write(target);
+    if (data != null) {
+      write(' ');
+      write(data);
+    }
+    write("?>");
+  }
+
+  public void writeCData(String data) throws XMLStreamException {
+    beforeContent();
+    write("<![CDATA[");
+    write(data);
+    write("]]>");
+  }
+
+  public void writeDTD(String dtd) throws XMLStreamException {
+    write(dtd);
+  }
+
+  public void writeEntityRef(String name) throws XMLStreamException {
+    beforeContent();
+    write('&');
+    write(name);
+    write(';');
+  }
+
+  /**
+   * The xml declaration is written by the caller because JAXB also declares the document as standalone
+   */
+  public void writeStartDocument() throws XMLStreamException {
+  }
+
+  public void writeStartDocument(String version) throws XMLStreamException {
+  }
+
+  public void writeStartDocument(String encoding, String version) throws XMLStreamException {
+  }
+
+  public void writeCharacters(String text) throws XMLStreamException {
+    beforeContent();
+    escape(text, false);
+  }
+
+  public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+    writeCharacters(new String(text, start, len));
+  }
+
+  /**
+   * Write already serialized xml as the next content of the current element
+   *
+   * @param xml
+   * @throws XMLStreamException
+   */
+  public void writeRaw(String xml) throws XMLStreamException {
+    beforeContent();
+    write(xml);
+  }
+
+  public String getPrefix(String namespaceURI) throws XMLStreamException {
+    return lookupPrefix(namespaceURI);
+  }
+
+  public void setPrefix(String prefix, String namespaceURI) throws XMLStreamException {
+    if (!namespaces.isEmpty()) {
+      namespaces.get(namespaces.size() - 1).put(prefix, namespaceURI);
+    }
+  }
+
+  public void setDefaultNamespace(String namespaceURI) throws XMLStreamException {
+    setPrefix(XMLConstants.DEFAULT_NS_PREFIX, namespaceURI);
+  }
+
+  public void setNamespaceContext(NamespaceContext context) throws XMLStreamException {
+    throw new UnsupportedOperationException();
+  }
+
+  public NamespaceContext getNamespaceContext() {
+    return new NamespaceContext() {
+      public String getNamespaceURI(String prefix) {
+        return lookupNamespace(prefix);
+      }
+
+      public String getPrefix(String namespaceURI) {
+        return lookupPrefix(namespaceURI);
+      }
+
+      public Iterator getPrefixes(String namespaceURI) {
+        String prefix = lookupPrefix(namespaceURI);
+        return prefix != null ? Collections.singletonList(prefix).iterator() : Collections.emptyList().iterator();
+      }
+    };
+  }
+
+  public Object getProperty(String name) throws IllegalArgumentException {
+    throw new IllegalArgumentException(name);
+  }
+}
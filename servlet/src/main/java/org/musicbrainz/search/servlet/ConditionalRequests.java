@@ -0,0 +1,112 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.util.Date;
+
+import javax.servlet.http.HttpServletRequest;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+/**
+ * Conditional GET support for search responses, so that clients repeating a search they already have the response
+ * for are told it has not changed without the search being run again.
+ *
+ * The ETag identifies the index the search would be run against and the normalized request, so it changes whenever
+ * the index is reloaded or refreshed with changes. Compressed responses are different representations so get a
+ * different ETag for each encoding.
+ */
+public class ConditionalRequests {
+
+  public static final String HEADER_ETAG = "ETag";
+  public static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+  public static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+  /**
+   * @param indexSetGeneration generation of the index set searched
+   * @param indexVersion version of the index searched
+   * @param resourceType
+   * @param requestKey normalized request, as used for the result cache
+   * @param encoding content encoding of the response
+   * @return quoted strong ETag
+   */
+  public static String createETag(long indexSetGeneration, long indexVersion, ResourceType resourceType,
+      String requestKey, ResponseCompression.Encoding encoding) {
+    String hash = Hashing.murmur3_128().newHasher()
+        .putLong(indexSetGeneration)
+        .putLong(indexVersion)
+        .putString(resourceType.getName(), Charsets.UTF_8)
+        .putString(requestKey, Charsets.UTF_8)
+        .hash().toString();
+    return '"' + hash + (encoding != ResponseCompression.Encoding.IDENTITY ? "-" + encoding.getName() : "") + '"';
+  }
+
+  /**
+   * @param request
+   * @param eTag ETag of the response
+   * @param lastModified last modified date of the response, or null if not known
+   * @return true if the client already has the response
+   */
+  public static boolean isNotModified(HttpServletRequest request, String eTag, Date lastModified) {
+    long ifModifiedSince;
+    try {
+      ifModifiedSince = request.getDateHeader(HEADER_IF_MODIFIED_SINCE);
+    } catch (IllegalArgumentException iae) {
+      ifModifiedSince = -1;
+    }
+    return isNotModified(request.getHeader(HEADER_IF_NONE_MATCH), ifModifiedSince, eTag, lastModified);
+  }
+
+  /**
+   * If-None-Match takes precedence, If-Modified-Since is only used when the client has no ETag
+   *
+   * @param ifNoneMatch value of the If-None-Match header, or null
+   * @param ifModifiedSince value of the If-Modified-Since header in milliseconds, or -1
+   * @param eTag ETag of the response
+   * @param lastModified last modified date of the response, or null if not known
+   * @return true if the client already has the response
+   */
+  static boolean isNotModified(String ifNoneMatch, long ifModifiedSince, String eTag, Date lastModified) {
+    if (ifNoneMatch != null) {
+      for (String candidate : ifNoneMatch.split(",")) {
+        candidate = candidate.trim();
+        if (candidate.startsWith("W/")) {
+          candidate = candidate.substring(2);
+        }
+        if (candidate.equals("*") || candidate.equals(eTag)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    // Http dates only have a resolution of seconds
+    return ifModifiedSince >= 0 && lastModified != null && lastModified.getTime() / 1000 <= ifModifiedSince / 1000;
+  }
+}
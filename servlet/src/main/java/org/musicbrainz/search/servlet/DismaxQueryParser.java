@@ -67,10 +67,33 @@ public class DismaxQueryParser {
     public Query parse(String query) throws org.apache.lucene.queryparser.classic.ParseException {
 
         Query term = dqp.parse(DismaxQueryParser.IMPOSSIBLE_FIELD_NAME + ":(" + query + ")");
+        if (!isPhraseQueryNeeded(term)) {
+            return term;
+        }
         Query phrase = dqp.parse(DismaxQueryParser.IMPOSSIBLE_FIELD_NAME + ":\"" + query + "\"");
         return buildTopQuery(term, phrase);
     }
 
+    /**
+     * The phrase query is only added if a phrase query was built for one of the fields, which needs the text to be
+     * analysed into more than one term. If the term query has only a single term for every field then parsing the
+     * query again as a phrase is wasted.
+     *
+     * @param term
+     * @return false if the query cannot give a phrase query
+     */
+    protected boolean isPhraseQueryNeeded(Query term) {
+        if (!(term instanceof DisjunctionMaxQuery)) {
+            return true;
+        }
+        for (Query disjunct : ((DisjunctionMaxQuery) term).getDisjuncts()) {
+            if (!(disjunct instanceof TermQuery) && !(disjunct instanceof MultiTermQuery)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * If a phrase query was built then we create a boolean query that requires something to match in
      * the term query, under normal circumstances if nothing matches the term query nothing will match the phrase
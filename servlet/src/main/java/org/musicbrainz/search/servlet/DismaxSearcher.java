@@ -38,6 +38,9 @@ public class DismaxSearcher {
 
     private DismaxAlias dismaxAlias;
 
+    // DismaxQueryParser is not thread safe so parsers are borrowed from a pool
+    private final ParserPool<DismaxQueryParser> parserPool = new ParserPool<DismaxQueryParser>();
+
     public DismaxSearcher(DismaxAlias dismaxAlias)
     {
         this.dismaxAlias = dismaxAlias;
@@ -46,11 +49,28 @@ public class DismaxSearcher {
     public Query parseQuery(String query, Analyzer analyzer) throws ParseException
     {
         query= QueryParser.escape(query);
-        DismaxQueryParser queryParser = getParser(analyzer);
+        DismaxQueryParser queryParser = parserPool.borrow();
+        if (queryParser == null)
+        {
+            queryParser = getParser(analyzer);
+            queryParser.addAlias(DismaxQueryParser.IMPOSSIBLE_FIELD_NAME, dismaxAlias);
+        }
+        try
+        {
+            return queryParser.parse(query);
+        }
+        finally
+        {
+            parserPool.release(queryParser);
+        }
+    }
 
-        queryParser.addAlias(DismaxQueryParser.IMPOSSIBLE_FIELD_NAME, dismaxAlias);
-        Query q = queryParser.parse(query);
-        return q;
+    /**
+     * @return the pool of parsers, with the alias added, reused between queries
+     */
+    public ParserPool<DismaxQueryParser> getParserPool()
+    {
+        return parserPool;
     }
 
     protected DismaxQueryParser getParser(Analyzer analyzer)  {
@@ -0,0 +1,158 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.musicbrainz.search.index.RecordingIndexField;
+
+/**
+ * Measure the effect of early termination on a recording index built with --sort-by-popularity.
+ *
+ * Reads a file containing one lucene query per line, runs each query with and without early termination and reports
+ * how many of the top limit recordings are also returned when terminating early, and the time taken both ways.
+ */
+public class EarlyTerminationEvaluator {
+
+  public static void main(String[] args) throws Exception {
+
+    Options options = new Options();
+    CmdLineParser parser = new CmdLineParser(options);
+    try {
+      parser.parseArgument(args);
+    } catch (CmdLineException e) {
+      System.err.println("Couldn't parse command line parameters");
+      parser.printUsage(System.out);
+      System.exit(1);
+    }
+
+    File indexFileDir = new File(options.getIndexesDir() + System.getProperty("file.separator")
+        + ResourceType.RECORDING.getIndexName() + "_index");
+    Directory directory = options.isMMap() ? new MMapDirectory(indexFileDir) : new NIOFSDirectory(indexFileDir);
+    SearcherManager searcherManager = new SearcherManager(directory, new MusicBrainzSearcherFactory(ResourceType.RECORDING));
+
+    RecordingSearch exhaustive = new RecordingSearch(searcherManager);
+    RecordingSearch earlyTerminating = new RecordingSearch(searcherManager);
+    earlyTerminating.setEarlyTerminationDocs(options.getEarlyTerminationDocs());
+
+    int queries = 0;
+    int matched = 0;
+    int compared = 0;
+    long exhaustiveNanos = 0;
+    long earlyTerminatingNanos = 0;
+
+    BufferedReader in = new BufferedReader(new FileReader(options.getQueryFile()));
+    try {
+      String query;
+      while ((query = in.readLine()) != null) {
+        if (query.trim().length() == 0) {
+          continue;
+        }
+
+        long start = System.nanoTime();
+        Results expected = exhaustive.search(query, 0, options.getLimit());
+        exhaustiveNanos += System.nanoTime() - start;
+
+        start = System.nanoTime();
+        Results actual = earlyTerminating.search(query, 0, options.getLimit());
+        earlyTerminatingNanos += System.nanoTime() - start;
+
+        // Only the ids are compared so only load them
+        expected.setStoredFieldNames(Collections.singleton(RecordingIndexField.RECORDING_ID.getName()));
+        actual.setStoredFieldNames(Collections.singleton(RecordingIndexField.RECORDING_ID.getName()));
+        Set<String> ids = new HashSet<String>();
+        for (Result result : actual.results) {
+          ids.add(result.getDoc().get(RecordingIndexField.RECORDING_ID));
+        }
+        int overlap = 0;
+        for (Result result : expected.results) {
+          if (ids.contains(result.getDoc().get(RecordingIndexField.RECORDING_ID))) {
+            overlap++;
+          }
+        }
+        expected.release();
+        actual.release();
+        matched += overlap;
+        compared += expected.results.size();
+        queries++;
+        System.out.println(query + ":overlap:" + overlap + "/" + expected.results.size()
+            + ",totalhits:" + expected.getTotalHits() + "/" + actual.getTotalHits());
+      }
+    } finally {
+      in.close();
+    }
+    searcherManager.close();
+
+    if (queries == 0) {
+      System.out.println("No queries found in " + options.getQueryFile());
+      return;
+    }
+    System.out.println("Queries:" + queries);
+    System.out.println("Overlap@" + options.getLimit() + ":"
+        + String.format(Locale.ROOT, "%.1f", compared == 0 ? 100.0 : (matched * 100.0) / compared) + "%");
+    System.out.println("Average Exhaustive:" + (exhaustiveNanos / queries / 1000) + " micros");
+    System.out.println("Average Early Terminating:" + (earlyTerminatingNanos / queries / 1000) + " micros");
+  }
+
+  static class Options {
+
+    @Option(name = "--indexes-dir", aliases = { "-i" }, usage = "The directory containing the indexes.", required = true)
+    private String indexesDir = "";
+    public String getIndexesDir() { return indexesDir; }
+
+    @Option(name = "--query-file", aliases = { "-q" }, usage = "File containing one lucene query per line.", required = true)
+    private String queryFile = "";
+    public String getQueryFile() { return queryFile; }
+
+    @Option(name = "--early-terminate-docs", aliases = { "-e" }, usage = "Hits collected from each sorted segment (default: 1000)")
+    private int earlyTerminationDocs = 1000;
+    public int getEarlyTerminationDocs() { return earlyTerminationDocs; }
+
+    @Option(name = "--limit", aliases = { "-l" }, usage = "Number of top results compared (default: 25)")
+    private int limit = 25;
+    public int getLimit() { return limit; }
+
+    @Option(name = "--mmap", aliases = { "-m" }, usage = "Use memory mapped directory")
+    private boolean mmap = false;
+    public boolean isMMap() { return mmap; }
+  }
+}
@@ -0,0 +1,214 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * In process alternative to the rate limit server, allowing each ip address to make up to limit requests per period.
+ *
+ * Each ip address has a leaky bucket holding the number of requests made in the last period, leaking at limit/period
+ * requests per second. A request is allowed if it does not overfill the bucket, rejected requests are not counted.
+ *
+ * Buckets are split over a fixed number of stripes each with its own lock, so requests from different addresses
+ * rarely contend. Addresses are assigned to stripes by a well mixed hash because the String hash of similar addresses
+ * differs only in the low bits. Within a stripe buckets are held in least recently used order so those idle for longer
+ * than the period, which would be empty anyway, are cheaply removed from the front.
+ *
+ * The number of buckets is bounded over all the stripes rather than per stripe, so that addresses are only evicted
+ * once maxKeys addresses are tracked. An evicted address starts again with an empty bucket, so the least recently used
+ * bucket is evicted, normally one that has already leaked to empty.
+ */
+public class EmbeddedRateLimiter
+{
+    public static final int DEFAULT_LIMIT = 22;
+    public static final int DEFAULT_PERIOD_SECONDS = 20;
+    public static final int DEFAULT_MAX_KEYS = 100000;
+
+    private static final int NO_OF_STRIPES = 64;
+
+    private static final HashFunction STRIPE_HASH = Hashing.murmur3_32();
+
+    private final int limit;
+    private final int periodSeconds;
+    private final long periodNanos;
+    private final double leakPerNano;
+    private final int maxKeys;
+    private final Stripe[] stripes = new Stripe[NO_OF_STRIPES];
+    private final AtomicInteger size = new AtomicInteger();
+
+    private static class Bucket
+    {
+        private double level;
+        private long lastUpdated;
+    }
+
+    private static class Stripe extends LinkedHashMap<String, Bucket>
+    {
+        Stripe()
+        {
+            super(16, 0.75f, true);
+        }
+    }
+
+    /**
+     *
+     * @param limit number of requests allowed per period
+     * @param periodSeconds
+     * @param maxKeys maximum number of ip addresses tracked
+     */
+    public EmbeddedRateLimiter(int limit, int periodSeconds, int maxKeys)
+    {
+        this.limit = limit;
+        this.periodSeconds = periodSeconds;
+        this.periodNanos = TimeUnit.SECONDS.toNanos(periodSeconds);
+        this.leakPerNano = (double) limit / periodNanos;
+        this.maxKeys = Math.max(1, maxKeys);
+        for (int i = 0; i < NO_OF_STRIPES; i++)
+        {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Check request from ip address
+     *
+     * @param remoteIpAddress
+     * @return response with the same messages as the rate limit server would give
+     */
+    public RateLimiterChecker.RateLimiterResponse check(String remoteIpAddress)
+    {
+        return check(remoteIpAddress, System.nanoTime());
+    }
+
+    RateLimiterChecker.RateLimiterResponse check(String remoteIpAddress, long now)
+    {
+        int stripeNo = (STRIPE_HASH.hashString(remoteIpAddress, Charsets.UTF_8).asInt() & 0x7fffffff) % NO_OF_STRIPES;
+        Stripe stripe = stripes[stripeNo];
+        double rate;
+        boolean isAdded = false;
+        try
+        {
+            synchronized (stripe)
+            {
+                expireIdle(stripe, now);
+                Bucket bucket = stripe.get(remoteIpAddress);
+                if (bucket == null)
+                {
+                    bucket = new Bucket();
+                    stripe.put(remoteIpAddress, bucket);
+                    size.incrementAndGet();
+                    isAdded = true;
+                }
+                else
+                {
+                    bucket.level = Math.max(0, bucket.level - (now - bucket.lastUpdated) * leakPerNano);
+                }
+                bucket.lastUpdated = now;
+
+                rate = bucket.level + 1;
+                if (rate <= limit)
+                {
+                    bucket.level = rate;
+                    return RateLimiterChecker.ALWAYS_TRUE;
+                }
+            }
+        }
+        finally
+        {
+            if (isAdded && size.get() > maxKeys)
+            {
+                evictLeastRecentlyUsed(stripeNo, remoteIpAddress, now);
+            }
+        }
+        return new RateLimiterChecker.RateLimiterResponse(
+                String.format(Locale.US, "ok Y %.1f %d %d", rate, limit, periodSeconds));
+    }
+
+    /**
+     * Buckets are in least recently used order so remove from the front until find one used within the period
+     */
+    private void expireIdle(Stripe stripe, long now)
+    {
+        Iterator<Bucket> i = stripe.values().iterator();
+        while (i.hasNext())
+        {
+            if (now - i.next().lastUpdated < periodNanos)
+            {
+                break;
+            }
+            i.remove();
+            size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Remove the least recently used bucket of the stripe the new address was added to, or if that only holds the new
+     * address of the following stripes. Idle buckets of the stripes looked at are removed first. Only one stripe is
+     * locked at a time.
+     */
+    private void evictLeastRecentlyUsed(int stripeNo, String addedIpAddress, long now)
+    {
+        for (int i = 0; i < NO_OF_STRIPES; i++)
+        {
+            Stripe stripe = stripes[(stripeNo + i) % NO_OF_STRIPES];
+            synchronized (stripe)
+            {
+                expireIdle(stripe, now);
+                if (size.get() <= maxKeys)
+                {
+                    return;
+                }
+                Iterator<String> keys = stripe.keySet().iterator();
+                if (keys.hasNext() && !keys.next().equals(addedIpAddress))
+                {
+                    keys.remove();
+                    size.decrementAndGet();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of ip addresses currently tracked
+     */
+    public int size()
+    {
+        return size.get();
+    }
+}
@@ -34,7 +34,14 @@ public enum ErrorMessage {
     NO_MATCHES ("zero search hits"),    //Formatting as is because depended on by mb_server
     UNKNOWN_COUNT_TYPE ("Count parameter {0} not valid, should be a type "),
     UNABLE_TO_PARSE_SEARCH_SLASHES_ARE_REGEXP ("Unable to parse search, forward slash is used for regex unless escaped:{0}"),
-    REQUEST_TIMEOUT_EXCEEDED ("Search request timed out -- please wait a moment and try again")
+    REQUEST_TIMEOUT_EXCEEDED ("Search request timed out -- please wait a moment and try again"),
+    INVALID_CURSOR ("Cursor {0} not valid"),
+    CURSOR_EXPIRED ("Cursor has expired, please start again from the first page"),
+    SERVER_BUSY ("Search server is busy -- please wait a moment and try again"),
+    UNABLE_TO_PARSE_BATCH ("Unable to parse batch search:{0}"),
+    INVALID_BATCH_SIZE ("Batch search contains {0} searches, must contain between 1 and {1}"),
+    INVALID_SORT ("Sort {0} not valid for resource type {1}, should be one of {2}"),
+    SORT_NOT_SUPPORTED ("Sort is only supported when searching a single resource type without a cursor"),
     ;
 
     String msg;
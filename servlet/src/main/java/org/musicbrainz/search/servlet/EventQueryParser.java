@@ -0,0 +1,44 @@
+package org.musicbrainz.search.servlet;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.Query;
+import org.musicbrainz.search.LuceneVersion;
+import org.musicbrainz.search.index.EventIndexField;
+
+/**
+ * Subclasses QueryParser to search ranges of begin and end dates on the numeric fields holding them
+ */
+public class EventQueryParser extends QueryParser {
+
+    // Builds queries for the numeric fields in the format of the index
+    private final NumericFieldQueries numericFieldQueries;
+
+    /**
+     * @param field default field
+     * @param analyzer
+     * @param numericFieldQueries builds queries for the numeric fields in the format of the index
+     */
+    public EventQueryParser(String field, Analyzer analyzer, NumericFieldQueries numericFieldQueries) {
+        super(LuceneVersion.LUCENE_VERSION, field, analyzer);
+        this.numericFieldQueries = numericFieldQueries;
+    }
+
+    /**
+     * Ranges of begin and end dates are searched on the numeric fields holding them, if the index has them
+     */
+    @Override
+    public Query newRangeQuery(String field,
+                               String part1,
+                               String part2,
+                               boolean startInclusive,
+                               boolean endInclusive) {
+        Query query = null;
+        if (field.equals(EventIndexField.BEGIN.getName())) {
+            query = numericFieldQueries.newDateRangeQuery(EventIndexField.BEGIN_NUMERIC.getName(), part1, part2, startInclusive, endInclusive);
+        } else if (field.equals(EventIndexField.END.getName())) {
+            query = numericFieldQueries.newDateRangeQuery(EventIndexField.END_NUMERIC.getName(), part1, part2, startInclusive, endInclusive);
+        }
+        return query != null ? query : super.newRangeQuery(field, part1, part2, startInclusive, endInclusive);
+    }
+}
@@ -0,0 +1,200 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Refreshes each index of the current index set in the background as soon as a new commit of it is found, so that
+ * index updates become visible without the indexes having to be reloaded through the admin interface.
+ *
+ * Each index is checked on its own schedule and only refreshed when its commit generation has changed, so an update
+ * of the recording index does not reopen the other indexes. While an index is unchanged the time between checks
+ * doubles, up to the maximum staleness, and goes back to the check interval as soon as it changes. Every delay is
+ * jittered so that the indexes, and servers sharing the same index storage, do not all check at the same time.
+ */
+public class IndexRefreshScheduler {
+
+  public static final long DEFAULT_INTERVAL_MILLIS = 10000;
+  public static final long DEFAULT_MAX_STALENESS_MILLIS = 300000;
+  public static final int DEFAULT_JITTER_PERCENT = 20;
+
+  private final static Logger log = Logger.getLogger(IndexRefreshScheduler.class.getName());
+
+  private final AtomicReference<IndexSet> currentIndexSet;
+  private final long intervalMillis;
+  private final long maxStalenessMillis;
+  private final int jitterPercent;
+  private final ScheduledThreadPoolExecutor executor;
+  private final Random random = new Random();
+  private final Map<ResourceType, RefreshTask> tasks = new EnumMap<ResourceType, RefreshTask>(ResourceType.class);
+
+  /**
+   * Checks and refreshes one index, rescheduling itself after each check
+   */
+  private class RefreshTask implements Runnable {
+
+    private final ResourceType resourceType;
+    private volatile long delayMillis;
+    private final AtomicLong checks = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    RefreshTask(ResourceType resourceType) {
+      this.resourceType = resourceType;
+      this.delayMillis = intervalMillis;
+    }
+
+    @Override
+    public void run() {
+      try {
+        delayMillis = check() ? intervalMillis : Math.min(maxStalenessMillis, delayMillis * 2);
+      } catch (Exception e) {
+        failures.incrementAndGet();
+        delayMillis = intervalMillis;
+        log.log(Level.WARNING, "Unable to refresh " + resourceType.getIndexName() + ": " + e.getMessage(), e);
+      }
+      schedule(this, delayMillis);
+    }
+
+    /**
+     * @return true if the index had changed and was refreshed
+     * @throws Exception
+     */
+    private boolean check() throws Exception {
+      IndexSet indexSet = IndexSet.acquire(currentIndexSet);
+      if (indexSet == null) {
+        return false;
+      }
+      try {
+        SearchServer searchServer = indexSet.getSearchServer(resourceType, false);
+        if (searchServer == null || searchServer.getSearcherManager() == null) {
+          return false;
+        }
+        checks.incrementAndGet();
+        if (searchServer.getSearcherManager().isSearcherCurrent()) {
+          return false;
+        }
+        // Dismax search servers share the searcher manager so are refreshed too
+        searchServer.reloadIndex();
+        refreshes.incrementAndGet();
+        return true;
+      } finally {
+        indexSet.decRef();
+      }
+    }
+  }
+
+  /**
+   * @param currentIndexSet holds the index set currently published, whose indexes are refreshed
+   * @param intervalMillis time between checks of an index that has recently changed
+   * @param maxStalenessMillis maximum time between checks of an index that has not changed
+   * @param jitterPercent maximum random change to each delay, as a percentage of the delay
+   */
+  public IndexRefreshScheduler(AtomicReference<IndexSet> currentIndexSet, long intervalMillis, long maxStalenessMillis,
+      int jitterPercent) {
+    this.currentIndexSet = currentIndexSet;
+    this.intervalMillis = Math.max(1, intervalMillis);
+    this.maxStalenessMillis = Math.max(this.intervalMillis, maxStalenessMillis);
+    this.jitterPercent = Math.max(0, Math.min(100, jitterPercent));
+    this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "search-index-refresh");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    // Checks waiting for their delay to pass are dropped when shut down
+    this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    for (ResourceType resourceType : ResourceType.values()) {
+      tasks.put(resourceType, new RefreshTask(resourceType));
+    }
+  }
+
+  /**
+   * Start checking every index
+   */
+  public void start() {
+    for (RefreshTask task : tasks.values()) {
+      schedule(task, intervalMillis);
+    }
+  }
+
+  private void schedule(RefreshTask task, long delayMillis) {
+    try {
+      executor.schedule(task, jitter(delayMillis), TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException ree) {
+      // Shut down
+    }
+  }
+
+  /**
+   * @param delayMillis
+   * @return the delay changed by up to jitterPercent either way
+   */
+  long jitter(long delayMillis) {
+    long range = delayMillis * jitterPercent / 100;
+    if (range == 0) {
+      return delayMillis;
+    }
+    long offset;
+    synchronized (random) {
+      offset = (long) (random.nextDouble() * (2 * range + 1)) - range;
+    }
+    return Math.max(1, delayMillis + offset);
+  }
+
+  /**
+   * Stop checking, a refresh in progress is allowed to finish
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  /**
+   * @param resourceType
+   * @return number of checks, refreshes and failures of the index and the current delay between checks
+   */
+  public String getStats(ResourceType resourceType) {
+    RefreshTask task = tasks.get(resourceType);
+    return "checks:" + task.checks.get() + ",refreshes:" + task.refreshes.get() + ",failures:" + task.failures.get()
+        + ",delayms:" + task.delayMillis;
+  }
+}
@@ -0,0 +1,143 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+/**
+ * The search servers of one generation of the indexes.
+ *
+ * An index set is never modified once created, when the indexes are replaced a new index set is opened and warmed
+ * while requests continue to be served by the current one, then the new one is published in a single step. Requests
+ * hold a reference to the index set they are using, so the old index set is only closed once the requests using it
+ * have finished.
+ */
+public class IndexSet {
+
+  private final static Logger log = Logger.getLogger(IndexSet.class.getName());
+
+  private final long generation;
+  private final Map<ResourceType, SearchServer> searchers;
+  private final Map<ResourceType, SearchServer> dismaxSearchers;
+  private final boolean isSearchAllEnabled;
+
+  // Starts with the reference held by whoever publishes the index set
+  private final AtomicInteger refCount = new AtomicInteger(1);
+
+  /**
+   * @param generation
+   * @param searchers search server of each index, null if the index could not be opened
+   * @param dismaxSearchers dismax search server of each index, null if the index could not be opened
+   * @param isSearchAllEnabled true if every index used by type=all could be opened
+   */
+  public IndexSet(long generation, Map<ResourceType, SearchServer> searchers,
+      Map<ResourceType, SearchServer> dismaxSearchers, boolean isSearchAllEnabled) {
+    this.generation = generation;
+    this.searchers = Collections.unmodifiableMap(new EnumMap<ResourceType, SearchServer>(searchers));
+    this.dismaxSearchers = Collections.unmodifiableMap(new EnumMap<ResourceType, SearchServer>(dismaxSearchers));
+    this.isSearchAllEnabled = isSearchAllEnabled;
+  }
+
+  /**
+   * @param current holds the index set currently published
+   * @return the current index set with a reference taken that must be released with decRef(), or null if no index set
+   *         has been published
+   */
+  public static IndexSet acquire(AtomicReference<IndexSet> current) {
+    while (true) {
+      IndexSet indexSet = current.get();
+      if (indexSet == null || indexSet.tryIncRef()) {
+        return indexSet;
+      }
+      // Replaced and closed since read so try again with its replacement
+    }
+  }
+
+  public long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * @param resourceType
+   * @param isDismax
+   * @return the search server, or null if the index is not available
+   */
+  public SearchServer getSearchServer(ResourceType resourceType, boolean isDismax) {
+    return isDismax ? dismaxSearchers.get(resourceType) : searchers.get(resourceType);
+  }
+
+  public boolean isSearchAllEnabled() {
+    return isSearchAllEnabled;
+  }
+
+  /**
+   * @return true if the reference was taken, false if the index set has already been closed
+   */
+  public boolean tryIncRef() {
+    while (true) {
+      int count = refCount.get();
+      if (count <= 0) {
+        return false;
+      }
+      if (refCount.compareAndSet(count, count + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Release a reference, closing the search servers when the last reference is released
+   */
+  public void decRef() {
+    if (refCount.decrementAndGet() == 0) {
+      close();
+    }
+  }
+
+  private void close() {
+    // Dismax search servers share the search server they wrap so only those need closing
+    for (Map.Entry<ResourceType, SearchServer> next : searchers.entrySet()) {
+      if (next.getValue() == null) {
+        continue;
+      }
+      try {
+        next.getValue().close();
+      } catch (IOException e) {
+        log.severe("Caught exception during closing of index searcher: " + next.getKey().getIndexName() + ":"
+            + e.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,206 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Warms a newly opened index set before it is published by replaying a list of queries, typically recent queries
+ * taken from the production logs, so that the first real requests do not have to wait for the index to be paged in.
+ *
+ * Each line of the queries file is the type, optionally followed by :dismax, then a tab and then the query, e.g.
+ *
+ * <pre>
+ * recording	"love me do" AND artist:beatles
+ * artist:dismax	beatles
+ * </pre>
+ *
+ * Blank lines and lines starting with # are ignored.
+ */
+public class IndexWarmer {
+
+  public static final long DEFAULT_TIME_ALLOWED_MILLIS = 60000;
+
+  // Number of results requested by each query, the default limit of the web service
+  private static final int WARMUP_LIMIT = 25;
+
+  private static final String DISMAX_SUFFIX = ":dismax";
+
+  private final static Logger log = Logger.getLogger(IndexWarmer.class.getName());
+
+  /**
+   * A query to replay
+   */
+  public static class WarmupQuery {
+    private final ResourceType resourceType;
+    private final boolean isDismax;
+    private final String query;
+
+    public WarmupQuery(ResourceType resourceType, boolean isDismax, String query) {
+      this.resourceType = resourceType;
+      this.isDismax = isDismax;
+      this.query = query;
+    }
+
+    public ResourceType getResourceType() {
+      return resourceType;
+    }
+
+    public boolean isDismax() {
+      return isDismax;
+    }
+
+    public String getQuery() {
+      return query;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof WarmupQuery)) {
+        return false;
+      }
+      WarmupQuery other = (WarmupQuery) o;
+      return resourceType == other.resourceType && isDismax == other.isDismax && query.equals(other.query);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * resourceType.hashCode() + (isDismax ? 1 : 0)) + query.hashCode();
+    }
+  }
+
+  private final List<WarmupQuery> queries;
+  private final long timeAllowedMillis;
+
+  /**
+   * @param queries queries to replay
+   * @param timeAllowedMillis maximum time spent warming an index set, any queries not replayed by then are skipped
+   */
+  public IndexWarmer(List<WarmupQuery> queries, long timeAllowedMillis) {
+    this.queries = Collections.unmodifiableList(new ArrayList<WarmupQuery>(queries));
+    this.timeAllowedMillis = timeAllowedMillis;
+  }
+
+  /**
+   * Read the queries file, lines with an unknown type are skipped
+   *
+   * @param file
+   * @return
+   * @throws IOException
+   */
+  public static List<WarmupQuery> readQueries(File file) throws IOException {
+    List<WarmupQuery> queries = new ArrayList<WarmupQuery>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), Charsets.UTF_8));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        WarmupQuery warmupQuery = parseLine(line);
+        if (warmupQuery != null) {
+          queries.add(warmupQuery);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return queries;
+  }
+
+  /**
+   * @param line
+   * @return the query, or null if the line is blank, a comment or not valid
+   */
+  static WarmupQuery parseLine(String line) {
+    if (line.trim().length() == 0 || line.startsWith("#")) {
+      return null;
+    }
+    int tab = line.indexOf('\t');
+    if (tab < 0 || tab == line.length() - 1) {
+      return null;
+    }
+    String type = line.substring(0, tab);
+    boolean isDismax = type.endsWith(DISMAX_SUFFIX);
+    if (isDismax) {
+      type = type.substring(0, type.length() - DISMAX_SUFFIX.length());
+    }
+    ResourceType resourceType = ResourceType.getValue(type);
+    if (resourceType == null) {
+      return null;
+    }
+    return new WarmupQuery(resourceType, isDismax, line.substring(tab + 1));
+  }
+
+  public List<WarmupQuery> getQueries() {
+    return queries;
+  }
+
+  /**
+   * Replay the queries against the index set, failures are ignored as the aim is only to load the index
+   *
+   * @param indexSet
+   * @return number of queries replayed
+   */
+  public int warm(IndexSet indexSet) {
+    long start = System.currentTimeMillis();
+    int replayed = 0;
+    int failed = 0;
+    for (WarmupQuery warmupQuery : queries) {
+      if (System.currentTimeMillis() - start > timeAllowedMillis) {
+        break;
+      }
+      SearchServer searchServer = indexSet.getSearchServer(warmupQuery.getResourceType(), warmupQuery.isDismax());
+      if (searchServer == null) {
+        continue;
+      }
+      try {
+        // The results hold the searcher until released, they are not written so release them straight away
+        Results results = searchServer.search(warmupQuery.getQuery(), 0, WARMUP_LIMIT);
+        results.release();
+      } catch (Exception e) {
+        failed++;
+      }
+      replayed++;
+    }
+    log.info("Warmed index generation " + indexSet.getGeneration() + " with " + replayed + " of " + queries.size()
+        + " queries (" + failed + " failed) in " + (System.currentTimeMillis() - start) + "ms");
+    return replayed;
+  }
+}
@@ -14,9 +14,18 @@ import org.musicbrainz.search.servlet.mmd1.LabelType;
 public class LabelQueryParser extends MultiFieldQueryParser
 {
 
-    public LabelQueryParser(java.lang.String[] strings, org.apache.lucene.analysis.Analyzer analyzer)
+    // Builds queries for the numeric fields in the format of the index
+    private final NumericFieldQueries numericFieldQueries;
+
+    /**
+     * @param strings default fields
+     * @param analyzer
+     * @param numericFieldQueries builds queries for the numeric fields in the format of the index
+     */
+    public LabelQueryParser(java.lang.String[] strings, org.apache.lucene.analysis.Analyzer analyzer, NumericFieldQueries numericFieldQueries)
     {
         super(LuceneVersion.LUCENE_VERSION, strings, analyzer);
+        this.numericFieldQueries = numericFieldQueries;
     }
 
     @Override
@@ -49,4 +58,23 @@ public class LabelQueryParser extends MultiFieldQueryParser
 
         }
     }
+
+    /**
+     * Ranges of begin and end dates are searched on the numeric fields holding them, if the index has them
+     */
+    @Override
+    public Query newRangeQuery(String field,
+                               String part1,
+                               String part2,
+                               boolean startInclusive,
+                               boolean endInclusive)
+    {
+        Query query = null;
+        if (field.equals(LabelIndexField.BEGIN.getName())) {
+            query = numericFieldQueries.newDateRangeQuery(LabelIndexField.BEGIN_NUMERIC.getName(), part1, part2, startInclusive, endInclusive);
+        } else if (field.equals(LabelIndexField.END.getName())) {
+            query = numericFieldQueries.newDateRangeQuery(LabelIndexField.END_NUMERIC.getName(), part1, part2, startInclusive, endInclusive);
+        }
+        return query != null ? query : super.newRangeQuery(field, part1, part2, startInclusive, endInclusive);
+    }
 }
@@ -39,7 +39,7 @@ public class LabelSearch extends AbstractSearchServer {
 
   @Override
   public QueryParser getParser() {
-    return new LabelQueryParser(defaultFields.toArray(new String[0]), analyzer);
+    return new LabelQueryParser(defaultFields.toArray(new String[0]), analyzer, getNumericFieldQueries());
   }
 
   @Override
@@ -0,0 +1,135 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of latencies in the style of HdrHistogram, recording in microseconds with values bucketed by
+ * their power of two and then linearly within each power of two, so the relative error of a percentile is at most
+ * 1/SUB_BUCKETS whatever the magnitude. Recording is a couple of shifts and an atomic increment so it can be done
+ * for every phase of every search.
+ */
+public class LatencyHistogram {
+
+  // Linear buckets within each power of two, must be a power of two
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  // Enough for values up to 2^40 microseconds (about 12 days)
+  private static final int MAX_EXPONENT = 40;
+  private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  /**
+   * @param nanos latency to record
+   */
+  public void record(long nanos) {
+    long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+    counts.incrementAndGet(getBucket(micros));
+    count.incrementAndGet();
+    totalMicros.addAndGet(micros);
+    long max = maxMicros.get();
+    while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+      max = maxMicros.get();
+    }
+  }
+
+  static int getBucket(long micros) {
+    if (micros < SUB_BUCKETS) {
+      return (int) micros;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKETS - 1;
+    }
+    int shift = exponent - SUB_BUCKET_BITS;
+    int subBucket = (int) (micros >>> shift) & (SUB_BUCKETS - 1);
+    return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * @param bucket
+   * @return highest value that falls in the bucket
+   */
+  static long getBucketHighestValue(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+    long subBucket = SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getMaxMicros() {
+    return maxMicros.get();
+  }
+
+  public long getMeanMicros() {
+    long n = count.get();
+    return n == 0 ? 0 : totalMicros.get() / n;
+  }
+
+  /**
+   * Percentile of the values recorded, as values are recorded concurrently this is only approximate
+   *
+   * @param percentile between 0 and 100
+   * @return value in microseconds that percentile of the values recorded are less than or equal to
+   */
+  public long getPercentileMicros(double percentile) {
+    long total = 0;
+    long[] snapshot = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= target) {
+        return Math.min(getBucketHighestValue(i), maxMicros.get());
+      }
+    }
+    return maxMicros.get();
+  }
+}
@@ -0,0 +1,346 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopDocsCollector;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.TimeLimitingCollector.TimeExceededException;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/**
+ * IndexSearcher that can search groups of segments (slices) of the index in parallel using a shared
+ * ParallelSearchExecutor, falling back to searching sequentially when the executor is busy.
+ *
+ * Unlike the executor support built into IndexSearcher this works with the collectors wrapping the top docs collector
+ * (time limiting, early termination) because each slice gets its own wrapped collector.
+ */
+public class MusicBrainzIndexSearcher extends IndexSearcher {
+
+  /**
+   * Wrap the collector used for each slice
+   */
+  public interface CollectorWrapper {
+    Collector wrap(Collector collector);
+  }
+
+  public static final CollectorWrapper NO_WRAPPER = new CollectorWrapper() {
+    @Override
+    public Collector wrap(Collector collector) {
+      return collector;
+    }
+  };
+
+  /**
+   * The hits collected before the time allowed ran out
+   */
+  public static class PartialTopDocs extends TopDocs {
+    public PartialTopDocs(TopDocs topDocs) {
+      super(topDocs.totalHits, topDocs.scoreDocs, topDocs.getMaxScore());
+    }
+  }
+
+  private final ParallelSearchExecutor parallelSearchExecutor;
+  private final List<List<AtomicReaderContext>> slices;
+
+  /**
+   * @param reader
+   * @param parallelSearchExecutor executor used to search slices, or null to always search sequentially
+   */
+  public MusicBrainzIndexSearcher(IndexReader reader, ParallelSearchExecutor parallelSearchExecutor) {
+    super(reader);
+    this.parallelSearchExecutor = parallelSearchExecutor;
+    this.slices = parallelSearchExecutor != null
+        ? createSlices(leafContexts, parallelSearchExecutor.getMinDocsPerSlice())
+        : new ArrayList<List<AtomicReaderContext>>();
+  }
+
+  /**
+   * Group the segments in index order, adding segments to a slice until it contains at least minDocsPerSlice documents
+   *
+   * @param leaves
+   * @param minDocsPerSlice
+   * @return
+   */
+  static List<List<AtomicReaderContext>> createSlices(List<AtomicReaderContext> leaves, int minDocsPerSlice) {
+    List<List<AtomicReaderContext>> slices = new ArrayList<List<AtomicReaderContext>>();
+    List<AtomicReaderContext> slice = new ArrayList<AtomicReaderContext>();
+    int docs = 0;
+    for (AtomicReaderContext leaf : leaves) {
+      slice.add(leaf);
+      docs += leaf.reader().maxDoc();
+      if (docs >= minDocsPerSlice) {
+        slices.add(slice);
+        slice = new ArrayList<AtomicReaderContext>();
+        docs = 0;
+      }
+    }
+    if (!slice.isEmpty()) {
+      slices.add(slice);
+    }
+    return slices;
+  }
+
+  /**
+   * @return number of slices searched in parallel, zero if never searched in parallel
+   */
+  public int getSliceCount() {
+    return slices.size();
+  }
+
+  /**
+   * Search for the top numHits matches after the given hit
+   *
+   * @param query
+   * @param numHits
+   * @param after last hit of the previous page, or null
+   * @param wrapper wraps the collector used for each slice
+   * @return
+   * @throws IOException
+   */
+  public TopDocs searchTopDocs(Query query, int numHits, ScoreDoc after, CollectorWrapper wrapper) throws IOException {
+    return searchTopDocs(query, numHits, after, wrapper, false);
+  }
+
+  /**
+   * Search for the top numHits matches after the given hit
+   *
+   * @param query
+   * @param numHits
+   * @param after last hit of the previous page, or null
+   * @param wrapper wraps the collector used for each slice
+   * @param allowPartial if the time limit is exceeded return the hits collected so far rather than throwing
+   *          TimeExceededException
+   * @return the top hits, a PartialTopDocs if the time limit was exceeded
+   * @throws IOException
+   */
+  public TopDocs searchTopDocs(Query query, int numHits, ScoreDoc after, CollectorWrapper wrapper,
+      boolean allowPartial) throws IOException {
+    return searchTopDocs(query, numHits, after, null, wrapper, allowPartial);
+  }
+
+  /**
+   * Search for the top numHits matches in the given order after the given hit
+   *
+   * @param query
+   * @param numHits
+   * @param after last hit of the previous page, or null, must be a FieldDoc when sorting
+   * @param sort order of the hits, or null to order by relevance
+   * @param wrapper wraps the collector used for each slice
+   * @param allowPartial if the time limit is exceeded return the hits collected so far rather than throwing
+   *          TimeExceededException
+   * @return the top hits, a PartialTopDocs if the time limit was exceeded
+   * @throws IOException
+   */
+  public TopDocs searchTopDocs(Query query, final int numHits, final ScoreDoc after, final Sort sort,
+      final CollectorWrapper wrapper, final boolean allowPartial) throws IOException {
+
+    if (slices.size() <= 1 || !parallelSearchExecutor.tryAcquire()) {
+      TopDocsCollector<?> collector = createTopDocsCollector(numHits, after, sort);
+      try {
+        search(query, wrapper.wrap(collector));
+      } catch (TimeExceededException tee) {
+        if (!allowPartial) {
+          throw tee;
+        }
+        return new PartialTopDocs(collector.topDocs());
+      }
+      return collector.topDocs();
+    }
+
+    List<SliceSearch> searches = new ArrayList<SliceSearch>(slices.size());
+    List<Future<TopDocs>> futures = new ArrayList<Future<TopDocs>>(slices.size());
+    boolean isComplete = false;
+    try {
+      Weight weight = createNormalizedWeight(query);
+      for (List<AtomicReaderContext> slice : slices) {
+        SliceSearch search = new SliceSearch(slice, weight, numHits, after, sort, wrapper, allowPartial);
+        searches.add(search);
+        futures.add(parallelSearchExecutor.getExecutor().submit(search));
+      }
+
+      TopDocs[] shardHits = new TopDocs[futures.size()];
+      boolean isPartial = false;
+      for (int i = 0; i < shardHits.length; i++) {
+        shardHits[i] = getSliceResult(futures.get(i));
+        isPartial |= shardHits[i] instanceof PartialTopDocs;
+      }
+      isComplete = true;
+      TopDocs topDocs = TopDocs.merge(sort, numHits, shardHits);
+      return isPartial ? new PartialTopDocs(topDocs) : topDocs;
+    } finally {
+      if (!isComplete) {
+        cancelSliceSearches(searches, futures);
+      }
+      parallelSearchExecutor.release();
+    }
+  }
+
+  /**
+   * Search of one slice run by the executor, which can be cancelled up until it starts
+   */
+  private class SliceSearch implements Callable<TopDocs> {
+    private static final int QUEUED = 0;
+    private static final int STARTED = 1;
+    private static final int CANCELLED = 2;
+
+    private final AtomicInteger state = new AtomicInteger(QUEUED);
+    private final List<AtomicReaderContext> slice;
+    private final Weight weight;
+    private final int numHits;
+    private final ScoreDoc after;
+    private final Sort sort;
+    private final CollectorWrapper wrapper;
+    private final boolean allowPartial;
+
+    SliceSearch(List<AtomicReaderContext> slice, Weight weight, int numHits, ScoreDoc after, Sort sort,
+        CollectorWrapper wrapper, boolean allowPartial) {
+      this.slice = slice;
+      this.weight = weight;
+      this.numHits = numHits;
+      this.after = after;
+      this.sort = sort;
+      this.wrapper = wrapper;
+      this.allowPartial = allowPartial;
+    }
+
+    @Override
+    public TopDocs call() throws IOException {
+      if (!state.compareAndSet(QUEUED, STARTED)) {
+        return null;
+      }
+      TopDocsCollector<?> collector = createTopDocsCollector(numHits, after, sort);
+      try {
+        search(slice, weight, wrapper.wrap(collector));
+      } catch (TimeExceededException tee) {
+        if (!allowPartial) {
+          throw tee;
+        }
+        return new PartialTopDocs(collector.topDocs());
+      }
+      return collector.topDocs();
+    }
+
+    /**
+     * @return true if the search had not started so never will, false if it has to be waited for
+     */
+    boolean cancel() {
+      return state.compareAndSet(QUEUED, CANCELLED);
+    }
+  }
+
+  /**
+   * When one slice failed the searches not yet started are cancelled, and those already running are waited for, so
+   * that no slice is still searching the reader once the executor permit is released and the searcher may be closed
+   *
+   * @param searches
+   * @param futures
+   */
+  private void cancelSliceSearches(List<SliceSearch> searches, List<Future<TopDocs>> futures) {
+    boolean interrupted = false;
+    for (int i = 0; i < futures.size(); i++) {
+      Future<TopDocs> future = futures.get(i);
+      if (searches.get(i).cancel()) {
+        // Never runs so remove it from the queue of the executor
+        future.cancel(false);
+        continue;
+      }
+      while (true) {
+        try {
+          future.get();
+          break;
+        } catch (InterruptedException ie) {
+          interrupted = true;
+        } catch (ExecutionException ee) {
+          // Only the first failure is reported
+          break;
+        } catch (CancellationException ce) {
+          break;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Create the collector of the top hits, when sorting the sort values are filled in so that the hits from each slice
+   * can be merged, and scores are still tracked so that they can be returned with the hits
+   *
+   * @param numHits
+   * @param after last hit of the previous page, or null, must be a FieldDoc when sorting
+   * @param sort order of the hits, or null to order by relevance
+   * @return
+   * @throws IOException
+   */
+  public static TopDocsCollector<?> createTopDocsCollector(int numHits, ScoreDoc after, Sort sort) throws IOException {
+    if (sort == null) {
+      return TopScoreDocCollector.create(numHits, after, true);
+    }
+    return TopFieldCollector.create(sort, numHits, (FieldDoc) after, true, true, true, true);
+  }
+
+  private TopDocs getSliceResult(Future<TopDocs> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException ie) {
+      throw new ThreadInterruptedException(ie);
+    } catch (ExecutionException ee) {
+      Throwable cause = ee.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+}
@@ -10,15 +10,35 @@ import org.apache.lucene.search.similarities.Similarity;
 public class MusicBrainzSearcherFactory extends SearcherFactory {
 
   private final ResourceType resourceType;
+  private final ParallelSearchExecutor parallelSearchExecutor;
+  private volatile SearcherWarmer searcherWarmer;
 
   public MusicBrainzSearcherFactory(ResourceType resourceType) {
+    this(resourceType, null);
+  }
+
+  /**
+   * @param resourceType
+   * @param parallelSearchExecutor shared executor used to search slices of the index in parallel, or null to always
+   *          search sequentially
+   */
+  public MusicBrainzSearcherFactory(ResourceType resourceType, ParallelSearchExecutor parallelSearchExecutor) {
     this.resourceType = resourceType;
+    this.parallelSearchExecutor = parallelSearchExecutor;
+  }
+
+  /**
+   * @param searcherWarmer warms searchers opened by refreshing the index before they are used, or null to use them
+   *          cold
+   */
+  public void setSearcherWarmer(SearcherWarmer searcherWarmer) {
+    this.searcherWarmer = searcherWarmer;
   }
 
   @Override
   public IndexSearcher newSearcher(IndexReader reader) throws IOException {
 
-    IndexSearcher searcher = super.newSearcher(reader);
+    IndexSearcher searcher = new MusicBrainzIndexSearcher(reader, parallelSearchExecutor);
 
     // Try to set the similarity if it's defined by the ResourceType
     if (this.resourceType.getSimilarityClass() != null) {
@@ -32,6 +52,11 @@ public class MusicBrainzSearcherFactory extends SearcherFactory {
       }
     }
 
+    SearcherWarmer warmer = searcherWarmer;
+    if (warmer != null) {
+      warmer.warm(searcher);
+    }
+
     return searcher;
   }
 
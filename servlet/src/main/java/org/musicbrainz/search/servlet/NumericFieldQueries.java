@@ -0,0 +1,187 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.musicbrainz.search.MbDocument;
+import org.musicbrainz.search.index.DatabaseIndex;
+import org.musicbrainz.search.index.Utils;
+
+/**
+ * Builds queries for the numeric fields of an index, integral numeric fields are indexed as tries so must be searched
+ * with a NumericRangeQuery using the precision step the index was built with.
+ */
+public class NumericFieldQueries {
+
+  // Indexes built before the format was recorded
+  public static final NumericFieldQueries LEGACY = new NumericFieldQueries(MbDocument.LEGACY_NUMERIC_PRECISION_STEP, 1);
+
+  // First format version with dates also indexed as numeric fields
+  private static final int NUMERIC_DATES_FORMAT_VERSION = 3;
+
+  private final int precisionStep;
+  private final int formatVersion;
+
+  /**
+   * @param precisionStep precision step the integral numeric fields of the index are indexed with
+   * @param formatVersion version of the format of the index
+   */
+  public NumericFieldQueries(int precisionStep, int formatVersion) {
+    this.precisionStep = precisionStep;
+    this.formatVersion = formatVersion;
+  }
+
+  /**
+   * @param metaDocument meta document of the index
+   * @return queries for the numeric fields of the index
+   */
+  public static NumericFieldQueries forIndex(MbDocument metaDocument) {
+    return new NumericFieldQueries(DatabaseIndex.getNumericPrecisionStep(metaDocument),
+        DatabaseIndex.getFormatVersion(metaDocument));
+  }
+
+  public int getPrecisionStep() {
+    return precisionStep;
+  }
+
+  public int getFormatVersion() {
+    return formatVersion;
+  }
+
+  /**
+   * @return true if dates are also indexed as numeric fields
+   */
+  public boolean hasNumericDates() {
+    return formatVersion >= NUMERIC_DATES_FORMAT_VERSION;
+  }
+
+  /**
+   * @param field
+   * @param text
+   * @return query matching the value, or null if text is not an integer
+   */
+  public Query newIntQuery(String field, String text) {
+    Integer value = parseInt(text);
+    if (value == null) {
+      return null;
+    }
+    return NumericRangeQuery.newIntRange(field, precisionStep, value, value, true, true);
+  }
+
+  /**
+   * @param field
+   * @param part1 lower bound, null or * if open ended
+   * @param part2 upper bound, null or * if open ended
+   * @param startInclusive
+   * @param endInclusive
+   * @return query matching the range, or null if a bound is not an integer
+   */
+  public Query newIntRangeQuery(String field, String part1, String part2, boolean startInclusive,
+      boolean endInclusive) {
+    Integer min = null;
+    Integer max = null;
+    if (!isOpen(part1)) {
+      min = parseInt(part1);
+      if (min == null) {
+        return null;
+      }
+    }
+    if (!isOpen(part2)) {
+      max = parseInt(part2);
+      if (max == null) {
+        return null;
+      }
+    }
+    return NumericRangeQuery.newIntRange(field, precisionStep, min, max, startInclusive, endInclusive);
+  }
+
+  /**
+   * Range of dates searched on the day resolution numeric field holding them, bounds can be partial dates such as
+   * [1995 TO 1999-06] which matches from the start of 1995 to the end of June 1999.
+   *
+   * @param numericField numeric field the dates are indexed in
+   * @param part1 lower bound, null or * if open ended
+   * @param part2 upper bound, null or * if open ended
+   * @param startInclusive
+   * @param endInclusive
+   * @return query matching the range, or null if the index has no numeric dates or a bound is not a date
+   */
+  public Query newDateRangeQuery(String numericField, String part1, String part2, boolean startInclusive,
+      boolean endInclusive) {
+    if (!hasNumericDates()) {
+      return null;
+    }
+    Integer min = null;
+    Integer max = null;
+    if (!isOpen(part1)) {
+      // Excluding a partial date excludes the whole period it covers
+      min = Utils.dateToInt(part1, !startInclusive);
+      if (min == null) {
+        return null;
+      }
+    }
+    if (!isOpen(part2)) {
+      max = Utils.dateToInt(part2, endInclusive);
+      if (max == null) {
+        return null;
+      }
+    }
+    return NumericRangeQuery.newIntRange(numericField, precisionStep, min, max, startInclusive, endInclusive);
+  }
+
+  private static boolean isOpen(String bound) {
+    return bound == null || bound.equals("*");
+  }
+
+  private static Integer parseInt(String text) {
+    try {
+      return Integer.valueOf(text.trim());
+    } catch (NumberFormatException nfe) {
+      return null;
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof NumericFieldQueries)) {
+      return false;
+    }
+    NumericFieldQueries other = (NumericFieldQueries) o;
+    return precisionStep == other.precisionStep && formatVersion == other.formatVersion;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * precisionStep + formatVersion;
+  }
+}
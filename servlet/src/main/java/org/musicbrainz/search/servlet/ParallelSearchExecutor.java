@@ -0,0 +1,124 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread pool shared by all indexes for searching the segment slices of one query in parallel.
+ *
+ * Only maxConcurrentQueries queries can be fanned out at once, any further queries are searched sequentially on the
+ * request thread so that under peak load, when every core is already busy with its own request, parallel search
+ * just falls away rather than queueing slices behind each other. If all the threads are busy a slice is run on the
+ * calling thread, even once shut down so that searchers still in use after the pool has been shut down keep working.
+ */
+public class ParallelSearchExecutor {
+
+  public static final int DEFAULT_MIN_DOCS_PER_SLICE = 250000;
+
+  private final ThreadPoolExecutor executor;
+  private final Semaphore permits;
+  private final int minDocsPerSlice;
+
+  private final AtomicLong parallelSearches = new AtomicLong();
+  private final AtomicLong sequentialFallbacks = new AtomicLong();
+
+  /**
+   * @param threads number of threads searching slices
+   * @param maxConcurrentQueries maximum number of queries searched in parallel at the same time
+   * @param minDocsPerSlice small segments are grouped together into slices of at least this many documents
+   */
+  public ParallelSearchExecutor(int threads, int maxConcurrentQueries, int minDocsPerSlice) {
+    this.permits = new Semaphore(maxConcurrentQueries);
+    this.minDocsPerSlice = minDocsPerSlice;
+    this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+        new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "search-slice-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        }, new RejectedExecutionHandler() {
+          @Override
+          public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            r.run();
+          }
+        });
+  }
+
+  public ThreadPoolExecutor getExecutor() {
+    return executor;
+  }
+
+  public int getMinDocsPerSlice() {
+    return minDocsPerSlice;
+  }
+
+  /**
+   * Must be followed by release() if returns true
+   *
+   * @return true if the query may be searched in parallel, false if it should be searched sequentially
+   */
+  public boolean tryAcquire() {
+    if (permits.tryAcquire()) {
+      parallelSearches.incrementAndGet();
+      return true;
+    }
+    sequentialFallbacks.incrementAndGet();
+    return false;
+  }
+
+  public void release() {
+    permits.release();
+  }
+
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  /**
+   * @return one line summary of the counters
+   */
+  public String getStats() {
+    return "parallel:" + parallelSearches.get()
+        + ",sequentialfallbacks:" + sequentialFallbacks.get()
+        + ",activethreads:" + executor.getActiveCount()
+        + ",threads:" + executor.getMaximumPoolSize();
+  }
+}
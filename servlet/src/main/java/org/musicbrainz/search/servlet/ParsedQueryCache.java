@@ -0,0 +1,144 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.search.Query;
+
+/**
+ * Cache of parsed queries keyed by the query string as entered by the user, holding at most maxEntries queries with
+ * the least recently used removed first.
+ *
+ * Parsing does not depend on the index contents so entries stay valid across index reloads. Each lookup returns a
+ * clone so callers may change the boost of the returned query, but the clone is shallow so the clauses of the query
+ * are still shared between requests and must never be modified.
+ */
+public class ParsedQueryCache {
+
+  public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+  private final Map<String, Query> entries;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong parseTimeNanos = new AtomicLong();
+
+  /**
+   * @param maxEntries maximum number of parsed queries held
+   */
+  public ParsedQueryCache(final int maxEntries) {
+    entries = new LinkedHashMap<String, Query>(Math.min(maxEntries, 256), 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Query> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * @param query
+   * @return a clone of the parsed query or null if not cached
+   */
+  public Query get(String query) {
+    Query parsed;
+    synchronized (this) {
+      parsed = entries.get(query);
+    }
+    if (parsed == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return parsed.clone();
+  }
+
+  /**
+   * Add newly parsed query, a clone is held so the caller may go on using the query it parsed
+   *
+   * @param query
+   * @param parsed
+   * @param parseTime time taken to parse in nanoseconds
+   */
+  public void put(String query, Query parsed, long parseTime) {
+    parseTimeNanos.addAndGet(parseTime);
+    synchronized (this) {
+      entries.put(query, parsed.clone());
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Remove all parsed queries, when the way queries are parsed has changed
+   */
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  /**
+   * @return hits as percentage of all lookups
+   */
+  public double getHitRate() {
+    long lookups = hits.get() + misses.get();
+    return lookups == 0 ? 0 : (hits.get() * 100.0) / lookups;
+  }
+
+  /**
+   * @return average time taken to parse a query not found in the cache in microseconds
+   */
+  public long getAverageParseTimeMicros() {
+    long parsed = misses.get();
+    return parsed == 0 ? 0 : parseTimeNanos.get() / parsed / 1000;
+  }
+
+  /**
+   * @return one line summary of the cache counters
+   */
+  public String getStats() {
+    return "hits:" + hits.get()
+        + ",misses:" + misses.get()
+        + ",hitrate:" + String.format(Locale.ROOT, "%.1f", getHitRate())
+        + ",entries:" + size()
+        + ",avgparsemicros:" + getAverageParseTimeMicros();
+  }
+}
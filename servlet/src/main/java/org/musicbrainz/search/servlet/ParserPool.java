@@ -0,0 +1,69 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.musicbrainz.search.servlet;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Pool of query parsers, which are not thread safe, so that each parser is only used by one thread at a time but is
+ * reused rather than created for every query.
+ *
+ * The parsers belong to the pool so are discarded along with the search server that owns it when the servlet is
+ * reinitialised, whereas parsers held in a ThreadLocal stay reachable from every request thread that used them.
+ *
+ * @param <T> the parser class
+ */
+public class ParserPool<T> {
+
+  private final Queue<T> idle = new ConcurrentLinkedQueue<T>();
+
+  /**
+   * @return an idle parser for use by the current thread only until it is released, or null if the caller has to
+   *         create a new one
+   */
+  public T borrow() {
+    return idle.poll();
+  }
+
+  /**
+   * Return a parser obtained from borrow(), or created because none was idle, so it can be reused
+   *
+   * @param parser
+   */
+  public void release(T parser) {
+    idle.offer(parser);
+  }
+
+  /**
+   * @return number of parsers waiting to be reused
+   */
+  public int getIdleCount() {
+    return idle.size();
+  }
+}
@@ -20,9 +20,18 @@ import org.musicbrainz.search.servlet.mmd1.ReleaseGroupType;
 public class PlaceQueryParser extends MultiFieldQueryParser
 {
 
-    public PlaceQueryParser(String[] strings, Analyzer analyzer)
+    // Builds queries for the numeric fields in the format of the index
+    private final NumericFieldQueries numericFieldQueries;
+
+    /**
+     * @param strings default fields
+     * @param analyzer
+     * @param numericFieldQueries builds queries for the numeric fields in the format of the index
+     */
+    public PlaceQueryParser(String[] strings, Analyzer analyzer, NumericFieldQueries numericFieldQueries)
     {
         super(LuceneVersion.LUCENE_VERSION, strings, analyzer);
+        this.numericFieldQueries = numericFieldQueries;
     }
 
     @Override
@@ -58,6 +67,16 @@ public class PlaceQueryParser extends MultiFieldQueryParser
                                boolean startInclusive,
                                boolean endInclusive)
     {
+        Query dateQuery = null;
+        if (field.equals(PlaceIndexField.BEGIN.getName())) {
+            dateQuery = numericFieldQueries.newDateRangeQuery(PlaceIndexField.BEGIN_NUMERIC.getName(), part1, part2, startInclusive, endInclusive);
+        } else if (field.equals(PlaceIndexField.END.getName())) {
+            dateQuery = numericFieldQueries.newDateRangeQuery(PlaceIndexField.END_NUMERIC.getName(), part1, part2, startInclusive, endInclusive);
+        }
+        if (dateQuery != null) {
+            return dateQuery;
+        }
+
         if (
                 (field.equals(PlaceIndexField.LONG.getName())) ||
                 (field.equals(PlaceIndexField.LAT.getName()))
@@ -38,7 +38,7 @@ public class PlaceSearch extends AbstractSearchServer {
 
   @Override
   public QueryParser getParser() {
-    return new PlaceQueryParser(defaultFields.toArray(new String[0]), analyzer);
+    return new PlaceQueryParser(defaultFields.toArray(new String[0]), analyzer, getNumericFieldQueries());
   }
 
   @Override
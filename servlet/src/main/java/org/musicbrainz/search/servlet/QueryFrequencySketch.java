@@ -0,0 +1,158 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.musicbrainz.search.servlet.IndexWarmer.WarmupQuery;
+
+/**
+ * Approximate counts of how often each query of one resource type is searched for, used to find the most frequent
+ * queries to warm a refreshed index with.
+ *
+ * Memory is bounded by pruning the counts back to the most frequent queries once twice as many queries are being
+ * counted as are kept. Pruning also halves the remaining counts, so queries that were frequent a long time ago are
+ * eventually replaced by the queries frequent now.
+ */
+public class QueryFrequencySketch {
+
+  public static final int DEFAULT_CAPACITY = 1000;
+
+  // Longer queries are rare enough not to be worth counting
+  static final int MAX_QUERY_LENGTH = 256;
+
+  private static final Comparator<Map.Entry<WarmupQuery, Long>> BY_COUNT_DESCENDING =
+      new Comparator<Map.Entry<WarmupQuery, Long>>() {
+        @Override
+        public int compare(Map.Entry<WarmupQuery, Long> o1, Map.Entry<WarmupQuery, Long> o2) {
+          return o2.getValue().compareTo(o1.getValue());
+        }
+      };
+
+  private final ResourceType resourceType;
+  private final int capacity;
+  private final ConcurrentMap<WarmupQuery, AtomicLong> counts = new ConcurrentHashMap<WarmupQuery, AtomicLong>();
+  private final ReentrantLock pruneLock = new ReentrantLock();
+
+  /**
+   * @param resourceType
+   * @param capacity number of queries kept when pruning
+   */
+  public QueryFrequencySketch(ResourceType resourceType, int capacity) {
+    this.resourceType = resourceType;
+    this.capacity = Math.max(1, capacity);
+  }
+
+  /**
+   * Count a search
+   *
+   * @param query
+   * @param isDismax
+   */
+  public void record(String query, boolean isDismax) {
+    if (query == null || query.length() == 0 || query.length() > MAX_QUERY_LENGTH) {
+      return;
+    }
+    WarmupQuery key = new WarmupQuery(resourceType, isDismax, query);
+    AtomicLong count = counts.get(key);
+    if (count == null) {
+      AtomicLong created = new AtomicLong();
+      count = counts.putIfAbsent(key, created);
+      if (count == null) {
+        count = created;
+      }
+    }
+    count.incrementAndGet();
+
+    // Only one thread prunes, the others carry on counting
+    if (counts.size() > 2 * capacity && pruneLock.tryLock()) {
+      try {
+        prune();
+      } finally {
+        pruneLock.unlock();
+      }
+    }
+  }
+
+  private void prune() {
+    List<Map.Entry<WarmupQuery, Long>> entries = getEntriesByCount();
+    for (int i = 0; i < entries.size(); i++) {
+      Map.Entry<WarmupQuery, Long> entry = entries.get(i);
+      if (i < capacity) {
+        AtomicLong count = counts.get(entry.getKey());
+        if (count != null) {
+          count.addAndGet(-(entry.getValue() / 2));
+        }
+      } else {
+        counts.remove(entry.getKey());
+      }
+    }
+  }
+
+  private List<Map.Entry<WarmupQuery, Long>> getEntriesByCount() {
+    // Copy the counts first as sorting while they change could break the sort
+    List<Map.Entry<WarmupQuery, Long>> entries = new ArrayList<Map.Entry<WarmupQuery, Long>>(counts.size());
+    for (Map.Entry<WarmupQuery, AtomicLong> entry : counts.entrySet()) {
+      entries.add(new AbstractMap.SimpleImmutableEntry<WarmupQuery, Long>(entry.getKey(), entry.getValue().get()));
+    }
+    Collections.sort(entries, BY_COUNT_DESCENDING);
+    return entries;
+  }
+
+  /**
+   * @param k
+   * @return up to k queries, most frequent first
+   */
+  public List<WarmupQuery> getTopQueries(int k) {
+    List<WarmupQuery> topQueries = new ArrayList<WarmupQuery>();
+    for (Map.Entry<WarmupQuery, Long> entry : getEntriesByCount()) {
+      if (topQueries.size() >= k) {
+        break;
+      }
+      topQueries.add(entry.getKey());
+    }
+    return topQueries;
+  }
+
+  /**
+   * @return number of distinct queries currently counted
+   */
+  public int size() {
+    return counts.size();
+  }
+}
@@ -0,0 +1,216 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.search.ReferenceManager;
+
+/**
+ * Cache of serialized search responses for one index, bounded by the total size of the cached responses with the
+ * least recently used responses evicted first.
+ *
+ * The whole cache is invalidated whenever the searcher manager publishes a new searcher, each entry is tagged with the
+ * generation it was searched against so that a response built from an old searcher is never added after the cache
+ * has been invalidated.
+ */
+public class QueryResultCache implements ReferenceManager.RefreshListener {
+
+  private final long maxBytes;
+  private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<String, byte[]>(256, 0.75f, true);
+  private long bytes;
+  private long generation;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+
+  /**
+   * @param maxBytes maximum total size of the cached responses
+   */
+  public QueryResultCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Build the key identifying a response, whitespace in the query is normalized because it never changes the result
+   *
+   * @param isDismax
+   * @param query
+   * @param offset
+   * @param limit
+   * @param responseFormat
+   * @param responseVersion
+   * @param isPretty
+   * @return
+   */
+  public static String createKey(boolean isDismax, String query, int offset, int limit, String responseFormat,
+      String responseVersion, boolean isPretty) {
+    return createKey(isDismax, query, offset, limit, null, responseFormat, responseVersion, isPretty);
+  }
+
+  /**
+   * Build the key identifying a response, whitespace in the query is normalized because it never changes the result
+   *
+   * @param isDismax
+   * @param query
+   * @param offset
+   * @param limit
+   * @param sort sort parameter, or null if sorted by relevance
+   * @param responseFormat
+   * @param responseVersion
+   * @param isPretty
+   * @return
+   */
+  public static String createKey(boolean isDismax, String query, int offset, int limit, String sort,
+      String responseFormat, String responseVersion, boolean isPretty) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(isDismax ? 'd' : 'l').append(isPretty ? 'p' : 'c');
+    if (sort != null) {
+      sb.append('s').append(sort);
+    }
+    sb.append(':').append(responseVersion);
+    sb.append(':').append(responseFormat);
+    sb.append(':').append(offset);
+    sb.append(':').append(limit);
+    sb.append(':').append(query.trim().replaceAll("\\s+", " "));
+    return sb.toString();
+  }
+
+  /**
+   * @param key
+   * @return the cached response or null if not cached
+   */
+  public byte[] get(String key) {
+    byte[] content;
+    synchronized (this) {
+      content = entries.get(key);
+    }
+    if (content == null) {
+      misses.incrementAndGet();
+    } else {
+      hits.incrementAndGet();
+    }
+    return content;
+  }
+
+  /**
+   * @return the current generation, should be read before searching and passed to put()
+   */
+  public synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Add response to the cache unless the index has been refreshed since the search was started
+   *
+   * @param key
+   * @param searchGeneration generation when the search was started
+   * @param content the serialized response
+   */
+  public void put(String key, long searchGeneration, byte[] content) {
+    if (content.length > maxBytes) {
+      return;
+    }
+    synchronized (this) {
+      if (searchGeneration != generation) {
+        return;
+      }
+      byte[] previous = entries.put(key, content);
+      if (previous != null) {
+        bytes -= previous.length;
+      }
+      bytes += content.length;
+
+      Iterator<Map.Entry<String, byte[]>> i = entries.entrySet().iterator();
+      while (bytes > maxBytes && i.hasNext()) {
+        bytes -= i.next().getValue().length;
+        i.remove();
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Remove all responses and move to the next generation
+   */
+  public synchronized void invalidate() {
+    entries.clear();
+    bytes = 0;
+    generation++;
+    invalidations.incrementAndGet();
+  }
+
+  @Override
+  public void beforeRefresh() {
+  }
+
+  @Override
+  public void afterRefresh(boolean didRefresh) {
+    if (didRefresh) {
+      invalidate();
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * @return one line summary of the cache counters
+   */
+  public String getStats() {
+    return "hits:" + hits.get()
+        + ",misses:" + misses.get()
+        + ",evictions:" + evictions.get()
+        + ",invalidations:" + invalidations.get()
+        + ",entries:" + size()
+        + ",bytes:" + getBytes();
+  }
+}
@@ -2,12 +2,8 @@ package org.musicbrainz.search.servlet;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.SocketException;
-import java.rmi.UnknownHostException;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.net.InetSocketAddress;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -34,21 +30,47 @@ public class RateLimiterChecker {
     private static InetAddress  rateLimiterHost;
     private static Integer      rateLimiterPort;
     private static boolean      rateLimiterConfigured =false;
-    private static final String OVER_LIMIT_SEARCH_IP = " over_limit search ip=";
-    private static AtomicInteger count = new AtomicInteger(0);
 
 
 
-    private static final RateLimiterResponse ALWAYS_TRUE = new RateLimiterResponse();
-    private static final int MAX_SIZE_OFRESPONSE_PACKET = 100;
+    private static EmbeddedRateLimiter embeddedRateLimiter;
+    private static volatile UdpRateLimiterClient rateLimiterClient;
 
-    public static void init(String host, String port)
+    static final RateLimiterResponse ALWAYS_TRUE = new RateLimiterResponse();
+
+    private static boolean initPattern()
     {
         try {
             pe = Pattern.compile("^(?:[0-9]{1,3}\\.){3}[0-9]{1,3}$");
         }
         catch(PatternSyntaxException pe) {
                     log.log(Level.SEVERE, "Unable to compile pattern:"+pe.getMessage(),pe);
+            return false;
+        }
+        return true;
+    }
+
+    public static void init(String host, String port)
+    {
+        init(host, port, UdpRateLimiterClient.DEFAULT_TIMEOUT_MILLIS, UdpRateLimiterClient.DEFAULT_FAILURE_THRESHOLD,
+                UdpRateLimiterClient.DEFAULT_OPEN_MILLIS);
+    }
+
+    /**
+     * Use the rate limit server
+     *
+     * @param host
+     * @param port
+     * @param timeoutMillis how long to wait for a reply before allowing the request
+     * @param failureThreshold number of failed requests in a row before no longer asking the rate limit server
+     * @param openMillis how long to stop asking the rate limit server for
+     */
+    public static void init(String host, String port, long timeoutMillis, int failureThreshold, long openMillis)
+    {
+        embeddedRateLimiter = null;
+        closeClient();
+        rateLimiterConfigured =false;
+        if(!initPattern()) {
             return;
         }
 
@@ -68,6 +90,46 @@ public class RateLimiterChecker {
             return;
         }
 
+        try {
+            rateLimiterClient = new UdpRateLimiterClient(new InetSocketAddress(rateLimiterHost, rateLimiterPort.intValue()),
+                    timeoutMillis, failureThreshold, openMillis);
+        }
+        catch(IOException ioe) {
+            log.log(Level.SEVERE, "Unable to init rate limiter:"+ioe.getMessage(),ioe);
+            return;
+        }
+
+        rateLimiterConfigured =true;
+    }
+
+    private static void closeClient()
+    {
+        if(rateLimiterClient!=null) {
+            try {
+                rateLimiterClient.close();
+            }
+            catch(IOException ioe) {
+                log.log(Level.WARNING, "Unable to close rate limiter client:"+ioe.getMessage(),ioe);
+            }
+            rateLimiterClient=null;
+        }
+    }
+
+    /**
+     * Use the in process rate limiter rather than the rate limit server
+     *
+     * @param limit number of requests allowed per period for each ip address
+     * @param periodSeconds
+     * @param maxKeys maximum number of ip addresses tracked
+     */
+    public static void initEmbedded(int limit, int periodSeconds, int maxKeys)
+    {
+        closeClient();
+        rateLimiterConfigured =false;
+        if(!initPattern()) {
+            return;
+        }
+        embeddedRateLimiter = new EmbeddedRateLimiter(limit, periodSeconds, maxKeys);
         rateLimiterConfigured =true;
     }
 
@@ -100,53 +162,21 @@ public class RateLimiterChecker {
      */
     private static RateLimiterResponse validateAgainstRateLimiter(String remoteIpAddress)
     {
-        DatagramSocket ds = null;
-        try {
-
-            int requestId = count.incrementAndGet();
-            String requestIdAsString = String.valueOf(requestId);
-
-            //Send Request
-            String rateLimiter=requestId+OVER_LIMIT_SEARCH_IP+remoteIpAddress;
-            byte[] msg = rateLimiter.getBytes();
-            ds = new DatagramSocket();
-            DatagramPacket dp = new DatagramPacket(msg,msg.length,rateLimiterHost,rateLimiterPort.intValue());
-            ds.send(dp);
-
-            //Get Response
-            byte[] receiveData = new byte[MAX_SIZE_OFRESPONSE_PACKET];
-            DatagramPacket dpReceive = new DatagramPacket(receiveData, receiveData.length);
-            ds.receive(dpReceive);
-
-            //Parse Response
-            String result = new String(dpReceive.getData(), dpReceive.getOffset(), dpReceive.getLength());
-            if(result.startsWith(requestIdAsString)) {
-                RateLimiterResponse rlr = new RateLimiterResponse(result.substring(requestIdAsString.length() + 1));
-                return rlr;
-            }
-            //RequestId not matching so just let through
-            else {
-                return ALWAYS_TRUE;
-            }
-        }
-        catch(UnknownHostException uhe) {
-            log.log(Level.SEVERE, "ValidateAgainstRateLimiter:"+uhe.getMessage(),uhe);
-        }
-        catch(SocketException se) {
-            log.log(Level.SEVERE, "ValidateAgainstRateLimiter:"+se.getMessage(),se);
-
-        }
-        catch(IOException ioe) {
-            log.log(Level.SEVERE, "ValidateAgainstRateLimiter:"+ioe.getMessage(),ioe);
-        }
-        finally
+        UdpRateLimiterClient client = rateLimiterClient;
+        if(client==null)
         {
-            if(ds!=null && !ds.isClosed())
-            {
-                ds.close();
-            }
+            return ALWAYS_TRUE;
         }
-        return ALWAYS_TRUE;
+        return client.check(remoteIpAddress);
+    }
+
+    /**
+     * @return statistics of the rate limiter client, or null if not using the rate limit server
+     */
+    public static String getStats()
+    {
+        UdpRateLimiterClient client = rateLimiterClient;
+        return client != null ? client.getStats() : null;
     }
 
     /**
@@ -173,6 +203,10 @@ public class RateLimiterChecker {
         {
             return ALWAYS_TRUE;
         }
+        if(embeddedRateLimiter!=null)
+        {
+            return embeddedRateLimiter.check(remoteIpAddress);
+        }
         return validateAgainstRateLimiter(remoteIpAddress);
     }
 
@@ -6,9 +6,6 @@ import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TermRangeQuery;
-import org.apache.lucene.util.BytesRefBuilder;
-import org.apache.lucene.util.NumericUtils;
 import org.musicbrainz.search.LuceneVersion;
 import org.musicbrainz.search.index.RecordingIndexField;
 import org.musicbrainz.search.servlet.mmd1.ReleaseGroupType;
@@ -21,8 +18,17 @@ import org.musicbrainz.search.servlet.mmd1.V1TrackIndexField;
  */
 public class RecordingQueryParser extends MultiFieldQueryParser {
 
-    public RecordingQueryParser(java.lang.String[] strings, Analyzer a) {
+    // Builds queries for the numeric fields in the format of the index
+    private final NumericFieldQueries numericFieldQueries;
+
+    /**
+     * @param strings default fields
+     * @param a
+     * @param numericFieldQueries builds queries for the numeric fields in the format of the index
+     */
+    public RecordingQueryParser(java.lang.String[] strings, Analyzer a, NumericFieldQueries numericFieldQueries) {
         super(LuceneVersion.LUCENE_VERSION, strings, a);
+        this.numericFieldQueries = numericFieldQueries;
     }
 
     @Override
@@ -35,18 +41,9 @@ public class RecordingQueryParser extends MultiFieldQueryParser {
                         (term.field().equals(RecordingIndexField.NUM_TRACKS_RELEASE.getName()))
                                                 )
                 {
-            try
-            {
-                int number = Integer.parseInt(term.text());
-                BytesRefBuilder bytes = new BytesRefBuilder();
-                NumericUtils.intToPrefixCoded(number, 0, bytes);
-                TermQuery tq = new TermQuery(new Term(term.field(), bytes.toBytesRef().utf8ToString()));
-                return tq;
-            }
-            catch (NumberFormatException nfe) {
-                //If not provided numeric argument just leave as is, won't give matches 
-                return super.newTermQuery(term);
-            }
+            Query query = numericFieldQueries.newIntQuery(term.field(), term.text());
+            //If not provided numeric argument just leave as is, won't give matches
+            return query != null ? query : super.newTermQuery(term);
 
         } else if( term.field().equals(RecordingIndexField.RELEASE_TYPE.getName())) {
             try {
@@ -111,16 +108,19 @@ public class RecordingQueryParser extends MultiFieldQueryParser {
                 (field.equals(RecordingIndexField.NUM_TRACKS_RELEASE.getName()))
                 )
         {
-            BytesRefBuilder bytes1 = new BytesRefBuilder();
-            BytesRefBuilder bytes2 = new BytesRefBuilder();
-            NumericUtils.intToPrefixCoded(Integer.parseInt(part1), 0, bytes1);
-            NumericUtils.intToPrefixCoded(Integer.parseInt(part2), 0, bytes2);
-            part1 = bytes1.toBytesRef().utf8ToString();
-            part2 = bytes2.toBytesRef().utf8ToString();
+            Query query = numericFieldQueries.newIntRangeQuery(field, part1, part2, startInclusive, endInclusive);
+            if (query != null) {
+                return query;
+            }
+        }
+        else if (field.equals(RecordingIndexField.RELEASE_DATE.getName()))
+        {
+            Query query = numericFieldQueries.newDateRangeQuery(RecordingIndexField.RELEASE_DATE_NUMERIC.getName(), part1, part2, startInclusive, endInclusive);
+            if (query != null) {
+                return query;
+            }
         }
-        TermRangeQuery query = (TermRangeQuery)
-                super.newRangeQuery(field, part1, part2, startInclusive, endInclusive);
-        return query;
+        return super.newRangeQuery(field, part1, part2, startInclusive, endInclusive);
 
     }
 
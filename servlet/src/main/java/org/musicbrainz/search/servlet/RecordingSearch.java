@@ -8,8 +8,10 @@ import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TopDocs;
 import org.musicbrainz.search.index.DatabaseIndex;
+import org.musicbrainz.search.index.RecordingIndex;
 import org.musicbrainz.search.index.RecordingIndexField;
 import org.musicbrainz.search.servlet.mmd1.TrackMmd1XmlWriter;
 import org.musicbrainz.search.servlet.mmd2.RecordingWriter;
@@ -39,7 +41,12 @@ public class RecordingSearch extends AbstractSearchServer {
 
   @Override
   public QueryParser getParser() {
-    return new RecordingQueryParser(defaultFields.toArray(new String[0]), analyzer);
+    return new RecordingQueryParser(defaultFields.toArray(new String[0]), analyzer, getNumericFieldQueries());
+  }
+
+  @Override
+  protected Sort getIndexSort() {
+    return RecordingIndex.POPULARITY_SORT;
   }
 
   @Override
@@ -38,6 +38,14 @@ public class ReleaseDismaxQueryParser extends DismaxQueryParser {
         dqp = new ReleaseDisjunctionQueryParser(IMPOSSIBLE_FIELD_NAME, analyzer);
     }
 
+    /**
+     * A single term catalogno is still added as part of the phrase query, so it is always needed
+     */
+    @Override
+    protected boolean isPhraseQueryNeeded(Query term) {
+        return true;
+    }
+
     /**
      * A catalogno may have been entered with spaces, this will incorrectly be treated as two separate tokens
      * by the term query whereas the phrase query will correctly analyse it into one term. So in this case
@@ -38,7 +38,7 @@ public class ReleaseGroupSearch extends AbstractSearchServer {
 
   @Override
   public QueryParser getParser() {
-    return new ReleaseGroupQueryParser(defaultFields.toArray(new String[0]), analyzer);
+    return new ReleaseGroupQueryParser(defaultFields.toArray(new String[0]), analyzer, getNumericFieldQueries());
   }
 
   @Override
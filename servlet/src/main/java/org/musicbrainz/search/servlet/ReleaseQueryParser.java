@@ -5,9 +5,6 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TermRangeQuery;
-import org.apache.lucene.util.BytesRefBuilder;
-import org.apache.lucene.util.NumericUtils;
 import org.musicbrainz.search.LuceneVersion;
 import org.musicbrainz.search.index.LabelIndexField;
 import org.musicbrainz.search.index.ReleaseIndexField;
@@ -21,8 +18,17 @@ import org.musicbrainz.search.servlet.mmd1.ReleaseStatus;
  */
 public class ReleaseQueryParser extends MultiFieldQueryParser {
 
-    public ReleaseQueryParser(java.lang.String[] strings, Analyzer a) {
+    // Builds queries for the numeric fields in the format of the index
+    private final NumericFieldQueries numericFieldQueries;
+
+    /**
+     * @param strings default fields
+     * @param a
+     * @param numericFieldQueries builds queries for the numeric fields in the format of the index
+     */
+    public ReleaseQueryParser(java.lang.String[] strings, Analyzer a, NumericFieldQueries numericFieldQueries) {
         super(LuceneVersion.LUCENE_VERSION, strings, a);
+        this.numericFieldQueries = numericFieldQueries;
     }
 
     protected Query newTermQuery(Term term) {
@@ -61,18 +67,9 @@ public class ReleaseQueryParser extends MultiFieldQueryParser {
                 (term.field().equals(ReleaseIndexField.NUM_DISCIDS.getName())) ||
                 (term.field().equals(ReleaseIndexField.NUM_DISCIDS_MEDIUM.getName()))
                 ){
-            try {
-
-                int number = Integer.parseInt(term.text());
-                BytesRefBuilder bytes = new BytesRefBuilder();
-                NumericUtils.intToPrefixCoded(number, 0, bytes);
-                TermQuery tq = new TermQuery(new Term(term.field(), bytes.toBytesRef().utf8ToString()));
-return tq;
-            }
-            catch (NumberFormatException nfe) {
-                //If not provided numeric argument just leave as is, won't give matches
-                return super.newTermQuery(term);
-            }
+            Query query = numericFieldQueries.newIntQuery(term.field(), term.text());
+            //If not provided numeric argument just leave as is, won't give matches
+            return query != null ? query : super.newTermQuery(term);
         } else {
             return super.newTermQuery(term);
 
@@ -94,16 +91,19 @@ return tq;
                 (field.equals(ReleaseIndexField.NUM_DISCIDS_MEDIUM.getName()))
             )
         {
-            BytesRefBuilder bytes1 = new BytesRefBuilder();
-            BytesRefBuilder bytes2 = new BytesRefBuilder();
-            NumericUtils.intToPrefixCoded(Integer.parseInt(part1), 0, bytes1);
-            NumericUtils.intToPrefixCoded(Integer.parseInt(part2), 0, bytes2);
-            part1 = bytes1.toBytesRef().utf8ToString();
-            part2 = bytes2.toBytesRef().utf8ToString();
+            Query query = numericFieldQueries.newIntRangeQuery(field, part1, part2, startInclusive, endInclusive);
+            if (query != null) {
+                return query;
+            }
+        }
+        else if (field.equals(ReleaseIndexField.DATE.getName()))
+        {
+            Query query = numericFieldQueries.newDateRangeQuery(ReleaseIndexField.DATE_NUMERIC.getName(), part1, part2, startInclusive, endInclusive);
+            if (query != null) {
+                return query;
+            }
         }
-        TermRangeQuery query = (TermRangeQuery)
-                super.newRangeQuery(field, part1, part2, startInclusive, endInclusive);
-        return query;
+        return super.newRangeQuery(field, part1, part2, startInclusive, endInclusive);
 
     }
 }
@@ -38,7 +38,7 @@ public class ReleaseSearch extends AbstractSearchServer {
 
   @Override
   public QueryParser getParser() {
-    return new ReleaseQueryParser(defaultFields.toArray(new String[0]), analyzer);
+    return new ReleaseQueryParser(defaultFields.toArray(new String[0]), analyzer, getNumericFieldQueries());
   }
 
   @Override
@@ -41,11 +41,17 @@ public enum RequestParameter {
     DISMAX("dismax"),
     EXPLAIN("explain"),
     PRETTY("pretty"),
+    CURSOR("cursor"),
+    SORT("sort"),
+    READY("ready"),
     // For admin only
     INIT ("init"),
     RELOAD_INDEXES ("reload"),
     RATE("rate"),
     GC("gc"),
+    STATS("stats"),
+    METRICS("metrics"),
+    SLOW_QUERIES("slowqueries"),
     ;
     
     private String name;
@@ -1,5 +1,10 @@
 package org.musicbrainz.search.servlet;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
 import org.apache.lucene.search.similarities.Similarity;
 import org.musicbrainz.search.analysis.MusicbrainzSimilarity;
 import org.musicbrainz.search.analysis.RecordingSimilarity;
@@ -8,23 +13,24 @@ import org.musicbrainz.search.index.*;
 
 /**
  * Defines the name of the webservice resources as defined at http://wiki.musicbrainz.org/XML_Web_Service#The_URL_Schema
+ * and the keys their results can be sorted by
  */
 public enum ResourceType {
   AREA("area", AreaIndex.class, AreaSearch.class, AreaDismaxSearch.class, MusicbrainzSimilarity.class, false),
-  ARTIST("artist", ArtistIndex.class, ArtistSearch.class, ArtistDismaxSearch.class, MusicbrainzSimilarity.class, true),
+  ARTIST("artist", ArtistIndex.class, ArtistSearch.class, ArtistDismaxSearch.class, MusicbrainzSimilarity.class, true, SortKey.NAME, SortKey.DATE),
   INSTRUMENT("instrument", InstrumentIndex.class, InstrumentSearch.class, InstrumentDismaxSearch.class, MusicbrainzSimilarity.class, true),
-  LABEL("label", LabelIndex.class, LabelSearch.class, LabelDismaxSearch.class, MusicbrainzSimilarity.class, true),
+  LABEL("label", LabelIndex.class, LabelSearch.class, LabelDismaxSearch.class, MusicbrainzSimilarity.class, true, SortKey.NAME, SortKey.DATE),
   PLACE("place", PlaceIndex.class, PlaceSearch.class, PlaceDismaxSearch.class, MusicbrainzSimilarity.class, false),
-  EVENT("event", EventIndex.class, EventSearch.class, EventDismaxSearch.class, MusicbrainzSimilarity.class, false),
-  RELEASE("release", ReleaseIndex.class, ReleaseSearch.class, ReleaseDismaxSearch.class, true),
-  RELEASE_GROUP("release-group", ReleaseGroupIndex.class, ReleaseGroupSearch.class, ReleaseGroupDismaxSearch.class, ReleaseGroupSimilarity.class, true),
-  RECORDING("recording", RecordingIndex.class, RecordingSearch.class, RecordingDismaxSearch.class, RecordingSimilarity.class, true),
+  EVENT("event", EventIndex.class, EventSearch.class, EventDismaxSearch.class, MusicbrainzSimilarity.class, false, SortKey.NAME, SortKey.DATE),
+  RELEASE("release", ReleaseIndex.class, ReleaseSearch.class, ReleaseDismaxSearch.class, true, SortKey.NAME, SortKey.DATE, SortKey.TRACKS),
+  RELEASE_GROUP("release-group", ReleaseGroupIndex.class, ReleaseGroupSearch.class, ReleaseGroupDismaxSearch.class, ReleaseGroupSimilarity.class, true, SortKey.NAME),
+  RECORDING("recording", RecordingIndex.class, RecordingSearch.class, RecordingDismaxSearch.class, RecordingSimilarity.class, true, SortKey.NAME, SortKey.DATE, SortKey.DURATION),
   CDSTUB("cdstub", CDStubIndex.class, CDStubSearch.class, CDStubDismaxSearch.class, false),
   FREEDB("freedb", FreeDBIndex.class, FreeDBSearch.class, FreeDBDismaxSearch.class, false),
   ANNOTATION("annotation", AnnotationIndex.class, AnnotationSearch.class, AnnotationDismaxSearch.class, false),
   SERIES("series", SeriesIndex.class, SeriesSearch.class, SeriesDismaxSearch.class, MusicbrainzSimilarity.class, true),
   EDITOR("editor", EditorIndex.class, EditorSearch.class, EditorDismaxSearch.class, MusicbrainzSimilarity.class, true),
-  WORK("work", WorkIndex.class, WorkSearch.class, WorkDismaxSearch.class, true),
+  WORK("work", WorkIndex.class, WorkSearch.class, WorkDismaxSearch.class, true, SortKey.NAME),
   TAG("tag", TagIndex.class, TagSearch.class, TagDismaxSearch.class, false),
   URL("url", UrlIndex.class, UrlSearch.class, UrlDismaxSearch.class, false),
   ;
@@ -35,10 +41,12 @@ public enum ResourceType {
   private Class<AbstractDismaxSearchServer> dismaxSearchServerClass;
   private Class<Similarity> similarityClass = null;
   private boolean isUsedBySearchAll;
+  private Set<SortKey> sortKeys = EnumSet.noneOf(SortKey.class);
 
   ResourceType(String name, Class indexClass, Class searchServerClass, Class dismaxSearchServerClass,
-      boolean isUsedBySearchAll) {
+      boolean isUsedBySearchAll, SortKey... sortKeys) {
     this.isUsedBySearchAll = isUsedBySearchAll;
+    this.sortKeys.addAll(Arrays.asList(sortKeys));
     this.name = name;
     this.searchServerClass = searchServerClass;
     this.dismaxSearchServerClass = dismaxSearchServerClass;
@@ -54,8 +62,8 @@ public enum ResourceType {
   }
 
   ResourceType(String name, Class indexClass, Class searchServerClass, Class dismaxSearchServerClass,
-      Class similarityClass, boolean isUsedBySearchAll) {
-    this(name, indexClass, searchServerClass, dismaxSearchServerClass, isUsedBySearchAll);
+      Class similarityClass, boolean isUsedBySearchAll, SortKey... sortKeys) {
+    this(name, indexClass, searchServerClass, dismaxSearchServerClass, isUsedBySearchAll, sortKeys);
     this.similarityClass = similarityClass;
   }
 
@@ -90,4 +98,11 @@ public enum ResourceType {
   public Class<Similarity> getSimilarityClass() {
     return similarityClass;
   }
+
+  /**
+   * @return keys the results can be sorted by, the index of the resource type writes a doc values field for each
+   */
+  public Set<SortKey> getSortKeys() {
+    return Collections.unmodifiableSet(sortKeys);
+  }
 }
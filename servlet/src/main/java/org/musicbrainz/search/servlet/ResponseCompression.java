@@ -0,0 +1,233 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression of responses negotiated from the Accept-Encoding request header.
+ *
+ * Responses are compressed as they are written rather than being built in memory first, the time spent compressing
+ * is added to the COMPRESS phase of the timings of the request.
+ */
+public class ResponseCompression {
+
+  public static final int DEFAULT_LEVEL = 6;
+
+  public static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+  public static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+
+  // Size of the buffer of compressed output written to the client
+  private static final int BUFFER_SIZE = 8192;
+
+  public enum Encoding {
+    GZIP("gzip"),
+    DEFLATE("deflate"),
+    IDENTITY("identity"),
+    ;
+
+    private final String name;
+
+    Encoding(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+  }
+
+  private final int level;
+
+  /**
+   * @param level compression level from 1 (fastest) to 9 (smallest), 0 disables compression
+   */
+  public ResponseCompression(int level) {
+    this.level = Math.max(0, Math.min(Deflater.BEST_COMPRESSION, level));
+  }
+
+  public boolean isEnabled() {
+    return level > 0;
+  }
+
+  /**
+   * Choose the encoding the client prefers, gzip is preferred over deflate when the client has no preference
+   *
+   * @param acceptEncoding value of the Accept-Encoding header, or null
+   * @return the encoding to use, IDENTITY if the response should not be compressed
+   */
+  public Encoding negotiate(String acceptEncoding) {
+    if (!isEnabled() || acceptEncoding == null) {
+      return Encoding.IDENTITY;
+    }
+    Encoding best = Encoding.IDENTITY;
+    double bestQuality = 0;
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.split(";");
+      String name = parts[0].trim().toLowerCase(Locale.ROOT);
+      double quality = getQuality(parts);
+      Encoding encoding;
+      if (name.equals("gzip") || name.equals("x-gzip")) {
+        encoding = Encoding.GZIP;
+      } else if (name.equals("deflate")) {
+        encoding = Encoding.DEFLATE;
+      } else {
+        continue;
+      }
+      if (quality > bestQuality || (quality == bestQuality && quality > 0 && encoding == Encoding.GZIP)) {
+        best = encoding;
+        bestQuality = quality;
+      }
+    }
+    return best;
+  }
+
+  private double getQuality(String[] parts) {
+    for (int i = 1; i < parts.length; i++) {
+      String parameter = parts[i].trim();
+      if (parameter.startsWith("q=")) {
+        try {
+          return Double.parseDouble(parameter.substring(2));
+        } catch (NumberFormatException nfe) {
+          return 0;
+        }
+      }
+    }
+    return 1;
+  }
+
+  /**
+   * @param out stream written to the client
+   * @param encoding
+   * @return stream compressing what is written to it into out, or out itself for IDENTITY
+   * @throws IOException
+   */
+  public OutputStream wrap(OutputStream out, Encoding encoding) throws IOException {
+    if (encoding == Encoding.IDENTITY) {
+      return out;
+    }
+    return new CompressingOutputStream(out, encoding, level, SearchTimings.current());
+  }
+
+  /**
+   * Compresses into the client stream, timing the compression separately from writing to the client
+   */
+  static class CompressingOutputStream extends OutputStream {
+
+    // Deflater used for deflate, gzip uses its own
+    private final Deflater deflater;
+    private final DeflaterOutputStream compressed;
+    private final SearchTimings timings;
+
+    // Time spent writing compressed output to the client, excluded from the compression time
+    private long clientNanos;
+
+    CompressingOutputStream(final OutputStream out, Encoding encoding, final int level, SearchTimings timings)
+        throws IOException {
+      this.timings = timings;
+      OutputStream client = new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+          long start = System.nanoTime();
+          out.write(b);
+          clientNanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+          long start = System.nanoTime();
+          out.write(b, off, len);
+          clientNanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void flush() throws IOException {
+          out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+          out.close();
+        }
+      };
+      if (encoding == Encoding.GZIP) {
+        deflater = null;
+        compressed = new GZIPOutputStream(client, BUFFER_SIZE) {
+          {
+            def.setLevel(level);
+          }
+        };
+      } else {
+        deflater = new Deflater(level);
+        compressed = new DeflaterOutputStream(client, deflater, BUFFER_SIZE);
+      }
+    }
+
+    private void addCompressTime(long start, long clientBefore) {
+      if (timings != null) {
+        timings.add(SearchTimings.Phase.COMPRESS, System.nanoTime() - start - (clientNanos - clientBefore));
+      }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      long start = System.nanoTime();
+      long clientBefore = clientNanos;
+      compressed.write(b);
+      addCompressTime(start, clientBefore);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      long start = System.nanoTime();
+      long clientBefore = clientNanos;
+      compressed.write(b, off, len);
+      addCompressTime(start, clientBefore);
+    }
+
+    @Override
+    public void close() throws IOException {
+      long start = System.nanoTime();
+      long clientBefore = clientNanos;
+      try {
+        compressed.close();
+      } finally {
+        if (deflater != null) {
+          deflater.end();
+        }
+        addCompressTime(start, clientBefore);
+      }
+    }
+  }
+}
@@ -30,21 +30,71 @@ package org.musicbrainz.search.servlet;
 
 import org.musicbrainz.search.MbDocument;
 
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * A search hit, the stored fields of its document are only loaded from the index when the document is first needed
+ * so that hits that are never written out are never loaded
+ */
 public class Result implements Comparable<Result>{
 
+    /**
+     * Loads the stored fields of the document of a hit
+     */
+    public interface DocumentLoader {
+        /**
+         * @param fieldNames names of the stored fields to load, or null to load all stored fields
+         * @return
+         * @throws IOException
+         */
+        MbDocument load(Set<String> fieldNames) throws IOException;
+    }
+
 	private MbDocument   doc;
 	private float        score;
     private int          normalizedScore;
     private ResourceType resourceType;
+    private DocumentLoader docLoader;
+    private Set<String>  storedFieldNames;
+    private Set<String>  loadedFieldNames;
 
 
     public Result() {
     }
 
+    /**
+     * Load the document if not already loaded with the stored fields required
+     *
+     * @return the document
+     */
 	public MbDocument getDoc() {
+        if (docLoader != null && (doc == null || !isLoaded(storedFieldNames))) {
+            try {
+                doc = docLoader.load(storedFieldNames);
+            } catch (IOException ioe) {
+                throw new RuntimeException(ioe);
+            }
+            loadedFieldNames = storedFieldNames;
+        }
 		return doc;
 	}
 
+    /**
+     * @param fieldNames
+     * @return true if the loaded document has the stored fields, all stored fields if fieldNames is null
+     */
+    private boolean isLoaded(Set<String> fieldNames) {
+        return loadedFieldNames == null || (fieldNames != null && loadedFieldNames.containsAll(fieldNames));
+    }
+
+    /**
+     * @return true if the document has been loaded
+     */
+    public boolean isDocLoaded() {
+        return doc != null;
+    }
+
 	public float getScore() {
 		return score;
 	}
@@ -63,6 +113,25 @@ public class Result implements Comparable<Result>{
     public void setDoc(MbDocument doc)
     {
         this.doc = doc;
+        this.docLoader = null;
+    }
+
+    /**
+     * @param docLoader loads the document when first needed
+     */
+    public void setDocLoader(DocumentLoader docLoader)
+    {
+        this.doc = null;
+        this.docLoader = docLoader;
+    }
+
+    /**
+     * @param storedFieldNames names of the stored fields that will be read from the document, or null if any stored
+     * field may be read
+     */
+    public void setStoredFieldNames(Set<String> storedFieldNames)
+    {
+        this.storedFieldNames = storedFieldNames;
     }
 
     public void setScore(float score)
@@ -28,8 +28,13 @@
 
 package org.musicbrainz.search.servlet;
 
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.search.IndexSearcher;
 
 /**
  * Store the results of a search
@@ -40,6 +45,10 @@ public class Results implements Comparable<Results>{
     private int offset;
     private int totalHits;
     private ResourceType resourceType;
+    private String nextCursor;
+    private boolean partial;
+    private IndexSearcher searcher;
+    private final AtomicBoolean isReleased = new AtomicBoolean(false);
 
     public List<Result> results;
 
@@ -110,4 +119,76 @@ public class Results implements Comparable<Results>{
     {
         this.resourceType = resourceType;
     }
+
+    /**
+     * @return cursor for the next page when paging with cursors, null if this is the last page
+     */
+    public String getNextCursor()
+    {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor)
+    {
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @param storedFieldNames names of the stored fields that will be read from the document of each result, or null
+     * if any stored field may be read
+     */
+    public void setStoredFieldNames(Set<String> storedFieldNames)
+    {
+        for (Result result : results)
+        {
+            result.setStoredFieldNames(storedFieldNames);
+        }
+    }
+
+    /**
+     * @return true if the time allowed ran out so these are only the best results found so far
+     */
+    public boolean isPartial()
+    {
+        return partial;
+    }
+
+    public void setPartial(boolean partial)
+    {
+        this.partial = partial;
+    }
+
+    /**
+     * Keep the searcher the results were found with open until released, so that the documents of the results can
+     * still be loaded when writing them after the searcher has been replaced by a newer one
+     *
+     * @param searcher
+     */
+    public void holdSearcher(IndexSearcher searcher)
+    {
+        searcher.getIndexReader().incRef();
+        this.searcher = searcher;
+    }
+
+    /**
+     * @return the searcher held to load the documents of the results, null if none is held
+     */
+    public IndexSearcher getSearcher()
+    {
+        return searcher;
+    }
+
+    /**
+     * Release the searcher held to load the documents, called once the results have been written. Documents not
+     * already loaded can no longer be loaded afterwards.
+     *
+     * @throws IOException
+     */
+    public void release() throws IOException
+    {
+        if (searcher != null && isReleased.compareAndSet(false, true))
+        {
+            searcher.getIndexReader().decRef();
+        }
+    }
 }
@@ -28,11 +28,15 @@
 
 package org.musicbrainz.search.servlet;
 
+import org.musicbrainz.search.MbDocument;
 import org.musicbrainz.search.index.Index;
+import org.musicbrainz.search.index.IndexField;
 
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
 
 public abstract class ResultsWriter {
 
@@ -68,6 +72,29 @@ public abstract class ResultsWriter {
         return ((value != null) && !(value.equalsIgnoreCase(Index.NO_VALUE)));
     }
 
+    /**
+     * Writers that only read some of the stored fields of each result override this so that only those fields are
+     * loaded from the index
+     *
+     * @return names of the stored fields read, or null if any stored field may be read
+     */
+    public Set<String> getStoredFieldNames()
+    {
+        return null;
+    }
+
+    /**
+     * @param storeField field the entity is stored in
+     * @return names of the fields the entity and its xml fragment are stored in
+     */
+    protected static Set<String> getStoreFieldNames(IndexField storeField)
+    {
+        Set<String> fieldNames = new HashSet<String>();
+        fieldNames.add(storeField.getName());
+        fieldNames.add(storeField.getName() + MbDocument.XML_FRAGMENT_SUFFIX);
+        return fieldNames;
+    }
+
     public void setLastServerUpdatedDate(Date date)
     {
         this.serverLastUpdatedDate=date;
@@ -0,0 +1,107 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import org.apache.lucene.search.ScoreDoc;
+
+/**
+ * Position within the results of a search, passed back by the client to get the next page.
+ *
+ * Encodes the version of the searcher the first page was searched against so that later pages are searched against
+ * the same searcher, the last hit returned so the next page can be found with searchAfter, the max score so that
+ * scores are normalized the same on every page, and the offset of the next page.
+ */
+public class SearchCursor {
+
+  /** Cursor value passed to request the first page */
+  public static final String FIRST_PAGE = "*";
+
+  private static final char SEPARATOR = '.';
+
+  private final long searcherVersion;
+  private final ScoreDoc after;
+  private final float maxScore;
+  private final int offset;
+
+  public SearchCursor(long searcherVersion, ScoreDoc after, float maxScore, int offset) {
+    this.searcherVersion = searcherVersion;
+    this.after = after;
+    this.maxScore = maxScore;
+    this.offset = offset;
+  }
+
+  public long getSearcherVersion() {
+    return searcherVersion;
+  }
+
+  public ScoreDoc getAfter() {
+    return after;
+  }
+
+  public float getMaxScore() {
+    return maxScore;
+  }
+
+  public int getOffset() {
+    return offset;
+  }
+
+  /**
+   * @return opaque string representation to return to the client
+   */
+  public String encode() {
+    return Long.toString(searcherVersion, 36)
+        + SEPARATOR + Integer.toString(after.doc, 36)
+        + SEPARATOR + Integer.toString(Float.floatToIntBits(after.score), 36)
+        + SEPARATOR + Integer.toString(Float.floatToIntBits(maxScore), 36)
+        + SEPARATOR + Integer.toString(offset, 36);
+  }
+
+  /**
+   * @param cursor as returned by encode()
+   * @return the cursor
+   * @throws IllegalArgumentException if not a valid cursor
+   */
+  public static SearchCursor decode(String cursor) {
+    String[] parts = cursor.split("\\" + SEPARATOR);
+    if (parts.length != 5) {
+      throw new IllegalArgumentException(ErrorMessage.INVALID_CURSOR.getMsg(cursor));
+    }
+    try {
+      long searcherVersion = Long.parseLong(parts[0], 36);
+      int doc = Integer.parseInt(parts[1], 36);
+      float score = Float.intBitsToFloat(Integer.parseInt(parts[2], 36));
+      float maxScore = Float.intBitsToFloat(Integer.parseInt(parts[3], 36));
+      int offset = Integer.parseInt(parts[4], 36);
+      return new SearchCursor(searcherVersion, new ScoreDoc(doc, score), maxScore, offset);
+    } catch (NumberFormatException nfe) {
+      throw new IllegalArgumentException(ErrorMessage.INVALID_CURSOR.getMsg(cursor));
+    }
+  }
+}
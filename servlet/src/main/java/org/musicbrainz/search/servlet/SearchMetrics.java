@@ -0,0 +1,163 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Latency histograms of each phase of searches, kept separately for each resource type, response format and whether
+ * dismax was used, so e.g. slow serialization of json can be told apart from slow searching of the recording index.
+ */
+public class SearchMetrics implements SearchMetricsMBean {
+
+  public static final String OBJECT_NAME = "org.musicbrainz.search:type=SearchMetrics";
+
+  private volatile ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+  private volatile long startMillis = System.currentTimeMillis();
+
+  /**
+   * @param resourceType type searched, or null for type=all
+   * @param format response format
+   * @param isDismax
+   * @param phase
+   * @return name of the histogram
+   */
+  public static String getName(ResourceType resourceType, String format, boolean isDismax, SearchTimings.Phase phase) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(resourceType != null ? resourceType.getName() : SearchServerServlet.TYPE_ALL).append('.').append(format);
+    if (isDismax) {
+      sb.append(".dismax");
+    }
+    return sb.append('.').append(phase.getName()).toString();
+  }
+
+  /**
+   * @param resourceType
+   * @return name of the histogram of the time taken to warm refreshed searchers
+   */
+  public static String getWarmupName(ResourceType resourceType) {
+    return resourceType.getName() + ".warmup";
+  }
+
+  /**
+   * Record the timings of a search, phases that took no time (typically because they were not needed) are not
+   * recorded apart from the total.
+   *
+   * @param resourceType type searched, or null for type=all
+   * @param format response format
+   * @param isDismax
+   * @param timings
+   */
+  public void record(ResourceType resourceType, String format, boolean isDismax, SearchTimings timings) {
+    for (SearchTimings.Phase phase : SearchTimings.Phase.values()) {
+      long nanos = timings.get(phase);
+      if (nanos > 0 || phase == SearchTimings.Phase.TOTAL) {
+        getHistogram(getName(resourceType, format, isDismax, phase)).record(nanos);
+      }
+    }
+  }
+
+  /**
+   * Record the time taken to warm a refreshed searcher
+   *
+   * @param resourceType
+   * @param nanos
+   */
+  public void recordWarmup(ResourceType resourceType, long nanos) {
+    getHistogram(getWarmupName(resourceType)).record(nanos);
+  }
+
+  private LatencyHistogram getHistogram(String name) {
+    ConcurrentMap<String, LatencyHistogram> current = histograms;
+    LatencyHistogram histogram = current.get(name);
+    if (histogram == null) {
+      LatencyHistogram created = new LatencyHistogram();
+      histogram = current.putIfAbsent(name, created);
+      if (histogram == null) {
+        histogram = created;
+      }
+    }
+    return histogram;
+  }
+
+  @Override
+  public String getStats() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<String, LatencyHistogram>(histograms).entrySet()) {
+      LatencyHistogram histogram = entry.getValue();
+      sb.append(entry.getKey()).append(":count:").append(histogram.getCount());
+      sb.append(",persec:").append(String.format(Locale.ROOT, "%.2f", getThroughput(histogram)));
+      sb.append(",meanus:").append(histogram.getMeanMicros());
+      sb.append(",p50us:").append(histogram.getPercentileMicros(50));
+      sb.append(",p99us:").append(histogram.getPercentileMicros(99));
+      sb.append(",p999us:").append(histogram.getPercentileMicros(99.9));
+      sb.append(",maxus:").append(histogram.getMaxMicros());
+      sb.append('\n');
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public String[] getNames() {
+    return new TreeMap<String, LatencyHistogram>(histograms).keySet().toArray(new String[0]);
+  }
+
+  @Override
+  public long getCount(String name) {
+    LatencyHistogram histogram = histograms.get(name);
+    return histogram != null ? histogram.getCount() : 0;
+  }
+
+  @Override
+  public double getThroughput(String name) {
+    LatencyHistogram histogram = histograms.get(name);
+    return histogram != null ? getThroughput(histogram) : 0;
+  }
+
+  private double getThroughput(LatencyHistogram histogram) {
+    long elapsedMillis = Math.max(1, System.currentTimeMillis() - startMillis);
+    return histogram.getCount() * 1000.0 / elapsedMillis;
+  }
+
+  @Override
+  public long getPercentileMicros(String name, double percentile) {
+    LatencyHistogram histogram = histograms.get(name);
+    return histogram != null ? histogram.getPercentileMicros(percentile) : 0;
+  }
+
+  @Override
+  public void reset() {
+    histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+    startMillis = System.currentTimeMillis();
+  }
+}
@@ -0,0 +1,70 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+/**
+ * Management interface of SearchMetrics, names are of the form type.format[.dismax].phase e.g.
+ * recording.xml.dismax.search, and type.warmup for the time taken to warm refreshed searchers
+ */
+public interface SearchMetricsMBean {
+
+  /**
+   * @return plain text metrics, one line per name
+   */
+  public String getStats();
+
+  /**
+   * @return names of the histograms recorded so far
+   */
+  public String[] getNames();
+
+  /**
+   * @param name
+   * @return number of values recorded, zero if no such histogram
+   */
+  public long getCount(String name);
+
+  /**
+   * @param name
+   * @return values recorded per second since the metrics were created or reset
+   */
+  public double getThroughput(String name);
+
+  /**
+   * @param name
+   * @param percentile between 0 and 100
+   * @return value in microseconds, zero if no such histogram
+   */
+  public long getPercentileMicros(String name, double percentile);
+
+  /**
+   * Discard all values recorded so far
+   */
+  public void reset();
+}
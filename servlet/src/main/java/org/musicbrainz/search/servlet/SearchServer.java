@@ -7,6 +7,7 @@ import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
 
 public interface SearchServer {
 
@@ -18,12 +19,27 @@ public interface SearchServer {
    * @param query
    * @param offset
    * @param limit
-   * @return
+   * @return the results, to be released once they have been written
    * @throws IOException
    * @throws ParseException
    */
   public abstract Results search(String query, int offset, int limit) throws IOException, ParseException;
 
+  /**
+   * Process query from Mbserver before sending to lucene searcher, returning between results from offset upto limit
+   * found within the time allowed
+   *
+   * @param query
+   * @param offset
+   * @param limit
+   * @param timeAllowedMillis
+   * @return
+   * @throws IOException
+   * @throws ParseException
+   */
+  public abstract Results search(String query, int offset, int limit, long timeAllowedMillis) throws IOException,
+      ParseException;
+
   /**
    * Process query from Mbserver before sending to lucene searcher, returning between results from offset upto limit
    * 
@@ -36,6 +52,81 @@ public interface SearchServer {
    */
   public abstract Results search(Query query, int offset, int limit) throws IOException, ParseException;
 
+  /**
+   * Process query from Mbserver before sending to lucene searcher, returning between results from offset upto limit
+   * found within the time allowed
+   *
+   * @param query
+   * @param offset
+   * @param limit
+   * @param timeAllowedMillis
+   * @return
+   * @throws IOException
+   * @throws ParseException
+   */
+  public abstract Results search(Query query, int offset, int limit, long timeAllowedMillis) throws IOException,
+      ParseException;
+
+  /**
+   * Process query from Mbserver before sending to lucene searcher, returning between results from offset upto limit
+   * in the given order found within the time allowed
+   *
+   * @param query
+   * @param offset
+   * @param limit
+   * @param timeAllowedMillis
+   * @param sort order of the results, or null to order by relevance
+   * @return
+   * @throws IOException
+   * @throws ParseException
+   */
+  public abstract Results search(String query, int offset, int limit, long timeAllowedMillis, Sort sort)
+      throws IOException, ParseException;
+
+  /**
+   * Search lucene query, returning between results from offset upto limit in the given order found within the time
+   * allowed
+   *
+   * @param query
+   * @param offset
+   * @param limit
+   * @param timeAllowedMillis
+   * @param sort order of the results, or null to order by relevance
+   * @return
+   * @throws IOException
+   * @throws ParseException
+   */
+  public abstract Results search(Query query, int offset, int limit, long timeAllowedMillis, Sort sort)
+      throws IOException, ParseException;
+
+  /**
+   * Process query from Mbserver before sending to lucene searcher, returning the page of up to limit results following
+   * the cursor, use SearchCursor.FIRST_PAGE to get the first page
+   *
+   * @param query
+   * @param cursor
+   * @param limit
+   * @return
+   * @throws IOException
+   * @throws ParseException
+   */
+  public abstract Results searchAfter(String query, String cursor, int limit) throws IOException, ParseException;
+
+  /**
+   * Process query from Mbserver before sending to lucene searcher, returning the page of up to limit results following
+   * the cursor found within the time allowed
+   *
+   * @param query
+   * @param cursor
+   * @param limit
+   * @param timeAllowedMillis
+   * @return
+   * @throws IOException
+   * @throws ParseException
+   */
+  public abstract Results searchAfter(String query, String cursor, int limit, long timeAllowedMillis)
+      throws IOException, ParseException;
+
   /**
    * Explain the results This method is for debugging and to allow end users to understand why their query is not
    * returning the results they expected so they can refine their query
@@ -51,12 +142,35 @@ public interface SearchServer {
 
   public abstract String explain(String query, int offset, int limit) throws IOException, ParseException;
 
+  /**
+   * @param query
+   * @return the lucene query the query from Mbserver is searched as
+   * @throws ParseException
+   */
+  public abstract Query getParsedQuery(String query) throws ParseException;
+
   public abstract SearcherManager getSearcherManager();
 
+  /**
+   * @return version of the index currently searched, changes whenever the index is refreshed with changes
+   * @throws IOException
+   */
+  public abstract long getIndexVersion() throws IOException;
+
   public Analyzer getAnalyzer();
 
   public abstract String getCount();
 
+  /**
+   * @return cache of serialized responses for this index, or null if responses are not cached
+   */
+  public abstract QueryResultCache getResultCache();
+
+  /**
+   * @return cache of parsed queries, or null if every query is parsed
+   */
+  public abstract ParsedQueryCache getParsedQueryCache();
+
   public abstract void close() throws IOException;
 
   public abstract void reloadIndex() throws CorruptIndexException, IOException;
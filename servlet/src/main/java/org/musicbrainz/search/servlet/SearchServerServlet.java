@@ -29,6 +29,8 @@
 package org.musicbrainz.search.servlet;
 
 import com.google.common.base.Strings;
+import com.google.common.io.CharStreams;
+import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.SearcherManager;
@@ -46,11 +48,18 @@ import javax.servlet.http.HttpServletResponse;
 import java.lang.*;
 import java.io.*;
 import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.util.*;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -75,42 +84,141 @@ public class SearchServerServlet extends HttpServlet
     final static String TYPE_ALL = "all";
     final static String TYPE_TRACK = "track";
 
-    private boolean isServletInitialized = false;
+    // When doing search over multiple indexes use this executorservice to run in parallel
+    // Runs the searches of each index for type=all, created on first init and kept across index reloads
+    private AllSearchExecutor allSearchExecutor;
 
-    // Enabled as long indexes for all resources are available
-    private boolean isSearchAllEnabled = true;
+    // Runs the searches of batch searches, separate from type=all so that large batches cannot use up its queue,
+    // created on first init and kept across index reloads
+    private AllSearchExecutor batchSearchExecutor;
 
-    // When doing search over multiple indexes use this executorservice to run in parallel
-    private final ExecutorService es = Executors.newCachedThreadPool();
+    // Search servers of the current generation of the indexes, null until the indexes have first been loaded. Replaced
+    // as a whole when the indexes are loaded again so requests never see a mix of old and new indexes
+    private final AtomicReference<IndexSet> currentIndexSet = new AtomicReference<IndexSet>();
+    private final AtomicLong indexSetGeneration = new AtomicLong();
 
-    private final EnumMap<ResourceType, SearchServer> searchers = new EnumMap<ResourceType, SearchServer>(ResourceType.class);
-    private final EnumMap<ResourceType, SearchServer> dismaxSearchers = new EnumMap<ResourceType, SearchServer>(ResourceType.class);
+    // Set once the indexes have first been loaded and warmed
+    private volatile boolean isReady = false;
 
     private final String initMessage = null;
     private static String searchWebPage = "";
     private static boolean isRateLimiterEnabled = false;
     private static boolean isAdminRemoteEnabled = false;
 
+    // Maximum size in bytes of the cached responses for each index, zero disables caching
+    private long resultCacheMaxBytes = 0;
+
+    // Maximum number of parsed queries cached for each index and query type, zero disables caching
+    private int parsedQueryCacheSize = ParsedQueryCache.DEFAULT_MAX_ENTRIES;
+
+    // How long searchers pinned by search cursors are kept once the index has been reloaded
+    private int cursorTtlSeconds = AbstractSearchServer.DEFAULT_CURSOR_TTL_SECONDS;
+
+    // Hits collected from each index segment sorted by popularity before skipping the rest, zero disables
+    private int earlyTerminationDocs = 0;
+
+    // Shared by the indexes searched in parallel, created on first init and kept across index reloads
+    private ParallelSearchExecutor parallelSearchExecutor;
+
+    // Indexes whose segments are searched in parallel when parallel search is enabled
+    private Set<ResourceType> parallelSearchTypes = EnumSet.noneOf(ResourceType.class);
+
+    // Limits concurrent searches of each index and of type=all, null if admission control disabled. Created on first
+    // init and kept across index reloads so that the learnt limits are kept
+    private Map<ResourceType, AdmissionController> admissionControllers;
+    private AdmissionController allAdmissionController;
+
+    // Time allowed to search each index for each lane, created on first init and kept across index reloads so that
+    // the timeout counts are kept
+    private TimeBudgets timeBudgets;
+
+    // Return the best results found so far rather than failing when a search runs out of time
+    private boolean allowPartialResults = false;
+
+    // Latency of each phase of searches, created on first init and kept across index reloads
+    private SearchMetrics searchMetrics;
+
+    // Recent slow searches of each index, created on first init and kept across index reloads
+    private SlowQueryLog slowQueryLog;
+
+    // Most frequent queries of each index, replayed to warm the searchers opened when an index is refreshed. Created
+    // on first init and kept across index reloads, null if warming refreshed searchers is disabled
+    private Map<ResourceType, QueryFrequencySketch> queryFrequencies;
+
+    // Refreshes changed indexes in the background, created on first init and kept across index reloads, null if
+    // disabled so the indexes are only refreshed through the admin interface
+    private IndexRefreshScheduler indexRefreshScheduler;
+
+    // Processes requests off the container threads when request_mode is async, created on first init and kept across
+    // index reloads, null when requests are processed on the container threads
+    private volatile AsyncSearchExecutor asyncSearchExecutor;
+
+    // Whether requests from the local machine may choose sync or async processing with the X-Search-Processing header
+    private boolean isProcessingHeaderEnabled = false;
+
+    // Compression of responses negotiated from Accept-Encoding
+    private ResponseCompression responseCompression = new ResponseCompression(ResponseCompression.DEFAULT_LEVEL);
+
+    // Maximum number of searches in one batch search request
+    private int maxBatchEntries = BatchSearchRequest.DEFAULT_MAX_ENTRIES;
+
+    // Warmer of the refreshed searchers of each index, for the stats
+    private final Map<ResourceType, SearcherWarmer> searcherWarmers = new ConcurrentHashMap<ResourceType, SearcherWarmer>();
+
+    // Request header choosing the priority lane of the request, website, api or bulk
+    public final static String HEADER_PRIORITY = "X-Search-Priority";
+
+    // Response header listing the types left out of a type=all search because they did not finish in time
+    public final static String HEADER_TIMED_OUT_TYPES = "X-Search-Timed-Out-Types";
+
+    // Response header listing the types whose results are only those found before the search ran out of time
+    public final static String HEADER_PARTIAL_TYPES = "X-Search-Partial-Types";
+
+    // Response header containing the cursor for the next page when paging with cursors
+    public final static String HEADER_NEXT_CURSOR = "X-Search-Next-Cursor";
+
+    // Request header choosing sync or async processing of the request, only honoured for requests from the local
+    // machine when request_mode_header is enabled, so that the two can be compared against the same server
+    public final static String HEADER_PROCESSING = "X-Search-Processing";
+
+    final static String PROCESSING_SYNC = "sync";
+    final static String PROCESSING_ASYNC = "async";
+
     @Override
     public void init()
     {
         String init = getServletConfig().getInitParameter("init");
-        if (init != null && init.equals("nfio"))
+        final boolean useMMapDirectory = !(init != null && init.equals("nfio"));
+
+        // Optionally load the indexes in the background so the container can start and report not ready meanwhile
+        if (Boolean.parseBoolean(getServletConfig().getInitParameter("init_background")))
         {
-            init(false);
+            Thread loader = new Thread("search-index-loader")
+            {
+                @Override
+                public void run()
+                {
+                    init(useMMapDirectory);
+                }
+            };
+            loader.setDaemon(true);
+            loader.start();
         }
         else
         {
-            init(true);
+            init(useMMapDirectory);
         }
     }
 
     /**
      * If you have indexes that are available this reads from the new indexes and closes the existing readers
      *
+     * The new indexes are opened and warmed whilst requests continue to use the existing indexes, then replace them
+     * in one step, the existing indexes are closed once the requests using them have finished.
+     *
      * @param useMMapDirectory
      */
-    public void init(boolean useMMapDirectory)
+    public synchronized void init(boolean useMMapDirectory)
     {
 
         searchWebPage = getServletConfig().getInitParameter("search_webpage");
@@ -121,6 +229,103 @@ public class SearchServerServlet extends HttpServlet
         String rateLimiterEnabled = getServletConfig().getInitParameter("ratelimitserver_enabled");
         initRateLimiter(rateLimiterEnabled);
 
+        String resultCacheSize = getServletConfig().getInitParameter("resultcache_maxbytes");
+        resultCacheMaxBytes = Strings.isNullOrEmpty(resultCacheSize) ? 0 : Long.parseLong(resultCacheSize);
+
+        String queryCacheSize = getServletConfig().getInitParameter("querycache_size");
+        parsedQueryCacheSize = Strings.isNullOrEmpty(queryCacheSize) ? ParsedQueryCache.DEFAULT_MAX_ENTRIES : Integer.parseInt(queryCacheSize);
+
+        String cursorTtl = getServletConfig().getInitParameter("cursor_ttl");
+        cursorTtlSeconds = Strings.isNullOrEmpty(cursorTtl) ? AbstractSearchServer.DEFAULT_CURSOR_TTL_SECONDS : Integer.parseInt(cursorTtl);
+
+        String earlyTerminate = getServletConfig().getInitParameter("earlyterminate_docs");
+        earlyTerminationDocs = Strings.isNullOrEmpty(earlyTerminate) ? 0 : Integer.parseInt(earlyTerminate);
+
+        maxBatchEntries = getIntInitParameter("batch_maxentries", BatchSearchRequest.DEFAULT_MAX_ENTRIES);
+
+        responseCompression = new ResponseCompression(getIntInitParameter("compression_level", ResponseCompression.DEFAULT_LEVEL));
+
+        isProcessingHeaderEnabled = Boolean.parseBoolean(getServletConfig().getInitParameter("request_mode_header"))
+                && AsyncSearchExecutor.isSupported(getServletContext());
+
+        if (asyncSearchExecutor == null && PROCESSING_ASYNC.equals(getServletConfig().getInitParameter("request_mode")))
+        {
+            if (!AsyncSearchExecutor.isSupported(getServletContext()))
+            {
+                log.warning("request_mode async needs a Servlet 3.0 container, processing requests synchronously");
+            }
+            else
+            {
+                asyncSearchExecutor = new AsyncSearchExecutor(
+                        getIntInitParameter("async_threads", AsyncSearchExecutor.DEFAULT_THREADS),
+                        getIntInitParameter("async_queuesize", AsyncSearchExecutor.DEFAULT_QUEUE_SIZE),
+                        getIntInitParameter("async_timeout", (int) AsyncSearchExecutor.DEFAULT_TIMEOUT_MILLIS));
+            }
+        }
+
+        initParallelSearch();
+        initSearchMetrics();
+
+        if (slowQueryLog == null)
+        {
+            slowQueryLog = new SlowQueryLog(
+                    getIntInitParameter("slowquery_size", SlowQueryLog.DEFAULT_SIZE),
+                    getIntInitParameter("slowquery_threshold", (int) SlowQueryLog.DEFAULT_THRESHOLD_MILLIS),
+                    getIntInitParameter("slowquery_explainevery", SlowQueryLog.DEFAULT_EXPLAIN_EVERY));
+        }
+
+        if (timeBudgets == null)
+        {
+            timeBudgets = TimeBudgets.parse(
+                    getIntInitParameter("timebudget_default", (int) TimeBudgets.DEFAULT_TIME_ALLOWED_MILLIS),
+                    getServletConfig().getInitParameter("timebudget_types"),
+                    getServletConfig().getInitParameter("timebudget_lanes"));
+        }
+        allowPartialResults = Boolean.parseBoolean(getServletConfig().getInitParameter("timebudget_partialresults"));
+
+        int warmupTopQueries = getIntInitParameter("warmup_refresh_topqueries", SearcherWarmer.DEFAULT_TOP_QUERIES);
+        int warmupRefreshTimeout = getIntInitParameter("warmup_refresh_timeout", (int) SearcherWarmer.DEFAULT_TIME_ALLOWED_MILLIS);
+        if (warmupTopQueries > 0 && queryFrequencies == null)
+        {
+            int sketchSize = getIntInitParameter("warmup_refresh_sketchsize", QueryFrequencySketch.DEFAULT_CAPACITY);
+            Map<ResourceType, QueryFrequencySketch> sketches = new EnumMap<ResourceType, QueryFrequencySketch>(ResourceType.class);
+            for (ResourceType resourceType : ResourceType.values())
+            {
+                sketches.put(resourceType, new QueryFrequencySketch(resourceType, Math.max(sketchSize, warmupTopQueries)));
+            }
+            queryFrequencies = sketches;
+        }
+
+        String admissionEnabled = getServletConfig().getInitParameter("admission_enabled");
+        if (Boolean.parseBoolean(admissionEnabled))
+        {
+            initAdmissionControllers();
+        }
+        else
+        {
+            admissionControllers = null;
+            allAdmissionController = null;
+        }
+
+        if (allSearchExecutor == null)
+        {
+            String allThreads = getServletConfig().getInitParameter("allsearch_threads");
+            String allQueueSize = getServletConfig().getInitParameter("allsearch_queuesize");
+            String allTimeout = getServletConfig().getInitParameter("allsearch_timeout");
+            allSearchExecutor = new AllSearchExecutor(
+                    Strings.isNullOrEmpty(allThreads) ? AllSearchExecutor.DEFAULT_THREADS : Integer.parseInt(allThreads),
+                    Strings.isNullOrEmpty(allQueueSize) ? AllSearchExecutor.DEFAULT_QUEUE_SIZE : Integer.parseInt(allQueueSize),
+                    Strings.isNullOrEmpty(allTimeout) ? AllSearchExecutor.DEFAULT_TIMEOUT_MILLIS : Long.parseLong(allTimeout));
+        }
+
+        if (batchSearchExecutor == null)
+        {
+            batchSearchExecutor = new AllSearchExecutor("search-batch",
+                    getIntInitParameter("batch_threads", BatchSearchRequest.DEFAULT_THREADS),
+                    getIntInitParameter("batch_queuesize", BatchSearchRequest.DEFAULT_QUEUE_SIZE),
+                    getIntInitParameter("batch_timeout", (int) AllSearchExecutor.DEFAULT_TIMEOUT_MILLIS));
+        }
+
         String indexDir = getServletConfig().getInitParameter("index_dir");
 
         if (useMMapDirectory)
@@ -132,7 +337,10 @@ public class SearchServerServlet extends HttpServlet
             log.info("Start:loading Indexes from " + indexDir + ",Type:nfio," + "MaxHeap:" + ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax());
         }
 
-        // Initialize all search servers
+        // Open all search servers of the new generation
+        Map<ResourceType, SearchServer> searchers = new EnumMap<ResourceType, SearchServer>(ResourceType.class);
+        Map<ResourceType, SearchServer> dismaxSearchers = new EnumMap<ResourceType, SearchServer>(ResourceType.class);
+        boolean isSearchAllEnabled = true;
         for (ResourceType resourceType : ResourceType.values())
         {
 
@@ -144,9 +352,35 @@ public class SearchServerServlet extends HttpServlet
             try
             {
                 Directory directory = useMMapDirectory ? new MMapDirectory(indexFileDir) : new NIOFSDirectory(indexFileDir);
-                SearcherManager searcherManager = new SearcherManager(directory, new MusicBrainzSearcherFactory(resourceType));
+                MusicBrainzSearcherFactory searcherFactory = new MusicBrainzSearcherFactory(resourceType,
+                        parallelSearchTypes.contains(resourceType) ? parallelSearchExecutor : null);
+                SearcherManager searcherManager = new SearcherManager(directory, searcherFactory);
                 searchServer = resourceType.getSearchServerClass().getConstructor(SearcherManager.class).newInstance(searcherManager);
+                if (resultCacheMaxBytes > 0)
+                {
+                    searchServer.setResultCache(new QueryResultCache(resultCacheMaxBytes));
+                }
                 dismaxSearchServer = resourceType.getDismaxSearchServerClass().getConstructor(AbstractSearchServer.class).newInstance(searchServer);
+                searchServer.setCursorTtlSeconds(cursorTtlSeconds);
+                searchServer.setEarlyTerminationDocs(earlyTerminationDocs);
+                searchServer.setTimeAllowedMillis(timeBudgets.getTimeAllowed(resourceType));
+                searchServer.setAllowPartialResults(allowPartialResults);
+                searchServer.setParsedQueryCache(parsedQueryCacheSize > 0 ? new ParsedQueryCache(parsedQueryCacheSize) : null);
+                dismaxSearchServer.setParsedQueryCache(parsedQueryCacheSize > 0 ? new ParsedQueryCache(parsedQueryCacheSize) : null);
+
+                // The initial searcher is warmed with the rest of the index set, only searchers opened by refreshing
+                // the index are warmed by the searcher factory
+                if (queryFrequencies != null && warmupTopQueries > 0)
+                {
+                    SearcherWarmer searcherWarmer = new SearcherWarmer(resourceType, queryFrequencies.get(resourceType),
+                            searchServer, dismaxSearchServer, warmupTopQueries, warmupRefreshTimeout, searchMetrics);
+                    searcherFactory.setSearcherWarmer(searcherWarmer);
+                    searcherWarmers.put(resourceType, searcherWarmer);
+                }
+                else
+                {
+                    searcherWarmers.remove(resourceType);
+                }
 
             }
             catch (CorruptIndexException e)
@@ -172,67 +406,242 @@ public class SearchServerServlet extends HttpServlet
                 }
             }
 
-            // Close old search server, incRef/decRef counting will ensure not closed until no longer in use.
-            SearchServer oldSearchServer = searchers.get(resourceType);
-            if (oldSearchServer != null)
-            {
-                try
-                {
-                    oldSearchServer.close();
-                }
-                catch (IOException e)
-                {
-                    log.severe("Caught exception during closing of index searcher within Init: " + resourceType.getIndexName() + ":" + e.getMessage());
-                }
-            }
-
-            // Add in new search server and set last updated date
             searchers.put(resourceType, searchServer);
             dismaxSearchers.put(resourceType, dismaxSearchServer);
 
         }
-        isServletInitialized = true;
+        IndexSet indexSet = new IndexSet(indexSetGeneration.incrementAndGet(), searchers, dismaxSearchers, isSearchAllEnabled);
+
+        // Warm before publishing so that requests are not the first to touch the new indexes
+        IndexWarmer indexWarmer = createIndexWarmer();
+        if (indexWarmer != null)
+        {
+            indexWarmer.warm(indexSet);
+        }
+
+        // Publish, the old index set is closed once the requests using it have finished
+        IndexSet oldIndexSet = currentIndexSet.getAndSet(indexSet);
+        if (oldIndexSet != null)
+        {
+            oldIndexSet.decRef();
+        }
+        isReady = true;
+        log.info("Loaded index generation " + indexSet.getGeneration());
+
+        if (indexRefreshScheduler == null && Boolean.parseBoolean(getServletConfig().getInitParameter("refresh_enabled")))
+        {
+            indexRefreshScheduler = new IndexRefreshScheduler(currentIndexSet,
+                    getIntInitParameter("refresh_interval", (int) IndexRefreshScheduler.DEFAULT_INTERVAL_MILLIS),
+                    getIntInitParameter("refresh_maxstaleness", (int) IndexRefreshScheduler.DEFAULT_MAX_STALENESS_MILLIS),
+                    getIntInitParameter("refresh_jitter", IndexRefreshScheduler.DEFAULT_JITTER_PERCENT));
+            indexRefreshScheduler.start();
+        }
+    }
+
+    /**
+     * @return warmer replaying the queries listed in the warmup_queries file, or null if no file is configured
+     */
+    private IndexWarmer createIndexWarmer()
+    {
+        String queriesFile = getServletConfig().getInitParameter("warmup_queries");
+        if (Strings.isNullOrEmpty(queriesFile))
+        {
+            return null;
+        }
+        try
+        {
+            return new IndexWarmer(IndexWarmer.readQueries(new File(queriesFile)),
+                    getIntInitParameter("warmup_timeout", (int) IndexWarmer.DEFAULT_TIME_ALLOWED_MILLIS));
+        }
+        catch (IOException e)
+        {
+            log.warning("Unable to read warm up queries from " + queriesFile + ": " + e.getMessage());
+            return null;
+        }
+    }
 
+    /**
+     * @return the current index set with a reference taken that must be released with decRef(), or null if the
+     * indexes have not been loaded
+     */
+    private IndexSet acquireIndexSet()
+    {
+        return IndexSet.acquire(currentIndexSet);
     }
 
     @Override
     public void destroy()
     {
 
-        // Close all search servers
-        for (SearchServer searchServer : searchers.values())
+        if (indexRefreshScheduler != null)
+        {
+            indexRefreshScheduler.shutdown();
+            indexRefreshScheduler = null;
+        }
+
+        // Close all search servers once no longer in use
+        IndexSet oldIndexSet = currentIndexSet.getAndSet(null);
+        if (oldIndexSet != null)
+        {
+            oldIndexSet.decRef();
+        }
+        isReady = false;
+
+        if (parallelSearchExecutor != null)
+        {
+            parallelSearchExecutor.shutdown();
+            parallelSearchExecutor = null;
+        }
+        if (allSearchExecutor != null)
+        {
+            allSearchExecutor.shutdown();
+            allSearchExecutor = null;
+        }
+        if (batchSearchExecutor != null)
+        {
+            batchSearchExecutor.shutdown();
+            batchSearchExecutor = null;
+        }
+        if (asyncSearchExecutor != null)
+        {
+            asyncSearchExecutor.shutdown();
+            asyncSearchExecutor = null;
+        }
+        if (slowQueryLog != null)
+        {
+            slowQueryLog.shutdown();
+            slowQueryLog = null;
+        }
+        if (searchMetrics != null)
         {
-            if (searchServer == null)
-            {
-                continue;
-            }
             try
             {
-                searchServer.close();
+                MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(SearchMetrics.OBJECT_NAME);
+                if (mbeanServer.isRegistered(name))
+                {
+                    mbeanServer.unregisterMBean(name);
+                }
             }
-            catch (IOException e)
+            catch (JMException e)
             {
-                log.severe("Caught exception during closing of index searcher: " + e.getMessage());
+                log.warning("Unable to unregister search metrics: " + e.getMessage());
             }
+            searchMetrics = null;
         }
-        searchers.clear();
-        // Close all dismax search servers
-        for (SearchServer searchServer : dismaxSearchers.values())
+    }
+
+    /**
+     * Init search metrics and make them available over JMX, unless already initialized
+     */
+    private void initSearchMetrics()
+    {
+        if (searchMetrics != null)
         {
-            if (searchServer == null)
-            {
-                continue;
-            }
-            try
+            return;
+        }
+
+        searchMetrics = new SearchMetrics();
+        try
+        {
+            MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(SearchMetrics.OBJECT_NAME);
+            // Replace metrics left by a previous instance of the servlet, e.g. when the webapp is redeployed
+            if (mbeanServer.isRegistered(name))
             {
-                searchServer.close();
+                mbeanServer.unregisterMBean(name);
             }
-            catch (IOException e)
+            mbeanServer.registerMBean(searchMetrics, name);
+        }
+        catch (JMException e)
+        {
+            log.warning("Unable to register search metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Init admission controllers, one for each index and one for type=all searches, unless already initialized
+     */
+    private void initAdmissionControllers()
+    {
+        if (admissionControllers != null)
+        {
+            return;
+        }
+
+        Map<ResourceType, AdmissionController> controllers = new EnumMap<ResourceType, AdmissionController>(ResourceType.class);
+        for (ResourceType resourceType : ResourceType.values())
+        {
+            controllers.put(resourceType, createAdmissionController());
+        }
+        allAdmissionController = createAdmissionController();
+        admissionControllers = controllers;
+    }
+
+    private AdmissionController createAdmissionController()
+    {
+        return new AdmissionController(
+                getIntInitParameter("admission_initiallimit", AdmissionController.DEFAULT_INITIAL_LIMIT),
+                getIntInitParameter("admission_minlimit", AdmissionController.DEFAULT_MIN_LIMIT),
+                getIntInitParameter("admission_maxlimit", AdmissionController.DEFAULT_MAX_LIMIT),
+                getIntInitParameter("admission_queuesize", AdmissionController.DEFAULT_QUEUE_SIZE),
+                getIntInitParameter("admission_maxwait", (int) AdmissionController.DEFAULT_MAX_WAIT_MILLIS),
+                getIntInitParameter("admission_targetlatency", (int) AdmissionController.DEFAULT_TARGET_LATENCY_MILLIS),
+                getIntInitParameter("admission_backoffwindow", (int) AdmissionController.DEFAULT_BACKOFF_WINDOW_MILLIS));
+    }
+
+    /**
+     * @param name
+     * @param defaultValue
+     * @return value of the init parameter, or the default if not set
+     */
+    private int getIntInitParameter(String name, int defaultValue)
+    {
+        String value = getServletConfig().getInitParameter(name);
+        return Strings.isNullOrEmpty(value) ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Init parallel search of index segments
+     *
+     * The number of threads is shared by all indexes listed in parallelsearch_types, and at most
+     * parallelsearch_maxqueries queries are fanned out at once with any others searched sequentially.
+     */
+    private void initParallelSearch()
+    {
+        String threads = getServletConfig().getInitParameter("parallelsearch_threads");
+        int noOfThreads = Strings.isNullOrEmpty(threads) ? 0 : Integer.parseInt(threads);
+        if (noOfThreads <= 0)
+        {
+            parallelSearchTypes = EnumSet.noneOf(ResourceType.class);
+            return;
+        }
+
+        Set<ResourceType> types = EnumSet.noneOf(ResourceType.class);
+        String typeNames = getServletConfig().getInitParameter("parallelsearch_types");
+        if (!Strings.isNullOrEmpty(typeNames))
+        {
+            for (String typeName : typeNames.split(","))
             {
-                log.severe("Caught exception during closing of index searcher: " + e.getMessage());
+                ResourceType resourceType = ResourceType.getValue(typeName.trim());
+                if (resourceType == null)
+                {
+                    log.warning("Unknown type in parallelsearch_types:" + typeName);
+                    continue;
+                }
+                types.add(resourceType);
             }
         }
-        dismaxSearchers.clear();
+        parallelSearchTypes = types;
+
+        if (parallelSearchExecutor == null)
+        {
+            String maxQueries = getServletConfig().getInitParameter("parallelsearch_maxqueries");
+            String minDocs = getServletConfig().getInitParameter("parallelsearch_mindocs");
+            parallelSearchExecutor = new ParallelSearchExecutor(noOfThreads,
+                    Strings.isNullOrEmpty(maxQueries) ? 1 : Integer.parseInt(maxQueries),
+                    Strings.isNullOrEmpty(minDocs) ? ParallelSearchExecutor.DEFAULT_MIN_DOCS_PER_SLICE : Integer.parseInt(minDocs));
+        }
     }
 
     /**
@@ -245,7 +654,21 @@ public class SearchServerServlet extends HttpServlet
         isRateLimiterEnabled = Boolean.parseBoolean(rateLimiterEnabled);
         if (isRateLimiterEnabled)
         {
-            RateLimiterChecker.init(rateLimiterHost, rateLimiterPort);
+            // Either use the in process rate limiter or the rate limit server
+            if ("embedded".equals(getServletConfig().getInitParameter("ratelimitserver_type")))
+            {
+                RateLimiterChecker.initEmbedded(
+                        getIntInitParameter("ratelimit_requests", EmbeddedRateLimiter.DEFAULT_LIMIT),
+                        getIntInitParameter("ratelimit_period", EmbeddedRateLimiter.DEFAULT_PERIOD_SECONDS),
+                        getIntInitParameter("ratelimit_maxkeys", EmbeddedRateLimiter.DEFAULT_MAX_KEYS));
+            }
+            else
+            {
+                RateLimiterChecker.init(rateLimiterHost, rateLimiterPort,
+                        getIntInitParameter("ratelimitserver_timeout", (int) UdpRateLimiterClient.DEFAULT_TIMEOUT_MILLIS),
+                        getIntInitParameter("ratelimitserver_failurethreshold", UdpRateLimiterClient.DEFAULT_FAILURE_THRESHOLD),
+                        getIntInitParameter("ratelimitserver_openperiod", (int) UdpRateLimiterClient.DEFAULT_OPEN_MILLIS));
+            }
         }
     }
 
@@ -255,22 +678,35 @@ public class SearchServerServlet extends HttpServlet
      */
     protected void reloadIndexes()
     {
-        // We iterate over searchers only, since dismaxSearchers share the exact same SearcherManagers
-        for (SearchServer searchServer : searchers.values())
+        IndexSet indexSet = acquireIndexSet();
+        if (indexSet == null)
         {
-            if (searchServer == null)
-            {
-                continue;
-            }
-            try
-            {
-                searchServer.reloadIndex();
-            }
-            catch (IOException e)
+            return;
+        }
+        try
+        {
+            // We iterate over searchers only, since dismaxSearchers share the exact same SearcherManagers
+            for (ResourceType resourceType : ResourceType.values())
             {
-                log.severe("Caught exception during reopening of index: " + e.getMessage());
+                SearchServer searchServer = indexSet.getSearchServer(resourceType, false);
+                if (searchServer == null)
+                {
+                    continue;
+                }
+                try
+                {
+                    searchServer.reloadIndex();
+                }
+                catch (IOException e)
+                {
+                    log.severe("Caught exception during reopening of index: " + e.getMessage());
+                }
             }
         }
+        finally
+        {
+            indexSet.decRef();
+        }
 
     }
 
@@ -384,44 +820,276 @@ public class SearchServerServlet extends HttpServlet
                 return true ;
             }
         }
-        return false;
-    }
 
-    @Override
-    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
-    {
-        String query = "";
-        try
+        // Show latency of each phase of searches
+        String metrics = request.getParameter(RequestParameter.METRICS.getName());
+        if (metrics != null)
         {
-            // Check if servlet is initialized ok
-            if (!isServletInitialized)
+            if (isRequestFromLocalHost(request))
             {
-                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, ErrorMessage.SERVLET_INIT_FAILED.getMsg(initMessage));
-                return;
+                if (metrics.equals("reset"))
+                {
+                    searchMetrics.reset();
+                }
+                outputConfirmation( response, searchMetrics.getStats());
+                return true ;
             }
-            // Ensure encoding set to UTF8
-            request.setCharacterEncoding(CHARSET);
-
-
-            if(processedAdminCommand(request, response))
+            else
             {
-                return;
+                response.sendError(HttpServletResponse.SC_FORBIDDEN);
+                return true ;
             }
+        }
 
-            // If we receive Count Parameter then we just return a count immediately, the options are the same as for the type
-            // parameter
-            String count = request.getParameter(RequestParameter.COUNT.getName());
-            if (count != null)
+        // Show recent slow searches of each index
+        String slowQueries = request.getParameter(RequestParameter.SLOW_QUERIES.getName());
+        if (slowQueries != null)
+        {
+            if (isRequestFromLocalHost(request))
+            {
+                response.setCharacterEncoding(CHARSET);
+                response.setContentType("application/json; charset=UTF-8");
+                response.getWriter().println(slowQueryLog.toJson());
+                response.getWriter().close();
+                return true ;
+            }
+            else
+            {
+                response.sendError(HttpServletResponse.SC_FORBIDDEN);
+                return true ;
+            }
+        }
+
+        // Show statistics for each index
+        String stats = request.getParameter(RequestParameter.STATS.getName());
+        if (stats != null)
+        {
+            if (isRequestFromLocalHost(request))
+            {
+                outputConfirmation( response, getStats());
+                return true ;
+            }
+            else
+            {
+                response.sendError(HttpServletResponse.SC_FORBIDDEN);
+                return true ;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return plain text statistics, one line per index
+     */
+    private String getStats()
+    {
+        StringBuilder sb = new StringBuilder();
+        IndexSet indexSet = acquireIndexSet();
+        for (ResourceType resourceType : ResourceType.values())
+        {
+            SearchServer searchServer = indexSet != null ? indexSet.getSearchServer(resourceType, false) : null;
+            if (searchServer == null)
+            {
+                continue;
+            }
+            sb.append(resourceType.getName()).append(":searches:").append(searchServer.getCount());
+            QueryResultCache resultCache = searchServer.getResultCache();
+            if (resultCache != null)
+            {
+                sb.append(",cache:").append(resultCache.getStats());
+            }
+            ParsedQueryCache parsedQueryCache = searchServer.getParsedQueryCache();
+            if (parsedQueryCache != null)
+            {
+                sb.append(",parse:").append(parsedQueryCache.getStats());
+            }
+            SearchServer dismaxSearchServer = indexSet.getSearchServer(resourceType, true);
+            if (dismaxSearchServer != null && dismaxSearchServer.getParsedQueryCache() != null)
+            {
+                sb.append(",dismaxparse:").append(dismaxSearchServer.getParsedQueryCache().getStats());
+            }
+            if (admissionControllers != null)
+            {
+                sb.append(",admission:").append(admissionControllers.get(resourceType).getStats());
+            }
+            sb.append(",time:").append(timeBudgets.getStats(resourceType));
+            if (indexRefreshScheduler != null)
+            {
+                sb.append(",refresh:").append(indexRefreshScheduler.getStats(resourceType));
+            }
+            SearcherWarmer searcherWarmer = searcherWarmers.get(resourceType);
+            if (searcherWarmer != null)
+            {
+                sb.append(",warmup:").append(searcherWarmer.getStats());
+            }
+            sb.append('\n');
+        }
+        if (indexSet != null)
+        {
+            sb.append("generation:").append(indexSet.getGeneration()).append('\n');
+            indexSet.decRef();
+        }
+        String rateLimiterStats = RateLimiterChecker.getStats();
+        if (rateLimiterStats != null)
+        {
+            sb.append("ratelimiter:").append(rateLimiterStats).append('\n');
+        }
+        if (allAdmissionController != null)
+        {
+            sb.append("alladmission:").append(allAdmissionController.getStats()).append('\n');
+        }
+        if (allSearchExecutor != null)
+        {
+            sb.append("allsearch:").append(allSearchExecutor.getStats()).append('\n');
+        }
+        if (batchSearchExecutor != null)
+        {
+            sb.append("batchsearch:").append(batchSearchExecutor.getStats()).append('\n');
+        }
+        if (asyncSearchExecutor != null)
+        {
+            sb.append("asyncsearch:").append(asyncSearchExecutor.getStats()).append('\n');
+        }
+        if (parallelSearchExecutor != null)
+        {
+            sb.append("parallelsearch:").append(parallelSearchExecutor.getStats()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param request
+     * @return the executor to process the request asynchronously on, or null to process it on the container thread
+     */
+    private AsyncSearchExecutor getAsyncSearchExecutor(HttpServletRequest request)
+    {
+        AsyncSearchExecutor executor = asyncSearchExecutor;
+        if (!request.isAsyncSupported())
+        {
+            return null;
+        }
+        String processing = isProcessingHeaderEnabled ? request.getHeader(HEADER_PROCESSING) : null;
+        if (processing != null && isRequestFromLocalHost(request))
+        {
+            if (processing.equals(PROCESSING_SYNC))
+            {
+                return null;
+            }
+            if (processing.equals(PROCESSING_ASYNC) && executor == null)
+            {
+                synchronized (this)
+                {
+                    if (asyncSearchExecutor == null)
+                    {
+                        asyncSearchExecutor = new AsyncSearchExecutor(AsyncSearchExecutor.DEFAULT_THREADS,
+                                AsyncSearchExecutor.DEFAULT_QUEUE_SIZE, AsyncSearchExecutor.DEFAULT_TIMEOUT_MILLIS);
+                    }
+                    executor = asyncSearchExecutor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+    {
+        AsyncSearchExecutor executor = getAsyncSearchExecutor(request);
+        if (executor != null)
+        {
+            executor.dispatch(request, response, new AsyncSearchExecutor.RequestHandler()
+            {
+                @Override
+                public void handle(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+                {
+                    processGet(request, response);
+                }
+            });
+            return;
+        }
+        processGet(request, response);
+    }
+
+    /**
+     * Process a search or admin request, on the container thread or asynchronously
+     *
+     * @param request
+     * @param response
+     * @throws ServletException
+     * @throws IOException
+     */
+    private void processGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+    {
+        // Use the same indexes for the whole request even if they are replaced meanwhile
+        IndexSet indexSet = acquireIndexSet();
+        try
+        {
+            doGet(request, response, indexSet);
+        }
+        finally
+        {
+            if (indexSet != null)
+            {
+                indexSet.decRef();
+            }
+        }
+    }
+
+    /**
+     * @param request
+     * @param response
+     * @param indexSet indexes to search, null if the indexes have not been loaded
+     * @throws ServletException
+     * @throws IOException
+     */
+    private void doGet(HttpServletRequest request, HttpServletResponse response, IndexSet indexSet) throws ServletException, IOException
+    {
+        String query = "";
+        try
+        {
+            // Report whether ready to serve searches, for load balancers so not restricted to local machine
+            if (request.getParameter(RequestParameter.READY.getName()) != null)
+            {
+                if (isReady)
+                {
+                    outputConfirmation(response, "Ready");
+                }
+                else
+                {
+                    response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Not Ready");
+                }
+                return;
+            }
+
+            // Check if servlet is initialized ok
+            if (indexSet == null)
+            {
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, ErrorMessage.SERVLET_INIT_FAILED.getMsg(initMessage));
+                return;
+            }
+            // Ensure encoding set to UTF8
+            request.setCharacterEncoding(CHARSET);
+
+
+            if(processedAdminCommand(request, response))
             {
-                ResourceType resourceType = ResourceType.getValue(count);
-                if (resourceType == null)
-                {
-                    response.sendError(HttpServletResponse.SC_BAD_REQUEST, ErrorMessage.UNKNOWN_COUNT_TYPE.getMsg(count));
-                    return;
-                }
-
-                SearchServer searchServerCount = searchers.get(resourceType);
-                outputConfirmation( response, searchServerCount.getCount());
+                return;
+            }
+
+            // If we receive Count Parameter then we just return a count immediately, the options are the same as for the type
+            // parameter
+            String count = request.getParameter(RequestParameter.COUNT.getName());
+            if (count != null)
+            {
+                ResourceType resourceType = ResourceType.getValue(count);
+                if (resourceType == null)
+                {
+                    response.sendError(HttpServletResponse.SC_BAD_REQUEST, ErrorMessage.UNKNOWN_COUNT_TYPE.getMsg(count));
+                    return;
+                }
+
+                SearchServer searchServerCount = indexSet.getSearchServer(resourceType, false);
+                outputConfirmation( response, searchServerCount.getCount());
                 return;
             }
 
@@ -456,15 +1124,18 @@ public class SearchServerServlet extends HttpServlet
                     return;
                 }
             }
-            else if (!isSearchAllEnabled)
+            else if (!indexSet.isSearchAllEnabled())
             {
                 response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, ErrorMessage.INDEX_NOT_AVAILABLE_FOR_TYPE.getMsg(TYPE_ALL));
                 return;
             }
 
+            SearchTimings timings = new SearchTimings();
+            long requestStart = System.nanoTime();
             if (isRateLimiterEnabled)
             {
                 RateLimiterChecker.RateLimiterResponse rateLimiterResponse = RateLimiterChecker.checkRateLimiter(request);
+                timings.add(SearchTimings.Phase.RATE_LIMIT, System.nanoTime() - requestStart);
                 if (!rateLimiterResponse.isValid())
                 {
                     if (rateLimiterResponse.getHeaderMsg() != null)
@@ -562,23 +1233,94 @@ public class SearchServerServlet extends HttpServlet
                 isDismax = true;
             }
 
+            // Cursor paging, only supported when searching a single resource type
+            String cursor = request.getParameter(RequestParameter.CURSOR.getName());
+            if (Strings.isNullOrEmpty(cursor))
+            {
+                cursor = null;
+            }
+
+            // Sort by one of the keys of the resource type rather than by relevance
+            String sort = request.getParameter(RequestParameter.SORT.getName());
+            if (Strings.isNullOrEmpty(sort))
+            {
+                sort = null;
+            }
+            else if (resourceType == null || cursor != null)
+            {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, ErrorMessage.SORT_NOT_SUPPORTED.getMsg());
+                return;
+            }
+            else if (!resourceType.getSortKeys().contains(SortKey.getValue(sort)))
+            {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, ErrorMessage.INVALID_SORT.getMsg(sort, resourceType.getName(), getSortKeyNames(resourceType)));
+                return;
+            }
+
+            // Turn away request if too many searches of the index are already running or waiting
+            AdmissionController.Lane lane = AdmissionController.Lane.getValue(request.getHeader(HEADER_PRIORITY));
+            AdmissionController admissionController = null;
+            if (admissionControllers != null)
+            {
+                admissionController = resourceType != null ? admissionControllers.get(resourceType) : allAdmissionController;
+                if (!admissionController.acquire(lane))
+                {
+                    response.setHeader("Retry-After", String.valueOf(admissionController.getRetryAfterSeconds()));
+                    response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, ErrorMessage.SERVER_BUSY.getMsg());
+                    return;
+                }
+            }
+
+            SearchTimings.setCurrent(timings);
             try 
             {
                 if (resourceType != null)
                 {
-                    doSearch(response, resourceType, query, isDismax, isExplain, isPretty, offset, limit, responseFormat, responseVersion);
+                    doSearch(request, response, indexSet, resourceType, query, isDismax, isExplain, isPretty, offset, limit, responseFormat, responseVersion, cursor, sort, lane);
                 }
                 else
                 {
-                    doAllSearch(response, query, isDismax, offset, limit, responseFormat, isPretty);
+                    doAllSearch(request, response, indexSet, query, isDismax, offset, limit, responseFormat, isPretty, lane);
                 }
             }
             catch (TimeExceededException tee)
             {
+                if (resourceType != null)
+                {
+                    timeBudgets.recordTimeout(resourceType);
+                }
                 log.info("Query timeout: " + query);
                 response.sendError(HttpServletResponse.SC_REQUEST_TIMEOUT, ErrorMessage.REQUEST_TIMEOUT_EXCEEDED.getMsg());
                 return;
             }
+            catch (CursorExpiredException cee)
+            {
+                response.sendError(HttpServletResponse.SC_GONE, cee.getMessage());
+                return;
+            }
+            finally
+            {
+                if (admissionController != null)
+                {
+                    // Only the search is measured, time writing the response depends on the client
+                    admissionController.release(timings.get(SearchTimings.Phase.SEARCH));
+                }
+                SearchTimings.setCurrent(null);
+                timings.add(SearchTimings.Phase.TOTAL, System.nanoTime() - requestStart);
+                searchMetrics.record(resourceType, responseFormat, isDismax, timings);
+                if (resourceType != null)
+                {
+                    SearchServer searchServer = indexSet.getSearchServer(resourceType, isDismax);
+                    if (searchServer != null)
+                    {
+                        slowQueryLog.record(resourceType, searchServer, query, isDismax, timings);
+                    }
+                    if (queryFrequencies != null)
+                    {
+                        queryFrequencies.get(resourceType).record(query, isDismax);
+                    }
+                }
+            }
         }
         catch (ParseException pe)
         {
@@ -612,6 +1354,291 @@ public class SearchServerServlet extends HttpServlet
         }
     }
 
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+    {
+        AsyncSearchExecutor executor = getAsyncSearchExecutor(request);
+        if (executor != null)
+        {
+            executor.dispatch(request, response, new AsyncSearchExecutor.RequestHandler()
+            {
+                @Override
+                public void handle(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+                {
+                    processPost(request, response);
+                }
+            });
+            return;
+        }
+        processPost(request, response);
+    }
+
+    /**
+     * Process a batch search request, on the container thread or asynchronously
+     *
+     * @param request
+     * @param response
+     * @throws ServletException
+     * @throws IOException
+     */
+    private void processPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+    {
+        // Use the same indexes for the whole batch even if they are replaced meanwhile
+        IndexSet indexSet = acquireIndexSet();
+        try
+        {
+            doBatchSearch(request, response, indexSet);
+        }
+        finally
+        {
+            if (indexSet != null)
+            {
+                indexSet.decRef();
+            }
+        }
+    }
+
+    /**
+     * Batch search, runs each search of the posted batch in parallel and returns the results of each, in the same
+     * order, as a json array. A search that cannot be run is reported in place of its results so the rest of the batch
+     * is still returned, e.g.
+     *
+     * [{"type":"recording","results":{...}},{"type":"artist","error":{"status":400,"message":"..."}}]
+     *
+     * The whole batch is admitted as a single search of multiple indexes, but the rate limiter counts every search.
+     * Batches are run on their own executor, with a deadline allowing for the searches that have to wait for a thread.
+     *
+     * @param request
+     * @param response
+     * @param indexSet indexes to search, null if the indexes have not been loaded
+     * @throws IOException
+     */
+    private void doBatchSearch(HttpServletRequest request, HttpServletResponse response, IndexSet indexSet) throws IOException
+    {
+        if (indexSet == null)
+        {
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, ErrorMessage.SERVLET_INIT_FAILED.getMsg(initMessage));
+            return;
+        }
+        request.setCharacterEncoding(CHARSET);
+
+        List<BatchSearchRequest.Entry> entries;
+        try
+        {
+            entries = BatchSearchRequest.parse(CharStreams.toString(request.getReader())).getEntries();
+        }
+        catch (IllegalArgumentException iae)
+        {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, ErrorMessage.UNABLE_TO_PARSE_BATCH.getMsg(iae.getMessage()));
+            return;
+        }
+        if (entries.isEmpty() || entries.size() > maxBatchEntries)
+        {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, ErrorMessage.INVALID_BATCH_SIZE.getMsg(entries.size(), maxBatchEntries));
+            return;
+        }
+
+        // Turned away before taking an admission permit or spending rate limit tokens if the batch cannot be run now
+        if (!batchSearchExecutor.hasCapacity(entries.size()))
+        {
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, ErrorMessage.SERVER_BUSY.getMsg());
+            return;
+        }
+
+        AdmissionController.Lane lane = AdmissionController.Lane.getValue(request.getHeader(HEADER_PRIORITY));
+        if (allAdmissionController != null && !allAdmissionController.acquire(lane))
+        {
+            response.setHeader("Retry-After", String.valueOf(allAdmissionController.getRetryAfterSeconds()));
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, ErrorMessage.SERVER_BUSY.getMsg());
+            return;
+        }
+        long start = System.nanoTime();
+        // Only the searches are measured by the admission controller, time writing the response depends on the client
+        long searchNanos = -1;
+        try
+        {
+            // Validate each search, those that can be run are searched together
+            int size = entries.size();
+            ResourceType[] resourceTypes = new ResourceType[size];
+            SearchServer[] searchServers = new SearchServer[size];
+            int[] errorStatuses = new int[size];
+            String[] errorMessages = new String[size];
+            List<Callable<Results>> searches = new ArrayList<Callable<Results>>();
+            long deadline = batchSearchExecutor.getDeadlineNanos(entries.size());
+            List<Integer> searchEntries = new ArrayList<Integer>();
+            for (int i = 0; i < size; i++)
+            {
+                BatchSearchRequest.Entry entry = entries.get(i);
+                String type = TYPE_TRACK.equals(entry.getType()) ? ResourceType.RECORDING.getName() : entry.getType();
+                resourceTypes[i] = ResourceType.getValue(type);
+                if (resourceTypes[i] == null)
+                {
+                    errorStatuses[i] = HttpServletResponse.SC_BAD_REQUEST;
+                    errorMessages[i] = ErrorMessage.UNKNOWN_RESOURCE_TYPE.getMsg(type != null ? type : "none");
+                    continue;
+                }
+                if (Strings.isNullOrEmpty(entry.getQuery()))
+                {
+                    errorStatuses[i] = HttpServletResponse.SC_BAD_REQUEST;
+                    errorMessages[i] = ErrorMessage.NO_QUERY_PARAMETER.getMsg();
+                    continue;
+                }
+                searchServers[i] = indexSet.getSearchServer(resourceTypes[i], entry.isDismax());
+                if (searchServers[i] == null)
+                {
+                    errorStatuses[i] = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+                    errorMessages[i] = ErrorMessage.INDEX_NOT_AVAILABLE_FOR_TYPE.getMsg(resourceTypes[i]);
+                    continue;
+                }
+                if (isRateLimiterEnabled)
+                {
+                    RateLimiterChecker.RateLimiterResponse rateLimiterResponse = RateLimiterChecker.checkRateLimiter(request);
+                    if (!rateLimiterResponse.isValid())
+                    {
+                        errorStatuses[i] = HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+                        errorMessages[i] = rateLimiterResponse.getMsg();
+                        continue;
+                    }
+                }
+                timeBudgets.recordSearch(resourceTypes[i]);
+                if (queryFrequencies != null)
+                {
+                    queryFrequencies.get(resourceTypes[i]).record(entry.getQuery(), entry.isDismax());
+                }
+                searches.add(new CallableSearch(searchServers[i], entry.getQuery(), Math.max(0, entry.getOffset()),
+                        Math.min(entry.getLimit(), MAX_MATCHES_LIMIT), timeBudgets.getTimeAllowed(resourceTypes[i], lane),
+                        deadline));
+                searchEntries.add(i);
+            }
+
+            List<Future<Results>> futures;
+            try
+            {
+                futures = batchSearchExecutor.invokeAll(searches, deadline);
+                searchNanos = System.nanoTime() - start;
+            }
+            catch (RejectedExecutionException ree)
+            {
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, ErrorMessage.SERVER_BUSY.getMsg());
+                return;
+            }
+            Map<Integer, Future<Results>> entryFutures = new HashMap<Integer, Future<Results>>();
+            for (int i = 0; i < futures.size(); i++)
+            {
+                entryFutures.put(searchEntries.get(i), futures.get(i));
+            }
+
+            response.setCharacterEncoding(CHARSET);
+            response.setContentType("application/json; charset=" + CHARSET);
+            ResponseCompression.Encoding encoding = getEncoding(request);
+            setEncodingHeaders(response, encoding, null);
+            PrintWriter out = null;
+            try
+            {
+                out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(responseCompression.wrap(response.getOutputStream(), encoding), CHARSET)));
+                out.write('[');
+                for (int i = 0; i < size; i++)
+                {
+                    if (i > 0)
+                    {
+                        out.write(',');
+                    }
+                    out.write("{\"type\":\"" + StringEscapeUtils.escapeJava(Strings.nullToEmpty(entries.get(i).getType())) + "\",");
+                    Future<Results> future = entryFutures.get(i);
+                    if (future != null)
+                    {
+                        Results results = null;
+                        try
+                        {
+                            results = future.get();
+                            if (results.isPartial())
+                            {
+                                timeBudgets.recordPartial(resourceTypes[i]);
+                            }
+                        }
+                        catch (CancellationException ce)
+                        {
+                            timeBudgets.recordTimeout(resourceTypes[i]);
+                            errorStatuses[i] = HttpServletResponse.SC_REQUEST_TIMEOUT;
+                            errorMessages[i] = ErrorMessage.REQUEST_TIMEOUT_EXCEEDED.getMsg();
+                        }
+                        catch (ExecutionException ee)
+                        {
+                            setBatchError(ee.getCause(), entries.get(i).getQuery(), resourceTypes[i], errorStatuses, errorMessages, i);
+                        }
+                        catch (InterruptedException ie)
+                        {
+                            Thread.currentThread().interrupt();
+                            errorStatuses[i] = HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+                            errorMessages[i] = ErrorMessage.SERVER_BUSY.getMsg();
+                        }
+                        if (results != null)
+                        {
+                            out.write("\"results\":");
+                            writeResults(searchServers[i].getWriter(WS_VERSION_2), out, results, RESPONSE_JSON_NEW, false);
+                            out.write('}');
+                            continue;
+                        }
+                    }
+                    out.write("\"error\":{\"status\":" + errorStatuses[i] + ",\"message\":\""
+                            + StringEscapeUtils.escapeJava(errorMessages[i]) + "\"}}");
+                }
+                out.write(']');
+            }
+            finally
+            {
+                if (out != null)
+                {
+                    out.close();
+                }
+                AllSearchExecutor.releaseAll(futures);
+            }
+        }
+        finally
+        {
+            if (allAdmissionController != null)
+            {
+                allAdmissionController.release(searchNanos >= 0 ? searchNanos : System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Report why a search of a batch failed, as the equivalent single search would have
+     *
+     * @param cause
+     * @param query
+     * @param resourceType
+     * @param errorStatuses
+     * @param errorMessages
+     * @param i
+     */
+    private void setBatchError(Throwable cause, String query, ResourceType resourceType, int[] errorStatuses, String[] errorMessages, int i)
+    {
+        if (cause instanceof TimeExceededException)
+        {
+            timeBudgets.recordTimeout(resourceType);
+            errorStatuses[i] = HttpServletResponse.SC_REQUEST_TIMEOUT;
+            errorMessages[i] = ErrorMessage.REQUEST_TIMEOUT_EXCEEDED.getMsg();
+        }
+        else if (cause instanceof ParseException)
+        {
+            errorStatuses[i] = HttpServletResponse.SC_BAD_REQUEST;
+            errorMessages[i] = ErrorMessage.UNABLE_TO_PARSE_SEARCH.getMsg(query);
+        }
+        else if (cause instanceof NullPointerException && isUnescapedBackslashIssue(cause.getStackTrace(), query))
+        {
+            errorStatuses[i] = HttpServletResponse.SC_BAD_REQUEST;
+            errorMessages[i] = ErrorMessage.UNABLE_TO_PARSE_SEARCH_SLASHES_ARE_REGEXP.getMsg(query);
+        }
+        else
+        {
+            log.log(Level.WARNING, query + ":" + cause.getMessage(), cause);
+            errorStatuses[i] = HttpServletResponse.SC_BAD_REQUEST;
+            errorMessages[i] = String.valueOf(cause.getMessage());
+        }
+    }
+
     /**
      * See http://tickets.musicbrainz.org/browse/SEARCH-411
      *
@@ -635,7 +1662,12 @@ public class SearchServerServlet extends HttpServlet
     /**
      * Normal Search over one index
      *
+     * If the client already has the response for the current index, going by the ETag or last modified date it sent,
+     * it is told the response has not changed without the search being run.
+     *
+     * @param request
      * @param response
+     * @param indexSet
      * @param resourceType
      * @param query
      * @param isDismax
@@ -643,21 +1675,17 @@ public class SearchServerServlet extends HttpServlet
      * @param offset
      * @param limit
      * @param responseFormat
-     * @param responseVersion @throws ParseException
+     * @param responseVersion
+     * @param cursor if not null page using cursors, offset is ignored
+     * @param sort if not null the sort key of the resource type to order results by, otherwise ordered by relevance
+     * @param lane priority lane of the request, used to choose the time allowed
+     * @throws ParseException
      * @throws IOException
      */
-    public void doSearch(HttpServletResponse response, ResourceType resourceType, String query, boolean isDismax, boolean isExplain, boolean isPretty, Integer offset, Integer limit, String responseFormat, String responseVersion) throws ParseException, IOException
+    public void doSearch(HttpServletRequest request, HttpServletResponse response, IndexSet indexSet, ResourceType resourceType, String query, boolean isDismax, boolean isExplain, boolean isPretty, Integer offset, Integer limit, String responseFormat, String responseVersion, String cursor, String sort, AdmissionController.Lane lane) throws ParseException, IOException
     {
 
-        SearchServer searchServer;
-        if (isDismax)
-        {
-            searchServer = dismaxSearchers.get(resourceType);
-        }
-        else
-        {
-            searchServer = searchers.get(resourceType);
-        }
+        SearchServer searchServer = indexSet.getSearchServer(resourceType, isDismax);
 
         if (searchServer == null)
         {
@@ -685,9 +1713,6 @@ public class SearchServerServlet extends HttpServlet
             */
         }
 
-        long startLucene = System.currentTimeMillis();
-        Results results = searchServer.search(query, offset, limit);
-
         org.musicbrainz.search.servlet.ResultsWriter writer = searchServer.getWriter(responseVersion);
 
         if (writer == null)
@@ -695,103 +1720,375 @@ public class SearchServerServlet extends HttpServlet
             response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, ErrorMessage.NO_HANDLER_FOR_TYPE_AND_FORMAT.getMsg(resourceType, responseFormat));
             return;
         }
-        response.setCharacterEncoding(CHARSET);
-        if (responseFormat.equals(RESPONSE_XML))
+
+        // Pages requested with a cursor are never cached or given an ETag because each cursor is only valid for one
+        // searcher
+        String requestKey = cursor == null ? QueryResultCache.createKey(isDismax, query, offset, limit, sort, responseFormat, responseVersion, isPretty) : null;
+        ResponseCompression.Encoding encoding = getEncoding(request);
+        String eTag = null;
+        if (requestKey != null)
         {
-            response.setContentType(writer.getMimeType());
+            eTag = ConditionalRequests.createETag(indexSet.getGeneration(), searchServer.getIndexVersion(), resourceType, requestKey, encoding);
+            if (ConditionalRequests.isNotModified(request, eTag, writer.getLastUpdateDate()))
+            {
+                setEncodingHeaders(response, encoding, eTag);
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
         }
-        else
+
+        // If an identical search has already been done against the current index just return the cached response
+        QueryResultCache resultCache = cursor == null ? searchServer.getResultCache() : null;
+        String cacheKey = null;
+        long cacheGeneration = 0;
+        if (resultCache != null)
         {
-            response.setContentType(((ResultsWriter) writer).getJsonMimeType());
+            cacheKey = requestKey;
+            byte[] cached = resultCache.get(cacheKey);
+            if (cached != null)
+            {
+                setResponseHeaders(response, writer, responseFormat);
+                setEncodingHeaders(response, encoding, eTag);
+                writeContent(response, cached, encoding);
+                return;
+            }
+            cacheGeneration = resultCache.getGeneration();
         }
 
-        if (writer.getLastUpdateDate() != null)
+        long timeAllowedMillis = timeBudgets.getTimeAllowed(resourceType, lane);
+        timeBudgets.recordSearch(resourceType);
+        Results results;
+        if (cursor != null)
         {
-            response.setDateHeader("Last-Modified", writer.getLastUpdateDate().getTime());
+            results = searchServer.searchAfter(query, cursor, limit, timeAllowedMillis);
+        }
+        else
+        {
+            results = searchServer.search(query, offset, limit, timeAllowedMillis, SortKey.createSort(sort));
         }
 
-        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), CHARSET)));
+        // The results hold their searcher until written, so their documents can still be loaded if it is replaced
         try
         {
-            long startSer = System.currentTimeMillis();
-            writer.write(out, results, responseFormat, isPretty);
-            if (resourceType.getName() == "recording")
-                log.info("lucene:" + (System.currentTimeMillis()-startLucene) + 
-                         " serialize:" + (System.currentTimeMillis()-startSer) +
-                         " query " + query);
+            SearchTimings timings = SearchTimings.current();
+            if (timings != null)
+            {
+                timings.setTotalHits(results.getTotalHits());
+            }
+
+            setResponseHeaders(response, writer, responseFormat);
+            setEncodingHeaders(response, encoding, results.isPartial() ? null : eTag);
+            if (results.getNextCursor() != null)
+            {
+                response.setHeader(HEADER_NEXT_CURSOR, results.getNextCursor());
+            }
+
+            // Partial results are not cached so that the next identical search gets the chance to complete
+            if (results.isPartial())
+            {
+                timeBudgets.recordPartial(resourceType);
+                response.setHeader(HEADER_PARTIAL_TYPES, resourceType.getName());
+            }
+
+            // When caching the response is still streamed to the client as it is serialized, with a copy kept for the
+            // cache that is only added once the whole response has been written
+            ByteArrayOutputStream bytes = resultCache != null && !results.isPartial() ? new ByteArrayOutputStream() : null;
+            OutputStream os = responseCompression.wrap(response.getOutputStream(), encoding);
+            PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(bytes != null ? new TeeOutputStream(os, bytes) : os, CHARSET)));
+            try
+            {
+                writeResults(writer, out, results, responseFormat, isPretty);
+            }
+            finally
+            {
+                out.close();
+            }
+
+            // PrintWriter hides write errors, so a response that did not reach the client in full is not cached
+            if (bytes != null && !out.checkError())
+            {
+                resultCache.put(cacheKey, cacheGeneration, bytes.toByteArray());
+            }
         }
         finally
         {
-            out.close();
+            results.release();
         }
     }
 
     /**
-     * Search over multiple different indexes and return merged result
+     * @param resourceType
+     * @return names of the keys the resource type can be sorted by, for error messages
+     */
+    private static String getSortKeyNames(ResourceType resourceType)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (SortKey sortKey : resourceType.getSortKeys())
+        {
+            if (sb.length() > 0)
+            {
+                sb.append(", ");
+            }
+            sb.append(sortKey.getName());
+        }
+        return sb.length() > 0 ? sb.toString() : "none";
+    }
+
+    /**
+     * Write the results, timing serialization separately from the loading and decoding of the stored entities done
+     * by the writer. Only the stored fields the writer reads are loaded.
      *
-     * @param response
-     * @param query
-     * @param isDismax
-     * @param offset
-     * @param limit
-     * @param responseFormat @throws ParseException
+     * @param writer
+     * @param out
+     * @param results
+     * @param responseFormat
      * @param isPretty
      * @throws IOException
      */
-    private void doAllSearch(HttpServletResponse response, String query, boolean isDismax, Integer offset, Integer limit, String responseFormat, boolean isPretty) throws Exception
-    {
-        SearchServer artistSearch = isDismax ? dismaxSearchers.get(ResourceType.ARTIST) : searchers.get(ResourceType.ARTIST);
-        SearchServer releaseSearch = isDismax ? dismaxSearchers.get(ResourceType.RELEASE) : searchers.get(ResourceType.RELEASE);
-        SearchServer releaseGroupSearch = isDismax ? dismaxSearchers.get(ResourceType.RELEASE_GROUP) : searchers.get(ResourceType.RELEASE_GROUP);
-        SearchServer labelSearch = isDismax ? dismaxSearchers.get(ResourceType.LABEL) : searchers.get(ResourceType.LABEL);
-        SearchServer recordingSearch = isDismax ? dismaxSearchers.get(ResourceType.RECORDING) : searchers.get(ResourceType.RECORDING);
-        SearchServer workSearch = isDismax ? dismaxSearchers.get(ResourceType.WORK) : searchers.get(ResourceType.WORK);
-
-        Collection<Callable<Results>> searches = new ArrayList<Callable<Results>>();
-        searches.add(new CallableSearch(artistSearch, query, offset, limit));
-        searches.add(new CallableSearch(releaseSearch, query, offset, limit));
-        searches.add(new CallableSearch(releaseGroupSearch, query, offset, limit));
-        searches.add(new CallableSearch(labelSearch, query, offset, limit));
-        searches.add(new CallableSearch(recordingSearch, query, offset, limit));
-        searches.add(new CallableSearch(workSearch, query, offset, limit));
-
-        // Run each search in parallel then merge results
-        List<Future<Results>> results = es.invokeAll(searches);
-        Results allResults = new Results();
-        // Results are returned in same order as they were submitted
-        Results artistResults = results.get(0).get();
-        Results releaseResults = results.get(1).get();
-        Results releaseGroupResults = results.get(2).get();
-        Results labelResults = results.get(3).get();
-        Results recordingResults = results.get(4).get();
-        Results workResults = results.get(5).get();
-
-        AllWriter writer = new AllWriter(offset, limit, artistResults, releaseResults, releaseGroupResults, labelResults, recordingResults, workResults);
-        response.setCharacterEncoding(CHARSET);
+    private void writeResults(org.musicbrainz.search.servlet.ResultsWriter writer, PrintWriter out, Results results, String responseFormat, boolean isPretty) throws IOException
+    {
+        SearchTimings timings = SearchTimings.current();
+        long decodeBefore = timings != null ? timings.get(SearchTimings.Phase.DECODE) : 0;
+        long compressBefore = timings != null ? timings.get(SearchTimings.Phase.COMPRESS) : 0;
+        long loadBefore = timings != null ? timings.get(SearchTimings.Phase.LOAD) : 0;
+        long start = System.nanoTime();
+        results.setStoredFieldNames(writer.getStoredFieldNames());
+        writer.write(out, results, responseFormat, isPretty);
+        if (timings != null)
+        {
+            long decode = timings.get(SearchTimings.Phase.DECODE) - decodeBefore;
+            long compress = timings.get(SearchTimings.Phase.COMPRESS) - compressBefore;
+            long load = timings.get(SearchTimings.Phase.LOAD) - loadBefore;
+            timings.add(SearchTimings.Phase.SERIALIZE, System.nanoTime() - start - decode - compress - load);
+        }
+    }
 
+    /**
+     * Write already serialized response
+     *
+     * @param response
+     * @param content
+     * @param encoding
+     * @throws IOException
+     */
+    private void writeContent(HttpServletResponse response, byte[] content, ResponseCompression.Encoding encoding) throws IOException
+    {
+        if (encoding == ResponseCompression.Encoding.IDENTITY)
+        {
+            response.setContentLength(content.length);
+        }
+        OutputStream os = responseCompression.wrap(response.getOutputStream(), encoding);
+        try
+        {
+            os.write(content);
+        }
+        finally
+        {
+            os.close();
+        }
+    }
+
+    /**
+     * @param request
+     * @return encoding of the response negotiated from Accept-Encoding
+     */
+    private ResponseCompression.Encoding getEncoding(HttpServletRequest request)
+    {
+        return responseCompression.negotiate(request.getHeader(ResponseCompression.HEADER_ACCEPT_ENCODING));
+    }
+
+    /**
+     * Set the headers describing the representation of the response
+     *
+     * @param response
+     * @param encoding
+     * @param eTag ETag of the response, or null if it has none
+     */
+    private void setEncodingHeaders(HttpServletResponse response, ResponseCompression.Encoding encoding, String eTag)
+    {
+        if (responseCompression.isEnabled())
+        {
+            response.setHeader("Vary", ResponseCompression.HEADER_ACCEPT_ENCODING);
+        }
+        if (encoding != ResponseCompression.Encoding.IDENTITY)
+        {
+            response.setHeader(ResponseCompression.HEADER_CONTENT_ENCODING, encoding.getName());
+        }
+        if (eTag != null)
+        {
+            response.setHeader(ConditionalRequests.HEADER_ETAG, eTag);
+        }
+    }
+
+    /**
+     * Set content type and last modified headers for a search response
+     *
+     * @param response
+     * @param writer
+     * @param responseFormat
+     */
+    private void setResponseHeaders(HttpServletResponse response, org.musicbrainz.search.servlet.ResultsWriter writer, String responseFormat)
+    {
+        response.setCharacterEncoding(CHARSET);
         if (responseFormat.equals(RESPONSE_XML))
         {
             response.setContentType(writer.getMimeType());
         }
         else
         {
-            response.setContentType(writer.getJsonMimeType());
+            response.setContentType(((ResultsWriter) writer).getJsonMimeType());
         }
 
         if (writer.getLastUpdateDate() != null)
         {
             response.setDateHeader("Last-Modified", writer.getLastUpdateDate().getTime());
         }
+    }
+
+    /**
+     * Search over multiple different indexes and return merged result
+     *
+     * @param request
+     * @param response
+     * @param indexSet
+     * @param query
+     * @param isDismax
+     * @param offset
+     * @param limit
+     * @param responseFormat @throws ParseException
+     * @param isPretty
+     * @param lane priority lane of the request, used to choose the time allowed for each index
+     * @throws IOException
+     */
+    private void doAllSearch(HttpServletRequest request, HttpServletResponse response, IndexSet indexSet, String query, boolean isDismax, Integer offset, Integer limit, String responseFormat, boolean isPretty, AdmissionController.Lane lane) throws Exception
+    {
+        SearchServer artistSearch = indexSet.getSearchServer(ResourceType.ARTIST, isDismax);
+        SearchServer releaseSearch = indexSet.getSearchServer(ResourceType.RELEASE, isDismax);
+        SearchServer releaseGroupSearch = indexSet.getSearchServer(ResourceType.RELEASE_GROUP, isDismax);
+        SearchServer labelSearch = indexSet.getSearchServer(ResourceType.LABEL, isDismax);
+        SearchServer recordingSearch = indexSet.getSearchServer(ResourceType.RECORDING, isDismax);
+        SearchServer workSearch = indexSet.getSearchServer(ResourceType.WORK, isDismax);
+
+        // No search may run past the deadline of the whole type=all search, even if its own budget is longer
+        long deadline = allSearchExecutor.getDeadlineNanos();
+        Map<ResourceType, Callable<Results>> searches = new EnumMap<ResourceType, Callable<Results>>(ResourceType.class);
+        searches.put(ResourceType.ARTIST, new CallableSearch(artistSearch, query, offset, limit,
+                timeBudgets.getTimeAllowed(ResourceType.ARTIST, lane), deadline));
+        searches.put(ResourceType.RELEASE, new CallableSearch(releaseSearch, query, offset, limit,
+                timeBudgets.getTimeAllowed(ResourceType.RELEASE, lane), deadline));
+        searches.put(ResourceType.RELEASE_GROUP, new CallableSearch(releaseGroupSearch, query, offset, limit,
+                timeBudgets.getTimeAllowed(ResourceType.RELEASE_GROUP, lane), deadline));
+        searches.put(ResourceType.LABEL, new CallableSearch(labelSearch, query, offset, limit,
+                timeBudgets.getTimeAllowed(ResourceType.LABEL, lane), deadline));
+        searches.put(ResourceType.RECORDING, new CallableSearch(recordingSearch, query, offset, limit,
+                timeBudgets.getTimeAllowed(ResourceType.RECORDING, lane), deadline));
+        searches.put(ResourceType.WORK, new CallableSearch(workSearch, query, offset, limit,
+                timeBudgets.getTimeAllowed(ResourceType.WORK, lane), deadline));
+
+        // Run each search in parallel then merge results, leaving out any that did not finish in time
+        Map<ResourceType, Results> results;
+        try
+        {
+            results = allSearchExecutor.invokeAll(searches);
+        }
+        catch (RejectedExecutionException ree)
+        {
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, ErrorMessage.SERVER_BUSY.getMsg());
+            return;
+        }
 
-        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), CHARSET)));
         try
         {
-            writer.write(out, allResults, responseFormat, isPretty);
+            Set<ResourceType> timedOutTypes = EnumSet.noneOf(ResourceType.class);
+            Set<ResourceType> partialTypes = EnumSet.noneOf(ResourceType.class);
+            for (ResourceType resourceType : searches.keySet())
+            {
+                timeBudgets.recordSearch(resourceType);
+                if (!results.containsKey(resourceType))
+                {
+                    timeBudgets.recordTimeout(resourceType);
+                    timedOutTypes.add(resourceType);
+                    results.put(resourceType, new Results());
+                }
+                else if (results.get(resourceType).isPartial())
+                {
+                    timeBudgets.recordPartial(resourceType);
+                    partialTypes.add(resourceType);
+                }
+            }
+            if (timedOutTypes.size() == searches.size())
+            {
+                log.info("Query timeout: " + query);
+                response.sendError(HttpServletResponse.SC_REQUEST_TIMEOUT, ErrorMessage.REQUEST_TIMEOUT_EXCEEDED.getMsg());
+                return;
+            }
+
+            Results allResults = new Results();
+            AllWriter writer = new AllWriter(offset, limit, results.get(ResourceType.ARTIST), results.get(ResourceType.RELEASE),
+                    results.get(ResourceType.RELEASE_GROUP), results.get(ResourceType.LABEL), results.get(ResourceType.RECORDING),
+                    results.get(ResourceType.WORK));
+            writer.setTimedOutTypes(timedOutTypes);
+            response.setCharacterEncoding(CHARSET);
+            if (!timedOutTypes.isEmpty())
+            {
+                response.setHeader(HEADER_TIMED_OUT_TYPES, getTypeNames(timedOutTypes));
+            }
+            if (!partialTypes.isEmpty())
+            {
+                response.setHeader(HEADER_PARTIAL_TYPES, getTypeNames(partialTypes));
+            }
+
+            if (responseFormat.equals(RESPONSE_XML))
+            {
+                response.setContentType(writer.getMimeType());
+            }
+            else
+            {
+                response.setContentType(writer.getJsonMimeType());
+            }
+
+            if (writer.getLastUpdateDate() != null)
+            {
+                response.setDateHeader("Last-Modified", writer.getLastUpdateDate().getTime());
+            }
+
+            ResponseCompression.Encoding encoding = getEncoding(request);
+            setEncodingHeaders(response, encoding, null);
+            PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(responseCompression.wrap(response.getOutputStream(), encoding), CHARSET)));
+            try
+            {
+                writeResults(writer, out, allResults, responseFormat, isPretty);
+            }
+            finally
+            {
+                out.close();
+            }
         }
         finally
         {
-            out.close();
+            for (Results typeResults : results.values())
+            {
+                typeResults.release();
+            }
+        }
+    }
+
+    /**
+     * @param resourceTypes
+     * @return comma separated names of the types
+     */
+    private String getTypeNames(Set<ResourceType> resourceTypes)
+    {
+        StringBuilder types = new StringBuilder();
+        for (ResourceType resourceType : resourceTypes)
+        {
+            if (types.length() > 0)
+            {
+                types.append(',');
+            }
+            types.append(resourceType.getName());
         }
+        return types.toString();
     }
 
 }
@@ -0,0 +1,134 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Time spent in each phase of one search request, and the number of hits it found.
+ *
+ * The timings of the request being processed by the current thread are available from current() so that the search
+ * servers and results writers can add to them without every method having to pass them through, threads searching
+ * on behalf of a request (e.g. for type=all) install the timings of the request with setCurrent().
+ */
+public class SearchTimings {
+
+  public enum Phase {
+    RATE_LIMIT("ratelimit"),
+    PARSE("parse"),
+    SEARCH("search"),
+    LOAD("load"),
+    DECODE("decode"),
+    SERIALIZE("serialize"),
+    COMPRESS("compress"),
+    TOTAL("total"),
+    ;
+
+    private final String name;
+
+    Phase(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+  }
+
+  private static final ThreadLocal<SearchTimings> CURRENT = new ThreadLocal<SearchTimings>();
+
+  private final AtomicLongArray nanos = new AtomicLongArray(Phase.values().length);
+
+  // Total hits of the search, -1 if the search did not complete
+  private volatile int totalHits = -1;
+
+  /**
+   * @return timings of the request being processed by this thread, or null if not timing
+   */
+  public static SearchTimings current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * @param timings timings of the request to be processed by this thread, or null to stop timing
+   */
+  public static void setCurrent(SearchTimings timings) {
+    if (timings == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(timings);
+    }
+  }
+
+  /**
+   * Add to the timings of the request being processed by this thread, if any
+   *
+   * @param phase
+   * @param nanos
+   */
+  public static void addToCurrent(Phase phase, long nanos) {
+    SearchTimings timings = CURRENT.get();
+    if (timings != null) {
+      timings.add(phase, nanos);
+    }
+  }
+
+  public void add(Phase phase, long nanos) {
+    this.nanos.addAndGet(phase.ordinal(), nanos);
+  }
+
+  public long get(Phase phase) {
+    return nanos.get(phase.ordinal());
+  }
+
+  /**
+   * Merge in the timings of one of several searches run in parallel for the request, such as the searches of each
+   * index of a type=all search. The searches overlap so each phase is increased to the longest time taken by any of
+   * them rather than adding them all up.
+   *
+   * @param parallel
+   */
+  public void addParallel(SearchTimings parallel) {
+    for (Phase phase : Phase.values()) {
+      long value = parallel.get(phase);
+      long current = nanos.get(phase.ordinal());
+      while (value > current && !nanos.compareAndSet(phase.ordinal(), current, value)) {
+        current = nanos.get(phase.ordinal());
+      }
+    }
+  }
+
+  public int getTotalHits() {
+    return totalHits;
+  }
+
+  public void setTotalHits(int totalHits) {
+    this.totalHits = totalHits;
+  }
+}
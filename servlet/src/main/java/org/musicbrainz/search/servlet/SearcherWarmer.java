@@ -0,0 +1,147 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TimeLimitingCollector;
+import org.apache.lucene.search.TimeLimitingCollector.TimeExceededException;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.musicbrainz.search.servlet.IndexWarmer.WarmupQuery;
+
+/**
+ * Warms each searcher opened when an index is refreshed, before it replaces the current searcher, by running the
+ * queries most frequently searched for against it and loading their top hits. The first real searches against the
+ * new segments then do not have to page in the postings, norms and stored fields.
+ */
+public class SearcherWarmer {
+
+  public static final int DEFAULT_TOP_QUERIES = 100;
+  public static final long DEFAULT_TIME_ALLOWED_MILLIS = 5000;
+
+  // Number of hits loaded by each query, the default limit of the web service
+  private static final int WARMUP_LIMIT = 25;
+
+  private final static Logger log = Logger.getLogger(SearcherWarmer.class.getName());
+
+  private final ResourceType resourceType;
+  private final QueryFrequencySketch queryFrequencies;
+  private final SearchServer searchServer;
+  private final SearchServer dismaxSearchServer;
+  private final int topQueries;
+  private final long timeAllowedMillis;
+  private final SearchMetrics searchMetrics;
+
+  private final AtomicLong warmups = new AtomicLong();
+  private final AtomicLong queriesReplayed = new AtomicLong();
+  private volatile long lastMillis;
+  private volatile int lastQueries;
+
+  /**
+   * @param resourceType
+   * @param queryFrequencies queries searched for this resource type
+   * @param searchServer used to parse the queries
+   * @param dismaxSearchServer used to parse the dismax queries
+   * @param topQueries number of the most frequent queries to replay
+   * @param timeAllowedMillis maximum time spent warming a searcher, any queries not replayed by then are skipped
+   * @param searchMetrics where the warm up time is recorded, or null
+   */
+  public SearcherWarmer(ResourceType resourceType, QueryFrequencySketch queryFrequencies, SearchServer searchServer,
+      SearchServer dismaxSearchServer, int topQueries, long timeAllowedMillis, SearchMetrics searchMetrics) {
+    this.resourceType = resourceType;
+    this.queryFrequencies = queryFrequencies;
+    this.searchServer = searchServer;
+    this.dismaxSearchServer = dismaxSearchServer;
+    this.topQueries = topQueries;
+    this.timeAllowedMillis = timeAllowedMillis;
+    this.searchMetrics = searchMetrics;
+  }
+
+  /**
+   * Replay the most frequent queries against the searcher, failures are ignored as the aim is only to load the index
+   *
+   * @param searcher
+   * @return number of queries replayed
+   */
+  public int warm(IndexSearcher searcher) {
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeAllowedMillis);
+    List<WarmupQuery> queries = queryFrequencies.getTopQueries(topQueries);
+    int replayed = 0;
+    for (WarmupQuery warmupQuery : queries) {
+      long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+      if (remainingMillis <= 0) {
+        break;
+      }
+      try {
+        SearchServer parser = warmupQuery.isDismax() ? dismaxSearchServer : searchServer;
+        Query query = parser.getParsedQuery(warmupQuery.getQuery());
+        TopScoreDocCollector collector = TopScoreDocCollector.create(WARMUP_LIMIT, true);
+        searcher.search(query, new TimeLimitingCollector(collector, TimeLimitingCollector.getGlobalCounter(),
+            remainingMillis));
+        for (ScoreDoc scoreDoc : collector.topDocs().scoreDocs) {
+          searcher.doc(scoreDoc.doc);
+        }
+      } catch (TimeExceededException tee) {
+        replayed++;
+        break;
+      } catch (Exception e) {
+        log.log(Level.FINE, "Unable to warm " + resourceType.getName() + " with " + warmupQuery.getQuery(), e);
+      }
+      replayed++;
+    }
+    long nanos = System.nanoTime() - start;
+
+    warmups.incrementAndGet();
+    queriesReplayed.addAndGet(replayed);
+    lastMillis = TimeUnit.NANOSECONDS.toMillis(nanos);
+    lastQueries = replayed;
+    if (searchMetrics != null) {
+      searchMetrics.recordWarmup(resourceType, nanos);
+    }
+    log.info("Warmed refreshed " + resourceType.getName() + " index with " + replayed + " of " + queries.size()
+        + " queries in " + lastMillis + "ms");
+    return replayed;
+  }
+
+  /**
+   * @return number of searchers warmed, queries replayed and the duration and queries of the last warm up
+   */
+  public String getStats() {
+    return "warmups:" + warmups.get() + ",queries:" + queriesReplayed.get() + ",lastms:" + lastMillis
+        + ",lastqueries:" + lastQueries;
+  }
+}
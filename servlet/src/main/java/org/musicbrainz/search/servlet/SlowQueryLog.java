@@ -0,0 +1,307 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TimeLimitingCollector;
+import org.apache.lucene.search.TimeLimitingCollector.TimeExceededException;
+import org.apache.lucene.search.TopScoreDocCollector;
+
+/**
+ * Keeps the most recent searches of each index that took longer than a threshold, so that when latency spikes the
+ * queries responsible can be found.
+ *
+ * Each index has a fixed size ring buffer that is written without locking, so recording a slow query never holds
+ * up another request. Every explainEvery slow query also has the explanation of its top hits captured, this is done
+ * by a single background thread and is skipped if the thread has too much to do.
+ */
+public class SlowQueryLog {
+
+  public static final int DEFAULT_SIZE = 20;
+  public static final long DEFAULT_THRESHOLD_MILLIS = 500;
+  public static final int DEFAULT_EXPLAIN_EVERY = 10;
+
+  // Explanations are only captured for the top hits, and only if they can be found in this time
+  private static final int EXPLAIN_HITS = 3;
+  private static final long EXPLAIN_TIME_ALLOWED_MILLIS = 5000;
+  private static final int EXPLAIN_QUEUE_SIZE = 10;
+
+  private final static Logger log = Logger.getLogger(SlowQueryLog.class.getName());
+
+  /**
+   * A slow query
+   */
+  public static class SlowQuery {
+    private final long timestamp = System.currentTimeMillis();
+    private final String query;
+    private final boolean isDismax;
+    private final String parsedQuery;
+    private final int totalHits;
+    private final long[] micros = new long[SearchTimings.Phase.values().length];
+    private volatile String explanation;
+
+    SlowQuery(String query, boolean isDismax, String parsedQuery, SearchTimings timings) {
+      this.query = query;
+      this.isDismax = isDismax;
+      this.parsedQuery = parsedQuery;
+      this.totalHits = timings.getTotalHits();
+      for (SearchTimings.Phase phase : SearchTimings.Phase.values()) {
+        micros[phase.ordinal()] = TimeUnit.NANOSECONDS.toMicros(timings.get(phase));
+      }
+    }
+
+    public String getQuery() {
+      return query;
+    }
+
+    public String getParsedQuery() {
+      return parsedQuery;
+    }
+
+    public int getTotalHits() {
+      return totalHits;
+    }
+
+    public long getMicros(SearchTimings.Phase phase) {
+      return micros[phase.ordinal()];
+    }
+
+    /**
+     * @return explanation of the top hits, null if not captured (yet)
+     */
+    public String getExplanation() {
+      return explanation;
+    }
+  }
+
+  private final long thresholdNanos;
+  private final int explainEvery;
+  private final AtomicReferenceArray<SlowQuery>[] buffers;
+  private final AtomicLong[] next;
+  private final AtomicLong recorded = new AtomicLong();
+  private final ThreadPoolExecutor explainExecutor;
+
+  /**
+   * @param size number of slow queries kept for each index
+   * @param thresholdMillis searches taking longer than this are recorded
+   * @param explainEvery capture the explanation of every explainEvery slow query, zero to never capture
+   */
+  @SuppressWarnings("unchecked")
+  public SlowQueryLog(int size, long thresholdMillis, int explainEvery) {
+    this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    this.explainEvery = explainEvery;
+    this.buffers = new AtomicReferenceArray[ResourceType.values().length];
+    this.next = new AtomicLong[ResourceType.values().length];
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = new AtomicReferenceArray<SlowQuery>(Math.max(1, size));
+      next[i] = new AtomicLong();
+    }
+    this.explainExecutor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+        EXPLAIN_QUEUE_SIZE), new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "slow-query-explain");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+      }
+    }, new ThreadPoolExecutor.DiscardPolicy());
+    this.explainExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Record the search if it was slow
+   *
+   * @param resourceType
+   * @param searchServer the search server that ran the search
+   * @param query
+   * @param isDismax
+   * @param timings
+   * @return the slow query, or null if the search was not slow
+   */
+  public SlowQuery record(ResourceType resourceType, SearchServer searchServer, String query, boolean isDismax,
+      SearchTimings timings) {
+    if (timings.get(SearchTimings.Phase.TOTAL) < thresholdNanos) {
+      return null;
+    }
+
+    // The query has only just been parsed so is normally in the parsed query cache
+    Query parsedQuery = null;
+    try {
+      parsedQuery = searchServer.getParsedQuery(query);
+    } catch (Exception e) {
+      // Still worth recording if it was slow to fail
+    }
+
+    SlowQuery slowQuery = new SlowQuery(query, isDismax, parsedQuery != null ? parsedQuery.toString() : null, timings);
+    int i = resourceType.ordinal();
+    AtomicReferenceArray<SlowQuery> buffer = buffers[i];
+    buffer.set((int) (next[i].getAndIncrement() % buffer.length()), slowQuery);
+
+    if (parsedQuery != null && explainEvery > 0 && recorded.getAndIncrement() % explainEvery == 0) {
+      explainExecutor.execute(new Explainer(slowQuery, searchServer.getSearcherManager(), parsedQuery));
+    }
+    return slowQuery;
+  }
+
+  /**
+   * Captures the explanation of the top hits of a slow query
+   */
+  private static class Explainer implements Runnable {
+    private final SlowQuery slowQuery;
+    private final SearcherManager searcherManager;
+    private final Query query;
+
+    Explainer(SlowQuery slowQuery, SearcherManager searcherManager, Query query) {
+      this.slowQuery = slowQuery;
+      this.searcherManager = searcherManager;
+      this.query = query;
+    }
+
+    @Override
+    public void run() {
+      try {
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+          TopScoreDocCollector collector = TopScoreDocCollector.create(EXPLAIN_HITS, true);
+          searcher.search(query, new TimeLimitingCollector(collector, TimeLimitingCollector.getGlobalCounter(),
+              EXPLAIN_TIME_ALLOWED_MILLIS));
+          StringBuilder sb = new StringBuilder();
+          for (ScoreDoc scoreDoc : collector.topDocs().scoreDocs) {
+            sb.append(scoreDoc.doc).append(':').append(searcher.explain(query, scoreDoc.doc).toString());
+          }
+          slowQuery.explanation = sb.toString();
+        } finally {
+          searcherManager.release(searcher);
+        }
+      } catch (TimeExceededException tee) {
+        slowQuery.explanation = "Unable to explain in " + EXPLAIN_TIME_ALLOWED_MILLIS + "ms";
+      } catch (Exception e) {
+        // e.g. the index has been closed since the query was recorded
+        log.log(Level.FINE, "Unable to explain slow query: " + e.getMessage(), e);
+      }
+    }
+  }
+
+  /**
+   * @param resourceType
+   * @return the slow queries recorded for the index, slowest first
+   */
+  public List<SlowQuery> getSlowQueries(ResourceType resourceType) {
+    AtomicReferenceArray<SlowQuery> buffer = buffers[resourceType.ordinal()];
+    List<SlowQuery> slowQueries = new ArrayList<SlowQuery>(buffer.length());
+    for (int i = 0; i < buffer.length(); i++) {
+      SlowQuery slowQuery = buffer.get(i);
+      if (slowQuery != null) {
+        slowQueries.add(slowQuery);
+      }
+    }
+    Collections.sort(slowQueries, new Comparator<SlowQuery>() {
+      @Override
+      public int compare(SlowQuery o1, SlowQuery o2) {
+        long total1 = o1.getMicros(SearchTimings.Phase.TOTAL);
+        long total2 = o2.getMicros(SearchTimings.Phase.TOTAL);
+        return total1 > total2 ? -1 : (total1 == total2 ? 0 : 1);
+      }
+    });
+    return slowQueries;
+  }
+
+  /**
+   * @return the slow queries of every index as json, an object with a list of slow queries for each type
+   */
+  public String toJson() {
+    StringBuilder sb = new StringBuilder("{");
+    boolean isFirstType = true;
+    for (ResourceType resourceType : ResourceType.values()) {
+      List<SlowQuery> slowQueries = getSlowQueries(resourceType);
+      if (slowQueries.isEmpty()) {
+        continue;
+      }
+      if (!isFirstType) {
+        sb.append(',');
+      }
+      isFirstType = false;
+      appendString(sb, resourceType.getName()).append(":[");
+      for (int i = 0; i < slowQueries.size(); i++) {
+        SlowQuery slowQuery = slowQueries.get(i);
+        if (i > 0) {
+          sb.append(',');
+        }
+        sb.append("{\"timestamp\":").append(slowQuery.timestamp);
+        sb.append(",\"query\":");
+        appendString(sb, slowQuery.query);
+        sb.append(",\"dismax\":").append(slowQuery.isDismax);
+        sb.append(",\"parsed\":");
+        appendString(sb, slowQuery.parsedQuery);
+        sb.append(",\"hits\":").append(slowQuery.totalHits);
+        sb.append(",\"micros\":{");
+        for (SearchTimings.Phase phase : SearchTimings.Phase.values()) {
+          if (phase.ordinal() > 0) {
+            sb.append(',');
+          }
+          appendString(sb, phase.getName()).append(':').append(slowQuery.getMicros(phase));
+        }
+        sb.append("},\"explain\":");
+        appendString(sb, slowQuery.explanation);
+        sb.append('}');
+      }
+      sb.append(']');
+    }
+    return sb.append('}').toString();
+  }
+
+  private static StringBuilder appendString(StringBuilder sb, String value) {
+    if (value == null) {
+      return sb.append("null");
+    }
+    return sb.append('"').append(StringEscapeUtils.escapeJava(value)).append('"');
+  }
+
+  public void shutdown() {
+    explainExecutor.shutdown();
+  }
+}
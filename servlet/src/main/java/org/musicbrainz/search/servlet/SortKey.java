@@ -0,0 +1,117 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+
+/**
+ * Keys results can be sorted by instead of relevance, each backed by a doc values field of the same name written by
+ * the indexes of the resource types that support it, see ResourceType.getSortKeys().
+ *
+ * Requested with the sort parameter set to the name of the key, prefixed by '-' to sort in descending order.
+ */
+public enum SortKey {
+  NAME("name", "sortbyname", SortField.Type.STRING),
+  DATE("date", "sortbydate", SortField.Type.LONG),
+  TRACKS("tracks", "sortbytracks", SortField.Type.LONG),
+  DURATION("duration", "sortbyduration", SortField.Type.LONG),
+  ;
+
+  public static final char DESCENDING_PREFIX = '-';
+
+  private final String name;
+  private final String fieldName;
+  private final SortField.Type type;
+
+  SortKey(String name, String fieldName, SortField.Type type) {
+    this.name = name;
+    this.fieldName = fieldName;
+    this.type = type;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getFieldName() {
+    return fieldName;
+  }
+
+  /**
+   * Documents without a value for the key are always sorted last, and documents with the same value are sorted by
+   * relevance
+   *
+   * @param descending
+   * @return
+   */
+  public Sort getSort(boolean descending) {
+    SortField sortField = new SortField(fieldName, type, descending);
+    if (type == SortField.Type.STRING) {
+      sortField.setMissingValue(descending ? SortField.STRING_FIRST : SortField.STRING_LAST);
+    } else {
+      sortField.setMissingValue(descending ? Long.MIN_VALUE : Long.MAX_VALUE);
+    }
+    return new Sort(sortField, SortField.FIELD_SCORE);
+  }
+
+  /**
+   * @param value sort parameter
+   * @return the key, or null if not a key
+   */
+  public static SortKey getValue(String value) {
+    String name = isDescending(value) ? value.substring(1) : value;
+    for (SortKey candidateEnum : SortKey.values()) {
+      if (candidateEnum.getName().equals(name)) {
+        return candidateEnum;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param value sort parameter
+   * @return true if sorting in descending order
+   */
+  public static boolean isDescending(String value) {
+    return value.length() > 0 && value.charAt(0) == DESCENDING_PREFIX;
+  }
+
+  /**
+   * @param value sort parameter, or null
+   * @return the sort, or null to sort by relevance if value is null or not a key
+   */
+  public static Sort createSort(String value) {
+    if (value == null) {
+      return null;
+    }
+    SortKey sortKey = getValue(value);
+    return sortKey != null ? sortKey.getSort(isDescending(value)) : null;
+  }
+}
@@ -49,8 +49,7 @@ public class TagDismaxSearch extends AbstractDismaxSearchServer {
   protected Query parseQuery(String query) throws ParseException {
     // Treat all as text
     query = QueryParser.escape(query);
-    QueryParser parser = realSearchServer.getParser();
-    return parser.parse(query);
+    return realSearchServer.parseQuery(query);
   }
 
   @Override
@@ -179,6 +179,7 @@ public class TestSearchOnly {
         PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new NullOutputStream(), CHARSET)));
         writer.write(out, results, "xml", false);
         out.close();
+        results.release();
         long end = System.nanoTime();
         long queryInMs = ((end - start) / 1000000 );
         totalQueryTime+=queryInMs;
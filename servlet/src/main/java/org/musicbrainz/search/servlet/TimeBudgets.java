@@ -0,0 +1,163 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+
+/**
+ * Time allowed for a search of each index and each priority lane, and the number of searches of each index that ran
+ * out of time.
+ *
+ * Indexes that are cheap to search such as tag and instrument can be given a tight budget so a pathological query
+ * fails fast, whilst recording which is much larger can be given longer. The budget of an index is scaled by the
+ * factor of the lane so that bulk requests can be given less time than the website.
+ */
+public class TimeBudgets {
+
+  public static final long DEFAULT_TIME_ALLOWED_MILLIS = AbstractSearchServer.DEFAULT_TIME_ALLOWED_MILLIS;
+
+  private final long defaultTimeAllowedMillis;
+  private final Map<ResourceType, Long> timeAllowedMillis = new EnumMap<ResourceType, Long>(ResourceType.class);
+  private final Map<AdmissionController.Lane, Double> laneFactors = new EnumMap<AdmissionController.Lane, Double>(
+      AdmissionController.Lane.class);
+
+  private final AtomicLongArray searches = new AtomicLongArray(ResourceType.values().length);
+  private final AtomicLongArray timeouts = new AtomicLongArray(ResourceType.values().length);
+  private final AtomicLongArray partials = new AtomicLongArray(ResourceType.values().length);
+
+  /**
+   * @param defaultTimeAllowedMillis time allowed for indexes without their own budget
+   */
+  public TimeBudgets(long defaultTimeAllowedMillis) {
+    this.defaultTimeAllowedMillis = defaultTimeAllowedMillis;
+  }
+
+  /**
+   * Create budgets from configuration
+   *
+   * @param defaultTimeAllowedMillis time allowed for indexes without their own budget
+   * @param types comma separated list of type:millis, e.g. tag:250,recording:3000, may be null
+   * @param lanes comma separated list of lane:factor, e.g. bulk:0.5, may be null
+   * @return
+   * @throws IllegalArgumentException if types or lanes is not valid
+   */
+  public static TimeBudgets parse(long defaultTimeAllowedMillis, String types, String lanes) {
+    TimeBudgets timeBudgets = new TimeBudgets(defaultTimeAllowedMillis);
+    for (Map.Entry<String, String> entry : split(types).entrySet()) {
+      ResourceType resourceType = ResourceType.getValue(entry.getKey());
+      if (resourceType == null) {
+        throw new IllegalArgumentException("Unknown type in time budget: " + entry.getKey());
+      }
+      timeBudgets.setTimeAllowed(resourceType, Long.parseLong(entry.getValue()));
+    }
+    for (Map.Entry<String, String> entry : split(lanes).entrySet()) {
+      AdmissionController.Lane lane = null;
+      for (AdmissionController.Lane candidate : AdmissionController.Lane.values()) {
+        if (candidate.getName().equals(entry.getKey())) {
+          lane = candidate;
+        }
+      }
+      if (lane == null) {
+        throw new IllegalArgumentException("Unknown lane in time budget: " + entry.getKey());
+      }
+      timeBudgets.setLaneFactor(lane, Double.parseDouble(entry.getValue()));
+    }
+    return timeBudgets;
+  }
+
+  private static Map<String, String> split(String value) {
+    if (Strings.isNullOrEmpty(value)) {
+      return Collections.emptyMap();
+    }
+    return Splitter.on(',').trimResults().omitEmptyStrings().withKeyValueSeparator(":").split(value);
+  }
+
+  public void setTimeAllowed(ResourceType resourceType, long millis) {
+    timeAllowedMillis.put(resourceType, millis);
+  }
+
+  public void setLaneFactor(AdmissionController.Lane lane, double factor) {
+    laneFactors.put(lane, factor);
+  }
+
+  /**
+   * @param resourceType
+   * @return time allowed to search the index before any lane factor is applied
+   */
+  public long getTimeAllowed(ResourceType resourceType) {
+    Long millis = timeAllowedMillis.get(resourceType);
+    return millis != null ? millis : defaultTimeAllowedMillis;
+  }
+
+  /**
+   * @param resourceType
+   * @param lane
+   * @return time allowed to search the index for a request in the lane, at least one millisecond
+   */
+  public long getTimeAllowed(ResourceType resourceType, AdmissionController.Lane lane) {
+    long timeAllowed = getTimeAllowed(resourceType);
+    Double factor = laneFactors.get(lane);
+    if (factor != null) {
+      timeAllowed = (long) (timeAllowed * factor);
+    }
+    return Math.max(1, timeAllowed);
+  }
+
+  public void recordSearch(ResourceType resourceType) {
+    searches.incrementAndGet(resourceType.ordinal());
+  }
+
+  public void recordTimeout(ResourceType resourceType) {
+    timeouts.incrementAndGet(resourceType.ordinal());
+  }
+
+  public void recordPartial(ResourceType resourceType) {
+    partials.incrementAndGet(resourceType.ordinal());
+  }
+
+  public long getTimeouts(ResourceType resourceType) {
+    return timeouts.get(resourceType.ordinal());
+  }
+
+  /**
+   * @param resourceType
+   * @return budget, searches, searches that timed out, searches that returned partial results
+   */
+  public String getStats(ResourceType resourceType) {
+    int i = resourceType.ordinal();
+    return "budget:" + getTimeAllowed(resourceType) + ",searches:" + searches.get(i)
+        + ",timeouts:" + timeouts.get(i) + ",partials:" + partials.get(i);
+  }
+}
@@ -0,0 +1,276 @@
+/* Copyright (c) 2012 The MusicBrainz Search Server Authors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the MusicBrainz project nor the names of the
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.musicbrainz.search.servlet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Client for the rate limit server sharing one datagram channel between all requests.
+ *
+ * Each request is sent with a unique id, a background thread receives all replies and hands each one to the waiting
+ * caller with the same id. If no reply arrives within the timeout the request is allowed, and once failureThreshold
+ * requests in a row have failed the rate limit server is not asked at all for openMillis (the circuit breaker is open)
+ * so that an unresponsive rate limit server does not slow down every search.
+ */
+public class UdpRateLimiterClient implements Closeable
+{
+    private static final Logger log = Logger.getLogger(UdpRateLimiterClient.class.getName());
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 50;
+    public static final int DEFAULT_FAILURE_THRESHOLD = 10;
+    public static final long DEFAULT_OPEN_MILLIS = 5000;
+
+    private static final int MAX_SIZE_OF_RESPONSE_PACKET = 100;
+    private static final String OVER_LIMIT_SEARCH_IP = " over_limit search ip=";
+    private static final Charset CHARSET = Charset.forName("US-ASCII");
+
+    private final DatagramChannel channel;
+    private final long timeoutNanos;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final Thread receiver;
+
+    private final AtomicInteger requestId = new AtomicInteger();
+    private final ConcurrentHashMap<String, PendingRequest> pending = new ConcurrentHashMap<String, PendingRequest>();
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    // openUntil is only meaningful once the breaker has opened, System.nanoTime() may be negative so comparing it
+    // with the initial 0 could report the breaker open before it ever was
+    private volatile boolean hasOpened = false;
+    private volatile long openUntil;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong replies = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong lateReplies = new AtomicLong();
+    private final AtomicLong shortCircuited = new AtomicLong();
+    private final AtomicLong breakerOpened = new AtomicLong();
+    private final AtomicLong replyNanos = new AtomicLong();
+
+    /**
+     * Waits for the reply to one request
+     */
+    private static class PendingRequest
+    {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile String reply;
+
+        void complete(String reply)
+        {
+            this.reply = reply;
+            latch.countDown();
+        }
+
+        String await(long timeoutNanos) throws InterruptedException
+        {
+            return latch.await(timeoutNanos, TimeUnit.NANOSECONDS) ? reply : null;
+        }
+    }
+
+    /**
+     * @param server address of the rate limit server
+     * @param timeoutMillis how long to wait for each reply
+     * @param failureThreshold number of failures in a row before no longer asking the server
+     * @param openMillis how long to stop asking the server for
+     * @throws IOException
+     */
+    public UdpRateLimiterClient(InetSocketAddress server, long timeoutMillis, int failureThreshold, long openMillis)
+            throws IOException
+    {
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.channel = DatagramChannel.open();
+        this.channel.connect(server);
+
+        receiver = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                receiveReplies();
+            }
+        }, "ratelimiter-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Check if the ip address has exceeded its rate limit
+     *
+     * @param remoteIpAddress
+     * @return the rate limit server response, or a response allowing the request if no reply in time
+     */
+    public RateLimiterChecker.RateLimiterResponse check(String remoteIpAddress)
+    {
+        if (isOpen())
+        {
+            shortCircuited.incrementAndGet();
+            return RateLimiterChecker.ALWAYS_TRUE;
+        }
+
+        String id = String.valueOf(requestId.incrementAndGet());
+        PendingRequest request = new PendingRequest();
+        pending.put(id, request);
+        requests.incrementAndGet();
+        try
+        {
+            long start = System.nanoTime();
+            channel.write(ByteBuffer.wrap((id + OVER_LIMIT_SEARCH_IP + remoteIpAddress).getBytes(CHARSET)));
+            String reply = request.await(timeoutNanos);
+            if (reply == null)
+            {
+                timeouts.incrementAndGet();
+                recordFailure();
+                return RateLimiterChecker.ALWAYS_TRUE;
+            }
+            replyNanos.addAndGet(System.nanoTime() - start);
+            replies.incrementAndGet();
+            consecutiveFailures.set(0);
+            return new RateLimiterChecker.RateLimiterResponse(reply);
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            return RateLimiterChecker.ALWAYS_TRUE;
+        }
+        catch (IOException ioe)
+        {
+            errors.incrementAndGet();
+            recordFailure();
+            log.log(Level.FINE, "Unable to send to rate limiter:" + ioe.getMessage(), ioe);
+            return RateLimiterChecker.ALWAYS_TRUE;
+        }
+        finally
+        {
+            pending.remove(id);
+        }
+    }
+
+    private void recordFailure()
+    {
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold && !isOpen())
+        {
+            openUntil = System.nanoTime() + openNanos;
+            hasOpened = true;
+            breakerOpened.incrementAndGet();
+            log.warning("Rate limiter not responding, not checking rate limits for " + TimeUnit.NANOSECONDS.toMillis(openNanos) + " ms");
+        }
+    }
+
+    /**
+     * Once the open period is over requests are sent again, if the first one fails the breaker opens again straight
+     * away because the consecutive failures are only reset by a reply
+     *
+     * @return true if the circuit breaker is open so requests are not sent to the rate limit server
+     */
+    public boolean isOpen()
+    {
+        return hasOpened && openUntil - System.nanoTime() > 0;
+    }
+
+    /**
+     * Receive replies until the channel is closed, a reply starts with the request id followed by a space
+     */
+    private void receiveReplies()
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_SIZE_OF_RESPONSE_PACKET);
+        while (channel.isOpen())
+        {
+            try
+            {
+                buffer.clear();
+                channel.receive(buffer);
+                buffer.flip();
+                String reply = CHARSET.decode(buffer).toString();
+                int space = reply.indexOf(' ');
+                PendingRequest request = space > 0 ? pending.get(reply.substring(0, space)) : null;
+                if (request != null)
+                {
+                    request.complete(reply.substring(space + 1));
+                }
+                else
+                {
+                    lateReplies.incrementAndGet();
+                }
+            }
+            catch (PortUnreachableException pue)
+            {
+                errors.incrementAndGet();
+            }
+            catch (ClosedChannelException cce)
+            {
+                return;
+            }
+            catch (IOException ioe)
+            {
+                errors.incrementAndGet();
+                log.log(Level.FINE, "Unable to receive from rate limiter:" + ioe.getMessage(), ioe);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * @return one line summary of the counters
+     */
+    public String getStats()
+    {
+        long noOfReplies = replies.get();
+        return "requests:" + requests.get()
+                + ",replies:" + noOfReplies
+                + ",timeouts:" + timeouts.get()
+                + ",errors:" + errors.get()
+                + ",latereplies:" + lateReplies.get()
+                + ",shortcircuited:" + shortCircuited.get()
+                + ",breakeropened:" + breakerOpened.get()
+                + ",breaker:" + (isOpen() ? "open" : "closed")
+                + ",avgreplymicros:" + (noOfReplies == 0 ? 0 : replyNanos.get() / noOfReplies / 1000);
+    }
+}
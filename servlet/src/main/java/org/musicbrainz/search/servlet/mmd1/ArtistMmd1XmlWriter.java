@@ -33,17 +33,23 @@ import com.jthink.brainz.mmd.*;
 import org.apache.commons.lang.StringUtils;
 import org.musicbrainz.search.MbDocument;
 import org.musicbrainz.search.index.ArtistIndexField;
-import org.musicbrainz.search.index.MMDSerializer;
 import org.musicbrainz.search.index.ReleaseIndexField;
 import org.musicbrainz.search.servlet.Result;
 import org.musicbrainz.search.servlet.Results;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Set;
 
 
 public class ArtistMmd1XmlWriter extends Mmd1XmlWriter {
 
+    @Override
+    public Set<String> getStoredFieldNames() {
+        return Collections.singleton(ArtistIndexField.ARTIST_STORE.getName());
+    }
+
 
 
     public Metadata write(Results results) throws IOException {
@@ -60,7 +66,7 @@ public class ArtistMmd1XmlWriter extends Mmd1XmlWriter {
             artist.getOtherAttributes().put(getScore(), String.valueOf(result.getNormalizedScore()));
 
             org.musicbrainz.mmd2.Artist artistv2
-                    = (org.musicbrainz.mmd2.Artist) MMDSerializer.unserialize(doc.get(ArtistIndexField.ARTIST_STORE), org.musicbrainz.mmd2.Artist.class);
+                    = (org.musicbrainz.mmd2.Artist) doc.getStoredEntity(ArtistIndexField.ARTIST_STORE);
             artist.setId(artistv2.getId());
             artist.setType(StringUtils.capitalize(artistv2.getType()));
             artist.setName(artistv2.getName());
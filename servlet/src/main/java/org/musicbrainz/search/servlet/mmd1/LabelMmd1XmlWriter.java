@@ -33,14 +33,21 @@ import com.jthink.brainz.mmd.*;
 import org.apache.commons.lang.StringUtils;
 import org.musicbrainz.search.MbDocument;
 import org.musicbrainz.search.index.LabelIndexField;
-import org.musicbrainz.search.index.MMDSerializer;
 import org.musicbrainz.search.servlet.Result;
 import org.musicbrainz.search.servlet.Results;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Set;
 
 public class LabelMmd1XmlWriter extends Mmd1XmlWriter {
+
+    @Override
+    public Set<String> getStoredFieldNames() {
+        return Collections.singleton(LabelIndexField.LABEL_STORE.getName());
+    }
+
     public Metadata write(Results results) throws IOException {
 
         ObjectFactory of = new ObjectFactory();
@@ -56,7 +63,7 @@ public class LabelMmd1XmlWriter extends Mmd1XmlWriter {
             label.getOtherAttributes().put(getScore(), String.valueOf(result.getNormalizedScore()));
 
             org.musicbrainz.mmd2.Label labelv2
-                    = (org.musicbrainz.mmd2.Label) MMDSerializer.unserialize(doc.get(LabelIndexField.LABEL_STORE), org.musicbrainz.mmd2.Label.class);
+                    = (org.musicbrainz.mmd2.Label) doc.getStoredEntity(LabelIndexField.LABEL_STORE);
             label.setId(labelv2.getId());
             label.setType(StringUtils.capitalize(labelv2.getType()));
             label.setName(labelv2.getName());
@@ -43,7 +43,6 @@ import com.jthink.brainz.mmd.TextRepresentation;
 import org.apache.commons.lang.StringUtils;
 import org.musicbrainz.mmd2.*;
 import org.musicbrainz.search.MbDocument;
-import org.musicbrainz.search.index.MMDSerializer;
 import org.musicbrainz.search.index.ReleaseIndexField;
 import org.musicbrainz.search.servlet.Result;
 import org.musicbrainz.search.servlet.Results;
@@ -51,9 +50,16 @@ import org.musicbrainz.search.servlet.Results;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.util.Locale;
+import java.util.Collections;
+import java.util.Set;
 
 public class ReleaseMmd1XmlWriter extends Mmd1XmlWriter {
 
+    @Override
+    public Set<String> getStoredFieldNames() {
+        return Collections.singleton(ReleaseIndexField.RELEASE_STORE.getName());
+    }
+
 
     public Metadata write(Results results) throws IOException {
         ObjectFactory of = new ObjectFactory();
@@ -69,7 +75,7 @@ public class ReleaseMmd1XmlWriter extends Mmd1XmlWriter {
             release.getOtherAttributes().put(getScore(), String.valueOf(result.getNormalizedScore()));
 
             org.musicbrainz.mmd2.Release releasev2
-                    = (org.musicbrainz.mmd2.Release) MMDSerializer.unserialize(doc.get(ReleaseIndexField.RELEASE_STORE), org.musicbrainz.mmd2.Release.class);
+                    = (org.musicbrainz.mmd2.Release) doc.getStoredEntity(ReleaseIndexField.RELEASE_STORE);
             release.setId(releasev2.getId());
             release.getType().add(StringUtils.capitalize(releasev2.getReleaseGroup().getType()));
 
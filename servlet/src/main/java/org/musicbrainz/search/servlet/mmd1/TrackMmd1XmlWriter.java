@@ -33,16 +33,22 @@ import com.jthink.brainz.mmd.*;
 import org.apache.commons.lang.StringUtils;
 import org.musicbrainz.mmd2.ArtistCredit;
 import org.musicbrainz.search.MbDocument;
-import org.musicbrainz.search.index.MMDSerializer;
 import org.musicbrainz.search.index.RecordingIndexField;
 import org.musicbrainz.search.servlet.Result;
 import org.musicbrainz.search.servlet.Results;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Set;
 
 public class TrackMmd1XmlWriter extends Mmd1XmlWriter {
 
+    @Override
+    public Set<String> getStoredFieldNames() {
+        return Collections.singleton(RecordingIndexField.RECORDING_STORE.getName());
+    }
+
     public Metadata write(Results results) throws IOException {
 
 
@@ -59,7 +65,7 @@ public class TrackMmd1XmlWriter extends Mmd1XmlWriter {
 
 
             org.musicbrainz.mmd2.Recording recordingv2
-                    = (org.musicbrainz.mmd2.Recording) MMDSerializer.unserialize(doc.get(RecordingIndexField.RECORDING_STORE), org.musicbrainz.mmd2.Recording.class);
+                    = (org.musicbrainz.mmd2.Recording) doc.getStoredEntity(RecordingIndexField.RECORDING_STORE);
 
             track.setId(recordingv2.getId());
 
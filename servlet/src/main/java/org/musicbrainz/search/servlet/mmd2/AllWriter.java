@@ -3,14 +3,19 @@ package org.musicbrainz.search.servlet.mmd2;
 import org.musicbrainz.mmd2.EntityList;
 import org.musicbrainz.mmd2.Metadata;
 import org.musicbrainz.mmd2.ObjectFactory;
+import org.musicbrainz.search.servlet.ResourceType;
 import org.musicbrainz.search.servlet.Result;
 import org.musicbrainz.search.servlet.Results;
 
+import javax.xml.datatype.XMLGregorianCalendar;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Take the output from multiple results sets and merged into single output
@@ -26,6 +31,14 @@ public class AllWriter extends ResultsWriter {
     private Results labelResults;
     private Results recordingResults;
     private Results workResults;
+    private Set<ResourceType> timedOutTypes = EnumSet.noneOf(ResourceType.class);
+
+    private ArtistWriter artistWriter = new ArtistWriter();
+    private ReleaseWriter releaseWriter = new ReleaseWriter();
+    private ReleaseGroupWriter releaseGroupWriter = new ReleaseGroupWriter();
+    private LabelWriter labelWriter = new LabelWriter();
+    private RecordingWriter recordingWriter = new RecordingWriter();
+    private WorkWriter workWriter = new WorkWriter();
 
     public AllWriter(int offset,
                      int limit,
@@ -45,6 +58,17 @@ public class AllWriter extends ResultsWriter {
         this.workResults=workResults;
     }
 
+    /**
+     * @return the types whose search did not finish in time so are missing from the results
+     */
+    public Set<ResourceType> getTimedOutTypes() {
+        return timedOutTypes;
+    }
+
+    public void setTimedOutTypes(Set<ResourceType> timedOutTypes) {
+        this.timedOutTypes = timedOutTypes;
+    }
+
     //TODO we dont need this method but have to put in because need to subclass from ReleaseWriter
     public void write(Metadata metadata, Results results) throws IOException {
     }
@@ -52,6 +76,98 @@ public class AllWriter extends ResultsWriter {
 
     public Metadata write(Results results) throws IOException {
 
+        Results mergedResults = merge();
+
+        //Create entitylist stuff
+        ObjectFactory of  = new ObjectFactory();
+        Metadata metadata       = of.createMetadata();
+        EntityList entityList   = of.createEntityList();
+        metadata.setEntityList(entityList);
+
+        //Now use the correct writer to write the result
+        for(Result result:mergedResults.results)
+        {
+            write(entityList.getArtistAndReleaseAndReleaseGroup(), result);
+        }
+
+        entityList.setCount(BigInteger.valueOf(mergedResults.getTotalHits()));
+        entityList.setOffset(BigInteger.valueOf(mergedResults.getOffset()));
+
+        return metadata;
+    }
+
+    /**
+     * Write the result with the writer for its resource type
+     *
+     * @param list
+     * @param result
+     * @throws IOException
+     */
+    public void write(List list, Result result) throws IOException {
+        ResultsWriter writer = getWriter(result.getResourceType());
+        result.setStoredFieldNames(writer.getStoredFieldNames());
+        writer.write(list, result);
+    }
+
+    @Override
+    protected String getXmlListElementName() {
+        return "entity-list";
+    }
+
+    @Override
+    protected Object toXmlElement(Result result, Object entity) {
+        return getWriter(result.getResourceType()).toXmlElement(result, entity);
+    }
+
+    /**
+     * Results passed in are ignored, the merged results of each type are written
+     */
+    @Override
+    protected void writeXmlStream(PrintWriter out, Results results) throws IOException {
+        super.writeXmlStream(out, merge());
+    }
+
+    /**
+     * Not a single index so there is no single update date to write
+     */
+    @Override
+    protected XMLGregorianCalendar getIndexUpdateDate() {
+        return null;
+    }
+
+    private ResultsWriter getWriter(ResourceType resourceType) {
+        switch(resourceType)
+        {
+            case ARTIST:
+                return artistWriter;
+
+            case LABEL:
+                return labelWriter;
+
+            case RELEASE:
+                return releaseWriter;
+
+            case RELEASE_GROUP:
+                return releaseGroupWriter;
+
+            case RECORDING:
+                return recordingWriter;
+
+            case WORK:
+                return workWriter;
+
+            default:
+                throw new IllegalArgumentException("No writer for " + resourceType);
+        }
+    }
+
+    /**
+     * Merge the results of each type into a single list sorted by score and limited to the limit
+     *
+     * @return the merged results, with the best max score of any type and the total hits of all types
+     */
+    private Results merge() {
+
         List<Result> allResults = new ArrayList<Result>();
 
         //Sort by best max score, then set this as the max score for each entity
@@ -82,66 +198,24 @@ public class AllWriter extends ResultsWriter {
         Collections.sort(allResults);
         Collections.reverse(allResults);
 
-        //Create entitylist stuff
-        ObjectFactory of  = new ObjectFactory();
-        Metadata metadata       = of.createMetadata();
-        EntityList entityList   = of.createEntityList();
-        metadata.setEntityList(entityList);
-
-        ArtistWriter artistWriter = new ArtistWriter();
-        ReleaseWriter releaseWriter = new ReleaseWriter();
-        ReleaseGroupWriter releaseGroupWriter = new ReleaseGroupWriter();
-        LabelWriter labelWriter = new LabelWriter();
-        RecordingWriter recordingWriter = new RecordingWriter();
-        WorkWriter workWriter = new WorkWriter();
-
-        //Limit results returned to the limit
+        //Limit results returned to the limit, the documents of the results left out are never loaded
         if(allResults.size()>limit)
         {
             allResults = allResults.subList(0,limit);
         }
-        //Now use the correct writer to write the result
-        for(Result result:allResults)
-        {
-            switch(result.getResourceType())
-            {
-                case ARTIST:
-                    artistWriter.write(entityList.getArtistAndReleaseAndReleaseGroup(), result);
-                    break;
-
-                case LABEL:
-                    labelWriter.write(entityList.getArtistAndReleaseAndReleaseGroup(), result);
-                    break;
-
-                case RELEASE:
-                    releaseWriter.write(entityList.getArtistAndReleaseAndReleaseGroup(), result);
-                    break;
 
-                case RELEASE_GROUP:
-                    releaseGroupWriter.write(entityList.getArtistAndReleaseAndReleaseGroup(), result);
-                    break;
-
-                case RECORDING:
-                    recordingWriter.write(entityList.getArtistAndReleaseAndReleaseGroup(), result);
-                    break;
-
-                case WORK:
-                    workWriter.write(entityList.getArtistAndReleaseAndReleaseGroup(), result);
-                    break;
-
-            }
-        }
-
-        //Then write total matches
+        //Then total matches
         int totalHits=0;
-        int offset= resultsList.get(0).getOffset();
         for(Results next:resultsList)
         {
             totalHits+= next.getTotalHits();
         }
-        entityList.setCount(BigInteger.valueOf(totalHits));
-        entityList.setOffset(BigInteger.valueOf(offset));
 
-        return metadata;
+        Results mergedResults = new Results();
+        mergedResults.results = allResults;
+        mergedResults.setMaxScore(bestMaxScore);
+        mergedResults.setTotalHits(totalHits);
+        mergedResults.setOffset(resultsList.get(0).getOffset());
+        return mergedResults;
     }
 }
@@ -40,6 +40,7 @@ import org.musicbrainz.search.servlet.Results;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.List;
 
 
 public class AnnotationWriter extends ResultsWriter {
@@ -57,20 +58,34 @@ public class AnnotationWriter extends ResultsWriter {
         AnnotationList annotationList = of.createAnnotationList();
 
         for (Result result : results.results) {
-            MbDocument doc = result.getDoc();
-            Annotation annotation= of.createAnnotation();
-            annotation.setName(doc.get(AnnotationIndexField.NAME));
-            annotation.setText(doc.get(AnnotationIndexField.TEXT));
-            annotation.setType(doc.get(AnnotationIndexField.TYPE));
-            annotation.setEntity(doc.get(AnnotationIndexField.ENTITY));
-
             result.setNormalizedScore(results.getMaxScore());
-            annotation.setScore(String.valueOf(result.getNormalizedScore()));
-            annotationList.getAnnotation().add(annotation);
-
+            write(annotationList.getAnnotation(), result);
         }
         annotationList.setCount(BigInteger.valueOf(results.getTotalHits()));
         annotationList.setOffset(BigInteger.valueOf(results.getOffset()));
         metadata.setAnnotationList(annotationList);
     }
+
+    /**
+     * @param list
+     * @param result
+     * @throws IOException
+     */
+    public void write(List list, Result result) throws IOException {
+        ObjectFactory of = new ObjectFactory();
+
+        MbDocument doc = result.getDoc();
+        Annotation annotation= of.createAnnotation();
+        annotation.setName(doc.get(AnnotationIndexField.NAME));
+        annotation.setText(doc.get(AnnotationIndexField.TEXT));
+        annotation.setType(doc.get(AnnotationIndexField.TYPE));
+        annotation.setEntity(doc.get(AnnotationIndexField.ENTITY));
+        annotation.setScore(String.valueOf(result.getNormalizedScore()));
+        list.add(annotation);
+    }
+
+    @Override
+    protected String getXmlListElementName() {
+        return "annotation-list";
+    }
 }
\ No newline at end of file
@@ -31,8 +31,8 @@ package org.musicbrainz.search.servlet.mmd2;
 
 import org.musicbrainz.mmd2.*;
 import org.musicbrainz.search.MbDocument;
-import org.musicbrainz.search.index.MMDSerializer;
 import org.musicbrainz.search.index.AreaIndexField;
+import org.musicbrainz.search.index.IndexField;
 import org.musicbrainz.search.servlet.Result;
 import org.musicbrainz.search.servlet.Results;
 
@@ -43,6 +43,15 @@ import java.util.List;
 
 public class AreaWriter extends ResultsWriter {
 
+    @Override
+    protected IndexField getStoreField() {
+        return AreaIndexField.AREA_STORE;
+    }
+
+    @Override
+    protected String getXmlListElementName() {
+        return "area-list";
+    }
 
     /**
      * @param metadata
@@ -82,7 +91,7 @@ public class AreaWriter extends ResultsWriter {
     public void write(List list, Result result) throws IOException {
         MbDocument doc = result.getDoc();
         //TODO DefAreaElementInner not defined as @Xmlrootelement so we have to wrap in list
-        AreaList areaList = (AreaList) MMDSerializer.unserialize(doc.get(AreaIndexField.AREA_STORE), AreaList.class);
+        AreaList areaList = (AreaList) doc.getStoredEntity(AreaIndexField.AREA_STORE);
         DefAreaElementInner area= areaList.getArea().get(0);
         area.setScore(String.valueOf(result.getNormalizedScore()));
         list.add(area);
@@ -31,8 +31,8 @@ package org.musicbrainz.search.servlet.mmd2;
 
 import org.musicbrainz.mmd2.*;
 import org.musicbrainz.search.MbDocument;
+import org.musicbrainz.search.index.IndexField;
 import org.musicbrainz.search.index.ArtistIndexField;
-import org.musicbrainz.search.index.MMDSerializer;
 import org.musicbrainz.search.index.ReleaseIndexField;
 import org.musicbrainz.search.servlet.Result;
 import org.musicbrainz.search.servlet.Results;
@@ -45,6 +45,16 @@ import java.util.Locale;
 
 public class ArtistWriter extends ResultsWriter {
 
+    @Override
+    protected IndexField getXmlFragmentStoreField() {
+        return ArtistIndexField.ARTIST_STORE;
+    }
+
+    @Override
+    protected String getXmlListElementName() {
+        return "artist-list";
+    }
+
     /**
      * @param metadata
      * @param results
@@ -83,7 +93,7 @@ public class ArtistWriter extends ResultsWriter {
      */
     public void write(List list, Result result) throws IOException {
         MbDocument doc = result.getDoc();
-        Artist artist = (Artist) MMDSerializer.unserialize(doc.get(ArtistIndexField.ARTIST_STORE), Artist.class);
+        Artist artist = (Artist) doc.getStoredEntity(ArtistIndexField.ARTIST_STORE);
         artist.setScore(String.valueOf(result.getNormalizedScore()));
         list.add(artist);
     }
@@ -40,6 +40,7 @@ import org.musicbrainz.search.servlet.Results;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.List;
 
 
 public class CDStubWriter extends ResultsWriter {
@@ -56,66 +57,81 @@ public class CDStubWriter extends ResultsWriter {
         CdstubList cdstubList = of.createCdstubList();
 
         for (Result result : results.results) {
-            MbDocument doc = result.getDoc();
-            Cdstub cdstub = of.createCdstub();
-
-            String artist = doc.get(CDStubIndexField.ARTIST);
-            if (artist!= null)
-            {
-                cdstub.setArtist(artist);
-            }
-            else
-            {
-                cdstub.setArtist("");
-            }
-
-            String title = doc.get(CDStubIndexField.TITLE);
-            if (title!= null)
-            {
-                cdstub.setTitle(title);
-            }
-            else
-            {
-                cdstub.setTitle("");
-            }
-
-            String discid = doc.get(CDStubIndexField.DISCID);
-            if (discid!= null)
-            {
-                cdstub.setId(discid);
-            }
-            else
-            {
-                cdstub.setId("");
-            }
-
-            String comment = doc.get(CDStubIndexField.COMMENT);
-            if (isNotNoValue(comment))
-            {
-                cdstub.setComment(comment);
-            }
-
-            String barcode = doc.get(CDStubIndexField.BARCODE);
-            if (barcode!= null)
-            {
-                cdstub.setBarcode(barcode);
-            }
-
-            String numTracks = doc.get(CDStubIndexField.NUM_TRACKS);
-            if(numTracks!=null)
-            {
-                org.musicbrainz.mmd2.Cdstub.TrackList trackList = of.createCdstubTrackList();
-                trackList.setCount(new BigInteger(numTracks));
-                cdstub.setTrackList(trackList);
-            }
-
-
             result.setNormalizedScore(results.getMaxScore());
-            cdstub.setScore(String.valueOf(result.getNormalizedScore()));
-            cdstubList.getCdstub().add(cdstub);
+            write(cdstubList.getCdstub(), result);
         }
         cdstubList.setCount(BigInteger.valueOf(results.getTotalHits()));
         cdstubList.setOffset(BigInteger.valueOf(results.getOffset()));
         metadata.setCdstubList(cdstubList);
     }
+
+    /**
+     * @param list
+     * @param result
+     * @throws IOException
+     */
+    public void write(List list, Result result) throws IOException {
+        ObjectFactory of = new ObjectFactory();
+
+        MbDocument doc = result.getDoc();
+        Cdstub cdstub = of.createCdstub();
+
+        String artist = doc.get(CDStubIndexField.ARTIST);
+        if (artist!= null)
+        {
+            cdstub.setArtist(artist);
+        }
+        else
+        {
+            cdstub.setArtist("");
+        }
+
+        String title = doc.get(CDStubIndexField.TITLE);
+        if (title!= null)
+        {
+            cdstub.setTitle(title);
+        }
+        else
+        {
+            cdstub.setTitle("");
+        }
+
+        String discid = doc.get(CDStubIndexField.DISCID);
+        if (discid!= null)
+        {
+            cdstub.setId(discid);
+        }
+        else
+        {
+            cdstub.setId("");
+        }
+
+        String comment = doc.get(CDStubIndexField.COMMENT);
+        if (isNotNoValue(comment))
+        {
+            cdstub.setComment(comment);
+        }
+
+        String barcode = doc.get(CDStubIndexField.BARCODE);
+        if (barcode!= null)
+        {
+            cdstub.setBarcode(barcode);
+        }
+
+        String numTracks = doc.get(CDStubIndexField.NUM_TRACKS);
+        if(numTracks!=null)
+        {
+            org.musicbrainz.mmd2.Cdstub.TrackList trackList = of.createCdstubTrackList();
+            trackList.setCount(new BigInteger(numTracks));
+            cdstub.setTrackList(trackList);
+        }
+
+        cdstub.setScore(String.valueOf(result.getNormalizedScore()));
+        list.add(cdstub);
+    }
+
+    @Override
+    protected String getXmlListElementName() {
+        return "cdstub-list";
+    }
 }
\ No newline at end of file
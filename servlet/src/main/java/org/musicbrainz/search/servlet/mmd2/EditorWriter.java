@@ -31,8 +31,8 @@ package org.musicbrainz.search.servlet.mmd2;
 
 import org.musicbrainz.mmd2.*;
 import org.musicbrainz.search.MbDocument;
+import org.musicbrainz.search.index.IndexField;
 import org.musicbrainz.search.index.EditorIndexField;
-import org.musicbrainz.search.index.MMDSerializer;
 import org.musicbrainz.search.servlet.Result;
 import org.musicbrainz.search.servlet.Results;
 
@@ -43,6 +43,16 @@ import java.util.List;
 
 public class EditorWriter extends ResultsWriter {
 
+    @Override
+    protected IndexField getXmlFragmentStoreField() {
+        return EditorIndexField.EDITOR_STORE;
+    }
+
+    @Override
+    protected String getXmlListElementName() {
+        return "editor-list";
+    }
+
 
     /**
      * @param metadata
@@ -81,7 +91,7 @@ public class EditorWriter extends ResultsWriter {
      */
     public void write(List list, Result result) throws IOException {
         MbDocument doc = result.getDoc();
-        Editor editor = (Editor) MMDSerializer.unserialize(doc.get(EditorIndexField.EDITOR_STORE), Editor.class);
+        Editor editor = (Editor) doc.getStoredEntity(EditorIndexField.EDITOR_STORE);
         editor.setScore(String.valueOf(result.getNormalizedScore()));
         list.add(editor);
     }
@@ -31,7 +31,7 @@ package org.musicbrainz.search.servlet.mmd2;
 
 import org.musicbrainz.mmd2.*;
 import org.musicbrainz.search.MbDocument;
-import org.musicbrainz.search.index.MMDSerializer;
+import org.musicbrainz.search.index.IndexField;
 import org.musicbrainz.search.index.EventIndexField;
 import org.musicbrainz.search.servlet.Result;
 import org.musicbrainz.search.servlet.Results;
@@ -43,6 +43,16 @@ import java.util.List;
 
 public class EventWriter extends ResultsWriter {
 
+    @Override
+    protected IndexField getXmlFragmentStoreField() {
+        return EventIndexField.EVENT_STORE;
+    }
+
+    @Override
+    protected String getXmlListElementName() {
+        return "event-list";
+    }
+
 
     /**
      * @param metadata
@@ -81,7 +91,7 @@ public class EventWriter extends ResultsWriter {
      */
     public void write(List list, Result result) throws IOException {
         MbDocument doc = result.getDoc();
-        Event event = (Event) MMDSerializer.unserialize(doc.get(EventIndexField.EVENT_STORE), Event.class);
+        Event event = (Event) doc.getStoredEntity(EventIndexField.EVENT_STORE);
         event.setScore(String.valueOf(result.getNormalizedScore()));
         list.add(event);
     }
@@ -35,8 +35,10 @@ import org.musicbrainz.search.index.FreeDBIndexField;
 import org.musicbrainz.search.servlet.Result;
 import org.musicbrainz.search.servlet.Results;
 
+import javax.xml.datatype.XMLGregorianCalendar;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.List;
 
 
 public class FreeDBWriter extends ResultsWriter {
@@ -53,28 +55,42 @@ public class FreeDBWriter extends ResultsWriter {
         FreedbDiscList freeDBList = of.createFreedbDiscList();
 
         for (Result result : results.results) {
-            MbDocument doc = result.getDoc();
-            FreedbDisc freeDB = of.createFreedbDisc();
-
-            freeDB.setArtist(doc.get(FreeDBIndexField.ARTIST));
-            freeDB.setTitle(doc.get(FreeDBIndexField.TITLE));
-            freeDB.setId(doc.get(FreeDBIndexField.DISCID));
-            freeDB.setCategory(doc.get(FreeDBIndexField.CATEGORY));
-            freeDB.setYear(doc.get(FreeDBIndexField.YEAR));
-
             result.setNormalizedScore(results.getMaxScore());
-            freeDB.setScore(String.valueOf(result.getNormalizedScore()));
-            Cdstub.TrackList trackList = of.createCdstubTrackList();
-            trackList.setCount(new BigInteger(doc.get(FreeDBIndexField.TRACKS)));
-            freeDB.setTrackList(trackList);
-            freeDBList.getFreedbDisc().add(freeDB);
-
+            write(freeDBList.getFreedbDisc(), result);
         }
         freeDBList.setCount(BigInteger.valueOf(results.getTotalHits()));
         freeDBList.setOffset(BigInteger.valueOf(results.getOffset()));
         metadata.setFreedbDiscList(freeDBList);
     }
 
+    /**
+     * @param list
+     * @param result
+     * @throws IOException
+     */
+    public void write(List list, Result result) throws IOException {
+        ObjectFactory of = new ObjectFactory();
+
+        MbDocument doc = result.getDoc();
+        FreedbDisc freeDB = of.createFreedbDisc();
+
+        freeDB.setArtist(doc.get(FreeDBIndexField.ARTIST));
+        freeDB.setTitle(doc.get(FreeDBIndexField.TITLE));
+        freeDB.setId(doc.get(FreeDBIndexField.DISCID));
+        freeDB.setCategory(doc.get(FreeDBIndexField.CATEGORY));
+        freeDB.setYear(doc.get(FreeDBIndexField.YEAR));
+        freeDB.setScore(String.valueOf(result.getNormalizedScore()));
+        Cdstub.TrackList trackList = of.createCdstubTrackList();
+        trackList.setCount(new BigInteger(doc.get(FreeDBIndexField.TRACKS)));
+        freeDB.setTrackList(trackList);
+        list.add(freeDB);
+    }
+
+    @Override
+    protected String getXmlListElementName() {
+        return "freedb-disc-list";
+    }
+
     /**
      * Overridden because freedb doesn't currently write last date to index
      */
@@ -86,4 +102,12 @@ public class FreeDBWriter extends ResultsWriter {
         return metadata;
     }
 
+    /**
+     * Overridden because freedb doesn't currently write last date to index
+     */
+    @Override
+    protected XMLGregorianCalendar getIndexUpdateDate() {
+        return null;
+    }
+
 }
\ No newline at end of file
@@ -31,8 +31,8 @@ package org.musicbrainz.search.servlet.mmd2;
 
 import org.musicbrainz.mmd2.*;
 import org.musicbrainz.search.MbDocument;
+import org.musicbrainz.search.index.IndexField;
 import org.musicbrainz.search.index.InstrumentIndexField;
-import org.musicbrainz.search.index.MMDSerializer;
 import org.musicbrainz.search.servlet.Result;
 import org.musicbrainz.search.servlet.Results;
 
@@ -43,6 +43,16 @@ import java.util.List;
 
 public class InstrumentWriter extends ResultsWriter {
 
+    @Override
+    protected IndexField getXmlFragmentStoreField() {
+        return InstrumentIndexField.INSTRUMENT_STORE;
+    }
+
+    @Override
+    protected String getXmlListElementName() {
+        return "instrument-list";
+    }
+
 
     /**
      * @param metadata
@@ -81,7 +91,7 @@ public class InstrumentWriter extends ResultsWriter {
      */
     public void write(List list, Result result) throws IOException {
         MbDocument doc = result.getDoc();
-        Instrument instrument = (Instrument) MMDSerializer.unserialize(doc.get(InstrumentIndexField.INSTRUMENT_STORE), Instrument.class);
+        Instrument instrument = (Instrument) doc.getStoredEntity(InstrumentIndexField.INSTRUMENT_STORE);
         instrument.setScore(String.valueOf(result.getNormalizedScore()));
         list.add(instrument);
     }
@@ -31,8 +31,8 @@ package org.musicbrainz.search.servlet.mmd2;
 
 import org.musicbrainz.mmd2.*;
 import org.musicbrainz.search.MbDocument;
+import org.musicbrainz.search.index.IndexField;
 import org.musicbrainz.search.index.LabelIndexField;
-import org.musicbrainz.search.index.MMDSerializer;
 import org.musicbrainz.search.servlet.Result;
 import org.musicbrainz.search.servlet.Results;
 
@@ -45,6 +45,16 @@ import java.util.List;
  */
 public class LabelWriter extends ResultsWriter {
 
+    @Override
+    protected IndexField getXmlFragmentStoreField() {
+        return LabelIndexField.LABEL_STORE;
+    }
+
+    @Override
+    protected String getXmlListElementName() {
+        return "label-list";
+    }
+
 
     /**
      * Write Search results
@@ -87,7 +97,7 @@ public class LabelWriter extends ResultsWriter {
      */
     public void write(List list, Result result) throws IOException {
         MbDocument doc = result.getDoc();
-        Label label = (Label) MMDSerializer.unserialize(doc.get(LabelIndexField.LABEL_STORE), Label.class);
+        Label label = (Label) doc.getStoredEntity(LabelIndexField.LABEL_STORE);
         label.setScore(String.valueOf(result.getNormalizedScore()));
         list.add(label);
     }
@@ -31,8 +31,8 @@ package org.musicbrainz.search.servlet.mmd2;
 
 import org.musicbrainz.mmd2.*;
 import org.musicbrainz.search.MbDocument;
+import org.musicbrainz.search.index.IndexField;
 import org.musicbrainz.search.index.PlaceIndexField;
-import org.musicbrainz.search.index.MMDSerializer;
 import org.musicbrainz.search.servlet.Result;
 import org.musicbrainz.search.servlet.Results;
 
@@ -43,6 +43,16 @@ import java.util.List;
 
 public class PlaceWriter extends ResultsWriter {
 
+    @Override
+    protected IndexField getXmlFragmentStoreField() {
+        return PlaceIndexField.PLACE_STORE;
+    }
+
+    @Override
+    protected String getXmlListElementName() {
+        return "place-list";
+    }
+
 
     /**
      * @param metadata
@@ -81,7 +91,7 @@ public class PlaceWriter extends ResultsWriter {
      */
     public void write(List list, Result result) throws IOException {
         MbDocument doc = result.getDoc();
-        Place place = (Place) MMDSerializer.unserialize(doc.get(PlaceIndexField.PLACE_STORE), Place.class);
+        Place place = (Place) doc.getStoredEntity(PlaceIndexField.PLACE_STORE);
         place.setScore(String.valueOf(result.getNormalizedScore()));
         list.add(place);
     }
@@ -33,7 +33,7 @@ import org.musicbrainz.mmd2.ObjectFactory;
 import org.musicbrainz.mmd2.Recording;
 import org.musicbrainz.mmd2.RecordingList;
 import org.musicbrainz.search.MbDocument;
-import org.musicbrainz.search.index.MMDSerializer;
+import org.musicbrainz.search.index.IndexField;
 import org.musicbrainz.search.index.RecordingIndexField;
 import org.musicbrainz.search.servlet.Result;
 import org.musicbrainz.search.servlet.Results;
@@ -44,6 +44,18 @@ import java.util.List;
 
 public class RecordingWriter extends ResultsWriter {
 
+    @Override
+    protected IndexField getXmlFragmentStoreField()
+    {
+        return RecordingIndexField.RECORDING_STORE;
+    }
+
+    @Override
+    protected String getXmlListElementName()
+    {
+        return "recording-list";
+    }
+
 
     /**
      *
@@ -90,7 +102,7 @@ public class RecordingWriter extends ResultsWriter {
     public void write(List list, Result result) throws IOException
     {
         MbDocument doc = result.getDoc();
-        Recording recording = (Recording) MMDSerializer.unserialize(doc.get(RecordingIndexField.RECORDING_STORE), Recording.class);
+        Recording recording = (Recording) doc.getStoredEntity(RecordingIndexField.RECORDING_STORE);
         recording.setScore(String.valueOf(result.getNormalizedScore()));
         list.add(recording);
     }
@@ -41,6 +41,10 @@ import java.util.List;
 
 public class ReleaseGroupWriter extends ResultsWriter {
 
+    @Override
+    protected String getXmlListElementName() {
+        return "release-group-list";
+    }
 
     /**
      * @param metadata
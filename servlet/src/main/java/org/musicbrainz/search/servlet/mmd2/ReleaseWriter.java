@@ -34,7 +34,7 @@ import org.musicbrainz.mmd2.ObjectFactory;
 import org.musicbrainz.mmd2.Release;
 import org.musicbrainz.mmd2.ReleaseList;
 import org.musicbrainz.search.MbDocument;
-import org.musicbrainz.search.index.MMDSerializer;
+import org.musicbrainz.search.index.IndexField;
 import org.musicbrainz.search.index.ReleaseIndexField;
 import org.musicbrainz.search.servlet.Result;
 import org.musicbrainz.search.servlet.Results;
@@ -46,6 +46,16 @@ import java.util.List;
 
 public class ReleaseWriter extends ResultsWriter {
 
+    @Override
+    protected IndexField getXmlFragmentStoreField() {
+        return ReleaseIndexField.RELEASE_STORE;
+    }
+
+    @Override
+    protected String getXmlListElementName() {
+        return "release-list";
+    }
+
 
     /**
      * @param metadata
@@ -84,7 +94,7 @@ public class ReleaseWriter extends ResultsWriter {
      */
     public void write(List list, Result result) throws IOException {
         MbDocument doc = result.getDoc();
-        Release release = (Release) MMDSerializer.unserialize(doc.get(ReleaseIndexField.RELEASE_STORE), Release.class);
+        Release release = (Release) doc.getStoredEntity(ReleaseIndexField.RELEASE_STORE);
         release.setScore(String.valueOf(result.getNormalizedScore()));
         list.add(release);
     }
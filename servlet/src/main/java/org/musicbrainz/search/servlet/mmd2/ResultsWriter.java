@@ -37,21 +37,35 @@ import org.eclipse.persistence.jaxb.JAXBContextFactory;
 import org.eclipse.persistence.jaxb.JAXBContextProperties;
 import org.musicbrainz.mmd2.Metadata;
 import org.musicbrainz.mmd2.ObjectFactory;
+import org.musicbrainz.search.index.IndexField;
+import org.musicbrainz.search.index.MMDSerializer;
+import org.musicbrainz.search.servlet.CompactXMLStreamWriter;
 import org.musicbrainz.search.servlet.ErrorMessage;
+import org.musicbrainz.search.servlet.EscapingXMLStreamWriter;
+import org.musicbrainz.search.servlet.Result;
 import org.musicbrainz.search.servlet.Results;
 import org.musicbrainz.search.servlet.SearchServerServlet;
+import org.musicbrainz.search.servlet.SearchTimings;
 
 import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
+import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 
 public abstract class ResultsWriter extends org.musicbrainz.search.servlet.ResultsWriter {
@@ -61,6 +75,8 @@ public abstract class ResultsWriter extends org.musicbrainz.search.servlet.Resul
     static final JSONJAXBContext        internalJsoncontext     = initInternalJsonContext();
     static final JAXBContext            jsonContext             = initJsonContext();
 
+    private static final String         LIST_ELEMENT_SUFFIX     = "-list";
+
     public String getMimeType() {
           return "application/xml; charset=UTF-8";
       }
@@ -131,6 +147,23 @@ public abstract class ResultsWriter extends org.musicbrainz.search.servlet.Resul
      */
     public abstract void write(Metadata metadata, Results results) throws IOException;
 
+    /**
+     * Put results into an XML representation class, timing how long it takes to decode the stored entities
+     *
+     * @param results
+     * @return
+     * @throws IOException
+     */
+    private Metadata decode(Results results) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return write(results);
+        }
+        finally {
+            SearchTimings.addToCurrent(SearchTimings.Phase.DECODE, System.nanoTime() - start);
+        }
+    }
+
     /**
      * Can be overidden to allow fields that have no value and hecne unset in Xml to be set in Json
      * because Json we expects values to be returned regardless of whether they are set, and there is a problem
@@ -155,8 +188,18 @@ public abstract class ResultsWriter extends org.musicbrainz.search.servlet.Resul
 
         if(outputFormat.equals(SearchServerServlet.RESPONSE_XML)) {
 
+            if(!isPretty && isXmlFragmentsAvailable(results)) {
+                writeXmlFragments(out, results);
+                return;
+            }
+
+            if(!isPretty) {
+                writeXmlStream(out, results);
+                return;
+            }
+
             try {
-                Metadata metadata = write(results);
+                Metadata metadata = decode(results);
                 Marshaller m = context.createMarshaller();
                 m.setProperty("com.sun.xml.bind.namespacePrefixMapper", prefixMapper);
                 if(isPretty) {
@@ -170,7 +213,7 @@ public abstract class ResultsWriter extends org.musicbrainz.search.servlet.Resul
         }
         else if(outputFormat.equals(SearchServerServlet.RESPONSE_JSON_NEW)) {
             try {
-                Metadata metadata = write(results);
+                Metadata metadata = decode(results);
                 adjustForJson(metadata);
                 Marshaller m = jsonContext.createMarshaller();
                 if(isPretty) {
@@ -184,7 +227,7 @@ public abstract class ResultsWriter extends org.musicbrainz.search.servlet.Resul
         }
         else if(outputFormat.equals(SearchServerServlet.RESPONSE_JSON)) {
             try {
-                Metadata metadata = write(results);
+                Metadata metadata = decode(results);
                 adjustForJson(metadata);
                 JSONMarshaller m = internalJsoncontext.createJSONMarshaller();
                 if(isPretty) {
@@ -201,6 +244,193 @@ public abstract class ResultsWriter extends org.musicbrainz.search.servlet.Resul
         }
     }
 
+    /**
+     * Write a single result as an entity into the list, also used when the results are streamed one entity at a
+     * time rather than built into a complete Metadata tree
+     *
+     * @param list
+     * @param result
+     * @throws IOException
+     */
+    public abstract void write(List list, Result result) throws IOException;
+
+    /**
+     * Writers that output the stored entity unchanged apart from adding the score override this to return the
+     * store field, so that xml can be built from the xml fragments stored in the index (if available).
+     *
+     * @return the store field, or null if the entity cannot be output as is
+     */
+    protected IndexField getXmlFragmentStoreField() {
+        return null;
+    }
+
+    /**
+     * Writers that only read the stored entity return the store field, by default the xml fragment store field
+     *
+     * @return the store field, or null if other stored fields are read
+     */
+    protected IndexField getStoreField() {
+        return getXmlFragmentStoreField();
+    }
+
+    @Override
+    public Set<String> getStoredFieldNames() {
+        IndexField storeField = getStoreField();
+        return storeField != null ? getStoreFieldNames(storeField) : null;
+    }
+
+    /**
+     * @return name of the list element the entities are written in when the xml is streamed an entity at a time
+     */
+    protected abstract String getXmlListElementName();
+
+    /**
+     * @return name of each entity element in the list
+     */
+    protected String getXmlEntityElementName() {
+        String listElementName = getXmlListElementName();
+        return listElementName.substring(0, listElementName.length() - LIST_ELEMENT_SUFFIX.length());
+    }
+
+    /**
+     * Entity classes that are not root elements have to be wrapped so they can be marshalled on their own
+     *
+     * @param result the result the entity was written from
+     * @param entity
+     * @return the entity, or the entity wrapped as a JAXBElement
+     */
+    protected Object toXmlElement(Result result, Object entity) {
+        if(entity.getClass().isAnnotationPresent(XmlRootElement.class)) {
+            return entity;
+        }
+        return new JAXBElement(new QName(MMDSerializer.MMD_NAMESPACE, getXmlEntityElementName()), entity.getClass(), entity);
+    }
+
+    /**
+     * @param results
+     * @return true if every result has a stored xml fragment
+     */
+    protected boolean isXmlFragmentsAvailable(Results results) {
+        IndexField storeField = getXmlFragmentStoreField();
+        if(storeField == null) {
+            return false;
+        }
+        for(Result result : results.results) {
+            if(result.getDoc().getStoredXmlFragment(storeField) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write xml by splicing together the stored xml fragments with the score, avoiding unserializing and
+     * marshalling each entity
+     *
+     * @param out
+     * @param results
+     * @throws IOException
+     */
+    protected void writeXmlFragments(PrintWriter out, Results results) throws IOException {
+        IndexField storeField = getXmlFragmentStoreField();
+
+        try {
+            CompactXMLStreamWriter xml = writeXmlListStart(out, results);
+            for(Result result : results.results) {
+                result.setNormalizedScore(results.getMaxScore());
+                String fragment = result.getDoc().getStoredXmlFragment(storeField);
+
+                // Score is the last attribute when marshalled so insert it at the end of the start tag
+                int startTagEnd = 1;
+                boolean inValue = false;
+                while(startTagEnd < fragment.length()) {
+                    char c = fragment.charAt(startTagEnd);
+                    if(c == '"') {
+                        inValue = !inValue;
+                    }
+                    else if(!inValue && (c == '>' || c == '/')) {
+                        break;
+                    }
+                    startTagEnd++;
+                }
+                xml.writeRaw(fragment.substring(0, startTagEnd));
+                xml.writeRaw(" ext:score=\"" + result.getNormalizedScore() + "\"");
+                xml.writeRaw(fragment.substring(startTagEnd));
+            }
+            writeXmlListEnd(xml);
+        }
+        catch (XMLStreamException xe) {
+            throw new IOException(xe);
+        }
+    }
+
+    /**
+     * Write xml one entity at a time, each entity is unserialized and marshalled straight to the output through a
+     * stream writer, so only one entity is held in memory rather than the whole Metadata tree and output starts
+     * as soon as the first entity is ready.
+     *
+     * The output is the same as marshalling the complete Metadata object.
+     *
+     * @param out
+     * @param results
+     * @throws IOException
+     */
+    protected void writeXmlStream(PrintWriter out, Results results) throws IOException {
+        for(Result result : results.results) {
+            result.setNormalizedScore(results.getMaxScore());
+        }
+
+        try {
+            CompactXMLStreamWriter xml = writeXmlListStart(out, results);
+            XMLStreamWriter escaping = new EscapingXMLStreamWriter(xml);
+            List entities = new ArrayList(1);
+            for(Result result : results.results) {
+                entities.clear();
+                long start = System.nanoTime();
+                write(entities, result);
+                SearchTimings.addToCurrent(SearchTimings.Phase.DECODE, System.nanoTime() - start);
+                for(Object entity : entities) {
+                    MMDSerializer.serializeXmlFragment(toXmlElement(result, entity), escaping);
+                }
+            }
+            writeXmlListEnd(xml);
+        }
+        catch (XMLStreamException xe) {
+            throw new IOException(xe);
+        }
+    }
+
+    /**
+     * Write the xml declaration, the metadata element and the start of the list element, matching the output
+     * of the JAXB marshaller
+     *
+     * @param out
+     * @param results
+     * @return the stream writer to write the entities to
+     * @throws XMLStreamException
+     */
+    private CompactXMLStreamWriter writeXmlListStart(PrintWriter out, Results results) throws XMLStreamException {
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+        CompactXMLStreamWriter xml = new CompactXMLStreamWriter(out);
+        xml.writeStartElement("", "metadata", MMDSerializer.MMD_NAMESPACE);
+        xml.writeDefaultNamespace(MMDSerializer.MMD_NAMESPACE);
+        xml.writeNamespace("ext", MMDSerializer.EXT_NAMESPACE);
+        XMLGregorianCalendar created = getIndexUpdateDate();
+        if(created != null) {
+            xml.writeAttribute("created", created.toXMLFormat());
+        }
+        xml.writeStartElement("", getXmlListElementName(), MMDSerializer.MMD_NAMESPACE);
+        xml.writeAttribute("count", String.valueOf(results.getTotalHits()));
+        xml.writeAttribute("offset", String.valueOf(results.getOffset()));
+        return xml;
+    }
+
+    private void writeXmlListEnd(CompactXMLStreamWriter xml) throws XMLStreamException {
+        xml.writeEndElement();
+        xml.writeEndElement();
+        xml.flush();
+    }
+
     /**
      * Required to map score to ext namespace now that score defined properly because by default JAXB creates
      * namespaces with names ns1,ns2..
@@ -208,7 +438,7 @@ public abstract class ResultsWriter extends org.musicbrainz.search.servlet.Resul
     public static class PreferredMapper extends NamespacePrefixMapper {
         @Override
         public String getPreferredPrefix(String namespaceUri, String suggestion, boolean requirePrefix) {
-            if(namespaceUri.equals("http://musicbrainz.org/ns/ext#-2.0"))
+            if(namespaceUri.equals(MMDSerializer.EXT_NAMESPACE))
             {
                 return "ext";
             }
@@ -218,15 +448,25 @@ public abstract class ResultsWriter extends org.musicbrainz.search.servlet.Resul
 
     public void setIndexUpdateDate(Metadata metadata)
     {
-        XMLGregorianCalendar indexLastUpdatedTime;
+        XMLGregorianCalendar indexLastUpdatedTime = getIndexUpdateDate();
+        if (indexLastUpdatedTime != null) {
+            metadata.setCreated(indexLastUpdatedTime);
+        }
+    }
+
+    protected XMLGregorianCalendar getIndexUpdateDate()
+    {
+        if (serverLastUpdatedDate == null) {
+            return null;
+        }
         try {
             GregorianCalendar cal = (GregorianCalendar)GregorianCalendar.getInstance(TimeZone.getTimeZone("UTC"));
             cal.setTime(serverLastUpdatedDate);
-            indexLastUpdatedTime = DatatypeFactory.newInstance().newXMLGregorianCalendar(cal);
-            metadata.setCreated(indexLastUpdatedTime);
+            return DatatypeFactory.newInstance().newXMLGregorianCalendar(cal);
         } catch (DatatypeConfigurationException e) {
 
             e.printStackTrace();
+            return null;
         }
     }
 
@@ -31,8 +31,8 @@ package org.musicbrainz.search.servlet.mmd2;
 
 import org.musicbrainz.mmd2.*;
 import org.musicbrainz.search.MbDocument;
+import org.musicbrainz.search.index.IndexField;
 import org.musicbrainz.search.index.SeriesIndexField;
-import org.musicbrainz.search.index.MMDSerializer;
 import org.musicbrainz.search.servlet.Result;
 import org.musicbrainz.search.servlet.Results;
 
@@ -43,6 +43,16 @@ import java.util.List;
 
 public class SeriesWriter extends ResultsWriter {
 
+    @Override
+    protected IndexField getXmlFragmentStoreField() {
+        return SeriesIndexField.SERIES_STORE;
+    }
+
+    @Override
+    protected String getXmlListElementName() {
+        return "series-list";
+    }
+
 
     /**
      * @param metadata
@@ -81,7 +91,7 @@ public class SeriesWriter extends ResultsWriter {
      */
     public void write(List list, Result result) throws IOException {
         MbDocument doc = result.getDoc();
-        Series series = (Series) MMDSerializer.unserialize(doc.get(SeriesIndexField.SERIES_STORE), Series.class);
+        Series series = (Series) doc.getStoredEntity(SeriesIndexField.SERIES_STORE);
         series.setScore(String.valueOf(result.getNormalizedScore()));
         list.add(series);
     }
@@ -39,6 +39,7 @@ import org.musicbrainz.search.servlet.Results;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.List;
 
 /**
  * Write Folksonomy Tags
@@ -57,15 +58,31 @@ public class TagWriter extends ResultsWriter {
         TagList  tagList = of.createTagList();
 
         for (Result result : results.results) {
-            MbDocument doc = result.getDoc();
-            Tag tag = of.createTag();
-            tag.setName(doc.get(TagIndexField.TAG));;
             result.setNormalizedScore(results.getMaxScore());
-            tag.setScore(String.valueOf(result.getNormalizedScore()));
-            tagList.getTag().add(tag);
+            write(tagList.getTag(), result);
         }
         tagList.setCount(BigInteger.valueOf(results.getTotalHits()));
         tagList.setOffset(BigInteger.valueOf(results.getOffset()));
         metadata.setTagList(tagList);
     }
+
+    /**
+     * @param list
+     * @param result
+     * @throws IOException
+     */
+    public void write(List list, Result result) throws IOException {
+        ObjectFactory of = new ObjectFactory();
+
+        MbDocument doc = result.getDoc();
+        Tag tag = of.createTag();
+        tag.setName(doc.get(TagIndexField.TAG));
+        tag.setScore(String.valueOf(result.getNormalizedScore()));
+        list.add(tag);
+    }
+
+    @Override
+    protected String getXmlListElementName() {
+        return "tag-list";
+    }
 }
\ No newline at end of file
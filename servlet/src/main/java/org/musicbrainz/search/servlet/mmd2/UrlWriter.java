@@ -31,7 +31,7 @@ package org.musicbrainz.search.servlet.mmd2;
 
 import org.musicbrainz.mmd2.*;
 import org.musicbrainz.search.MbDocument;
-import org.musicbrainz.search.index.MMDSerializer;
+import org.musicbrainz.search.index.IndexField;
 import org.musicbrainz.search.index.UrlIndexField;
 import org.musicbrainz.search.servlet.Result;
 import org.musicbrainz.search.servlet.Results;
@@ -43,6 +43,16 @@ import java.util.List;
 
 public class UrlWriter extends ResultsWriter {
 
+    @Override
+    protected IndexField getXmlFragmentStoreField() {
+        return UrlIndexField.URL_STORE;
+    }
+
+    @Override
+    protected String getXmlListElementName() {
+        return "url-list";
+    }
+
 
     /**
      * @param metadata
@@ -81,7 +91,7 @@ public class UrlWriter extends ResultsWriter {
      */
     public void write(List list, Result result) throws IOException {
         MbDocument doc = result.getDoc();
-        Url url = (Url) MMDSerializer.unserialize(doc.get(UrlIndexField.URL_STORE), Url.class);
+        Url url = (Url) doc.getStoredEntity(UrlIndexField.URL_STORE);
         url.setScore(String.valueOf(result.getNormalizedScore()));
         list.add(url);
     }
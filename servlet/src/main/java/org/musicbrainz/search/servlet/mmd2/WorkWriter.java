@@ -30,8 +30,8 @@ package org.musicbrainz.search.servlet.mmd2;
 
 import org.musicbrainz.mmd2.*;
 import org.musicbrainz.search.MbDocument;
+import org.musicbrainz.search.index.IndexField;
 import org.musicbrainz.search.index.LabelIndexField;
-import org.musicbrainz.search.index.MMDSerializer;
 import org.musicbrainz.search.index.RecordingIndexField;
 import org.musicbrainz.search.index.WorkIndexField;
 import org.musicbrainz.search.servlet.Result;
@@ -47,6 +47,18 @@ import java.util.List;
 public class WorkWriter extends ResultsWriter
 {
 
+    @Override
+    protected IndexField getXmlFragmentStoreField()
+    {
+        return WorkIndexField.WORK_STORE;
+    }
+
+    @Override
+    protected String getXmlListElementName()
+    {
+        return "work-list";
+    }
+
 
     /**
      * @param metadata
@@ -89,7 +101,7 @@ public class WorkWriter extends ResultsWriter
      */
     public void write(List list, Result result) throws IOException {
         MbDocument doc = result.getDoc();
-        Work work = (Work) MMDSerializer.unserialize(doc.get(WorkIndexField.WORK_STORE), Work.class);
+        Work work = (Work) doc.getStoredEntity(WorkIndexField.WORK_STORE);
         work.setScore(String.valueOf(result.getNormalizedScore()));
         list.add(work);
     }
@@ -0,0 +1,130 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+import org.musicbrainz.search.servlet.AdmissionController.Lane;
+
+public class AdmissionControllerTest {
+
+  private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(1000);
+
+  @Test
+  public void testLaneFromHeader() {
+    assertEquals(Lane.WEBSITE, Lane.getValue("website"));
+    assertEquals(Lane.BULK, Lane.getValue("Bulk"));
+    assertEquals(Lane.API, Lane.getValue("api"));
+    assertEquals(Lane.API, Lane.getValue(null));
+    assertEquals(Lane.API, Lane.getValue("unknown"));
+  }
+
+  @Test
+  public void testBulkShedFirst() {
+    AdmissionController controller = new AdmissionController(10, 1, 10, 0, 0, 500);
+
+    // Bulk can only use half the limit
+    for (int i = 0; i < 5; i++) {
+      assertTrue(controller.acquire(Lane.BULK));
+    }
+    assertFalse(controller.acquire(Lane.BULK));
+
+    // Api can use 90%, website all of it
+    for (int i = 0; i < 4; i++) {
+      assertTrue(controller.acquire(Lane.API));
+    }
+    assertFalse(controller.acquire(Lane.API));
+    assertTrue(controller.acquire(Lane.WEBSITE));
+    assertFalse(controller.acquire(Lane.WEBSITE));
+    assertEquals(10, controller.getInFlight());
+  }
+
+  @Test
+  public void testLimitAdaptsToLatency() {
+    AdmissionController controller = new AdmissionController(10, 2, 20, 0, 0, 500, 0);
+    for (int i = 0; i < 5; i++) {
+      assertTrue(controller.acquire(Lane.WEBSITE));
+      controller.release(SLOW);
+    }
+    assertEquals(5, controller.getLimit());
+
+    // Recovers slowly only while searches are fast and using the full limit
+    for (int i = 0; i < 4; i++) {
+      assertTrue(controller.acquire(Lane.WEBSITE));
+    }
+    for (int i = 0; i < 100; i++) {
+      assertTrue(controller.acquire(Lane.WEBSITE));
+      controller.release(FAST);
+    }
+    assertEquals(6, controller.getLimit());
+    for (int i = 0; i < 4; i++) {
+      controller.release(FAST);
+    }
+    assertEquals(0, controller.getInFlight());
+
+    // Never below the minimum
+    for (int i = 0; i < 100; i++) {
+      assertTrue(controller.acquire(Lane.WEBSITE));
+      controller.release(SLOW);
+    }
+    assertEquals(2, controller.getLimit());
+  }
+
+  @Test
+  public void testBackoffOncePerWindow() throws Exception {
+    AdmissionController controller = new AdmissionController(10, 2, 20, 0, 0, 500, 200);
+    for (int i = 0; i < 5; i++) {
+      assertTrue(controller.acquire(Lane.WEBSITE));
+    }
+    for (int i = 0; i < 5; i++) {
+      controller.release(SLOW);
+    }
+    assertEquals(9, controller.getLimit());
+
+    Thread.sleep(250);
+    assertTrue(controller.acquire(Lane.WEBSITE));
+    controller.release(SLOW);
+    assertEquals(8, controller.getLimit());
+  }
+
+  @Test
+  public void testWaitingRequestAdmittedOnRelease() throws Exception {
+    final AdmissionController controller = new AdmissionController(1, 1, 1, 1, 5000, 500);
+    assertTrue(controller.acquire(Lane.WEBSITE));
+
+    // Queue is full once one request is waiting
+    final AtomicBoolean admitted = new AtomicBoolean();
+    final CountDownLatch done = new CountDownLatch(1);
+    Thread waiter = new Thread() {
+      public void run() {
+        admitted.set(controller.acquire(Lane.WEBSITE));
+        done.countDown();
+      }
+    };
+    waiter.start();
+    while (!controller.getStats().contains("queued:1")) {
+      Thread.sleep(5);
+    }
+    assertFalse(controller.acquire(Lane.WEBSITE));
+
+    controller.release(FAST);
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertTrue(admitted.get());
+  }
+
+  @Test
+  public void testRejectedAfterMaxWait() {
+    AdmissionController controller = new AdmissionController(1, 1, 1, 10, 20, 500);
+    assertTrue(controller.acquire(Lane.WEBSITE));
+    long start = System.nanoTime();
+    assertFalse(controller.acquire(Lane.API));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    assertTrue(controller.getStats().contains("apirejected:1"));
+  }
+}
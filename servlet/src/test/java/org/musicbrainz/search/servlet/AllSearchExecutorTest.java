@@ -0,0 +1,229 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.After;
+import org.junit.Test;
+
+public class AllSearchExecutorTest {
+
+  private AllSearchExecutor executor;
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    executor.shutdown();
+  }
+
+  private Callable<Results> quick() {
+    return new Callable<Results>() {
+      @Override
+      public Results call() {
+        return new Results();
+      }
+    };
+  }
+
+  private Callable<Results> blocked() {
+    return new Callable<Results>() {
+      @Override
+      public Results call() throws Exception {
+        release.await(10, TimeUnit.SECONDS);
+        return new Results();
+      }
+    };
+  }
+
+  /**
+   * Results counting down the latch when released
+   */
+  private static class CountedResults extends Results {
+    private final CountDownLatch released;
+
+    CountedResults(CountDownLatch released) {
+      this.released = released;
+    }
+
+    @Override
+    public void release() {
+      released.countDown();
+    }
+  }
+
+  @Test
+  public void testSlowSearchLeftOut() throws Exception {
+    executor = new AllSearchExecutor(4, 4, 100);
+    Map<ResourceType, Callable<Results>> searches = new EnumMap<ResourceType, Callable<Results>>(ResourceType.class);
+    searches.put(ResourceType.ARTIST, quick());
+    searches.put(ResourceType.RECORDING, blocked());
+    searches.put(ResourceType.WORK, quick());
+
+    Map<ResourceType, Results> results = executor.invokeAll(searches);
+    assertEquals(2, results.size());
+    assertTrue(results.containsKey(ResourceType.ARTIST));
+    assertTrue(results.containsKey(ResourceType.WORK));
+    assertFalse(results.containsKey(ResourceType.RECORDING));
+    assertTrue(executor.getStats().startsWith("submitted:3,rejected:0,timedout:1"));
+  }
+
+  @Test
+  public void testSearchExceptionThrown() throws Exception {
+    executor = new AllSearchExecutor(4, 4, 1000);
+    Map<ResourceType, Callable<Results>> searches = new EnumMap<ResourceType, Callable<Results>>(ResourceType.class);
+    searches.put(ResourceType.ARTIST, quick());
+    searches.put(ResourceType.LABEL, new Callable<Results>() {
+      @Override
+      public Results call() throws Exception {
+        throw new ParseException("bad query");
+      }
+    });
+    try {
+      executor.invokeAll(searches);
+      fail("parse exception should have been thrown");
+    } catch (ParseException pe) {
+      assertEquals("bad query", pe.getMessage());
+    }
+  }
+
+  @Test
+  public void testSearchBudgetCutToDeadline() throws Exception {
+    executor = new AllSearchExecutor(4, 4, 500);
+    long deadline = executor.getDeadlineNanos();
+    assertTrue(new CallableSearch(null, "query", 0, 10, 3000, deadline).getTimeAllowedMillis() <= 500);
+    assertEquals(250, new CallableSearch(null, "query", 0, 10, 250, deadline).getTimeAllowedMillis());
+    assertEquals(3000, new CallableSearch(null, "query", 0, 10, 3000, null).getTimeAllowedMillis());
+    assertEquals(1, new CallableSearch(null, "query", 0, 10, 3000, System.nanoTime()).getTimeAllowedMillis());
+  }
+
+  @Test
+  public void testRejectedWhenQueueFull() throws Exception {
+    executor = new AllSearchExecutor(1, 1, 100);
+    Map<ResourceType, Callable<Results>> searches = new EnumMap<ResourceType, Callable<Results>>(ResourceType.class);
+    searches.put(ResourceType.ARTIST, blocked());
+    searches.put(ResourceType.RELEASE, blocked());
+    searches.put(ResourceType.RECORDING, blocked());
+    try {
+      executor.invokeAll(searches);
+      fail("should have been rejected");
+    } catch (RejectedExecutionException ree) {
+      assertTrue(executor.getStats().startsWith("submitted:2,rejected:1"));
+    }
+  }
+
+  @Test
+  public void testBatchSearchesInOrder() throws Exception {
+    executor = new AllSearchExecutor(4, 4, 100);
+    final Results first = new Results();
+    List<Callable<Results>> searches = new ArrayList<Callable<Results>>();
+    searches.add(new Callable<Results>() {
+      @Override
+      public Results call() {
+        return first;
+      }
+    });
+    searches.add(blocked());
+    searches.add(new Callable<Results>() {
+      @Override
+      public Results call() throws Exception {
+        throw new ParseException("bad query");
+      }
+    });
+
+    List<Future<Results>> futures = executor.invokeAll(searches);
+    assertEquals(3, futures.size());
+    assertSame(first, futures.get(0).get());
+    assertTrue(futures.get(1).isCancelled());
+    try {
+      futures.get(2).get();
+      fail("parse exception should have been thrown");
+    } catch (ExecutionException ee) {
+      assertTrue(ee.getCause() instanceof ParseException);
+    }
+  }
+
+  @Test
+  public void testResultsReleasedWhenSearchFails() throws Exception {
+    executor = new AllSearchExecutor(4, 4, 1000);
+    final CountDownLatch released = new CountDownLatch(1);
+    Map<ResourceType, Callable<Results>> searches = new EnumMap<ResourceType, Callable<Results>>(ResourceType.class);
+    searches.put(ResourceType.ARTIST, new Callable<Results>() {
+      @Override
+      public Results call() {
+        return new CountedResults(released);
+      }
+    });
+    searches.put(ResourceType.LABEL, new Callable<Results>() {
+      @Override
+      public Results call() throws Exception {
+        throw new ParseException("bad query");
+      }
+    });
+    try {
+      executor.invokeAll(searches);
+      fail("parse exception should have been thrown");
+    } catch (ParseException pe) {
+      assertTrue(released.await(1, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testResultsOfTimedOutSearchReleasedWhenFinished() throws Exception {
+    executor = new AllSearchExecutor(4, 4, 100);
+    final CountDownLatch released = new CountDownLatch(1);
+    Map<ResourceType, Callable<Results>> searches = new EnumMap<ResourceType, Callable<Results>>(ResourceType.class);
+    searches.put(ResourceType.ARTIST, quick());
+    searches.put(ResourceType.RECORDING, new Callable<Results>() {
+      @Override
+      public Results call() throws Exception {
+        release.await(10, TimeUnit.SECONDS);
+        return new CountedResults(released);
+      }
+    });
+
+    Map<ResourceType, Results> results = executor.invokeAll(searches);
+    assertFalse(results.containsKey(ResourceType.RECORDING));
+    assertEquals(1, released.getCount());
+    release.countDown();
+    assertTrue(released.await(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testBatchDeadlineScalesWithSearches() throws Exception {
+    executor = new AllSearchExecutor("search-batch", 4, 20, 1000);
+    long now = System.nanoTime();
+    assertTrue(executor.getDeadlineNanos(4) - now <= TimeUnit.MILLISECONDS.toNanos(1100));
+    assertTrue(executor.getDeadlineNanos(5) - now >= TimeUnit.MILLISECONDS.toNanos(2000));
+    assertTrue(executor.getDeadlineNanos(12) - now >= TimeUnit.MILLISECONDS.toNanos(3000));
+  }
+
+  @Test
+  public void testHasCapacity() throws Exception {
+    executor = new AllSearchExecutor("search-batch", 1, 2, 1000);
+    assertTrue(executor.hasCapacity(3));
+    assertFalse(executor.hasCapacity(4));
+
+    List<Callable<Results>> searches = new ArrayList<Callable<Results>>();
+    searches.add(blocked());
+    searches.add(blocked());
+    executor.invokeAll(searches, System.nanoTime());
+    assertTrue(executor.hasCapacity(1));
+    assertFalse(executor.hasCapacity(2));
+  }
+}
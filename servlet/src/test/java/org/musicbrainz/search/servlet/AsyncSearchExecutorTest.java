@@ -0,0 +1,151 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class AsyncSearchExecutorTest {
+
+  private AsyncSearchExecutor executor;
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    executor.shutdown();
+  }
+
+  /**
+   * Request, response and async context of one request, recording the error sent and how often it was completed
+   */
+  private static class Exchange implements InvocationHandler {
+    final AtomicInteger errorStatus = new AtomicInteger();
+    final AtomicInteger completions = new AtomicInteger();
+    final CountDownLatch completed = new CountDownLatch(1);
+    final AtomicBoolean handled = new AtomicBoolean(false);
+
+    final HttpServletRequest request = proxy(HttpServletRequest.class);
+    final HttpServletResponse response = proxy(HttpServletResponse.class);
+    final AsyncContext asyncContext = proxy(AsyncContext.class);
+
+    private <T> T proxy(Class<T> type) {
+      return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { type }, this));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      String name = method.getName();
+      if (name.equals("startAsync")) {
+        return asyncContext;
+      } else if (name.equals("getRequest")) {
+        return request;
+      } else if (name.equals("getResponse")) {
+        return response;
+      } else if (name.equals("setTimeout")) {
+        return null;
+      } else if (name.equals("isCommitted")) {
+        return false;
+      } else if (name.equals("sendError")) {
+        errorStatus.set((Integer) args[0]);
+        return null;
+      } else if (name.equals("complete")) {
+        completions.incrementAndGet();
+        completed.countDown();
+        return null;
+      }
+      throw new UnsupportedOperationException(name);
+    }
+  }
+
+  private AsyncSearchExecutor.RequestHandler handler(final Exchange exchange, final CountDownLatch wait) {
+    return new AsyncSearchExecutor.RequestHandler() {
+      @Override
+      public void handle(HttpServletRequest request, HttpServletResponse response) {
+        exchange.handled.set(true);
+        if (wait != null) {
+          try {
+            wait.await(10, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+    };
+  }
+
+  private Exchange dispatch(CountDownLatch wait) throws Exception {
+    Exchange exchange = new Exchange();
+    executor.dispatch(exchange.request, exchange.response, handler(exchange, wait));
+    return exchange;
+  }
+
+  @Test
+  public void testRunCompletes() throws Exception {
+    executor = new AsyncSearchExecutor(2, 2, 1000);
+    Exchange exchange = dispatch(null);
+    assertTrue(exchange.completed.await(1, TimeUnit.SECONDS));
+    assertTrue(exchange.handled.get());
+    assertEquals(0, exchange.errorStatus.get());
+    assertEquals(1, exchange.completions.get());
+  }
+
+  @Test
+  public void testQueuedTimeoutSendsBusy() throws Exception {
+    executor = new AsyncSearchExecutor(1, 1, 100);
+    Exchange running = dispatch(release);
+    Exchange queued = dispatch(null);
+    assertTrue(queued.completed.await(2, TimeUnit.SECONDS));
+    assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, queued.errorStatus.get());
+
+    release.countDown();
+    assertTrue(running.completed.await(1, TimeUnit.SECONDS));
+    assertEquals(0, running.errorStatus.get());
+    assertFalse(queued.handled.get());
+    assertEquals(1, queued.completions.get());
+    assertTrue(executor.getStats().startsWith("dispatched:2,rejected:0,timedout:1"));
+  }
+
+  @Test
+  public void testRejectedSendsBusy() throws Exception {
+    executor = new AsyncSearchExecutor(1, 1, 10000);
+    dispatch(release);
+    dispatch(release);
+    Exchange rejected = dispatch(null);
+    assertEquals(0, rejected.completed.getCount());
+    assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, rejected.errorStatus.get());
+    assertFalse(rejected.handled.get());
+    assertTrue(executor.getStats().startsWith("dispatched:2,rejected:1,timedout:0"));
+  }
+
+  @Test
+  public void testRunningRequestNotCompletedByTimeout() throws Exception {
+    executor = new AsyncSearchExecutor(1, 1, 100);
+    CountDownLatch wait = new CountDownLatch(1);
+    Exchange exchange = dispatch(wait);
+    // Still being handled well after the timeout
+    Thread.sleep(400);
+    assertTrue(exchange.handled.get());
+    assertEquals(1, exchange.completed.getCount());
+
+    wait.countDown();
+    assertTrue(exchange.completed.await(1, TimeUnit.SECONDS));
+    assertEquals(0, exchange.errorStatus.get());
+    assertEquals(1, exchange.completions.get());
+    assertTrue(executor.getStats().startsWith("dispatched:1,rejected:0,timedout:0"));
+  }
+}
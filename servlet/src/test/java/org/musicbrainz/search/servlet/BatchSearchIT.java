@@ -0,0 +1,86 @@
+package org.musicbrainz.search.servlet;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.CharStreams;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Batch searches posted to the servlet running in jetty
+ */
+public class BatchSearchIT {
+
+    private static final String SEARCH_URL = "http://localhost:8080/";
+
+    private HttpURLConnection post(String batch) throws Exception {
+        HttpURLConnection uc = (HttpURLConnection) new URL(SEARCH_URL).openConnection();
+        uc.setRequestMethod("POST");
+        uc.setDoOutput(true);
+        uc.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+        OutputStream os = uc.getOutputStream();
+        os.write(batch.getBytes(Charsets.UTF_8));
+        os.close();
+        return uc;
+    }
+
+    private String read(HttpURLConnection uc) throws Exception {
+        InputStream is = uc.getInputStream();
+        try {
+            return CharStreams.toString(new InputStreamReader(is, Charsets.UTF_8));
+        } finally {
+            is.close();
+        }
+    }
+
+    private String entries(String type, String query, int count) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"type\":\"").append(type).append("\",\"query\":\"").append(query).append("\"}");
+        }
+        return sb.append(']').toString();
+    }
+
+    @Test
+    public void testResultsInOrderWithErrorsInPlace() throws Exception {
+        HttpURLConnection uc = post("[{\"type\":\"recording\",\"query\":\"love\"},{\"type\":\"fred\",\"query\":\"love\"},"
+                + "{\"type\":\"artist\",\"query\":\"fred\",\"dismax\":true}]");
+        assertEquals(HttpURLConnection.HTTP_OK, uc.getResponseCode());
+        String response = read(uc);
+        assertTrue(response.startsWith("[{\"type\":\"recording\",\"results\":"));
+        assertTrue(response.contains("{\"type\":\"fred\",\"error\":{\"status\":400"));
+        assertTrue(response.contains("{\"type\":\"artist\",\"results\":"));
+    }
+
+    @Test
+    public void testFullBatchNotTimedOut() throws Exception {
+        HttpURLConnection uc = post(entries("recording", "love", BatchSearchRequest.DEFAULT_MAX_ENTRIES));
+        assertEquals(HttpURLConnection.HTTP_OK, uc.getResponseCode());
+        String response = read(uc);
+        assertFalse(response.contains("\"status\":408"));
+        assertFalse(response.contains("\"status\":503"));
+    }
+
+    @Test
+    public void testTooManyEntries() throws Exception {
+        HttpURLConnection uc = post(entries("artist", "fred", BatchSearchRequest.DEFAULT_MAX_ENTRIES + 1));
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, uc.getResponseCode());
+    }
+
+    @Test
+    public void testUnparseableBatch() throws Exception {
+        HttpURLConnection uc = post("[{\"type\":\"artist\",");
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, uc.getResponseCode());
+    }
+}
@@ -0,0 +1,57 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class BatchSearchRequestTest {
+
+  @Test
+  public void testParse() throws Exception {
+    List<BatchSearchRequest.Entry> entries = BatchSearchRequest.parse(
+        " [ {\"type\":\"recording\",\"query\":\"\\\"love me do\\\" AND artist:beatles\"},\n"
+            + "{\"type\":\"artist\", \"query\":\"caf\\u00e9\", \"dismax\":true, \"offset\":10, \"limit\":5, \"extra\":null} ] ")
+        .getEntries();
+    assertEquals(2, entries.size());
+
+    assertEquals("recording", entries.get(0).getType());
+    assertEquals("\"love me do\" AND artist:beatles", entries.get(0).getQuery());
+    assertFalse(entries.get(0).isDismax());
+    assertEquals(SearchServerServlet.DEFAULT_OFFSET, entries.get(0).getOffset());
+    assertEquals(SearchServerServlet.DEFAULT_MATCHES_LIMIT, entries.get(0).getLimit());
+
+    assertEquals("artist", entries.get(1).getType());
+    assertEquals("caf\u00e9", entries.get(1).getQuery());
+    assertTrue(entries.get(1).isDismax());
+    assertEquals(10, entries.get(1).getOffset());
+    assertEquals(5, entries.get(1).getLimit());
+  }
+
+  @Test
+  public void testParseEmptyAndMissingFields() throws Exception {
+    assertTrue(BatchSearchRequest.parse("[]").getEntries().isEmpty());
+    BatchSearchRequest.Entry entry = BatchSearchRequest.parse("[{}]").getEntries().get(0);
+    assertNull(entry.getType());
+    assertNull(entry.getQuery());
+  }
+
+  @Test
+  public void testInvalid() throws Exception {
+    String[] invalid = { "", "{\"type\":\"artist\"}", "[{\"type\":\"artist\"}", "[{\"type\":artist}]",
+        "[{\"limit\":\"many\"}]", "[{\"query\":[\"a\"]}]", "[] []" };
+    for (String json : invalid) {
+      try {
+        BatchSearchRequest.parse(json);
+        fail(json);
+      } catch (IllegalArgumentException iae) {
+        assertTrue(iae.getMessage().startsWith("Invalid batch request"));
+      }
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.junit.Test;
+import org.musicbrainz.search.servlet.ResponseCompression.Encoding;
+
+public class ConditionalRequestsTest {
+
+  private static final String KEY = "false|farming|0|25|xml|1|false";
+
+  @Test
+  public void testETagVaries() throws Exception {
+    String eTag = ConditionalRequests.createETag(1, 10, ResourceType.ARTIST, KEY, Encoding.IDENTITY);
+    assertTrue(eTag.startsWith("\"") && eTag.endsWith("\""));
+    assertEquals(eTag, ConditionalRequests.createETag(1, 10, ResourceType.ARTIST, KEY, Encoding.IDENTITY));
+    assertFalse(eTag.equals(ConditionalRequests.createETag(2, 10, ResourceType.ARTIST, KEY, Encoding.IDENTITY)));
+    assertFalse(eTag.equals(ConditionalRequests.createETag(1, 11, ResourceType.ARTIST, KEY, Encoding.IDENTITY)));
+    assertFalse(eTag.equals(ConditionalRequests.createETag(1, 10, ResourceType.LABEL, KEY, Encoding.IDENTITY)));
+    assertFalse(eTag.equals(ConditionalRequests.createETag(1, 10, ResourceType.ARTIST, KEY + "x", Encoding.IDENTITY)));
+    assertTrue(ConditionalRequests.createETag(1, 10, ResourceType.ARTIST, KEY, Encoding.GZIP).endsWith("-gzip\""));
+  }
+
+  @Test
+  public void testIfNoneMatch() throws Exception {
+    String eTag = ConditionalRequests.createETag(1, 10, ResourceType.ARTIST, KEY, Encoding.IDENTITY);
+    assertTrue(ConditionalRequests.isNotModified(eTag, -1, eTag, null));
+    assertTrue(ConditionalRequests.isNotModified("\"other\", W/" + eTag, -1, eTag, null));
+    assertTrue(ConditionalRequests.isNotModified("*", -1, eTag, null));
+    assertFalse(ConditionalRequests.isNotModified("\"other\"", -1, eTag, null));
+  }
+
+  @Test
+  public void testIfNoneMatchTakesPrecedence() throws Exception {
+    Date lastModified = new Date(1000000L);
+    assertFalse(ConditionalRequests.isNotModified("\"other\"", 2000000L, "\"etag\"", lastModified));
+  }
+
+  @Test
+  public void testIfModifiedSince() throws Exception {
+    Date lastModified = new Date(1000500L);
+    assertTrue(ConditionalRequests.isNotModified(null, 1000000L, "\"etag\"", lastModified));
+    assertFalse(ConditionalRequests.isNotModified(null, 999000L, "\"etag\"", lastModified));
+    assertFalse(ConditionalRequests.isNotModified(null, -1, "\"etag\"", lastModified));
+    assertFalse(ConditionalRequests.isNotModified(null, 1000000L, "\"etag\"", null));
+  }
+}
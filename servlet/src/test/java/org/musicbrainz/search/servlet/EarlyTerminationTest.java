@@ -0,0 +1,92 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Before;
+import org.junit.Test;
+import org.musicbrainz.search.LuceneVersion;
+import org.musicbrainz.search.MbDocument;
+import org.musicbrainz.search.index.DatabaseIndex;
+import org.musicbrainz.search.index.MetaIndexField;
+import org.musicbrainz.search.index.RecordingIndex;
+import org.musicbrainz.search.index.RecordingIndexField;
+
+public class EarlyTerminationTest {
+
+  private RAMDirectory ramDir;
+
+  @Before
+  public void setUp() throws Exception {
+    ramDir = new RAMDirectory();
+  }
+
+  /**
+   * Add twenty recordings over two segments, the least popular added first
+   */
+  private void buildIndex(boolean sortByPopularity, boolean forceMerge) throws Exception {
+    RecordingIndex index = new RecordingIndex();
+    index.setSortedByPopularity(sortByPopularity);
+    IndexWriterConfig config = new IndexWriterConfig(LuceneVersion.LUCENE_VERSION, DatabaseIndex.getAnalyzer(RecordingIndexField.class));
+    index.configureIndexSort(config);
+    IndexWriter writer = new IndexWriter(ramDir, config);
+    for (int i = 0; i < 20; i++) {
+      MbDocument doc = new MbDocument();
+      doc.addField(RecordingIndexField.RECORDING_ID, "7ca7782b-a602-448b-b108-bb881a7be2d" + (char) ('a' + i));
+      doc.addField(RecordingIndexField.RECORDING, "Blue");
+      doc.addNumericDocValuesField(RecordingIndexField.POPULARITY, i);
+      writer.addDocument(doc.getLuceneDocument());
+      if (i == 9) {
+        writer.commit();
+      }
+    }
+    MbDocument doc = new MbDocument();
+    doc.addField(MetaIndexField.META, MetaIndexField.META_VALUE);
+    doc.addNumericField(MetaIndexField.LAST_UPDATED, new Date().getTime());
+    writer.addDocument(doc.getLuceneDocument());
+    if (forceMerge) {
+      writer.forceMerge(1);
+    }
+    writer.close();
+  }
+
+  @Test
+  public void testSortedSegmentTerminatesEarlyWithMostPopular() throws Exception {
+    buildIndex(true, true);
+    AbstractSearchServer ss = new RecordingSearch(new SearcherManager(ramDir, new MusicBrainzSearcherFactory(ResourceType.RECORDING)));
+    ss.setEarlyTerminationDocs(3);
+
+    Results res = ss.search("recording:blue", 0, 3);
+    assertEquals(3, res.results.size());
+    // Total hits is only a lower bound once terminated early
+    assertTrue(res.getTotalHits() < 20);
+    assertEquals("7ca7782b-a602-448b-b108-bb881a7be2dt", res.results.get(0).getDoc().get(RecordingIndexField.RECORDING_ID));
+    assertEquals("7ca7782b-a602-448b-b108-bb881a7be2ds", res.results.get(1).getDoc().get(RecordingIndexField.RECORDING_ID));
+    assertEquals("7ca7782b-a602-448b-b108-bb881a7be2dr", res.results.get(2).getDoc().get(RecordingIndexField.RECORDING_ID));
+  }
+
+  @Test
+  public void testDisabledCollectsAllHits() throws Exception {
+    buildIndex(true, true);
+    AbstractSearchServer ss = new RecordingSearch(new SearcherManager(ramDir, new MusicBrainzSearcherFactory(ResourceType.RECORDING)));
+
+    Results res = ss.search("recording:blue", 0, 3);
+    assertEquals(20, res.getTotalHits());
+  }
+
+  @Test
+  public void testUnsortedSegmentsCollectAllHits() throws Exception {
+    buildIndex(false, false);
+    AbstractSearchServer ss = new RecordingSearch(new SearcherManager(ramDir, new MusicBrainzSearcherFactory(ResourceType.RECORDING)));
+    ss.setEarlyTerminationDocs(3);
+
+    Results res = ss.search("recording:blue", 0, 3);
+    assertEquals(20, res.getTotalHits());
+  }
+}
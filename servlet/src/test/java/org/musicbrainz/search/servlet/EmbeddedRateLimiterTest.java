@@ -0,0 +1,99 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class EmbeddedRateLimiterTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  public void testOverLimitRejectedWithRateLimiterMessages() {
+    EmbeddedRateLimiter limiter = new EmbeddedRateLimiter(3, 10, 1000);
+    long now = 0;
+    for (int i = 0; i < 3; i++) {
+      assertTrue(limiter.check("10.1.1.1", now).isValid());
+    }
+
+    RateLimiterChecker.RateLimiterResponse response = limiter.check("10.1.1.1", now);
+    assertFalse(response.isValid());
+    assertEquals("4.0", response.getRate());
+    assertEquals("3", response.getLimit());
+    assertEquals("10", response.getPeriod());
+    assertEquals("4.0 3 10", response.getHeaderMsg());
+    assertEquals("Your requests are exceeding the allowable rate limit, you are limited to making 3 requests per 10 "
+        + "seconds, but you're currently making 4.0 requests in that period. "
+        + "Please see http://wiki.musicbrainz.org/XMLWebService for more information.", response.getMsg());
+
+    // Other addresses are not affected
+    assertTrue(limiter.check("10.1.1.2", now).isValid());
+  }
+
+  @Test
+  public void testRequestsAllowedAgainAsBucketLeaks() {
+    EmbeddedRateLimiter limiter = new EmbeddedRateLimiter(2, 10, 1000);
+    assertTrue(limiter.check("10.1.1.1", 0).isValid());
+    assertTrue(limiter.check("10.1.1.1", 0).isValid());
+    assertFalse(limiter.check("10.1.1.1", SECOND).isValid());
+
+    // Leaks one request every five seconds
+    assertTrue(limiter.check("10.1.1.1", 6 * SECOND).isValid());
+    assertFalse(limiter.check("10.1.1.1", 6 * SECOND).isValid());
+  }
+
+  @Test
+  public void testIdleAddressesExpired() {
+    EmbeddedRateLimiter limiter = new EmbeddedRateLimiter(2, 10, 1000);
+    for (int i = 0; i < 1000; i++) {
+      limiter.check("10.1." + (i / 256) + "." + (i % 256), 0);
+    }
+    assertEquals(1000, limiter.size());
+
+    // Once idle for longer than the period the old addresses are removed as new ones are added
+    for (int i = 0; i < 1000; i++) {
+      limiter.check("10.2." + (i / 256) + "." + (i % 256), 11 * SECOND);
+    }
+    assertEquals(1000, limiter.size());
+  }
+
+  @Test
+  public void testNumberOfAddressesBounded() {
+    EmbeddedRateLimiter limiter = new EmbeddedRateLimiter(2, 10, 640);
+    for (int i = 0; i < 10000; i++) {
+      limiter.check("10.1." + (i / 256) + "." + (i % 256), 0);
+    }
+    assertTrue(limiter.size() <= 640);
+  }
+
+  @Test
+  public void testNoAddressForgottenUntilMaxKeysTracked() {
+    EmbeddedRateLimiter limiter = new EmbeddedRateLimiter(2, 10, 1000);
+    for (int i = 0; i < 1000; i++) {
+      String address = "10.1." + (i / 256) + "." + (i % 256);
+      assertTrue(limiter.check(address, 0).isValid());
+      assertTrue(limiter.check(address, 0).isValid());
+    }
+
+    // Every address still has a full bucket so is limited
+    for (int i = 0; i < 1000; i++) {
+      assertFalse(limiter.check("10.1." + (i / 256) + "." + (i % 256), SECOND).isValid());
+    }
+
+    // Another address only evicts one
+    assertTrue(limiter.check("10.2.1.1", SECOND).isValid());
+    assertEquals(1000, limiter.size());
+  }
+
+  @Test
+  public void testAllowedResponseHasNoMessage() {
+    RateLimiterChecker.RateLimiterResponse response = new EmbeddedRateLimiter(2, 10, 1000).check("10.1.1.1", 0);
+    assertTrue(response.isValid());
+    assertNull(response.getHeaderMsg());
+  }
+}
@@ -10,6 +10,9 @@ import java.io.StringWriter;
 import java.math.BigInteger;
 import java.util.Date;
 
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
@@ -715,4 +718,53 @@ public class FindArtistTest {
 
     }
 
+    /**
+     * Index built with xml fragments, the spliced xml must be the same as marshalling the entity, the artist has
+     * several attributes so checks ext:score is put after all of them
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testOutputAsXmlFromFragmentsSameAsMarshalled() throws Exception {
+
+        ObjectFactory of = new ObjectFactory();
+        RAMDirectory ramDir = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(ramDir, new IndexWriterConfig(LuceneVersion.LUCENE_VERSION, DatabaseIndex.getAnalyzer(ArtistIndexField.class)));
+        {
+            MbDocument doc = new MbDocument();
+            Artist artist = of.createArtist();
+            artist.setId("4302e264-1cf0-4d1f-aca7-2a6f89e34b36");
+            artist.setType("Group");
+            artist.setName("Farming & \"Incident\"");
+            artist.setSortName("Incident, Farming");
+            artist.setDisambiguation("the real one");
+            doc.addField(ArtistIndexField.ARTIST, "Farming Incident");
+            doc.addStoredEntity(ArtistIndexField.ARTIST_STORE, artist, XmlStoredPayloadCodec.INSTANCE, true);
+            writer.addDocument(doc.getLuceneDocument());
+        }
+        {
+            MbDocument doc = new MbDocument();
+            doc.addField(MetaIndexField.META, MetaIndexField.META_VALUE);
+            doc.addNumericField(MetaIndexField.LAST_UPDATED, new Date().getTime());
+            writer.addDocument(doc.getLuceneDocument());
+        }
+        writer.close();
+
+        ArtistSearch fragmentSearch = new ArtistSearch(new SearcherManager(ramDir, new MusicBrainzSearcherFactory(ResourceType.ARTIST)));
+        Results res = fragmentSearch.search("artist:\"Farming Incident\"", 0, 10);
+        ResultsWriter resultsWriter = fragmentSearch.getMmd2Writer();
+        StringWriter sw = new StringWriter();
+        PrintWriter pr = new PrintWriter(sw);
+        resultsWriter.write(pr, res, SearchServerServlet.RESPONSE_XML);
+        pr.close();
+        String spliced = sw.toString();
+        assertTrue(spliced.contains("<artist id=\"4302e264-1cf0-4d1f-aca7-2a6f89e34b36\" type=\"Group\" ext:score=\"100\">"));
+
+        Marshaller m = JAXBContext.newInstance("org.musicbrainz.mmd2").createMarshaller();
+        m.setProperty("com.sun.xml.bind.namespacePrefixMapper", new ResultsWriter.PreferredMapper());
+        sw = new StringWriter();
+        m.marshal(resultsWriter.write(res), sw);
+        assertEquals(sw.toString(), spliced);
+    }
+
 }
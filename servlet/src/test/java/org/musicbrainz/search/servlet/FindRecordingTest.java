@@ -8,6 +8,9 @@ import java.io.StringWriter;
 import java.math.BigInteger;
 import java.util.Date;
 
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
@@ -654,4 +657,83 @@ public class FindRecordingTest {
         assertTrue(output.contains("\"offset\" : 0"));
     }
 
+    /**
+     * Index built with xml fragments, xml output is spliced together from the fragments
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testOutputAsXmlFromFragments() throws Exception {
+
+        ObjectFactory of = new ObjectFactory();
+        RAMDirectory ramDir = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(ramDir, new IndexWriterConfig(LuceneVersion.LUCENE_VERSION, DatabaseIndex.getAnalyzer(RecordingIndexField.class)));
+        {
+            MbDocument doc = new MbDocument();
+            Recording recording = of.createRecording();
+            recording.setId("7ca7782b-a602-448b-b108-bb881a7be2d6");
+            recording.setTitle("Gravitational Lenz");
+            recording.setLength(BigInteger.valueOf(234000));
+            doc.addField(RecordingIndexField.RECORDING, "Gravitational Lenz");
+            doc.addStoredEntity(RecordingIndexField.RECORDING_STORE, recording, XmlStoredPayloadCodec.INSTANCE, true);
+            writer.addDocument(doc.getLuceneDocument());
+        }
+        {
+            MbDocument doc = new MbDocument();
+            doc.addField(MetaIndexField.META, MetaIndexField.META_VALUE);
+            doc.addNumericField(MetaIndexField.LAST_UPDATED, new Date().getTime());
+            writer.addDocument(doc.getLuceneDocument());
+        }
+        writer.close();
+
+        RecordingSearch fragmentSearch = new RecordingSearch(new SearcherManager(ramDir, new MusicBrainzSearcherFactory(ResourceType.RECORDING)));
+        Results res = fragmentSearch.search("recording:\"Gravitational Lenz\"", 0, 10);
+        ResultsWriter resultsWriter = fragmentSearch.getMmd2Writer();
+        StringWriter sw = new StringWriter();
+        PrintWriter pr = new PrintWriter(sw);
+        resultsWriter.write(pr, res, SearchServerServlet.RESPONSE_XML);
+        pr.close();
+        String output = sw.toString();
+        System.out.println("Xml from fragments is" + output);
+        assertTrue(output.startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><metadata xmlns=\"http://musicbrainz.org/ns/mmd-2.0#\" xmlns:ext=\"http://musicbrainz.org/ns/ext#-2.0\" created="));
+        assertTrue(output.contains("<recording-list count=\"1\" offset=\"0\"><recording id=\"7ca7782b-a602-448b-b108-bb881a7be2d6\" ext:score=\"100\">"));
+        assertTrue(output.contains("<title>Gravitational Lenz</title>"));
+        assertTrue(output.contains("<length>234000</length>"));
+        assertTrue(output.endsWith("</recording></recording-list></metadata>"));
+
+        // Pretty output can't be spliced so still produced by marshalling the entity
+        sw = new StringWriter();
+        pr = new PrintWriter(sw);
+        resultsWriter.write(pr, res, SearchServerServlet.RESPONSE_XML, true);
+        pr.close();
+        output = sw.toString();
+        assertTrue(output.contains("<title>Gravitational Lenz</title>"));
+        assertTrue(output.contains("ext:score=\"100\""));
+    }
+
+    /**
+     * Streamed xml must be identical to marshalling the complete Metadata tree
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testOutputAsXmlStreamedSameAsMarshalled() throws Exception {
+
+        Results res = ss.search("recording:\"Gravitational Lenz\"", 0, 10);
+        ResultsWriter writer = ss.getMmd2Writer();
+        StringWriter sw = new StringWriter();
+        PrintWriter pr = new PrintWriter(sw);
+        writer.write(pr, res, SearchServerServlet.RESPONSE_XML);
+        pr.close();
+        String streamed = sw.toString();
+
+        Marshaller m = JAXBContext.newInstance("org.musicbrainz.mmd2").createMarshaller();
+        m.setProperty("com.sun.xml.bind.namespacePrefixMapper", new org.musicbrainz.search.servlet.mmd2.ResultsWriter.PreferredMapper());
+        sw = new StringWriter();
+        m.marshal(((org.musicbrainz.search.servlet.mmd2.ResultsWriter)writer).write(res), sw);
+        String marshalled = sw.toString();
+        System.out.println("Xml streamed is" + streamed);
+        assertEquals(marshalled, streamed);
+    }
+
 }
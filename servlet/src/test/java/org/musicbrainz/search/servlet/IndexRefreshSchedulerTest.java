@@ -0,0 +1,88 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.musicbrainz.search.LuceneVersion;
+import org.musicbrainz.search.MbDocument;
+import org.musicbrainz.search.index.ArtistIndexField;
+import org.musicbrainz.search.index.DatabaseIndex;
+
+public class IndexRefreshSchedulerTest {
+
+  private IndexWriter writer;
+  private AbstractSearchServer ss;
+  private AtomicReference<IndexSet> currentIndexSet;
+  private IndexRefreshScheduler scheduler;
+
+  private void addArtist(String id, String name) throws Exception {
+    MbDocument doc = new MbDocument();
+    doc.addField(ArtistIndexField.ARTIST_ID, id);
+    doc.addField(ArtistIndexField.ARTIST, name);
+    writer.addDocument(doc.getLuceneDocument());
+    writer.commit();
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    RAMDirectory ramDir = new RAMDirectory();
+    writer = new IndexWriter(ramDir, new IndexWriterConfig(LuceneVersion.LUCENE_VERSION, DatabaseIndex.getAnalyzer(ArtistIndexField.class)));
+    addArtist("4302e264-1cf0-4d1f-aca7-2a6f89e34b36", "Farming Incident");
+    ss = new ArtistSearch(new SearcherManager(ramDir, new MusicBrainzSearcherFactory(ResourceType.ARTIST)));
+
+    Map<ResourceType, SearchServer> searchers = new EnumMap<ResourceType, SearchServer>(ResourceType.class);
+    Map<ResourceType, SearchServer> dismaxSearchers = new EnumMap<ResourceType, SearchServer>(ResourceType.class);
+    searchers.put(ResourceType.ARTIST, ss);
+    dismaxSearchers.put(ResourceType.ARTIST, new ArtistDismaxSearch(ss));
+    currentIndexSet = new AtomicReference<IndexSet>(new IndexSet(1, searchers, dismaxSearchers, false));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (scheduler != null) {
+      scheduler.shutdown();
+    }
+    writer.close();
+    currentIndexSet.get().decRef();
+  }
+
+  @Test
+  public void testJitter() throws Exception {
+    scheduler = new IndexRefreshScheduler(currentIndexSet, 1000, 10000, 20);
+    for (int i = 0; i < 1000; i++) {
+      long delay = scheduler.jitter(1000);
+      assertTrue(delay >= 800 && delay <= 1200);
+    }
+    assertEquals(1000, new IndexRefreshScheduler(currentIndexSet, 1000, 10000, 0).jitter(1000));
+  }
+
+  @Test
+  public void testRefreshesOnlyChangedIndex() throws Exception {
+    scheduler = new IndexRefreshScheduler(currentIndexSet, 10, 40, 0);
+    scheduler.start();
+    Thread.sleep(200);
+    assertTrue(scheduler.getStats(ResourceType.ARTIST).startsWith("checks:"));
+    assertTrue(scheduler.getStats(ResourceType.ARTIST).contains(",refreshes:0,"));
+    assertTrue(scheduler.getStats(ResourceType.ARTIST).endsWith(",delayms:40"));
+    assertEquals("checks:0,refreshes:0,failures:0,delayms:10", scheduler.getStats(ResourceType.LABEL));
+
+    addArtist("ccd4879c-5e88-4385-b131-bf65296bf245", "Echo & The Bunnymen");
+    long deadline = System.currentTimeMillis() + 5000;
+    while (ss.search("bunnymen", 0, 10).getTotalHits() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(1, ss.search("bunnymen", 0, 10).getTotalHits());
+    assertTrue(scheduler.getStats(ResourceType.ARTIST).contains(",refreshes:1,"));
+  }
+}
@@ -0,0 +1,119 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Before;
+import org.junit.Test;
+import org.musicbrainz.search.LuceneVersion;
+import org.musicbrainz.search.MbDocument;
+import org.musicbrainz.search.index.ArtistIndexField;
+import org.musicbrainz.search.index.DatabaseIndex;
+
+public class IndexSetTest {
+
+  private AbstractSearchServer ss;
+  private AbstractDismaxSearchServer sd;
+  private IndexSet indexSet;
+
+  @Before
+  public void setUp() throws Exception {
+    RAMDirectory ramDir = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(ramDir, new IndexWriterConfig(LuceneVersion.LUCENE_VERSION, DatabaseIndex.getAnalyzer(ArtistIndexField.class)));
+    MbDocument doc = new MbDocument();
+    doc.addField(ArtistIndexField.ARTIST_ID, "4302e264-1cf0-4d1f-aca7-2a6f89e34b36");
+    doc.addField(ArtistIndexField.ARTIST, "Farming Incident");
+    writer.addDocument(doc.getLuceneDocument());
+    writer.close();
+    ss = new ArtistSearch(new SearcherManager(ramDir, new MusicBrainzSearcherFactory(ResourceType.ARTIST)));
+    sd = new ArtistDismaxSearch(ss);
+
+    Map<ResourceType, SearchServer> searchers = new EnumMap<ResourceType, SearchServer>(ResourceType.class);
+    Map<ResourceType, SearchServer> dismaxSearchers = new EnumMap<ResourceType, SearchServer>(ResourceType.class);
+    searchers.put(ResourceType.ARTIST, ss);
+    dismaxSearchers.put(ResourceType.ARTIST, sd);
+    searchers.put(ResourceType.LABEL, null);
+    indexSet = new IndexSet(1, searchers, dismaxSearchers, false);
+  }
+
+  @Test
+  public void testSearchServers() throws Exception {
+    assertSame(ss, indexSet.getSearchServer(ResourceType.ARTIST, false));
+    assertSame(sd, indexSet.getSearchServer(ResourceType.ARTIST, true));
+    assertNull(indexSet.getSearchServer(ResourceType.LABEL, false));
+    assertNull(indexSet.getSearchServer(ResourceType.RECORDING, true));
+    assertFalse(indexSet.isSearchAllEnabled());
+  }
+
+  @Test
+  public void testClosedOnceLastReferenceReleased() throws Exception {
+    // Request in progress when the index set is replaced
+    assertTrue(indexSet.tryIncRef());
+    indexSet.decRef();
+    assertEquals(1, ss.search("farming", 0, 10).getTotalHits());
+
+    // Request finished
+    indexSet.decRef();
+    assertFalse(indexSet.tryIncRef());
+    try {
+      ss.getSearcherManager().acquire();
+      fail();
+    } catch (AlreadyClosedException ace) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testWarmer() throws Exception {
+    IndexWarmer warmer = new IndexWarmer(Arrays.asList(
+        IndexWarmer.parseLine("artist\tfarming"),
+        IndexWarmer.parseLine("artist:dismax\tincident"),
+        IndexWarmer.parseLine("label\tfarming"),
+        IndexWarmer.parseLine("artist\tartist:(")), 10000);
+    assertEquals(3, warmer.warm(indexSet));
+  }
+
+  @Test
+  public void testWarmerReleasesSearchers() throws Exception {
+    IndexSearcher searcher = ss.getSearcherManager().acquire();
+    IndexReader reader = searcher.getIndexReader();
+    ss.getSearcherManager().release(searcher);
+
+    IndexWarmer warmer = new IndexWarmer(Arrays.asList(
+        IndexWarmer.parseLine("artist\tfarming"),
+        IndexWarmer.parseLine("artist:dismax\tincident")), 10000);
+    assertEquals(2, warmer.warm(indexSet));
+
+    indexSet.decRef();
+    assertEquals(0, reader.getRefCount());
+  }
+
+  @Test
+  public void testWarmerQueryLines() throws Exception {
+    IndexWarmer.WarmupQuery warmupQuery = IndexWarmer.parseLine("recording:dismax\tlove me\tdo");
+    assertEquals(ResourceType.RECORDING, warmupQuery.getResourceType());
+    assertTrue(warmupQuery.isDismax());
+    assertEquals("love me\tdo", warmupQuery.getQuery());
+
+    assertFalse(IndexWarmer.parseLine("release\tfred").isDismax());
+    assertNull(IndexWarmer.parseLine("# recording\tfred"));
+    assertNull(IndexWarmer.parseLine(""));
+    assertNull(IndexWarmer.parseLine("recordings\tfred"));
+    assertNull(IndexWarmer.parseLine("recording fred"));
+  }
+}
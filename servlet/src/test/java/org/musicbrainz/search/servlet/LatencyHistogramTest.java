@@ -0,0 +1,48 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testBucketsCoverValues() {
+    for (long micros = 0; micros < 1000000; micros += 7) {
+      int bucket = LatencyHistogram.getBucket(micros);
+      assertTrue(LatencyHistogram.getBucketHighestValue(bucket) >= micros);
+      assertTrue(bucket == 0 || LatencyHistogram.getBucketHighestValue(bucket - 1) < micros);
+    }
+  }
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+    }
+
+    assertEquals(1000, histogram.getCount());
+    assertEquals(1000000, histogram.getMaxMicros());
+    assertEquals(500500, histogram.getMeanMicros());
+    assertWithinPrecision(500000, histogram.getPercentileMicros(50));
+    assertWithinPrecision(990000, histogram.getPercentileMicros(99));
+    assertWithinPrecision(999000, histogram.getPercentileMicros(99.9));
+    assertEquals(1000000, histogram.getPercentileMicros(100));
+  }
+
+  @Test
+  public void testEmpty() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getPercentileMicros(99));
+    assertEquals(0, histogram.getMeanMicros());
+  }
+
+  private void assertWithinPrecision(long expected, long actual) {
+    assertTrue("expected " + expected + " was " + actual, Math.abs(expected - actual) <= expected / 32);
+  }
+}
@@ -0,0 +1,108 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.Date;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Before;
+import org.junit.Test;
+import org.musicbrainz.search.LuceneVersion;
+import org.musicbrainz.search.MbDocument;
+import org.musicbrainz.search.index.ArtistIndexField;
+import org.musicbrainz.search.index.DatabaseIndex;
+import org.musicbrainz.search.index.MetaIndexField;
+
+public class LazyResultTest {
+
+  private AbstractSearchServer ss;
+  private SearcherManager searcherManager;
+
+  @Before
+  public void setUp() throws Exception {
+    RAMDirectory ramDir = new RAMDirectory();
+    IndexWriterConfig config = new IndexWriterConfig(LuceneVersion.LUCENE_VERSION, DatabaseIndex.getAnalyzer(ArtistIndexField.class));
+    IndexWriter writer = new IndexWriter(ramDir, config);
+    for (int i = 0; i < 3; i++) {
+      MbDocument doc = new MbDocument();
+      doc.addField(ArtistIndexField.ARTIST_ID, "4302e264-1cf0-4d1f-aca7-2a6f89e34b3" + i);
+      doc.addField(ArtistIndexField.ARTIST, "Artist " + i);
+      doc.addField(ArtistIndexField.TYPE, "Group");
+      doc.addField(ArtistIndexField.ARTIST_STORE, "stored " + i);
+      writer.addDocument(doc.getLuceneDocument());
+    }
+    MbDocument doc = new MbDocument();
+    doc.addField(MetaIndexField.META, MetaIndexField.META_VALUE);
+    doc.addNumericField(MetaIndexField.LAST_UPDATED, new Date().getTime());
+    writer.addDocument(doc.getLuceneDocument());
+    writer.close();
+
+    searcherManager = new SearcherManager(ramDir, new MusicBrainzSearcherFactory(ResourceType.ARTIST));
+    ss = new ArtistSearch(searcherManager);
+  }
+
+  @Test
+  public void testDocumentsNotLoadedBySearch() throws Exception {
+    Results results = ss.search("type:group", 0, 10);
+    assertEquals(3, results.results.size());
+    for (Result result : results.results) {
+      assertFalse(result.isDocLoaded());
+    }
+    Result first = results.results.get(0);
+    assertEquals("4302e264-1cf0-4d1f-aca7-2a6f89e34b30", first.getDoc().get(ArtistIndexField.ARTIST_ID));
+    assertTrue(first.isDocLoaded());
+    assertFalse(results.results.get(1).isDocLoaded());
+  }
+
+  @Test
+  public void testOnlyRequestedStoredFieldsLoaded() throws Exception {
+    Results results = ss.search("type:group", 0, 10);
+    results.setStoredFieldNames(Collections.singleton(ArtistIndexField.ARTIST_STORE.getName()));
+    MbDocument doc = results.results.get(0).getDoc();
+    assertEquals("stored 0", doc.get(ArtistIndexField.ARTIST_STORE));
+    assertNull(doc.get(ArtistIndexField.ARTIST_ID));
+  }
+
+  @Test
+  public void testWiderFieldSetReloadsDocument() throws Exception {
+    Results results = ss.search("type:group", 0, 10);
+    Result result = results.results.get(0);
+    result.setStoredFieldNames(Collections.singleton(ArtistIndexField.ARTIST_STORE.getName()));
+    assertNull(result.getDoc().get(ArtistIndexField.ARTIST_ID));
+    result.setStoredFieldNames(null);
+    assertEquals("stored 0", result.getDoc().get(ArtistIndexField.ARTIST_STORE));
+    assertEquals("4302e264-1cf0-4d1f-aca7-2a6f89e34b30", result.getDoc().get(ArtistIndexField.ARTIST_ID));
+  }
+
+  @Test
+  public void testDocumentLoadedAfterSearcherReleased() throws Exception {
+    Results results = ss.search("type:group", 0, 10);
+    // Closing the manager releases its searcher, only the results still hold it
+    searcherManager.close();
+    assertEquals("4302e264-1cf0-4d1f-aca7-2a6f89e34b30", results.results.get(0).getDoc().get(ArtistIndexField.ARTIST_ID));
+    results.release();
+    try {
+      results.results.get(1).getDoc();
+      fail("Document loaded after the results were released");
+    } catch (RuntimeException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testReleaseOnlyOnce() throws Exception {
+    Results results = ss.search("type:group", 0, 10);
+    int refCount = results.getSearcher().getIndexReader().getRefCount();
+    results.release();
+    results.release();
+    assertEquals(refCount - 1, results.getSearcher().getIndexReader().getRefCount());
+  }
+}
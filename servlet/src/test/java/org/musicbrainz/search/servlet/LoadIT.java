@@ -1,11 +1,14 @@
 package org.musicbrainz.search.servlet;
 
+import com.google.common.base.Charsets;
+import com.google.common.io.CharStreams;
 import org.apache.commons.lang.time.StopWatch;
 import org.junit.Test;
 import org.musicbrainz.mmd2.Metadata;
 import org.musicbrainz.mmd2.Recording;
 
 import java.io.BufferedInputStream;
+import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.concurrent.Callable;
@@ -15,6 +18,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 
@@ -99,11 +103,78 @@ public class LoadIT extends AbstractIntegration {
 
     }
 
+    /**
+     * Compare throughput of processing requests on the container threads with processing them asynchronously, the
+     * mode is chosen per request so both can be compared against the same server, request_mode_header is enabled for
+     * the integration tests by override-web.xml
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCompareSyncAndAsyncProcessing() throws Exception {
+
+        // Warm up so neither mode pays for loading the index
+        runSearches(SearchServerServlet.PROCESSING_SYNC);
+
+        for(int run=1;run<=2;run++)
+        {
+            for(String processing : new String[] {SearchServerServlet.PROCESSING_SYNC, SearchServerServlet.PROCESSING_ASYNC})
+            {
+                long elapsed = runSearches(processing);
+                System.out.println("Run" + run + ":" + processing
+                        + ":Elapsed:" + elapsed
+                        + ":Searches/sec:" + String.format("%.1f", NO_OF_QUERIES * 1000.0 / Math.max(1, elapsed))
+                        + ":Mean latency:" + (totalTime.get() / NO_OF_QUERIES));
+            }
+        }
+
+        // Check the async requests really were processed asynchronously rather than falling back to sync
+        URL url = new URL("http://localhost:8080/?stats=true");
+        String stats = CharStreams.toString(new InputStreamReader(url.openStream(), Charsets.UTF_8));
+        assertTrue(stats.contains("asyncsearch:dispatched:"));
+        assertFalse(stats.contains("asyncsearch:dispatched:0,"));
+    }
+
+    /**
+     * @param processing
+     * @return elapsed time in milliseconds to run all the searches
+     * @throws Exception
+     */
+    private long runSearches(String processing) throws Exception {
+        totalMatches.set(0);
+        totalReleases.set(0);
+        totalTime.set(0);
+        totalData.set(0);
+
+        StopWatch clock = new StopWatch();
+        clock.start();
+        ExecutorService es = Executors.newFixedThreadPool(PARALLELISM);
+        for(int i=1;i<=NO_OF_QUERIES;i++)
+        {
+            es.submit(new RunSearch(i, processing));
+        }
+        es.shutdown();
+        es.awaitTermination(1, TimeUnit.HOURS);
+        clock.stop();
+        return clock.getTime();
+    }
+
     class RunSearch implements Callable<Boolean> {
         
         private int qdur;
+        private String processing;
+
         public RunSearch(int qdur) {
+            this(qdur, null);
+        }
+
+        /**
+         * @param qdur
+         * @param processing sync or async processing of the request, or null for the server default
+         */
+        public RunSearch(int qdur, String processing) {
             this.qdur=qdur;
+            this.processing=processing;
         }
 
         public Boolean call() throws Exception {
@@ -113,6 +184,10 @@ public class LoadIT extends AbstractIntegration {
             BufferedInputStream bis;
             URL url = new URL("http://localhost:8080/?type=recording&query=qdur:"+qdur);
             HttpURLConnection uc = (HttpURLConnection)url.openConnection();
+            if(processing!=null)
+            {
+                uc.setRequestProperty(SearchServerServlet.HEADER_PROCESSING, processing);
+            }
             int responseCode = uc.getResponseCode();
             assertEquals(responseCode,HttpURLConnection.HTTP_OK);
             bis = new BufferedInputStream(uc.getInputStream());
@@ -0,0 +1,256 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TimeLimitingCollector;
+import org.apache.lucene.search.TimeLimitingCollector.TimeExceededException;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Counter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.musicbrainz.search.LuceneVersion;
+import org.musicbrainz.search.MbDocument;
+import org.musicbrainz.search.index.ArtistIndexField;
+import org.musicbrainz.search.index.DatabaseIndex;
+
+public class MusicBrainzIndexSearcherTest {
+
+  private IndexReader reader;
+  private ParallelSearchExecutor executor;
+
+  @Before
+  public void setUp() throws Exception {
+    RAMDirectory ramDir = new RAMDirectory();
+    IndexWriterConfig config = new IndexWriterConfig(LuceneVersion.LUCENE_VERSION, DatabaseIndex.getAnalyzer(ArtistIndexField.class));
+    config.setMergePolicy(NoMergePolicy.COMPOUND_FILES);
+    IndexWriter writer = new IndexWriter(ramDir, config);
+
+    // Four segments of ten artists, the name repeated to give different scores
+    for (int i = 0; i < 40; i++) {
+      MbDocument doc = new MbDocument();
+      doc.addField(ArtistIndexField.ARTIST_ID, "4302e264-1cf0-4d1f-aca7-2a6f89e34b" + i);
+      StringBuilder name = new StringBuilder("Farming");
+      for (int j = 0; j < i % 7; j++) {
+        name.append(" Incident");
+      }
+      doc.addField(ArtistIndexField.ARTIST, name.toString());
+      doc.addNumericDocValuesField(ArtistIndexField.SORT_BY_DATE, i % 5);
+      writer.addDocument(doc.getLuceneDocument());
+      if (i % 10 == 9) {
+        writer.commit();
+      }
+    }
+    writer.close();
+    reader = DirectoryReader.open(ramDir);
+    executor = new ParallelSearchExecutor(2, 1, 15);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdown();
+    reader.close();
+  }
+
+  @Test
+  public void testSegmentsGroupedIntoSlices() throws Exception {
+    assertEquals(4, reader.leaves().size());
+    assertEquals(2, new MusicBrainzIndexSearcher(reader, executor).getSliceCount());
+    assertEquals(4, MusicBrainzIndexSearcher.createSlices(reader.leaves(), 1).size());
+    assertEquals(1, MusicBrainzIndexSearcher.createSlices(reader.leaves(), 100).size());
+    assertEquals(0, new MusicBrainzIndexSearcher(reader, null).getSliceCount());
+  }
+
+  @Test
+  public void testParallelSameAsSequential() throws Exception {
+    Query query = new TermQuery(new Term(ArtistIndexField.ARTIST.getName(), "incident"));
+    TopDocs sequential = new MusicBrainzIndexSearcher(reader, null).searchTopDocs(query, 10, null, MusicBrainzIndexSearcher.NO_WRAPPER);
+    TopDocs parallel = new MusicBrainzIndexSearcher(reader, executor).searchTopDocs(query, 10, null, MusicBrainzIndexSearcher.NO_WRAPPER);
+
+    assertEquals(sequential.totalHits, parallel.totalHits);
+    assertEquals(sequential.getMaxScore(), parallel.getMaxScore(), 0.0001f);
+    assertEquals(sequential.scoreDocs.length, parallel.scoreDocs.length);
+    for (int i = 0; i < sequential.scoreDocs.length; i++) {
+      assertEquals(sequential.scoreDocs[i].doc, parallel.scoreDocs[i].doc);
+      assertEquals(sequential.scoreDocs[i].score, parallel.scoreDocs[i].score, 0.0001f);
+    }
+
+    // Following page
+    TopDocs sequentialNext = new MusicBrainzIndexSearcher(reader, null).searchTopDocs(query, 10, sequential.scoreDocs[9], MusicBrainzIndexSearcher.NO_WRAPPER);
+    TopDocs parallelNext = new MusicBrainzIndexSearcher(reader, executor).searchTopDocs(query, 10, parallel.scoreDocs[9], MusicBrainzIndexSearcher.NO_WRAPPER);
+    assertEquals(sequentialNext.scoreDocs.length, parallelNext.scoreDocs.length);
+    for (int i = 0; i < sequentialNext.scoreDocs.length; i++) {
+      assertEquals(sequentialNext.scoreDocs[i].doc, parallelNext.scoreDocs[i].doc);
+    }
+  }
+
+  @Test
+  public void testSortedParallelSameAsSequential() throws Exception {
+    Query query = new TermQuery(new Term(ArtistIndexField.ARTIST.getName(), "incident"));
+    Sort sort = SortKey.DATE.getSort(true);
+    TopDocs sequential = new MusicBrainzIndexSearcher(reader, null).searchTopDocs(query, 10, null, sort, MusicBrainzIndexSearcher.NO_WRAPPER, false);
+    TopDocs parallel = new MusicBrainzIndexSearcher(reader, executor).searchTopDocs(query, 10, null, sort, MusicBrainzIndexSearcher.NO_WRAPPER, false);
+
+    assertEquals(sequential.totalHits, parallel.totalHits);
+    assertEquals(sequential.getMaxScore(), parallel.getMaxScore(), 0.0001f);
+    assertEquals(10, parallel.scoreDocs.length);
+    long previous = Long.MAX_VALUE;
+    for (int i = 0; i < sequential.scoreDocs.length; i++) {
+      assertEquals(sequential.scoreDocs[i].doc, parallel.scoreDocs[i].doc);
+      assertEquals(sequential.scoreDocs[i].score, parallel.scoreDocs[i].score, 0.0001f);
+      long value = (Long) ((FieldDoc) parallel.scoreDocs[i]).fields[0];
+      assertTrue(value <= previous);
+      previous = value;
+    }
+    assertEquals(4L, ((FieldDoc) parallel.scoreDocs[0]).fields[0]);
+  }
+
+  @Test
+  public void testFallsBackToSequentialWhenBusy() throws Exception {
+    Query query = new TermQuery(new Term(ArtistIndexField.ARTIST.getName(), "farming"));
+    MusicBrainzIndexSearcher searcher = new MusicBrainzIndexSearcher(reader, executor);
+
+    assertEquals(true, executor.tryAcquire());
+    try {
+      assertEquals(40, searcher.searchTopDocs(query, 5, null, MusicBrainzIndexSearcher.NO_WRAPPER).totalHits);
+    } finally {
+      executor.release();
+    }
+    assertEquals(40, searcher.searchTopDocs(query, 5, null, MusicBrainzIndexSearcher.NO_WRAPPER).totalHits);
+    assertEquals("parallel:2,sequentialfallbacks:1", executor.getStats().substring(0, executor.getStats().indexOf(",active")));
+  }
+
+  /**
+   * Times out after ticksAllowed hits have been collected by advancing the clock on every hit
+   */
+  private MusicBrainzIndexSearcher.CollectorWrapper createTickingWrapper(final int ticksAllowed) {
+    return new MusicBrainzIndexSearcher.CollectorWrapper() {
+      public Collector wrap(final Collector collector) {
+        final Counter clock = Counter.newCounter(true);
+        Collector ticking = new Collector() {
+          public void setScorer(Scorer scorer) throws IOException {
+            collector.setScorer(scorer);
+          }
+
+          public void collect(int doc) throws IOException {
+            collector.collect(doc);
+            clock.addAndGet(1);
+          }
+
+          public void setNextReader(AtomicReaderContext context) throws IOException {
+            collector.setNextReader(context);
+          }
+
+          public boolean acceptsDocsOutOfOrder() {
+            return collector.acceptsDocsOutOfOrder();
+          }
+        };
+        return new TimeLimitingCollector(ticking, clock, ticksAllowed);
+      }
+    };
+  }
+
+  @Test
+  public void testPartialResultsWhenTimeExceeded() throws Exception {
+    Query query = new TermQuery(new Term(ArtistIndexField.ARTIST.getName(), "farming"));
+
+    TopDocs sequential = new MusicBrainzIndexSearcher(reader, null).searchTopDocs(query, 50, null,
+        createTickingWrapper(5), true);
+    assertTrue(sequential instanceof MusicBrainzIndexSearcher.PartialTopDocs);
+    assertTrue(sequential.scoreDocs.length > 0);
+    assertTrue(sequential.scoreDocs.length < 40);
+
+    TopDocs parallel = new MusicBrainzIndexSearcher(reader, executor).searchTopDocs(query, 50, null,
+        createTickingWrapper(5), true);
+    assertTrue(parallel instanceof MusicBrainzIndexSearcher.PartialTopDocs);
+    assertTrue(parallel.scoreDocs.length > 0);
+    assertTrue(parallel.scoreDocs.length < 40);
+
+    TopDocs complete = new MusicBrainzIndexSearcher(reader, executor).searchTopDocs(query, 50, null,
+        createTickingWrapper(100), true);
+    assertTrue(!(complete instanceof MusicBrainzIndexSearcher.PartialTopDocs));
+    assertEquals(40, complete.totalHits);
+  }
+
+  @Test
+  public void testTimeExceededWhenPartialNotAllowed() throws Exception {
+    Query query = new TermQuery(new Term(ArtistIndexField.ARTIST.getName(), "farming"));
+    try {
+      new MusicBrainzIndexSearcher(reader, executor).searchTopDocs(query, 50, null, createTickingWrapper(5), false);
+      fail();
+    } catch (TimeExceededException tee) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testRunningSlicesFinishedWhenOneFails() throws Exception {
+    Query query = new TermQuery(new Term(ArtistIndexField.ARTIST.getName(), "farming"));
+    final AtomicInteger wrapped = new AtomicInteger();
+    final AtomicBoolean returned = new AtomicBoolean();
+    final AtomicBoolean collectedAfterReturn = new AtomicBoolean();
+    MusicBrainzIndexSearcher.CollectorWrapper wrapper = new MusicBrainzIndexSearcher.CollectorWrapper() {
+      public Collector wrap(final Collector collector) {
+        final boolean fail = wrapped.getAndIncrement() == 0;
+        return new Collector() {
+          public void setScorer(Scorer scorer) throws IOException {
+            collector.setScorer(scorer);
+          }
+
+          public void collect(int doc) throws IOException {
+            if (fail) {
+              throw new IllegalStateException();
+            }
+            try {
+              Thread.sleep(5);
+            } catch (InterruptedException ie) {
+              Thread.currentThread().interrupt();
+            }
+            if (returned.get()) {
+              collectedAfterReturn.set(true);
+            }
+            collector.collect(doc);
+          }
+
+          public void setNextReader(AtomicReaderContext context) throws IOException {
+            collector.setNextReader(context);
+          }
+
+          public boolean acceptsDocsOutOfOrder() {
+            return collector.acceptsDocsOutOfOrder();
+          }
+        };
+      }
+    };
+
+    try {
+      new MusicBrainzIndexSearcher(reader, executor).searchTopDocs(query, 50, null, wrapper);
+      fail();
+    } catch (IllegalStateException ise) {
+      returned.set(true);
+    }
+    Thread.sleep(200);
+    assertFalse(collectedAfterReturn.get());
+  }
+}
@@ -0,0 +1,126 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+import org.musicbrainz.search.LuceneVersion;
+import org.musicbrainz.search.MbDocument;
+import org.musicbrainz.search.index.DatabaseIndex;
+import org.musicbrainz.search.index.MetaIndexField;
+import org.musicbrainz.search.index.RecordingIndexField;
+import org.musicbrainz.search.index.ReleaseIndexField;
+
+public class NumericFieldQueriesTest {
+
+  private static final String DUR = RecordingIndexField.DURATION.getName();
+  private static final String DATE = ReleaseIndexField.DATE_NUMERIC.getName();
+
+  private static final NumericFieldQueries TRIE = new NumericFieldQueries(4, DatabaseIndex.FORMAT_VERSION);
+
+  private IndexSearcher createSearcher(int precisionStep) throws Exception {
+    RAMDirectory ramDir = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(ramDir, new IndexWriterConfig(LuceneVersion.LUCENE_VERSION, DatabaseIndex.getAnalyzer(RecordingIndexField.class)));
+    int oldPrecisionStep = MbDocument.getNumericPrecisionStep();
+    MbDocument.setNumericPrecisionStep(precisionStep);
+    try {
+      for (int dur = 0; dur < 1000000; dur += 1000) {
+        MbDocument doc = new MbDocument();
+        doc.addNumericField(RecordingIndexField.DURATION, dur);
+        writer.addDocument(doc.getLuceneDocument());
+      }
+    } finally {
+      MbDocument.setNumericPrecisionStep(oldPrecisionStep);
+    }
+    writer.close();
+    return new IndexSearcher(DirectoryReader.open(ramDir));
+  }
+
+  private IndexSearcher createDateSearcher(String... dates) throws Exception {
+    RAMDirectory ramDir = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(ramDir, new IndexWriterConfig(LuceneVersion.LUCENE_VERSION, DatabaseIndex.getAnalyzer(ReleaseIndexField.class)));
+    for (String date : dates) {
+      MbDocument doc = new MbDocument();
+      doc.addNonEmptyField(ReleaseIndexField.DATE, date);
+      doc.addNumericDateField(ReleaseIndexField.DATE_NUMERIC, date);
+      writer.addDocument(doc.getLuceneDocument());
+    }
+    writer.close();
+    return new IndexSearcher(DirectoryReader.open(ramDir));
+  }
+
+  private int count(IndexSearcher searcher, Query query) throws Exception {
+    return searcher.search(query, 1).totalHits;
+  }
+
+  @Test
+  public void testTrieIndex() throws Exception {
+    IndexSearcher searcher = createSearcher(4);
+    assertEquals(1, count(searcher, TRIE.newIntQuery(DUR, "234000")));
+    assertEquals(0, count(searcher, TRIE.newIntQuery(DUR, "234001")));
+    assertEquals(61, count(searcher, TRIE.newIntRangeQuery(DUR, "200000", "260000", true, true)));
+    assertEquals(59, count(searcher, TRIE.newIntRangeQuery(DUR, "200000", "260000", false, false)));
+    assertEquals(11, count(searcher, TRIE.newIntRangeQuery(DUR, "*", "10000", true, true)));
+    assertEquals(10, count(searcher, TRIE.newIntRangeQuery(DUR, "990000", null, true, true)));
+  }
+
+  @Test
+  public void testLegacyIndex() throws Exception {
+    IndexSearcher searcher = createSearcher(MbDocument.LEGACY_NUMERIC_PRECISION_STEP);
+    assertEquals(1, count(searcher, NumericFieldQueries.LEGACY.newIntQuery(DUR, "234000")));
+    assertEquals(61, count(searcher, NumericFieldQueries.LEGACY.newIntRangeQuery(DUR, "200000", "260000", true, true)));
+  }
+
+  @Test
+  public void testLegacyQueryOfTrieIndex() throws Exception {
+    IndexSearcher searcher = createSearcher(4);
+    assertEquals(61, count(searcher, NumericFieldQueries.LEGACY.newIntRangeQuery(DUR, "200000", "260000", true, true)));
+  }
+
+  @Test
+  public void testNotNumeric() throws Exception {
+    assertNull(TRIE.newIntQuery(DUR, "fred"));
+    assertNull(TRIE.newIntRangeQuery(DUR, "fred", "10", true, true));
+    assertNull(TRIE.newDateRangeQuery(DATE, "fred", "1999", true, true));
+  }
+
+  @Test
+  public void testDateRange() throws Exception {
+    IndexSearcher searcher = createDateSearcher("1994-12-31", "1995", "1997-05-04", "1999-06", "1999-06-30", "1999-07-01", "1999");
+    assertEquals(5, count(searcher, TRIE.newDateRangeQuery(DATE, "1995", "1999-06", true, true)));
+    assertEquals(2, count(searcher, TRIE.newDateRangeQuery(DATE, "1995", "1999-06", false, false)));
+    assertEquals(1, count(searcher, TRIE.newDateRangeQuery(DATE, "*", "1994", true, true)));
+    assertEquals(4, count(searcher, TRIE.newDateRangeQuery(DATE, "1999", null, true, true)));
+    assertEquals(1, count(searcher, TRIE.newDateRangeQuery(DATE, "1997-05-04", "1997-05-04", true, true)));
+  }
+
+  @Test
+  public void testNoNumericDatesInOldFormat() throws Exception {
+    assertFalse(NumericFieldQueries.LEGACY.hasNumericDates());
+    assertNull(NumericFieldQueries.LEGACY.newDateRangeQuery(DATE, "1995", "1999", true, true));
+    assertNull(new NumericFieldQueries(4, 2).newDateRangeQuery(DATE, "1995", "1999", true, true));
+    assertTrue(TRIE.newDateRangeQuery(DATE, "1995", "1999", true, true) instanceof NumericRangeQuery);
+  }
+
+  @Test
+  public void testFormatFromMetaDocument() throws Exception {
+    MbDocument meta = new MbDocument();
+    meta.addField(MetaIndexField.META, MetaIndexField.META_VALUE);
+    assertEquals(NumericFieldQueries.LEGACY, NumericFieldQueries.forIndex(meta));
+
+    meta.addField(MetaIndexField.FORMAT_VERSION, DatabaseIndex.FORMAT_VERSION);
+    meta.addField(MetaIndexField.NUMERIC_PRECISION_STEP, 8);
+    NumericFieldQueries queries = NumericFieldQueries.forIndex(meta);
+    assertEquals(8, queries.getPrecisionStep());
+    assertTrue(queries.hasNumericDates());
+  }
+}
@@ -0,0 +1,115 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Before;
+import org.junit.Test;
+import org.musicbrainz.search.LuceneVersion;
+import org.musicbrainz.search.MbDocument;
+import org.musicbrainz.search.index.ArtistIndexField;
+import org.musicbrainz.search.index.DatabaseIndex;
+import org.musicbrainz.search.index.MetaIndexField;
+
+public class ParsedQueryCacheTest {
+
+  private AbstractSearchServer ss;
+  private AbstractDismaxSearchServer sd;
+
+  @Before
+  public void setUp() throws Exception {
+    RAMDirectory ramDir = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(ramDir, new IndexWriterConfig(LuceneVersion.LUCENE_VERSION, DatabaseIndex.getAnalyzer(ArtistIndexField.class)));
+    {
+      MbDocument doc = new MbDocument();
+      doc.addField(ArtistIndexField.ARTIST_ID, "4302e264-1cf0-4d1f-aca7-2a6f89e34b36");
+      doc.addField(ArtistIndexField.ARTIST, "Farming Incident");
+      doc.addField(ArtistIndexField.SORTNAME, "Incident, Farming");
+      doc.addField(ArtistIndexField.TYPE, "Group");
+      writer.addDocument(doc.getLuceneDocument());
+    }
+    {
+      MbDocument doc = new MbDocument();
+      doc.addField(MetaIndexField.META, MetaIndexField.META_VALUE);
+      doc.addNumericField(MetaIndexField.LAST_UPDATED, new Date().getTime());
+      writer.addDocument(doc.getLuceneDocument());
+    }
+    writer.close();
+    ss = new ArtistSearch(new SearcherManager(ramDir, new MusicBrainzSearcherFactory(ResourceType.ARTIST)));
+    sd = new ArtistDismaxSearch(ss);
+  }
+
+  @Test
+  public void testRepeatedQueryNotParsedAgain() throws Exception {
+    ParsedQueryCache cache = ss.getParsedQueryCache();
+    assertEquals(1, ss.search("artist:farming", 0, 10).getTotalHits());
+    assertEquals(1, ss.search("artist:farming", 0, 10).getTotalHits());
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testDismaxHasSeparateCache() throws Exception {
+    assertEquals(1, sd.search("farming", 0, 10).getTotalHits());
+    assertEquals(1, sd.search("farming", 0, 10).getTotalHits());
+    assertEquals(1, sd.getParsedQueryCache().getHits());
+    assertEquals(0, ss.getParsedQueryCache().size());
+  }
+
+  @Test
+  public void testParserReturnedToPoolAndReused() throws Exception {
+    ss.setParsedQueryCache(null);
+    ss.search("artist:farming", 0, 10);
+    assertEquals(1, ss.getParserPool().getIdleCount());
+    ss.search("artist:incident", 0, 10);
+    assertEquals(1, ss.getParserPool().getIdleCount());
+  }
+
+  @Test
+  public void testCachedQueryIsCopy() throws Exception {
+    Query parsed = ss.getParsedQuery("artist:farming");
+    parsed.setBoost(5.0f);
+    Query cached = ss.getParsedQuery("artist:farming");
+    assertTrue(parsed != cached);
+    assertEquals(1.0f, cached.getBoost(), 0.0f);
+    assertEquals(1, ss.getParsedQueryCache().getHits());
+  }
+
+  @Test
+  public void testDismaxSingleTermNotParsedAsPhrase() throws Exception {
+    DismaxQueryParser parser = new DismaxQueryParser(ss.getAnalyzer());
+    assertFalse(parser.isPhraseQueryNeeded(sd.getParsedQuery("farming")));
+    assertTrue(parser.isPhraseQueryNeeded(sd.getParsedQuery("farming incident")));
+  }
+
+  @Test
+  public void testCachingCanBeDisabled() throws Exception {
+    ss.setParsedQueryCache(null);
+    assertEquals(1, ss.search("artist:farming", 0, 10).getTotalHits());
+    assertNull(ss.getParsedQueryCache());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedRemovedWhenFull() throws Exception {
+    ParsedQueryCache cache = new ParsedQueryCache(2);
+    cache.put("a", new TermQuery(new org.apache.lucene.index.Term("f", "a")), 1000);
+    cache.put("b", new TermQuery(new org.apache.lucene.index.Term("f", "b")), 1000);
+    cache.get("a");
+    cache.put("c", new TermQuery(new org.apache.lucene.index.Term("f", "c")), 1000);
+    assertEquals(2, cache.size());
+    assertNull(cache.get("b"));
+    assertTrue(cache.get("a") != null);
+    assertEquals(50.0, cache.getHitRate(), 0.01);
+  }
+}
@@ -0,0 +1,85 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+import org.musicbrainz.search.LuceneVersion;
+import org.musicbrainz.search.MbDocument;
+import org.musicbrainz.search.index.ArtistIndexField;
+import org.musicbrainz.search.index.DatabaseIndex;
+import org.musicbrainz.search.servlet.IndexWarmer.WarmupQuery;
+
+public class QueryFrequencySketchTest {
+
+  private void record(QueryFrequencySketch sketch, String query, boolean isDismax, int times) {
+    for (int i = 0; i < times; i++) {
+      sketch.record(query, isDismax);
+    }
+  }
+
+  @Test
+  public void testTopQueries() throws Exception {
+    QueryFrequencySketch sketch = new QueryFrequencySketch(ResourceType.ARTIST, 10);
+    record(sketch, "farming", false, 3);
+    record(sketch, "incident", false, 5);
+    record(sketch, "farming", true, 4);
+    record(sketch, "", false, 10);
+
+    List<WarmupQuery> topQueries = sketch.getTopQueries(2);
+    assertEquals(2, topQueries.size());
+    assertEquals(new WarmupQuery(ResourceType.ARTIST, false, "incident"), topQueries.get(0));
+    assertEquals(new WarmupQuery(ResourceType.ARTIST, true, "farming"), topQueries.get(1));
+    assertEquals(3, sketch.size());
+  }
+
+  @Test
+  public void testBounded() throws Exception {
+    QueryFrequencySketch sketch = new QueryFrequencySketch(ResourceType.ARTIST, 2);
+    record(sketch, "frequent", false, 100);
+    for (int i = 0; i < 1000; i++) {
+      sketch.record("rare" + i, false);
+    }
+    assertTrue(sketch.size() <= 4);
+    assertEquals("frequent", sketch.getTopQueries(1).get(0).getQuery());
+  }
+
+  @Test
+  public void testWarmRefreshedSearcher() throws Exception {
+    RAMDirectory ramDir = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(ramDir, new IndexWriterConfig(LuceneVersion.LUCENE_VERSION, DatabaseIndex.getAnalyzer(ArtistIndexField.class)));
+    MbDocument doc = new MbDocument();
+    doc.addField(ArtistIndexField.ARTIST_ID, "4302e264-1cf0-4d1f-aca7-2a6f89e34b36");
+    doc.addField(ArtistIndexField.ARTIST, "Farming Incident");
+    writer.addDocument(doc.getLuceneDocument());
+    writer.commit();
+
+    MusicBrainzSearcherFactory searcherFactory = new MusicBrainzSearcherFactory(ResourceType.ARTIST);
+    AbstractSearchServer ss = new ArtistSearch(new SearcherManager(ramDir, searcherFactory));
+    AbstractDismaxSearchServer sd = new ArtistDismaxSearch(ss);
+    QueryFrequencySketch sketch = new QueryFrequencySketch(ResourceType.ARTIST, 10);
+    record(sketch, "farming", false, 2);
+    record(sketch, "incident", true, 1);
+    SearchMetrics searchMetrics = new SearchMetrics();
+    SearcherWarmer warmer = new SearcherWarmer(ResourceType.ARTIST, sketch, ss, sd, 10, 10000, searchMetrics);
+    searcherFactory.setSearcherWarmer(warmer);
+
+    doc = new MbDocument();
+    doc.addField(ArtistIndexField.ARTIST_ID, "ccd4879c-5e88-4385-b131-bf65296bf245");
+    doc.addField(ArtistIndexField.ARTIST, "Echo & The Bunnymen");
+    writer.addDocument(doc.getLuceneDocument());
+    writer.close();
+    ss.reloadIndex();
+
+    assertEquals("warmups:1,queries:2,lastms:", warmer.getStats().substring(0, "warmups:1,queries:2,lastms:".length()));
+    assertTrue(warmer.getStats().endsWith(",lastqueries:2"));
+    assertEquals(1, searchMetrics.getCount(SearchMetrics.getWarmupName(ResourceType.ARTIST)));
+    assertEquals(1, ss.search("bunnymen", 0, 10).getTotalHits());
+  }
+}
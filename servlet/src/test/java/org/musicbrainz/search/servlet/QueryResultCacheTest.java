@@ -0,0 +1,55 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class QueryResultCacheTest {
+
+  @Test
+  public void testKeyNormalizesWhitespace() throws Exception {
+    assertEquals(QueryResultCache.createKey(false, "artist:fred  AND  type:group", 0, 25, "xml", "2", false),
+        QueryResultCache.createKey(false, " artist:fred AND type:group ", 0, 25, "xml", "2", false));
+  }
+
+  @Test
+  public void testKeyDiffersByOptions() throws Exception {
+    String key = QueryResultCache.createKey(false, "fred", 0, 25, "xml", "2", false);
+    assertEquals(false, key.equals(QueryResultCache.createKey(true, "fred", 0, 25, "xml", "2", false)));
+    assertEquals(false, key.equals(QueryResultCache.createKey(false, "fred", 25, 25, "xml", "2", false)));
+    assertEquals(false, key.equals(QueryResultCache.createKey(false, "fred", 0, 100, "xml", "2", false)));
+    assertEquals(false, key.equals(QueryResultCache.createKey(false, "fred", 0, 25, "jsonnew", "2", false)));
+    assertEquals(false, key.equals(QueryResultCache.createKey(false, "fred", 0, 25, "xml", "1", false)));
+    assertEquals(false, key.equals(QueryResultCache.createKey(false, "fred", 0, 25, "xml", "2", true)));
+    assertEquals(false, key.equals(QueryResultCache.createKey(false, "fred", 0, 25, "-date", "xml", "2", false)));
+    assertEquals(key, QueryResultCache.createKey(false, "fred", 0, 25, null, "xml", "2", false));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEvictedWhenFull() throws Exception {
+    QueryResultCache cache = new QueryResultCache(30);
+    cache.put("a", cache.getGeneration(), new byte[10]);
+    cache.put("b", cache.getGeneration(), new byte[10]);
+    cache.put("c", cache.getGeneration(), new byte[10]);
+    assertNotNull(cache.get("a"));
+    cache.put("d", cache.getGeneration(), new byte[10]);
+
+    assertNull(cache.get("b"));
+    assertNotNull(cache.get("a"));
+    assertNotNull(cache.get("c"));
+    assertNotNull(cache.get("d"));
+    assertEquals(1, cache.getEvictions());
+    assertEquals(30, cache.getBytes());
+    assertEquals(4, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  public void testResponseLargerThanCacheNotAdded() throws Exception {
+    QueryResultCache cache = new QueryResultCache(10);
+    cache.put("a", cache.getGeneration(), new byte[11]);
+    assertEquals(0, cache.size());
+  }
+}
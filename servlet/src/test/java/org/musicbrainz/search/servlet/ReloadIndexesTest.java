@@ -210,6 +210,30 @@ public class ReloadIndexesTest {
 */
   }
 
+  @Test
+  public void testResultCacheInvalidatedOnlyIfIndexChanged() throws Exception {
+
+    QueryResultCache cache = new QueryResultCache(1024);
+    ss.setResultCache(cache);
+    assertTrue(sd.getResultCache() == cache);
+
+    String key = QueryResultCache.createKey(false, "type:\"group\"", 0, 10, "xml", "2", false);
+    cache.put(key, cache.getGeneration(), new byte[10]);
+
+    // Reloading with no changes keeps the cached responses
+    ss.reloadIndex();
+    assertEquals(1, cache.size());
+
+    // Reloading with changes removes them, and responses started before the reload are not added
+    long oldGeneration = cache.getGeneration();
+    addArtist2();
+    ss.reloadIndex();
+    assertEquals(0, cache.size());
+    assertTrue(cache.get(key) == null);
+    cache.put(key, oldGeneration, new byte[10]);
+    assertEquals(0, cache.size());
+  }
+
   @Test
   public void testInitUpdatesReaderIfIndexChanged() throws Exception {
 
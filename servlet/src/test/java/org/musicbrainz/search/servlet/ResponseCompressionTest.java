@@ -0,0 +1,86 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Test;
+import org.musicbrainz.search.servlet.ResponseCompression.Encoding;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+
+public class ResponseCompressionTest {
+
+  private static final String CONTENT = "<metadata><artist-list count=\"1\" offset=\"0\"><artist id=\"4302e264\"/></artist-list></metadata>";
+
+  @Test
+  public void testNegotiate() throws Exception {
+    ResponseCompression compression = new ResponseCompression(ResponseCompression.DEFAULT_LEVEL);
+    assertEquals(Encoding.IDENTITY, compression.negotiate(null));
+    assertEquals(Encoding.IDENTITY, compression.negotiate("br"));
+    assertEquals(Encoding.GZIP, compression.negotiate("gzip"));
+    assertEquals(Encoding.GZIP, compression.negotiate("deflate, gzip"));
+    assertEquals(Encoding.DEFLATE, compression.negotiate("deflate"));
+    assertEquals(Encoding.DEFLATE, compression.negotiate("gzip;q=0.5, deflate"));
+    assertEquals(Encoding.IDENTITY, compression.negotiate("gzip;q=0"));
+  }
+
+  @Test
+  public void testNegotiateIgnoresDefaultLocale() throws Exception {
+    Locale defaultLocale = Locale.getDefault();
+    Locale.setDefault(new Locale("tr", "TR"));
+    try {
+      assertEquals(Encoding.GZIP, new ResponseCompression(ResponseCompression.DEFAULT_LEVEL).negotiate("GZIP"));
+    } finally {
+      Locale.setDefault(defaultLocale);
+    }
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    ResponseCompression compression = new ResponseCompression(0);
+    assertFalse(compression.isEnabled());
+    assertEquals(Encoding.IDENTITY, compression.negotiate("gzip"));
+  }
+
+  private byte[] compress(Encoding encoding) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    OutputStream out = new ResponseCompression(ResponseCompression.DEFAULT_LEVEL).wrap(bytes, encoding);
+    out.write(CONTENT.getBytes(Charsets.UTF_8));
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  @Test
+  public void testGzipRoundTrip() throws Exception {
+    InputStream in = new GZIPInputStream(new ByteArrayInputStream(compress(Encoding.GZIP)));
+    assertEquals(CONTENT, new String(ByteStreams.toByteArray(in), Charsets.UTF_8));
+  }
+
+  @Test
+  public void testDeflateRoundTrip() throws Exception {
+    InputStream in = new InflaterInputStream(new ByteArrayInputStream(compress(Encoding.DEFLATE)));
+    assertEquals(CONTENT, new String(ByteStreams.toByteArray(in), Charsets.UTF_8));
+  }
+
+  @Test
+  public void testCompressTimeRecorded() throws Exception {
+    SearchTimings timings = new SearchTimings();
+    SearchTimings.setCurrent(timings);
+    try {
+      compress(Encoding.GZIP);
+      assertTrue(timings.get(SearchTimings.Phase.COMPRESS) > 0);
+    } finally {
+      SearchTimings.setCurrent(null);
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Date;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Before;
+import org.junit.Test;
+import org.musicbrainz.search.LuceneVersion;
+import org.musicbrainz.search.MbDocument;
+import org.musicbrainz.search.index.ArtistIndexField;
+import org.musicbrainz.search.index.DatabaseIndex;
+import org.musicbrainz.search.index.MetaIndexField;
+
+public class SearchCursorTest {
+
+  private AbstractSearchServer ss;
+  private AbstractDismaxSearchServer sd;
+  private RAMDirectory ramDir;
+
+  @Before
+  public void setUp() throws Exception {
+    ramDir = new RAMDirectory();
+    addArtists(0, 5, true);
+    ss = new ArtistSearch(new SearcherManager(ramDir, new MusicBrainzSearcherFactory(ResourceType.ARTIST)));
+    sd = new ArtistDismaxSearch(ss);
+  }
+
+  private void addArtists(int start, int end, boolean addMeta) throws Exception {
+    IndexWriter writer = new IndexWriter(ramDir, new IndexWriterConfig(LuceneVersion.LUCENE_VERSION, DatabaseIndex.getAnalyzer(ArtistIndexField.class)));
+    for (int i = start; i < end; i++) {
+      MbDocument doc = new MbDocument();
+      doc.addField(ArtistIndexField.ARTIST_ID, "4302e264-1cf0-4d1f-aca7-2a6f89e34b3" + i);
+      doc.addField(ArtistIndexField.ARTIST, "Farming Incident " + i);
+      doc.addField(ArtistIndexField.TYPE, "Group");
+      writer.addDocument(doc.getLuceneDocument());
+    }
+    if (addMeta) {
+      MbDocument doc = new MbDocument();
+      doc.addField(MetaIndexField.META, MetaIndexField.META_VALUE);
+      doc.addNumericField(MetaIndexField.LAST_UPDATED, new Date().getTime());
+      writer.addDocument(doc.getLuceneDocument());
+    }
+    writer.close();
+  }
+
+  @Test
+  public void testCursorPagesMatchOffsetPages() throws Exception {
+    Results all = ss.search("type:group", 0, 10);
+    assertEquals(5, all.getTotalHits());
+
+    String cursor = SearchCursor.FIRST_PAGE;
+    int pages = 0;
+    int offset = 0;
+    while (cursor != null) {
+      Results page = ss.searchAfter("type:group", cursor, 2);
+      assertEquals(offset, page.getOffset());
+      assertEquals(5, page.getTotalHits());
+      assertEquals(all.getMaxScore(), page.getMaxScore(), 0.0001f);
+      for (Result result : page.results) {
+        assertEquals(all.results.get(offset).getDoc().get(ArtistIndexField.ARTIST_ID), result.getDoc().get(ArtistIndexField.ARTIST_ID));
+        offset++;
+      }
+      cursor = page.getNextCursor();
+      pages++;
+    }
+    assertEquals(3, pages);
+    assertEquals(5, offset);
+  }
+
+  @Test
+  public void testCursorPinsSearcherAcrossReload() throws Exception {
+    Results first = ss.searchAfter("type:group", SearchCursor.FIRST_PAGE, 2);
+    assertNotNull(first.getNextCursor());
+
+    addArtists(5, 10, false);
+    ss.reloadIndex();
+    assertEquals(10, ss.search("type:group", 0, 10).getTotalHits());
+
+    // Later pages still see the index as it was when the first page was searched
+    Results second = ss.searchAfter("type:group", first.getNextCursor(), 10);
+    assertEquals(5, second.getTotalHits());
+    assertEquals(3, second.results.size());
+    assertNull(second.getNextCursor());
+  }
+
+  @Test
+  public void testCursorExpiresOnceSearcherReleased() throws Exception {
+    Results first = ss.searchAfter("type:group", SearchCursor.FIRST_PAGE, 2);
+    ss.setCursorTtlSeconds(0);
+    addArtists(5, 10, false);
+    ss.reloadIndex();
+    ss.searchAfter("type:group", SearchCursor.FIRST_PAGE, 2);
+    try {
+      ss.searchAfter("type:group", first.getNextCursor(), 2);
+      fail("cursor should have expired");
+    } catch (CursorExpiredException cee) {
+      assertEquals(ErrorMessage.CURSOR_EXPIRED.getMsg(), cee.getMessage());
+    }
+  }
+
+  @Test
+  public void testDismaxCursor() throws Exception {
+    Results first = sd.searchAfter("farming", SearchCursor.FIRST_PAGE, 3);
+    assertEquals(3, first.results.size());
+    Results second = sd.searchAfter("farming", first.getNextCursor(), 3);
+    assertEquals(2, second.results.size());
+    assertEquals(3, second.getOffset());
+  }
+
+  @Test
+  public void testEncodeDecode() throws Exception {
+    SearchCursor cursor = SearchCursor.decode(new SearchCursor(12345L, new ScoreDoc(42, 1.5f), 3.25f, 100).encode());
+    assertEquals(12345L, cursor.getSearcherVersion());
+    assertEquals(42, cursor.getAfter().doc);
+    assertEquals(1.5f, cursor.getAfter().score, 0.0f);
+    assertEquals(3.25f, cursor.getMaxScore(), 0.0f);
+    assertEquals(100, cursor.getOffset());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidCursor() throws Exception {
+    SearchCursor.decode("notacursor");
+  }
+}
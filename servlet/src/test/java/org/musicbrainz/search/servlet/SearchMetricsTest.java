@@ -0,0 +1,84 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SearchMetricsTest {
+
+  @Test
+  public void testPhasesRecordedPerTypeFormatAndDismax() {
+    SearchMetrics metrics = new SearchMetrics();
+
+    SearchTimings timings = new SearchTimings();
+    timings.add(SearchTimings.Phase.PARSE, TimeUnit.MILLISECONDS.toNanos(1));
+    timings.add(SearchTimings.Phase.SEARCH, TimeUnit.MILLISECONDS.toNanos(20));
+    timings.add(SearchTimings.Phase.TOTAL, TimeUnit.MILLISECONDS.toNanos(25));
+    metrics.record(ResourceType.RECORDING, SearchServerServlet.RESPONSE_XML, true, timings);
+    metrics.record(ResourceType.RECORDING, SearchServerServlet.RESPONSE_XML, false, new SearchTimings());
+    metrics.record(null, SearchServerServlet.RESPONSE_JSON, false, new SearchTimings());
+
+    assertEquals(Arrays.asList("all.json.total", "recording.xml.dismax.parse", "recording.xml.dismax.search",
+        "recording.xml.dismax.total", "recording.xml.total"), Arrays.asList(metrics.getNames()));
+    assertEquals(1, metrics.getCount("recording.xml.dismax.search"));
+    assertEquals(0, metrics.getCount("recording.xml.search"));
+    assertTrue(Math.abs(20000 - metrics.getPercentileMicros("recording.xml.dismax.search", 99)) <= 20000 / 32);
+    assertTrue(metrics.getStats().contains("recording.xml.dismax.total:count:1,"));
+
+    metrics.reset();
+    assertEquals(0, metrics.getNames().length);
+  }
+
+  @Test
+  public void testCurrentTimings() {
+    SearchTimings.addToCurrent(SearchTimings.Phase.LOAD, 10);
+
+    SearchTimings timings = new SearchTimings();
+    SearchTimings.setCurrent(timings);
+    try {
+      SearchTimings.addToCurrent(SearchTimings.Phase.LOAD, 10);
+      SearchTimings.addToCurrent(SearchTimings.Phase.LOAD, 5);
+    } finally {
+      SearchTimings.setCurrent(null);
+    }
+    SearchTimings.addToCurrent(SearchTimings.Phase.LOAD, 10);
+    assertEquals(15, timings.get(SearchTimings.Phase.LOAD));
+  }
+
+  @Test
+  public void testParallelTimingsMergedAsLongest() {
+    SearchTimings timings = new SearchTimings();
+    timings.add(SearchTimings.Phase.LOAD, 5);
+
+    SearchTimings first = new SearchTimings();
+    first.add(SearchTimings.Phase.SEARCH, 30);
+    first.add(SearchTimings.Phase.PARSE, 2);
+    SearchTimings second = new SearchTimings();
+    second.add(SearchTimings.Phase.SEARCH, 20);
+    second.add(SearchTimings.Phase.PARSE, 3);
+    timings.addParallel(first);
+    timings.addParallel(second);
+
+    assertEquals(30, timings.get(SearchTimings.Phase.SEARCH));
+    assertEquals(3, timings.get(SearchTimings.Phase.PARSE));
+    assertEquals(5, timings.get(SearchTimings.Phase.LOAD));
+  }
+
+  @Test
+  public void testStatsIgnoreDefaultLocale() {
+    Locale defaultLocale = Locale.getDefault();
+    Locale.setDefault(Locale.GERMANY);
+    try {
+      SearchMetrics metrics = new SearchMetrics();
+      metrics.record(ResourceType.ARTIST, SearchServerServlet.RESPONSE_XML, false, new SearchTimings());
+      assertTrue(metrics.getStats().matches("(?s).*persec:[0-9]+\\.[0-9]{2},.*"));
+    } finally {
+      Locale.setDefault(defaultLocale);
+    }
+  }
+}
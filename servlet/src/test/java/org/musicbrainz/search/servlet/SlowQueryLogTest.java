@@ -0,0 +1,90 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.musicbrainz.search.LuceneVersion;
+import org.musicbrainz.search.MbDocument;
+import org.musicbrainz.search.index.ArtistIndexField;
+import org.musicbrainz.search.index.DatabaseIndex;
+
+public class SlowQueryLogTest {
+
+  private AbstractSearchServer ss;
+  private SlowQueryLog slowQueryLog;
+
+  @Before
+  public void setUp() throws Exception {
+    RAMDirectory ramDir = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(ramDir, new IndexWriterConfig(LuceneVersion.LUCENE_VERSION, DatabaseIndex.getAnalyzer(ArtistIndexField.class)));
+    MbDocument doc = new MbDocument();
+    doc.addField(ArtistIndexField.ARTIST_ID, "4302e264-1cf0-4d1f-aca7-2a6f89e34b36");
+    doc.addField(ArtistIndexField.ARTIST, "Farming Incident");
+    writer.addDocument(doc.getLuceneDocument());
+    writer.close();
+    ss = new ArtistSearch(new SearcherManager(ramDir, new MusicBrainzSearcherFactory(ResourceType.ARTIST)));
+    slowQueryLog = new SlowQueryLog(2, 100, 1);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    slowQueryLog.shutdown();
+    ss.close();
+  }
+
+  private SearchTimings createTimings(long totalMillis) {
+    SearchTimings timings = new SearchTimings();
+    timings.add(SearchTimings.Phase.SEARCH, TimeUnit.MILLISECONDS.toNanos(totalMillis - 1));
+    timings.add(SearchTimings.Phase.TOTAL, TimeUnit.MILLISECONDS.toNanos(totalMillis));
+    timings.setTotalHits(1);
+    return timings;
+  }
+
+  @Test
+  public void testOnlySlowestRecentKept() throws Exception {
+    assertNull(slowQueryLog.record(ResourceType.ARTIST, ss, "farming", false, createTimings(50)));
+    slowQueryLog.record(ResourceType.ARTIST, ss, "farming", false, createTimings(200));
+    slowQueryLog.record(ResourceType.ARTIST, ss, "incident", false, createTimings(300));
+    slowQueryLog.record(ResourceType.ARTIST, ss, "farming incident", false, createTimings(150));
+
+    List<SlowQueryLog.SlowQuery> slowQueries = slowQueryLog.getSlowQueries(ResourceType.ARTIST);
+    assertEquals(2, slowQueries.size());
+    assertEquals("incident", slowQueries.get(0).getQuery());
+    assertEquals(300000, slowQueries.get(0).getMicros(SearchTimings.Phase.TOTAL));
+    assertTrue(slowQueries.get(0).getParsedQuery().contains("artist:incident"));
+    assertEquals("farming incident", slowQueries.get(1).getQuery());
+    assertEquals(0, slowQueryLog.getSlowQueries(ResourceType.RECORDING).size());
+  }
+
+  @Test
+  public void testExplanationCapturedInBackground() throws Exception {
+    SlowQueryLog.SlowQuery slowQuery = slowQueryLog.record(ResourceType.ARTIST, ss, "farming", false, createTimings(200));
+    assertNotNull(slowQuery);
+    for (int i = 0; i < 100 && slowQuery.getExplanation() == null; i++) {
+      Thread.sleep(20);
+    }
+    assertNotNull(slowQuery.getExplanation());
+    assertTrue(slowQuery.getExplanation().startsWith("0:"));
+  }
+
+  @Test
+  public void testJson() throws Exception {
+    slowQueryLog.record(ResourceType.ARTIST, ss, "farming \"incident\"", true, createTimings(200));
+    String json = slowQueryLog.toJson();
+    assertTrue(json, json.startsWith("{\"artist\":[{\"timestamp\":"));
+    assertTrue(json, json.contains("\"query\":\"farming \\\"incident\\\"\",\"dismax\":true,"));
+    assertTrue(json, json.contains("\"hits\":1,\"micros\":{\"ratelimit\":0,\"parse\":0,\"search\":199000,"));
+  }
+}
@@ -0,0 +1,116 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Before;
+import org.junit.Test;
+import org.musicbrainz.search.LuceneVersion;
+import org.musicbrainz.search.MbDocument;
+import org.musicbrainz.search.index.ArtistIndexField;
+import org.musicbrainz.search.index.DatabaseIndex;
+import org.musicbrainz.search.index.MetaIndexField;
+
+public class SortKeyTest {
+
+  private static final String[] SORT_NAMES = { "Incident, Farming", "abba", "Zed", "Beatles, The" };
+  private static final String[] BEGIN_DATES = { "1999", "1972-01-01", null, "1960-08" };
+
+  private AbstractSearchServer ss;
+  private AbstractDismaxSearchServer sd;
+
+  @Before
+  public void setUp() throws Exception {
+    RAMDirectory ramDir = new RAMDirectory();
+    IndexWriterConfig config = new IndexWriterConfig(LuceneVersion.LUCENE_VERSION, DatabaseIndex.getAnalyzer(ArtistIndexField.class));
+    config.setMergePolicy(NoMergePolicy.COMPOUND_FILES);
+    IndexWriter writer = new IndexWriter(ramDir, config);
+    for (int i = 0; i < SORT_NAMES.length; i++) {
+      MbDocument doc = new MbDocument();
+      doc.addField(ArtistIndexField.ARTIST_ID, "4302e264-1cf0-4d1f-aca7-2a6f89e34b3" + i);
+      doc.addField(ArtistIndexField.ARTIST, "Artist " + i);
+      doc.addField(ArtistIndexField.TYPE, "Group");
+      doc.addSortedDocValuesField(ArtistIndexField.SORT_BY_NAME, SORT_NAMES[i]);
+      doc.addDateDocValuesField(ArtistIndexField.SORT_BY_DATE, BEGIN_DATES[i]);
+      writer.addDocument(doc.getLuceneDocument());
+      // Spread over segments so values are compared across segments
+      writer.commit();
+    }
+    MbDocument doc = new MbDocument();
+    doc.addField(MetaIndexField.META, MetaIndexField.META_VALUE);
+    doc.addNumericField(MetaIndexField.LAST_UPDATED, new Date().getTime());
+    writer.addDocument(doc.getLuceneDocument());
+    writer.close();
+
+    ss = new ArtistSearch(new SearcherManager(ramDir, new MusicBrainzSearcherFactory(ResourceType.ARTIST)));
+    sd = new ArtistDismaxSearch(ss);
+  }
+
+  private String getOrder(Results results) {
+    StringBuilder sb = new StringBuilder();
+    for (Result result : results.results) {
+      String id = result.getDoc().get(ArtistIndexField.ARTIST_ID);
+      sb.append(id.charAt(id.length() - 1));
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testParseSortParameter() throws Exception {
+    assertEquals(SortKey.DATE, SortKey.getValue("date"));
+    assertEquals(SortKey.DATE, SortKey.getValue("-date"));
+    assertFalse(SortKey.isDescending("date"));
+    assertTrue(SortKey.isDescending("-date"));
+    assertNull(SortKey.getValue("popularity"));
+    assertNull(SortKey.getValue("-"));
+    assertNull(SortKey.createSort(null));
+    assertNull(SortKey.createSort("score"));
+  }
+
+  @Test
+  public void testResourceTypesDeclareSortKeys() throws Exception {
+    assertTrue(ResourceType.RELEASE.getSortKeys().contains(SortKey.TRACKS));
+    assertTrue(ResourceType.RECORDING.getSortKeys().contains(SortKey.DURATION));
+    assertFalse(ResourceType.ARTIST.getSortKeys().contains(SortKey.DURATION));
+    assertTrue(ResourceType.TAG.getSortKeys().isEmpty());
+  }
+
+  @Test
+  public void testSortByNameIgnoresCase() throws Exception {
+    assertEquals("0123", getOrder(ss.search("type:group", 0, 10)));
+    assertEquals("1302", getOrder(ss.search("type:group", 0, 10, 1000, SortKey.createSort("name"))));
+    assertEquals("2031", getOrder(ss.search("type:group", 0, 10, 1000, SortKey.createSort("-name"))));
+  }
+
+  @Test
+  public void testSortByDateWithMissingDatesLast() throws Exception {
+    assertEquals("3102", getOrder(ss.search("type:group", 0, 10, 1000, SortKey.createSort("date"))));
+    assertEquals("0132", getOrder(ss.search("type:group", 0, 10, 1000, SortKey.createSort("-date"))));
+  }
+
+  @Test
+  public void testSortedPagesAndTotalHits() throws Exception {
+    Results page = ss.search("type:group", 1, 2, 1000, SortKey.createSort("date"));
+    assertEquals(4, page.getTotalHits());
+    assertEquals("10", getOrder(page));
+  }
+
+  @Test
+  public void testSortFieldNotInIndexOrdersByRelevance() throws Exception {
+    assertEquals("0123", getOrder(ss.search("type:group", 0, 10, 1000, SortKey.createSort("duration"))));
+  }
+
+  @Test
+  public void testDismaxSorted() throws Exception {
+    assertEquals("1302", getOrder(sd.search("artist", 0, 10, 1000, SortKey.createSort("name"))));
+  }
+}
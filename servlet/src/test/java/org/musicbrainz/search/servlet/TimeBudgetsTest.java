@@ -0,0 +1,51 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TimeBudgetsTest {
+
+  @Test
+  public void testTypeBudgetsScaledByLane() {
+    TimeBudgets timeBudgets = TimeBudgets.parse(1000, "tag:250, recording:3000", "website:1.0,bulk:0.5");
+
+    assertEquals(250, timeBudgets.getTimeAllowed(ResourceType.TAG, AdmissionController.Lane.WEBSITE));
+    assertEquals(125, timeBudgets.getTimeAllowed(ResourceType.TAG, AdmissionController.Lane.BULK));
+    assertEquals(3000, timeBudgets.getTimeAllowed(ResourceType.RECORDING, AdmissionController.Lane.API));
+    assertEquals(1500, timeBudgets.getTimeAllowed(ResourceType.RECORDING, AdmissionController.Lane.BULK));
+    assertEquals(1000, timeBudgets.getTimeAllowed(ResourceType.ARTIST, AdmissionController.Lane.WEBSITE));
+    assertEquals(1000, timeBudgets.getTimeAllowed(ResourceType.ARTIST));
+  }
+
+  @Test
+  public void testDefaultsWhenNotConfigured() {
+    TimeBudgets timeBudgets = TimeBudgets.parse(TimeBudgets.DEFAULT_TIME_ALLOWED_MILLIS, null, "");
+    for (ResourceType resourceType : ResourceType.values()) {
+      for (AdmissionController.Lane lane : AdmissionController.Lane.values()) {
+        assertEquals(TimeBudgets.DEFAULT_TIME_ALLOWED_MILLIS, timeBudgets.getTimeAllowed(resourceType, lane));
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownType() {
+    TimeBudgets.parse(1000, "tags:250", null);
+  }
+
+  @Test
+  public void testTimeoutsCountedPerType() {
+    TimeBudgets timeBudgets = new TimeBudgets(1000);
+    timeBudgets.setTimeAllowed(ResourceType.INSTRUMENT, 200);
+    timeBudgets.recordSearch(ResourceType.INSTRUMENT);
+    timeBudgets.recordSearch(ResourceType.INSTRUMENT);
+    timeBudgets.recordTimeout(ResourceType.INSTRUMENT);
+    timeBudgets.recordSearch(ResourceType.RECORDING);
+    timeBudgets.recordPartial(ResourceType.RECORDING);
+
+    assertEquals(1, timeBudgets.getTimeouts(ResourceType.INSTRUMENT));
+    assertEquals(0, timeBudgets.getTimeouts(ResourceType.RECORDING));
+    assertEquals("budget:200,searches:2,timeouts:1,partials:0", timeBudgets.getStats(ResourceType.INSTRUMENT));
+    assertEquals("budget:1000,searches:1,timeouts:0,partials:1", timeBudgets.getStats(ResourceType.RECORDING));
+  }
+}
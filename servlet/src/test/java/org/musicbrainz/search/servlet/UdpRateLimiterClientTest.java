@@ -0,0 +1,133 @@
+package org.musicbrainz.search.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UdpRateLimiterClientTest {
+
+  private static final String OVER_LIMIT_IP = "10.0.0.2";
+  private static final String SILENT_IP = "10.0.0.3";
+
+  private DatagramSocket stub;
+  private Thread stubThread;
+  private UdpRateLimiterClient client;
+
+  /**
+   * Stands in for the rate limit server, replies to requests for OVER_LIMIT_IP as over the limit, ignores requests
+   * for SILENT_IP and allows any others
+   */
+  @Before
+  public void setUp() throws Exception {
+    stub = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+    stubThread = new Thread() {
+      public void run() {
+        byte[] buffer = new byte[200];
+        while (!stub.isClosed()) {
+          try {
+            DatagramPacket request = new DatagramPacket(buffer, buffer.length);
+            stub.receive(request);
+            String msg = new String(request.getData(), 0, request.getLength(), "US-ASCII");
+            String id = msg.substring(0, msg.indexOf(' '));
+            String ip = msg.substring(msg.indexOf("ip=") + 3);
+            String reply;
+            if (ip.equals(SILENT_IP)) {
+              continue;
+            } else if (ip.equals(OVER_LIMIT_IP)) {
+              reply = id + " ok Y 30.0 22 20";
+            } else {
+              reply = id + " ok N 1.0 22 20";
+            }
+            byte[] bytes = reply.getBytes("US-ASCII");
+            stub.send(new DatagramPacket(bytes, bytes.length, request.getSocketAddress()));
+          } catch (Exception e) {
+            // closed
+          }
+        }
+      }
+    };
+    stubThread.setDaemon(true);
+    stubThread.start();
+    client = new UdpRateLimiterClient(new InetSocketAddress("127.0.0.1", stub.getLocalPort()), 200, 3, 60000);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    client.close();
+    stub.close();
+  }
+
+  @Test
+  public void testReplies() throws Exception {
+    assertTrue(client.check("10.0.0.1").isValid());
+
+    RateLimiterChecker.RateLimiterResponse response = client.check(OVER_LIMIT_IP);
+    assertFalse(response.isValid());
+    assertEquals("30.0 22 20", response.getHeaderMsg());
+    assertTrue(client.getStats().startsWith("requests:2,replies:2,timeouts:0"));
+  }
+
+  @Test
+  public void testConcurrentRequestsMatchedToReplies() throws Exception {
+    ExecutorService es = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+      for (int i = 0; i < 200; i++) {
+        final boolean overLimit = i % 2 == 0;
+        results.add(es.submit(new Callable<Boolean>() {
+          public Boolean call() {
+            return client.check(overLimit ? OVER_LIMIT_IP : "10.0.0.1").isValid() != overLimit;
+          }
+        }));
+      }
+      for (Future<Boolean> result : results) {
+        assertTrue(result.get());
+      }
+    } finally {
+      es.shutdown();
+    }
+  }
+
+  @Test
+  public void testFailsOpenAndBreakerOpens() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      assertFalse(client.isOpen());
+      assertTrue(client.check(SILENT_IP).isValid());
+    }
+    assertTrue(client.isOpen());
+
+    // Rate limiter is no longer asked, so even over the limit requests are allowed
+    assertTrue(client.check(OVER_LIMIT_IP).isValid());
+    assertTrue(client.getStats().contains("timeouts:3"));
+    assertTrue(client.getStats().contains("shortcircuited:1"));
+    assertTrue(client.getStats().contains("breaker:open"));
+  }
+
+  @Test
+  public void testBreakerClosesOnceRateLimiterResponds() throws Exception {
+    client.close();
+    client = new UdpRateLimiterClient(new InetSocketAddress("127.0.0.1", stub.getLocalPort()), 200, 1, 100);
+    assertTrue(client.check(SILENT_IP).isValid());
+    assertTrue(client.isOpen());
+
+    Thread.sleep(150);
+    assertFalse(client.isOpen());
+    assertFalse(client.check(OVER_LIMIT_IP).isValid());
+    assertFalse(client.isOpen());
+  }
+}
@@ -21,6 +21,7 @@ import java.util.logging.Logger;
 import org.apache.commons.lang.time.StopWatch;
 import org.apache.lucene.index.*;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.jdom.JDOMException;
 import org.kohsuke.args4j.CmdLineException;
@@ -28,6 +29,7 @@ import org.kohsuke.args4j.CmdLineParser;
 import org.musicbrainz.replication.ReplicationPacket;
 import org.musicbrainz.replication.ReplicationPacketIterator;
 import org.musicbrainz.search.LuceneVersion;
+import org.musicbrainz.search.MbDocument;
 import org.musicbrainz.search.index.AnnotationIndex;
 import org.musicbrainz.search.index.ArtistIndex;
 import org.musicbrainz.search.index.CommonTables;
@@ -54,6 +56,7 @@ public class LiveDataFeedIndexUpdater {
 	private final Map<DatabaseIndex, IndexWriter> indexWriters = new HashMap<DatabaseIndex, IndexWriter>();
 	private final Map<DatabaseIndex, ReplicationInformation> indexReplicationInfos = new HashMap<DatabaseIndex, ReplicationInformation>();
 	private final Map<DatabaseIndex, ChangesAnalyzer> indexChangesAnalyzers = new HashMap<DatabaseIndex, ChangesAnalyzer>();
+	private final Map<DatabaseIndex, Integer> indexNumericPrecisionSteps = new HashMap<DatabaseIndex, Integer>();
 
 	public LiveDataFeedIndexUpdater(LiveDataFeedIndexUpdaterOptions options) {
 
@@ -113,6 +116,12 @@ public class LiveDataFeedIndexUpdater {
 			ReplicationInformation replicationInfo = index.readReplicationInformationFromIndex(indexReader);
 			indexReplicationInfos.put(index, replicationInfo);
 
+			// Updated documents must be stored in the same format as the rest of the index
+			index.setStoredPayloadCodec(index.readStoredPayloadCodecFromIndex(indexReader));
+			index.setStoreXmlFragments(index.readStoreXmlFragmentsFromIndex(indexReader));
+			indexNumericPrecisionSteps.put(index, index.readNumericPrecisionStepFromIndex(indexReader));
+			index.setFormatVersion(index.readFormatVersionFromIndex(indexReader));
+
 			// Initialize the changes analyzer
 			DatabaseIndexDependencies dependencies = new DatabaseIndexDependencies(index.getName());
 			try {
@@ -206,6 +215,7 @@ public class LiveDataFeedIndexUpdater {
 			IndexWriter indexWriter = indexWriters.get(index);
 			ReplicationInformation replicationInfo = indexReplicationInfos.get(index);
 			ChangesAnalyzer changesAnalyzer = indexChangesAnalyzers.get(index);
+			MbDocument.setNumericPrecisionStep(indexNumericPrecisionSteps.get(index));
 
 			try {
 				updateDatabaseIndex(index, indexWriter, replicationInfo, changesAnalyzer, itPacket.getCurrentReplicationPosition());
@@ -226,7 +236,18 @@ public class LiveDataFeedIndexUpdater {
 		IndexWriterConfig writerConfig = new IndexWriterConfig(LuceneVersion.LUCENE_VERSION, index.getAnalyzer());
 
 		String path = options.getIndexesDir() + index.getFilename();
-		IndexWriter indexWriter = new ThreadedIndexWriter(FSDirectory.open(new File(path)), writerConfig, Runtime.getRuntime()
+		Directory directory = FSDirectory.open(new File(path));
+
+		// Keep merged segments sorted if the index was built sorted by popularity
+		IndexReader indexReader = DirectoryReader.open(directory);
+		try {
+			index.setSortedByPopularity(index.readSortedByPopularityFromIndex(indexReader));
+		} finally {
+			indexReader.close();
+		}
+		index.configureIndexSort(writerConfig);
+
+		IndexWriter indexWriter = new ThreadedIndexWriter(directory, writerConfig, Runtime.getRuntime()
 				.availableProcessors(), 10);
 
 		return indexWriter;